@@ -0,0 +1,272 @@
+package kz.lab.fileuploaderservice.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import kz.lab.fileuploaderservice.resilience.RedisGuard;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Read-through cache of file metadata for single-file lookups: a bounded in-process tier
+ * and a shared Redis tier in front of Postgres. Entries are stored by file id and only
+ * returned to their owner. Deletes and relocations evict both tiers and broadcast the ids
+ * over Redis pub/sub so other nodes drop their local copies. An eviction leaves a short-lived
+ * tombstone in Redis and bumps a local generation, so a read-through fill that loaded the row
+ * before the eviction cannot put the stale row back into either tier.
+ */
+@Component
+@Slf4j
+public class FileMetadataCache implements DisposableBean {
+
+    private static final String KEY_PREFIX = "file-meta:";
+    private static final String INVALIDATION_CHANNEL = "file-meta:invalidate";
+    private static final String TOMBSTONE = "-";
+
+    private final ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final RedisGuard redisGuard;
+    private final boolean enabled;
+    private final Duration localTtl;
+    private final Duration redisTtl;
+    private final Duration tombstoneTtl;
+
+    private final Cache<Long, FileEntity> local;
+    // Растёт при каждом сбросе L1; заполнение, начатое до сброса, в L1 не пишет
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final Counter localHits;
+    private final Counter redisHits;
+    private final Counter misses;
+
+    private volatile Disposable invalidationSubscription;
+
+    public FileMetadataCache(
+            ReactiveRedisTemplate<String, String> reactiveRedisTemplate,
+            ObjectMapper objectMapper,
+            RedisGuard redisGuard,
+            MeterRegistry meterRegistry,
+            @Value("${application.metadata-cache.enabled:true}") boolean enabled,
+            @Value("${application.metadata-cache.max-entries:10000}") long maxEntries,
+            @Value("${application.metadata-cache.local-ttl-seconds:30}") long localTtlSeconds,
+            @Value("${application.metadata-cache.redis-ttl-seconds:300}") long redisTtlSeconds,
+            @Value("${application.metadata-cache.tombstone-ttl-seconds:10}") long tombstoneTtlSeconds) {
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.redisGuard = redisGuard;
+        this.enabled = enabled;
+        this.localTtl = Duration.ofSeconds(localTtlSeconds);
+        this.redisTtl = Duration.ofSeconds(redisTtlSeconds);
+        this.tombstoneTtl = Duration.ofSeconds(tombstoneTtlSeconds);
+
+        // TTL ограничивает устаревание, если invalidation не дошло (Redis недоступен)
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(localTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "file-metadata");
+
+        this.localHits = meterRegistry.counter("file.metadata.cache.requests", "tier", "local", "result", "hit");
+        this.redisHits = meterRegistry.counter("file.metadata.cache.requests", "tier", "redis", "result", "hit");
+        this.misses = meterRegistry.counter("file.metadata.cache.requests", "tier", "database", "result", "miss");
+        Gauge.builder("file.metadata.cache.hit.ratio", this, FileMetadataCache::hitRatio)
+                .description("Share of lookups served without Postgres")
+                .register(meterRegistry);
+    }
+
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribeToInvalidations() {
+        if (!enabled) {
+            return;
+        }
+
+        // После (пере)подписки локальный кеш сбрасывается: пока не были подписаны, сообщения могли потеряться
+        invalidationSubscription = reactiveRedisTemplate.listenToChannelLater(INVALIDATION_CHANNEL)
+                .doOnNext(messages -> invalidateLocal(null))
+                .flatMapMany(messages -> messages)
+                .map(message -> parseIds(message.getMessage()))
+                .doOnNext(this::invalidateLocal)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("File metadata invalidation subscription lost, resubscribing: {}",
+                                signal.failure().toString())))
+                .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        if (invalidationSubscription != null) {
+            invalidationSubscription.dispose();
+        }
+    }
+
+
+    // Пустой результат не кешируется: отсутствие файла всегда проверяется в Postgres
+    public Mono<FileEntity> get(Long fileId, Long userId, Supplier<Mono<FileEntity>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        FileEntity cached = local.getIfPresent(fileId);
+        if (cached != null && isVisible(cached, userId)) {
+            localHits.increment();
+            return Mono.just(cached);
+        }
+
+        return Mono.defer(() -> {
+            // Поколение фиксируется до чтения: evict во время чтения не даст положить результат в L1
+            long generation = invalidations.get();
+
+            return redisGuard.read("file-meta-get", reactiveRedisTemplate.opsForValue().get(KEY_PREFIX + fileId))
+                    .filter(json -> !TOMBSTONE.equals(json))
+                    .flatMap(this::deserialize)
+                    .filter(file -> isVisible(file, userId))
+                    .doOnNext(file -> {
+                        redisHits.increment();
+                        putLocal(file, generation);
+                    })
+                    .switchIfEmpty(Mono.defer(() -> {
+                        misses.increment();
+                        return loader.get().doOnNext(file -> put(file, generation));
+                    }));
+        });
+    }
+
+    public Mono<Void> evict(Long fileId) {
+        return evictAll(List.of(fileId));
+    }
+
+    // Сбрасывает L1 сразу, а надгробие и рассылку для других узлов отправляет не дожидаясь Redis
+    public Mono<Void> evictAll(Collection<Long> fileIds) {
+        if (!enabled || fileIds.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return Mono.fromRunnable(() -> evictEverywhere(fileIds));
+    }
+
+    // Для случаев, когда закешированная строка после сброса должна стать недостижимой (объект сейчас удалят):
+    // завершается, когда надгробие в Redis записано и сброс разослан. Ошибка - Redis не ответил за timeout,
+    // тогда копии на других узлах и в Redis могут жить ещё maxStaleness()
+    public Mono<Void> evictAndAwait(Long fileId, Duration timeout) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+
+        return Mono.defer(() -> evictEverywhere(List.of(fileId)))
+                .timeout(timeout);
+    }
+
+    // Сколько максимум может прожить копия строки, сброс которой не дошёл
+    public Duration maxStaleness() {
+        return redisTtl.compareTo(localTtl) > 0 ? redisTtl : localTtl;
+    }
+
+
+    private Mono<Void> evictEverywhere(Collection<Long> fileIds) {
+        invalidateLocal(fileIds);
+
+        String payload = fileIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        // Надгробие вместо DEL: заполнение, прочитавшее строку до удаления, пишет через SET NX и не пройдёт.
+        // Через backlog RedisGuard: запись и рассылка не теряются при сбое Redis
+        return redisGuard.write("file-meta-evict", INVALIDATION_CHANNEL + ":" + payload, () -> Flux.fromIterable(fileIds)
+                .concatMap(id -> reactiveRedisTemplate.opsForValue().set(KEY_PREFIX + id, TOMBSTONE, tombstoneTtl))
+                .then(reactiveRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, payload)));
+    }
+
+    private void put(FileEntity file, long generation) {
+        putLocal(file, generation);
+
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(file);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize file metadata: fileId={}", file.getId(), e);
+            return;
+        }
+
+        // Кеш заполняется лениво - при недоступном Redis запись просто пропускаем
+        if (redisGuard.isAvailable()) {
+            reactiveRedisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + file.getId(), json, redisTtl)
+                    .timeout(Duration.ofSeconds(1))
+                    .subscribe(ignored -> {}, e ->
+                            log.debug("Failed to cache file metadata: fileId={}, error={}", file.getId(), e.toString()));
+        }
+    }
+
+    private void putLocal(FileEntity file, long generation) {
+        if (invalidations.get() != generation) {
+            return;
+        }
+        local.put(file.getId(), file);
+        // Сброс мог пройти между проверкой и put - тогда убираем только что положенное
+        if (invalidations.get() != generation) {
+            local.invalidate(file.getId());
+        }
+    }
+
+    // null - сбросить весь L1
+    private void invalidateLocal(Collection<Long> fileIds) {
+        invalidations.incrementAndGet();
+        if (fileIds == null) {
+            local.invalidateAll();
+        } else {
+            local.invalidateAll(fileIds);
+        }
+    }
+
+    // Чужой или просроченный файл - промах, решает запрос в Postgres
+    private boolean isVisible(FileEntity file, Long userId) {
+        return Objects.equals(file.getUserId(), userId)
+               && (file.getExpiresAt() == null || file.getExpiresAt().isAfter(LocalDateTime.now()));
+    }
+
+    private Mono<FileEntity> deserialize(String json) {
+        try {
+            return Mono.just(objectMapper.readValue(json, FileEntity.class));
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to deserialize file metadata", e);
+            return Mono.empty();
+        }
+    }
+
+    private List<Long> parseIds(String payload) {
+        return Arrays.stream(payload.split(","))
+                .filter(id -> !id.isBlank())
+                .map(Long::valueOf)
+                .toList();
+    }
+
+    private double hitRatio() {
+        double hits = localHits.count() + redisHits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+}
@@ -4,10 +4,14 @@ import org.flywaydb.core.Flyway;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 
 @Configuration
 public class FlywayConfig {
+    // Миграции до прогрева (StartupWarmup), прогрев ходит в уже мигрированную схему
     @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
     public ApplicationRunner migrateDatabase() {
         return args -> {
             Flyway flyway = Flyway.configure()
@@ -1,5 +1,7 @@
 package kz.lab.fileuploaderservice.config;
 
+import kz.lab.fileuploaderservice.storage.StorageRouter;
+import kz.lab.fileuploaderservice.storage.StorageShard;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -10,35 +12,97 @@ import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
 import java.net.URI;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 public class MinioConfig {
 
     @Bean
-    public S3AsyncClient s3AsyncClient(MinioProperties properties){
+    public StorageRouter storageRouter(MinioProperties minioProperties, StorageProperties storageProperties) {
 
-        AwsBasicCredentials credentials = AwsBasicCredentials.create(
-                properties.getAccessKey(),
-                properties.getSecretKey()
-        );
+        List<StorageProperties.Shard> shardConfigs = storageProperties.getShards().isEmpty()
+                ? List.of(defaultShard(minioProperties))
+                : storageProperties.getShards();
 
-        S3Configuration s3Config = S3Configuration.builder()
-                .pathStyleAccessEnabled(properties.isPathStyleAccessEnabled())
-                .build();
+        // Один S3 клиент (и пул соединений) на endpoint, сколько бы бакетов там ни было
+        Map<String, S3AsyncClient> clients = new HashMap<>();
+        Map<String, S3Presigner> presigners = new HashMap<>();
+        List<StorageShard> shards = new ArrayList<>();
+
+        for (StorageProperties.Shard config : shardConfigs) {
+            String clientKey = config.getEndpoint() + "|" + config.getAccessKey() + "|" + config.getRegion();
+
+            S3AsyncClient client = clients.computeIfAbsent(clientKey,
+                    key -> s3AsyncClient(config, minioProperties.getRequestTimeout()));
+            S3Presigner presigner = presigners.computeIfAbsent(clientKey,
+                    key -> s3Presigner(config));
+
+            shards.add(new StorageShard(
+                    config.getName() != null ? config.getName() : config.getBucketName(),
+                    config.getEndpoint(),
+                    config.getBucketName(),
+                    config.getWeight(),
+                    client,
+                    presigner
+            ));
+        }
+
+        return new StorageRouter(shards, storageProperties.getVirtualNodesPerWeight());
+    }
+
+    private S3AsyncClient s3AsyncClient(StorageProperties.Shard config, long requestTimeout) {
 
         return S3AsyncClient.builder()
-                .region(Region.of(properties.getRegion()))
-                .endpointOverride(URI.create(properties.getEndpoint()))
-                .credentialsProvider(StaticCredentialsProvider.create(credentials))
-                .serviceConfiguration(s3Config)
+                .region(Region.of(config.getRegion()))
+                .endpointOverride(URI.create(config.getEndpoint()))
+                .credentialsProvider(credentials(config))
+                .serviceConfiguration(s3Configuration(config))
                 .overrideConfiguration(builder -> builder
-                        .apiCallTimeout(Duration.ofMillis(properties.getRequestTimeout()))
-                        .apiCallAttemptTimeout(Duration.ofMillis(properties.getRequestTimeout())))
+                        .apiCallTimeout(Duration.ofMillis(requestTimeout))
+                        .apiCallAttemptTimeout(Duration.ofMillis(requestTimeout)))
                 .build();
+    }
+
+    private S3Presigner s3Presigner(StorageProperties.Shard config) {
+
+        return S3Presigner.builder()
+                .region(Region.of(config.getRegion()))
+                .endpointOverride(URI.create(config.getEndpoint()))
+                .credentialsProvider(credentials(config))
+                .serviceConfiguration(s3Configuration(config))
+                .build();
+    }
+
+    private StaticCredentialsProvider credentials(StorageProperties.Shard config) {
+        return StaticCredentialsProvider.create(AwsBasicCredentials.create(
+                config.getAccessKey(),
+                config.getSecretKey()
+        ));
+    }
+
+    private S3Configuration s3Configuration(StorageProperties.Shard config) {
+        return S3Configuration.builder()
+                .pathStyleAccessEnabled(config.isPathStyleAccessEnabled())
+                .build();
+    }
 
+    private StorageProperties.Shard defaultShard(MinioProperties properties) {
+        StorageProperties.Shard shard = new StorageProperties.Shard();
+        shard.setName("default");
+        shard.setEndpoint(properties.getEndpoint());
+        shard.setAccessKey(properties.getAccessKey());
+        shard.setSecretKey(properties.getSecretKey());
+        shard.setRegion(properties.getRegion());
+        shard.setBucketName(properties.getBucketName());
+        shard.setPathStyleAccessEnabled(properties.isPathStyleAccessEnabled());
+        return shard;
     }
 }
 
@@ -0,0 +1,37 @@
+package kz.lab.fileuploaderservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "application.rate-limit")
+@Configuration
+@Getter
+@Setter
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    // Сколько токенов узел берёт из Redis за раз, пока пользователь далеко от лимита
+    private int leaseSize = 5;
+
+    private long leaseTtlMs = 1000;
+
+    // Классы эндпоинтов проверяются по порядку, первый совпавший определяет бакет
+    private Map<String, BucketClass> classes = new LinkedHashMap<>();
+
+    @Getter
+    @Setter
+    public static class BucketClass {
+        private List<String> methods = new ArrayList<>();
+        private List<String> paths = new ArrayList<>();
+        private long capacity;
+        private double refillPerSecond;
+    }
+}
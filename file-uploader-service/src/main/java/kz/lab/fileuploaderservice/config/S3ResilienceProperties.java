@@ -0,0 +1,40 @@
+package kz.lab.fileuploaderservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@ConfigurationProperties(prefix = "application.minio.resilience")
+@Configuration
+@Getter
+@Setter
+public class S3ResilienceProperties {
+
+    private boolean enabled = true;
+
+    // Всего попыток, включая первую
+    private int maxAttempts = 3;
+    private long initialBackoffMs = 50;
+    private long maxBackoffMs = 1000;
+    private double jitter = 0.5;
+
+    // Дублирующий запрос уходит, когда первый не ответил за p95 (но не раньше min-delay)
+    private boolean hedgingEnabled = true;
+    private double hedgePercentile = 0.95;
+    private long hedgeMinDelayMs = 20;
+    private int hedgeMinSamples = 50;
+    private int latencyWindowSize = 512;
+
+    private Breaker breaker = new Breaker();
+
+    @Getter
+    @Setter
+    public static class Breaker {
+        private double failureRateThreshold = 0.5;
+        private int slidingWindowSize = 20;
+        private int minimumCalls = 10;
+        private long openDurationMs = 10000;
+        private int halfOpenCalls = 3;
+    }
+}
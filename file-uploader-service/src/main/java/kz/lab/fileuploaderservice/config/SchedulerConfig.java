@@ -0,0 +1,23 @@
+package kz.lab.fileuploaderservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Dedicated schedulers for work that must not run on Netty event loops.
+ * Blocking file I/O keeps using {@code Schedulers.boundedElastic()}.
+ */
+@Configuration
+public class SchedulerConfig {
+
+    // BCrypt и подпись presigned URL - чистый CPU: потоков не больше ядер, лишние задачи ждут в очереди
+    @Bean(destroyMethod = "dispose")
+    public Scheduler cpuBoundScheduler(@Value("${application.schedulers.cpu-bound.threads:0}") int threads) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return Schedulers.newParallel("cpu-bound", size);
+    }
+
+}
@@ -0,0 +1,34 @@
+package kz.lab.fileuploaderservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "application.storage")
+@Configuration
+@Getter
+@Setter
+public class StorageProperties {
+
+    // Пустой список - один шард из application.minio.*
+    private List<Shard> shards = new ArrayList<>();
+
+    private int virtualNodesPerWeight = 200;
+
+    @Getter
+    @Setter
+    public static class Shard {
+        private String name;
+        private String endpoint;
+        private String accessKey;
+        private String secretKey;
+        private String region = "us-east-1";
+        private String bucketName;
+        private int weight = 1;
+        private boolean pathStyleAccessEnabled = true;
+    }
+}
@@ -0,0 +1,39 @@
+package kz.lab.fileuploaderservice.controller;
+
+import kz.lab.fileuploaderservice.dto.UploadStatsResponse;
+import kz.lab.fileuploaderservice.service.UploadAnalyticsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+
+// Доступ только для ROLE_ADMIN - см. SecurityConfig
+@RestController
+@RequestMapping("/admin/analytics")
+@Slf4j
+@RequiredArgsConstructor
+public class AdminAnalyticsController {
+
+    private final UploadAnalyticsService uploadAnalyticsService;
+
+
+    @GetMapping(value = "/uploads", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<UploadStatsResponse> getUploadStats(
+            @RequestParam(defaultValue = "total") String groupBy,
+            @RequestParam(defaultValue = "hour") String granularity,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Long userId) {
+
+        log.info("Admin upload stats request: groupBy={}, granularity={}, from={}, to={}", groupBy, granularity, from, to);
+
+        return uploadAnalyticsService.getStats(groupBy, granularity, from, to, userId);
+    }
+}
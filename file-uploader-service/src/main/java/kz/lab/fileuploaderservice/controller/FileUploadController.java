@@ -1,21 +1,42 @@
 package kz.lab.fileuploaderservice.controller;
 
 import kz.lab.fileuploaderservice.dto.FileInfoResponse;
+import kz.lab.fileuploaderservice.dto.FileSearchCriteria;
+import kz.lab.fileuploaderservice.dto.FileSearchResponse;
 import kz.lab.fileuploaderservice.dto.FileUploadResponse;
+import kz.lab.fileuploaderservice.dto.UploadIntentConfirmRequest;
+import kz.lab.fileuploaderservice.dto.UploadIntentRequest;
+import kz.lab.fileuploaderservice.dto.UploadIntentResponse;
+import kz.lab.fileuploaderservice.dto.UploadProgressResponse;
+import kz.lab.fileuploaderservice.progress.UploadProgressTracker;
+import kz.lab.fileuploaderservice.service.ArchiveService;
 import kz.lab.fileuploaderservice.service.FileService;
 import kz.lab.fileuploaderservice.service.FileUploadService;
+import kz.lab.fileuploaderservice.service.UploadIntentService;
 import kz.lab.fileuploaderservice.util.SecurityUtils;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -27,6 +48,9 @@ public class FileUploadController {
 
     private final FileUploadService fileUploadService;
     private final FileService fileService;
+    private final ArchiveService archiveService;
+    private final UploadIntentService uploadIntentService;
+    private final UploadProgressTracker uploadProgressTracker;
 
 
     @PostMapping(value = "/upload",
@@ -35,7 +59,8 @@ public class FileUploadController {
     )
     public Mono<FileUploadResponse> uploadFile(
             @RequestPart("file") Mono<FilePart> filePartMono,
-            @RequestHeader("X-Idempotency-Key") String idempotencyKeyHeader){
+            @RequestHeader("X-Idempotency-Key") String idempotencyKeyHeader,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime expiresAt){
         log.info("Received file upload request with idempotency-key: {}", idempotencyKeyHeader);
 
         UUID idempotencyKey;
@@ -51,12 +76,115 @@ public class FileUploadController {
 
         return SecurityUtils.getCurrentUserId()
                 .flatMap(userId ->
-                        fileUploadService.uploadFile(filePartMono, userId, idempotencyKey)
+                        fileUploadService.uploadFile(filePartMono, userId, idempotencyKey, expiresAt)
                 );
 
     }
 
 
+    // Тело запроса - сам файл (application/octet-stream); имя и тип файла в заголовках
+    @PutMapping(value = "/raw",
+                consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+                produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public Mono<FileUploadResponse> uploadRaw(
+            ServerHttpRequest request,
+            @RequestHeader("X-Idempotency-Key") String idempotencyKeyHeader,
+            @RequestHeader(value = "X-File-Name", required = false) String encodedFilename,
+            @RequestHeader(value = "X-File-Content-Type", defaultValue = MediaType.APPLICATION_OCTET_STREAM_VALUE) String fileContentType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime expiresAt){
+        log.info("Received raw upload request with idempotency-key: {}", idempotencyKeyHeader);
+
+        UUID idempotencyKey;
+        try {
+            idempotencyKey = UUID.fromString(idempotencyKeyHeader);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid idempotency-key format: {}", idempotencyKeyHeader);
+            return Mono.error(new IllegalArgumentException(
+                    "X-Idempotency-Key must be a valid UUID"
+            ));
+        }
+
+        // Заголовки только ASCII - имя передаётся percent-encoded (UTF-8)
+        String originalFilename = encodedFilename != null
+                ? UriUtils.decode(encodedFilename, StandardCharsets.UTF_8)
+                : null;
+        long contentLength = request.getHeaders().getContentLength();
+
+        return SecurityUtils.getCurrentUserId()
+                .flatMap(userId ->
+                        fileUploadService.uploadRaw(
+                                originalFilename,
+                                MediaType.parseMediaType(fileContentType).toString(),
+                                contentLength >= 0 ? contentLength : null,
+                                request.getBody(),
+                                userId,
+                                idempotencyKey,
+                                expiresAt)
+                );
+    }
+
+
+    @PostMapping(value = "/upload-intents",
+                consumes = MediaType.APPLICATION_JSON_VALUE,
+                produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<UploadIntentResponse> createUploadIntent(
+            @Valid @RequestBody UploadIntentRequest request,
+            @RequestHeader("X-Idempotency-Key") String idempotencyKeyHeader) {
+        log.info("Received upload intent request with idempotency-key: {}", idempotencyKeyHeader);
+
+        UUID idempotencyKey;
+        try {
+            idempotencyKey = UUID.fromString(idempotencyKeyHeader);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid idempotency-key format: {}", idempotencyKeyHeader);
+            return Mono.error(new IllegalArgumentException(
+                    "X-Idempotency-Key must be a valid UUID"
+            ));
+        }
+
+        return SecurityUtils.getCurrentUserId()
+                .flatMap(userId ->
+                        uploadIntentService.createIntent(userId, idempotencyKey, request)
+                );
+    }
+
+
+    @PostMapping(value = "/upload-intents/{intentId}/confirm", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<FileUploadResponse> confirmUploadIntent(
+            @PathVariable UUID intentId,
+            @Valid @RequestBody(required = false) UploadIntentConfirmRequest request) {
+        log.info("Confirming upload intent: intentId={}", intentId);
+
+        return SecurityUtils.getCurrentUserId()
+                .flatMap(userId ->
+                        uploadIntentService.confirmIntent(userId, intentId, request)
+                );
+    }
+
+
+    // SSE с прогрессом загрузки; загрузка может идти на другом узле
+    @GetMapping(value = "/uploads/{idempotencyKey}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<UploadProgressResponse>> uploadProgress(@PathVariable UUID idempotencyKey) {
+        log.info("Streaming upload progress: idempotencyKey={}", idempotencyKey);
+
+        return SecurityUtils.getCurrentUserId()
+                .flatMapMany(userId -> uploadProgressTracker.stream(userId, idempotencyKey))
+                .publish(events -> Flux.merge(
+                        events.map(event -> ServerSentEvent.builder(event)
+                                .id(String.valueOf(event.getSequence()))
+                                .event(event.getStage().name().toLowerCase())
+                                .build()),
+                        // keep-alive для прокси, пока байты долго идут в хранилище
+                        Flux.interval(Duration.ofSeconds(15))
+                                .map(tick -> ServerSentEvent.<UploadProgressResponse>builder().comment("keep-alive").build())
+                                .takeUntilOther(events.then())
+                ));
+    }
+
+
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     public Flux<FileInfoResponse> listFiles(
             @RequestParam(defaultValue = "0") int page,
@@ -80,6 +208,76 @@ public class FileUploadController {
 
 
 
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<FileInfoResponse> exportFiles() {
+        log.info("Exporting file listing as NDJSON");
+
+        return SecurityUtils.getCurrentUserId()
+                .flatMapMany(fileService::exportUserFiles);
+    }
+
+
+    @GetMapping(value = "/archive", produces = "application/zip")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> downloadArchive(@RequestParam List<Long> ids) {
+        log.info("Building archive for files: count={}", ids.size());
+
+        // Ошибки владения/404 возвращаются до начала записи тела ответа
+        return SecurityUtils.getCurrentUserId()
+                .flatMap(userId -> archiveService.resolveFiles(userId, ids))
+                .map(files -> ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION,
+                                ContentDisposition.attachment().filename("files.zip").build().toString())
+                        .contentType(MediaType.parseMediaType("application/zip"))
+                        .body(archiveService.streamArchive(files)));
+    }
+
+
+    @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<FileSearchResponse> searchFiles(
+            @RequestParam(required = false) String name,
+            @RequestParam(defaultValue = "contains") String match,
+            @RequestParam(required = false) String contentType,
+            @RequestParam(required = false) Long minSize,
+            @RequestParam(required = false) Long maxSize,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime uploadedFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime uploadedTo,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+
+        log.info("Searching files: name={}, match={}, contentType={}, size={}", name, match, contentType, size);
+
+        if (size < 1 || size > 100) {
+            return Mono.error(new IllegalArgumentException("Size must be between 1 and 100"));
+        }
+        if (minSize != null && maxSize != null && minSize > maxSize) {
+            return Mono.error(new IllegalArgumentException("minSize must be <= maxSize"));
+        }
+
+        FileSearchCriteria.NameMatch nameMatch;
+        try {
+            nameMatch = FileSearchCriteria.NameMatch.valueOf(match.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new IllegalArgumentException("match must be 'contains' or 'prefix'"));
+        }
+
+        FileSearchCriteria criteria = FileSearchCriteria.builder()
+                .name(name)
+                .nameMatch(nameMatch)
+                .contentType(contentType)
+                .minSize(minSize)
+                .maxSize(maxSize)
+                .uploadedFrom(uploadedFrom)
+                .uploadedTo(uploadedTo)
+                .build();
+
+        return SecurityUtils.getCurrentUserId()
+                .flatMap(userId ->
+                        fileService.searchFiles(userId, criteria, cursor, size)
+                );
+    }
+
+
+
     @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
     public Mono<FileInfoResponse> getFileInfo(@PathVariable Long id) {
         log.info("Getting file info: id={}", id);
@@ -93,6 +291,46 @@ public class FileUploadController {
     }
 
 
+    @GetMapping("/{id}/content")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> downloadContent(@PathVariable Long id) {
+        log.info("Streaming file content: id={}", id);
+
+        return SecurityUtils.getCurrentUserId()
+                .flatMap(userId -> fileService.getFile(id, userId))
+                .map(file -> ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION,
+                                ContentDisposition.attachment().filename(file.getOriginalFilename()).build().toString())
+                        .contentType(MediaType.parseMediaType(file.getContentType()))
+                        .contentLength(file.getFileSize())
+                        .body(fileService.streamFileContent(file)));
+    }
+
+
+    @PostMapping(value = "/{id}/copy", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<FileUploadResponse> copyFile(
+            @PathVariable Long id,
+            @RequestHeader("X-Idempotency-Key") String idempotencyKeyHeader,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime expiresAt) {
+        log.info("Copying file: id={}, idempotency-key={}", id, idempotencyKeyHeader);
+
+        UUID idempotencyKey;
+        try {
+            idempotencyKey = UUID.fromString(idempotencyKeyHeader);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid idempotency-key format: {}", idempotencyKeyHeader);
+            return Mono.error(new IllegalArgumentException(
+                    "X-Idempotency-Key must be a valid UUID"
+            ));
+        }
+
+        return SecurityUtils.getCurrentUserId()
+                .flatMap(userId ->
+                        fileUploadService.copyFile(id, userId, idempotencyKey, expiresAt)
+                );
+    }
+
+
     @GetMapping(value = "/{id}/download", produces = MediaType.APPLICATION_JSON_VALUE)
     public Mono<ResponseEntity<Map<String, String>>> getDownloadUrl(@PathVariable Long id) {
         log.info("Generating download URL for file: id={}", id);
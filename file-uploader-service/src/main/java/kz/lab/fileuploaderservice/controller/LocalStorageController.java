@@ -0,0 +1,69 @@
+package kz.lab.fileuploaderservice.controller;
+
+import kz.lab.fileuploaderservice.exception.InvalidDownloadSignatureException;
+import kz.lab.fileuploaderservice.exception.ResourceNotFoundException;
+import kz.lab.fileuploaderservice.storage.LocalStorageBackend;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.MediaType;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+
+@RestController
+@ConditionalOnProperty(prefix = "application.storage", name = "type", havingValue = "local")
+@Slf4j
+@RequiredArgsConstructor
+public class LocalStorageController {
+
+    public static final String DOWNLOAD_PATH = "/storage/local/download";
+
+    private static final int FALLBACK_BUFFER_SIZE = 64 * 1024;
+
+    private final LocalStorageBackend localStorageBackend;
+
+
+    // Аутентификация - подпись в ссылке, как у presigned URL в S3
+    @GetMapping(DOWNLOAD_PATH)
+    public Mono<Void> download(
+            @RequestParam String bucket,
+            @RequestParam String key,
+            @RequestParam long expires,
+            @RequestParam String signature,
+            ServerHttpResponse response) {
+
+        log.info("Serving local storage download: bucket={}, key={}", bucket, key);
+
+        if (!localStorageBackend.verifySignature(bucket, key, expires, signature)) {
+            return Mono.error(new InvalidDownloadSignatureException("Download link is invalid or expired"));
+        }
+
+        Path path = localStorageBackend.resolvePath(bucket, key);
+
+        return localStorageBackend.statFile(bucket, key)
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException(
+                        String.format("File not found: key=%s", key)
+                )))
+                .flatMap(info -> {
+                    response.getHeaders().setContentType(MediaType.parseMediaType(info.contentType()));
+                    response.getHeaders().setContentLength(info.contentLength());
+                    response.getHeaders().setContentDisposition(
+                            ContentDisposition.attachment().filename(path.getFileName().toString()).build());
+
+                    // Netty отдаёт файл через sendfile - байты не копируются в user space
+                    if (response instanceof ZeroCopyHttpOutputMessage zeroCopy) {
+                        return zeroCopy.writeWith(path, 0, info.contentLength());
+                    }
+                    return response.writeWith(DataBufferUtils.read(path, response.bufferFactory(), FALLBACK_BUFFER_SIZE));
+                });
+    }
+
+}
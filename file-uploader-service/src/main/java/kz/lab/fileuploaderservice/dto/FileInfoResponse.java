@@ -28,6 +28,9 @@ public class FileInfoResponse {
     @JsonProperty("uploaded_at")
     private LocalDateTime uploadedAt;
 
+    @JsonProperty("expires_at")
+    private LocalDateTime expiresAt;
+
     public static FileInfoResponse from(FileEntity entity) {
         FileInfoResponse response = new FileInfoResponse();
         response.setFileId(entity.getId());
@@ -35,6 +38,7 @@ public class FileInfoResponse {
         response.setFileSize(entity.getFileSize());
         response.setContentType(entity.getContentType());
         response.setUploadedAt(entity.getUploadedAt());
+        response.setExpiresAt(entity.getExpiresAt());
         return response;
     }
 
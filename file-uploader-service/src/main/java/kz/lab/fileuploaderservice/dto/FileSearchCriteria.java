@@ -0,0 +1,33 @@
+package kz.lab.fileuploaderservice.dto;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class FileSearchCriteria {
+
+    private String name;
+
+    private NameMatch nameMatch;
+
+    private String contentType;
+
+    private Long minSize;
+
+    private Long maxSize;
+
+    private LocalDateTime uploadedFrom;
+
+    private LocalDateTime uploadedTo;
+
+
+    public enum NameMatch {
+        CONTAINS,
+        PREFIX
+    }
+}
@@ -0,0 +1,21 @@
+package kz.lab.fileuploaderservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class FileSearchResponse {
+
+    @JsonProperty("items")
+    private List<FileInfoResponse> items;
+
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+
+}
@@ -33,6 +33,9 @@ public class FileUploadResponse {
     @JsonProperty("uploaded_at")
     private LocalDateTime uploadedAt;
 
+    @JsonProperty("expires_at")
+    private LocalDateTime expiresAt;
+
     @JsonProperty("message")
     private String message;
 
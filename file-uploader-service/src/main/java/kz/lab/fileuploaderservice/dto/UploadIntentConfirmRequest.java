@@ -0,0 +1,40 @@
+package kz.lab.fileuploaderservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UploadIntentConfirmRequest {
+
+    // Только для multipart: ETag каждой загруженной части
+    @Valid
+    @JsonProperty("parts")
+    private List<Part> parts;
+
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Part {
+
+        @NotNull
+        @Positive
+        @JsonProperty("part_number")
+        private Integer partNumber;
+
+        @NotBlank
+        @JsonProperty("etag")
+        private String etag;
+    }
+}
@@ -0,0 +1,32 @@
+package kz.lab.fileuploaderservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UploadIntentRequest {
+
+    @NotBlank
+    @Size(max = 255)
+    @JsonProperty("filename")
+    private String filename;
+
+    @NotBlank
+    @Size(max = 100)
+    @JsonProperty("content_type")
+    private String contentType;
+
+    @NotNull
+    @Positive
+    @JsonProperty("file_size")
+    private Long fileSize;
+
+}
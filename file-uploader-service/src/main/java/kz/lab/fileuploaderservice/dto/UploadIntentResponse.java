@@ -0,0 +1,58 @@
+package kz.lab.fileuploaderservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UploadIntentResponse {
+
+    @JsonProperty("intent_id")
+    private String intentId;
+
+    @JsonProperty("method")
+    private String method;
+
+    // Одиночный PUT
+    @JsonProperty("upload_url")
+    private String uploadUrl;
+
+    @JsonProperty("headers")
+    private Map<String, String> headers;
+
+    // Multipart: ссылки по частям, part_number начинается с 1
+    @JsonProperty("part_size")
+    private Long partSize;
+
+    @JsonProperty("parts")
+    private List<PartUrl> parts;
+
+    @JsonProperty("expires_at")
+    private LocalDateTime expiresAt;
+
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class PartUrl {
+
+        @JsonProperty("part_number")
+        private Integer partNumber;
+
+        @JsonProperty("upload_url")
+        private String uploadUrl;
+
+        @JsonProperty("headers")
+        private Map<String, String> headers;
+    }
+}
@@ -0,0 +1,36 @@
+package kz.lab.fileuploaderservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import kz.lab.fileuploaderservice.progress.UploadStage;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UploadProgressResponse {
+
+    @JsonProperty("idempotency_key")
+    private UUID idempotencyKey;
+
+    @JsonProperty("stage")
+    private UploadStage stage;
+
+    @JsonProperty("bytes_received")
+    private Long bytesReceived;
+
+    @JsonProperty("bytes_stored")
+    private Long bytesStored;
+
+    // Монотонный номер события в пределах загрузки - для отсева повторов из snapshot и pub/sub
+    @JsonProperty("sequence")
+    private Long sequence;
+
+    @JsonProperty("updated_at")
+    private LocalDateTime updatedAt;
+
+}
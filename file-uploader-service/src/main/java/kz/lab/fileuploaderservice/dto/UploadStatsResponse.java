@@ -0,0 +1,31 @@
+package kz.lab.fileuploaderservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UploadStatsResponse {
+
+    @JsonProperty("period_start")
+    private LocalDateTime periodStart;
+
+    // user_id, content_type или "all" - в зависимости от groupBy
+    @JsonProperty("dimension")
+    private String dimension;
+
+    @JsonProperty("uploads")
+    private Long uploads;
+
+    @JsonProperty("bytes")
+    private Long bytes;
+
+    @JsonProperty("failures")
+    private Long failures;
+
+}
@@ -0,0 +1,7 @@
+package kz.lab.fileuploaderservice.exception;
+
+public class CircuitBreakerOpenException extends RuntimeException{
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
@@ -94,6 +94,40 @@ public class GlobalExceptionHandler {
         return Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).body(errorResponse));
     }
 
+    @ExceptionHandler(UploadIntentExpiredException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleUploadIntentExpired(
+            UploadIntentExpiredException ex,
+            ServerWebExchange exchange) {
+
+        log.error("Upload intent expired: {}", ex.getMessage());
+
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .status(HttpStatus.GONE.value())
+                .error("UPLOAD_INTENT_EXPIRED")
+                .message(ex.getMessage())
+                .path(exchange.getRequest().getPath().value())
+                .build();
+
+        return Mono.just(ResponseEntity.status(HttpStatus.GONE).body(errorResponse));
+    }
+
+    @ExceptionHandler(InvalidDownloadSignatureException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleInvalidDownloadSignature(
+            InvalidDownloadSignatureException ex,
+            ServerWebExchange exchange) {
+
+        log.error("Invalid download signature: {}", ex.getMessage());
+
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .status(HttpStatus.FORBIDDEN.value())
+                .error("INVALID_SIGNATURE")
+                .message(ex.getMessage())
+                .path(exchange.getRequest().getPath().value())
+                .build();
+
+        return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).body(errorResponse));
+    }
+
     @ExceptionHandler(FileSizeExceededException.class)
     public Mono<ResponseEntity<ErrorResponse>> handleFileSizeExceeded(
             FileSizeExceededException ex,
@@ -128,6 +162,23 @@ public class GlobalExceptionHandler {
         return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse));
     }
 
+    @ExceptionHandler(CircuitBreakerOpenException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleCircuitBreakerOpen(
+            CircuitBreakerOpenException ex,
+            ServerWebExchange exchange) {
+
+        log.warn("Circuit breaker open: {}", ex.getMessage());
+
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .error("DEPENDENCY_UNAVAILABLE")
+                .message("A downstream service is temporarily unavailable, please retry later")
+                .path(exchange.getRequest().getPath().value())
+                .build();
+
+        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse));
+    }
+
     @ExceptionHandler(Exception.class)
     public Mono<ResponseEntity<ErrorResponse>> handleGenericError(
             Exception ex,
@@ -0,0 +1,7 @@
+package kz.lab.fileuploaderservice.exception;
+
+public class InvalidDownloadSignatureException extends RuntimeException{
+    public InvalidDownloadSignatureException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package kz.lab.fileuploaderservice.exception;
+
+public class UploadIntentExpiredException extends RuntimeException{
+    public UploadIntentExpiredException(String message) {
+        super(message);
+    }
+}
@@ -43,6 +43,10 @@ public class FileEntity {
     @Column("uploaded_at")
     private LocalDateTime uploadedAt;
 
+    // null - файл бессрочный
+    @Column("expires_at")
+    private LocalDateTime expiresAt;
+
 
 
 
@@ -57,6 +61,7 @@ public class FileEntity {
                ", fileSize=" + fileSize +
                ", bucketName='" + bucketName + '\'' +
                ", uploadedAt=" + uploadedAt +
+               ", expiresAt=" + expiresAt +
                '}';
     }
 
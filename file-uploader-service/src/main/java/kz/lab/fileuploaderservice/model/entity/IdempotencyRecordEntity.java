@@ -41,6 +41,9 @@ public class IdempotencyRecordEntity {
     @Column("saga_id")
     private UUID sagaId;
 
+    @Column("deadline_at")
+    private LocalDateTime deadlineAt;
+
     @Column("created_at")
     private LocalDateTime createdAt;
 
@@ -60,6 +63,11 @@ public class IdempotencyRecordEntity {
         this.updatedAt = LocalDateTime.now();
     }
 
+    public void markDeadline(LocalDateTime deadlineAt) {
+        this.deadlineAt = deadlineAt;
+        this.updatedAt = LocalDateTime.now();
+    }
+
     public void markCompleted(Long fileId, String responseJson) {
         this.status = IdempotencyStatus.COMPLETED;
         this.fileId = fileId;
@@ -98,6 +106,7 @@ public class IdempotencyRecordEntity {
                ", idempotencyKey=" + idempotencyKey +
                ", status=" + status +
                ", fileId=" + fileId +
+               ", deadlineAt=" + deadlineAt +
                ", createdAt=" + createdAt +
                ", updatedAt=" + updatedAt +
                '}';
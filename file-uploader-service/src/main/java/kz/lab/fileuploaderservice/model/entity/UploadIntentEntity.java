@@ -0,0 +1,106 @@
+package kz.lab.fileuploaderservice.model.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Table("upload_intents")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UploadIntentEntity {
+
+    @Id
+    private Long id;
+
+    @Column("intent_id")
+    private UUID intentId;
+
+    @Column("user_id")
+    private Long userId;
+
+    @Column("idempotency_key")
+    private UUID idempotencyKey;
+
+    @Column("original_filename")
+    private String originalFilename;
+
+    @Column("content_type")
+    private String contentType;
+
+    @Column("declared_size")
+    private Long declaredSize;
+
+    @Column("stored_filename")
+    private String storedFilename;
+
+    @Column("bucket_name")
+    private String bucketName;
+
+    // null - обычный presigned PUT
+    @Column("upload_id")
+    private String uploadId;
+
+    @Column("part_size")
+    private Long partSize;
+
+    @Column("status")
+    private UploadIntentStatus status;
+
+    @Column("file_id")
+    private Long fileId;
+
+    @Column("expires_at")
+    private LocalDateTime expiresAt;
+
+    @Column("created_at")
+    private LocalDateTime createdAt;
+
+    @Column("updated_at")
+    private LocalDateTime updatedAt;
+
+
+    public boolean isMultipart() {
+        return uploadId != null;
+    }
+
+    public boolean isPending() {
+        return status == UploadIntentStatus.PENDING;
+    }
+
+    public boolean isExpired(LocalDateTime now) {
+        return status == UploadIntentStatus.EXPIRED || expiresAt.isBefore(now);
+    }
+
+    public void markConfirmed(Long fileId) {
+        this.status = UploadIntentStatus.CONFIRMED;
+        this.fileId = fileId;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void markExpired() {
+        this.status = UploadIntentStatus.EXPIRED;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    @Override
+    public String toString() {
+        return "UploadIntentEntity{" +
+               "intentId=" + intentId +
+               ", userId=" + userId +
+               ", idempotencyKey=" + idempotencyKey +
+               ", storedFilename='" + storedFilename + '\'' +
+               ", declaredSize=" + declaredSize +
+               ", multipart=" + isMultipart() +
+               ", status=" + status +
+               ", expiresAt=" + expiresAt +
+               '}';
+    }
+
+}
@@ -0,0 +1,8 @@
+package kz.lab.fileuploaderservice.model.entity;
+
+public enum UploadIntentStatus {
+    PENDING,
+    CONFIRMING,
+    CONFIRMED,
+    EXPIRED
+}
@@ -0,0 +1,86 @@
+package kz.lab.fileuploaderservice.monitoring;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.ReactorResourceFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how late a task scheduled on each server event loop actually runs.
+ * A growing {@code eventloop.lag} means something is blocking or hogging that loop.
+ */
+@Component
+@Slf4j
+public class EventLoopLagMonitor implements DisposableBean {
+
+    private final ReactorResourceFactory resourceFactory;
+    private final MeterRegistry meterRegistry;
+    private final long intervalNanos;
+    private final boolean enabled;
+
+    private volatile boolean stopped;
+
+    public EventLoopLagMonitor(
+            ReactorResourceFactory resourceFactory,
+            MeterRegistry meterRegistry,
+            @Value("${application.event-loop-lag.enabled:true}") boolean enabled,
+            @Value("${application.event-loop-lag.interval-ms:100}") long intervalMs) {
+        this.resourceFactory = resourceFactory;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.intervalNanos = Duration.ofMillis(intervalMs).toNanos();
+    }
+
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        // Те же loop-ресурсы, на которых работает HTTP сервер
+        EventLoopGroup group = resourceFactory.getLoopResources().onServer(true);
+
+        int index = 0;
+        for (EventExecutor executor : group) {
+            Timer timer = Timer.builder("eventloop.lag")
+                    .description("Delay between the planned and actual run of a probe task on an event loop")
+                    .tag("loop", String.valueOf(index++))
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry);
+            probe(executor, timer);
+        }
+
+        log.info("Event loop lag monitor started: loops={}, intervalMs={}",
+                index, TimeUnit.NANOSECONDS.toMillis(intervalNanos));
+    }
+
+    @Override
+    public void destroy() {
+        stopped = true;
+    }
+
+
+    private void probe(EventExecutor executor, Timer timer) {
+        if (stopped || executor.isShuttingDown()) {
+            return;
+        }
+
+        long planned = System.nanoTime() + intervalNanos;
+        executor.schedule(() -> {
+            timer.record(Math.max(0, System.nanoTime() - planned), TimeUnit.NANOSECONDS);
+            probe(executor, timer);
+        }, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+}
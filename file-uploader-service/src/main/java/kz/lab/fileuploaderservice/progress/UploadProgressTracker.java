@@ -0,0 +1,244 @@
+package kz.lab.fileuploaderservice.progress;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kz.lab.fileuploaderservice.dto.UploadProgressResponse;
+import kz.lab.fileuploaderservice.resilience.RedisGuard;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of in-flight uploads keyed by (userId, idempotencyKey).
+ * The uploading node keeps a local sink and publishes throttled snapshots to Redis
+ * (a pub/sub channel plus the latest snapshot under a short-lived key), so a progress
+ * stream can be served by any node.
+ */
+@Component
+@Slf4j
+public class UploadProgressTracker {
+
+    private final ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final RedisGuard redisGuard;
+    private final long throttleNanos;
+    private final Duration snapshotTtl;
+    private final Duration idleTimeout;
+
+    private final Map<String, InFlightUpload> inFlight = new ConcurrentHashMap<>();
+
+    public UploadProgressTracker(
+            ReactiveRedisTemplate<String, String> reactiveRedisTemplate,
+            ObjectMapper objectMapper,
+            RedisGuard redisGuard,
+            @Value("${application.upload-progress.throttle-ms:250}") long throttleMs,
+            @Value("${application.upload-progress.snapshot-ttl-seconds:300}") long snapshotTtlSeconds,
+            @Value("${application.upload-progress.idle-timeout-seconds:60}") long idleTimeoutSeconds) {
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.redisGuard = redisGuard;
+        this.throttleNanos = Duration.ofMillis(throttleMs).toNanos();
+        this.snapshotTtl = Duration.ofSeconds(snapshotTtlSeconds);
+        this.idleTimeout = Duration.ofSeconds(idleTimeoutSeconds);
+    }
+
+
+    public Handle start(Long userId, UUID idempotencyKey) {
+        String id = buildId(userId, idempotencyKey);
+        InFlightUpload upload = new InFlightUpload(id, idempotencyKey);
+        inFlight.put(id, upload);
+        upload.emit(UploadStage.RECEIVING, true);
+        return new Handle(upload);
+    }
+
+    public Flux<UploadProgressResponse> stream(Long userId, UUID idempotencyKey) {
+        String id = buildId(userId, idempotencyKey);
+
+        InFlightUpload local = inFlight.get(id);
+        Flux<UploadProgressResponse> events = local != null
+                // Загрузка идёт на этом узле - Redis не нужен
+                ? local.sink.asFlux()
+                // Сначала подписка на канал, потом snapshot - иначе событие между ними потеряется
+                : Flux.merge(listen(id), snapshot(id));
+
+        AtomicLong lastSequence = new AtomicLong(-1);
+        return events
+                .filter(event -> event.getSequence() > lastSequence.get())
+                .doOnNext(event -> lastSequence.set(event.getSequence()))
+                .takeUntil(event -> event.getStage().isTerminal())
+                // Неизвестный ключ или зависшая загрузка не держат соединение вечно
+                .timeout(idleTimeout, Flux.empty());
+    }
+
+
+    private Flux<UploadProgressResponse> listen(String id) {
+        if (!redisGuard.isAvailable()) {
+            return Flux.empty();
+        }
+        return reactiveRedisTemplate.listenToChannel(channel(id))
+                .map(message -> message.getMessage())
+                .flatMap(this::deserialize)
+                .onErrorResume(e -> {
+                    log.warn("Upload progress subscription failed: id={}", id, e);
+                    return Flux.empty();
+                });
+    }
+
+    private Mono<UploadProgressResponse> snapshot(String id) {
+        return redisGuard.read("upload-progress-get", reactiveRedisTemplate.opsForValue().get(snapshotKey(id)))
+                .flatMap(this::deserialize);
+    }
+
+    private Mono<Void> publish(String id, UploadProgressResponse event) {
+        if (!redisGuard.isAvailable()) {
+            return Mono.empty();
+        }
+
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize upload progress", e);
+            return Mono.empty();
+        }
+
+        // Прогресс устаревает быстрее, чем Redis восстанавливается - в backlog не кладём
+        return reactiveRedisTemplate.opsForValue().set(snapshotKey(id), json, snapshotTtl)
+                .then(reactiveRedisTemplate.convertAndSend(channel(id), json))
+                .timeout(Duration.ofSeconds(1))
+                .onErrorResume(e -> {
+                    log.debug("Failed to publish upload progress: id={}, error={}", id, e.toString());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<UploadProgressResponse> deserialize(String json) {
+        try {
+            return Mono.just(objectMapper.readValue(json, UploadProgressResponse.class));
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to deserialize upload progress", e);
+            return Mono.empty();
+        }
+    }
+
+    private String buildId(Long userId, UUID idempotencyKey) {
+        return userId + ":" + idempotencyKey;
+    }
+
+    private String channel(String id) {
+        return "upload-progress:" + id;
+    }
+
+    private String snapshotKey(String id) {
+        return "upload-progress:last:" + id;
+    }
+
+
+    public class Handle {
+
+        private final InFlightUpload upload;
+
+        private Handle(InFlightUpload upload) {
+            this.upload = upload;
+        }
+
+        public void received(long bytes) {
+            upload.bytesReceived.addAndGet(bytes);
+            upload.emit(UploadStage.RECEIVING, false);
+        }
+
+        public void stage(UploadStage stage) {
+            upload.emit(stage, true);
+        }
+
+        // По ходу записи в хранилище: стадия не меняется, событие - не чаще раза в throttle-ms
+        public void storing(long bytes) {
+            upload.bytesStored.set(bytes);
+            upload.emitProgress();
+        }
+
+        public void stored(long bytes) {
+            upload.bytesStored.set(bytes);
+            upload.emit(UploadStage.SAVING_METADATA, true);
+        }
+
+        public void finish(UploadStage stage) {
+            if (upload.emit(stage, true)) {
+                inFlight.remove(upload.id, upload);
+            }
+        }
+    }
+
+
+    private class InFlightUpload {
+
+        private final String id;
+        private final UUID idempotencyKey;
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicLong bytesStored = new AtomicLong();
+        private final AtomicLong sequence = new AtomicLong();
+        private final Sinks.Many<UploadProgressResponse> sink = Sinks.many().replay().latest();
+        // Публикации одной загрузки идут по очереди, чтобы snapshot в Redis не откатился назад
+        private final Sinks.Many<UploadProgressResponse> outbox = Sinks.many().unicast().onBackpressureBuffer();
+
+        private UploadStage stage;
+        private long lastEmitNanos;
+
+        InFlightUpload(String id, UUID idempotencyKey) {
+            this.id = id;
+            this.idempotencyKey = idempotencyKey;
+            outbox.asFlux()
+                    .concatMap(event -> publish(id, event))
+                    .subscribe();
+        }
+
+        synchronized boolean emitProgress() {
+            return emit(stage, false);
+        }
+
+        // Смена стадии отправляется всегда, счётчики байтов - не чаще раза в throttle-ms
+        synchronized boolean emit(UploadStage newStage, boolean force) {
+            if (stage != null && stage.isTerminal()) {
+                return false;
+            }
+
+            long now = System.nanoTime();
+            boolean stageChanged = newStage != stage;
+            if (!force && !stageChanged && now - lastEmitNanos < throttleNanos) {
+                return false;
+            }
+
+            stage = newStage;
+            lastEmitNanos = now;
+
+            UploadProgressResponse event = UploadProgressResponse.builder()
+                    .idempotencyKey(idempotencyKey)
+                    .stage(newStage)
+                    .bytesReceived(bytesReceived.get())
+                    .bytesStored(bytesStored.get())
+                    .sequence(sequence.incrementAndGet())
+                    .updatedAt(LocalDateTime.now())
+                    .build();
+
+            sink.tryEmitNext(event);
+            outbox.tryEmitNext(event);
+            if (newStage.isTerminal()) {
+                sink.tryEmitComplete();
+                outbox.tryEmitComplete();
+            }
+            return true;
+        }
+    }
+}
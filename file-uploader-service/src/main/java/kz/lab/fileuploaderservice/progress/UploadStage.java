@@ -0,0 +1,13 @@
+package kz.lab.fileuploaderservice.progress;
+
+public enum UploadStage {
+    RECEIVING,
+    STORING,
+    SAVING_METADATA,
+    COMPLETED,
+    FAILED;
+
+    public boolean isTerminal() {
+        return this == COMPLETED || this == FAILED;
+    }
+}
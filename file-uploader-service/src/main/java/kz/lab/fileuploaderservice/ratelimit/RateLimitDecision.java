@@ -0,0 +1,13 @@
+package kz.lab.fileuploaderservice.ratelimit;
+
+public record RateLimitDecision(
+        boolean allowed,
+        long limit,
+        long remaining,
+        long resetSeconds,
+        long retryAfterSeconds) {
+
+    static RateLimitDecision unlimited(long limit) {
+        return new RateLimitDecision(true, limit, limit, 0, 0);
+    }
+}
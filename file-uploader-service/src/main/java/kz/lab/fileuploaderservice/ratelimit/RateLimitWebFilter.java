@@ -0,0 +1,133 @@
+package kz.lab.fileuploaderservice.ratelimit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kz.lab.fileuploaderservice.config.RateLimitProperties;
+import kz.lab.fileuploaderservice.dto.ErrorResponse;
+import kz.lab.fileuploaderservice.util.SecurityUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Applies per-user, per-endpoint-class token buckets to /files requests.
+ * Ordered after the security filter chain, so the authenticated user is already known.
+ */
+@Component
+@Order(0)
+@Slf4j
+public class RateLimitWebFilter implements WebFilter {
+
+    private final TokenBucketRateLimiter rateLimiter;
+    private final RateLimitProperties properties;
+    private final ObjectMapper objectMapper;
+    private final List<EndpointClass> endpointClasses;
+
+    public RateLimitWebFilter(
+            TokenBucketRateLimiter rateLimiter,
+            RateLimitProperties properties,
+            ObjectMapper objectMapper) {
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.endpointClasses = properties.getClasses().entrySet().stream()
+                .map(entry -> new EndpointClass(
+                        entry.getKey(),
+                        entry.getValue(),
+                        entry.getValue().getPaths().stream().map(PathPatternParser.defaultInstance::parse).toList()))
+                .toList();
+    }
+
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!properties.isEnabled()) {
+            return chain.filter(exchange);
+        }
+
+        Optional<EndpointClass> endpointClass = match(exchange.getRequest());
+        if (endpointClass.isEmpty()) {
+            return chain.filter(exchange);
+        }
+
+        EndpointClass matched = endpointClass.get();
+
+        return SecurityUtils.getCurrentUserId()
+                .map(Optional::of)
+                .onErrorResume(e -> Mono.just(Optional.empty()))
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(userId -> {
+                    // Без пользователя лимитировать нечего - запрос отклонит security
+                    if (userId.isEmpty()) {
+                        return chain.filter(exchange);
+                    }
+                    return rateLimiter.tryAcquire(userId.get(), matched.name(), matched.bucket())
+                            .flatMap(decision -> {
+                                writeHeaders(exchange.getResponse(), decision);
+                                if (decision.allowed()) {
+                                    return chain.filter(exchange);
+                                }
+                                log.warn("Rate limit exceeded: user={}, class={}", userId.get(), matched.name());
+                                return reject(exchange, decision);
+                            });
+                });
+    }
+
+    private Optional<EndpointClass> match(ServerHttpRequest request) {
+        String method = request.getMethod().name();
+        return endpointClasses.stream()
+                .filter(candidate -> candidate.bucket().getMethods().isEmpty()
+                        || candidate.bucket().getMethods().contains(method))
+                .filter(candidate -> candidate.patterns().stream()
+                        .anyMatch(pattern -> pattern.matches(request.getPath().pathWithinApplication())))
+                .findFirst();
+    }
+
+    private void writeHeaders(ServerHttpResponse response, RateLimitDecision decision) {
+        HttpHeaders headers = response.getHeaders();
+        headers.set("RateLimit-Limit", String.valueOf(decision.limit()));
+        headers.set("RateLimit-Remaining", String.valueOf(decision.remaining()));
+        headers.set("RateLimit-Reset", String.valueOf(decision.resetSeconds()));
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, RateLimitDecision decision) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(decision.retryAfterSeconds()));
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                .error("RATE_LIMIT_EXCEEDED")
+                .message("Too many requests, retry after " + decision.retryAfterSeconds() + " seconds")
+                .path(exchange.getRequest().getPath().value())
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(errorResponse);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+        } catch (JsonProcessingException e) {
+            return response.setComplete();
+        }
+    }
+
+
+    private record EndpointClass(String name, RateLimitProperties.BucketClass bucket, List<PathPattern> patterns) {
+    }
+}
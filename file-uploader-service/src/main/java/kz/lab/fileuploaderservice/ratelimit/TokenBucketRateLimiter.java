@@ -0,0 +1,133 @@
+package kz.lab.fileuploaderservice.ratelimit;
+
+import kz.lab.fileuploaderservice.config.RateLimitProperties;
+import kz.lab.fileuploaderservice.resilience.RedisGuard;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-user token buckets evaluated atomically in Redis. While a user is far below the limit the script
+ * hands this node a small lease of tokens, which later requests consume locally without a Redis round trip.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class TokenBucketRateLimiter {
+
+    private static final String KEY_PREFIX = "rate-limit:";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TOKEN_BUCKET_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/token_bucket.lua"), List.class);
+
+    private final ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+    private final RateLimitProperties properties;
+    private final RedisGuard redisGuard;
+    private final Map<String, LocalLease> leases = new ConcurrentHashMap<>();
+
+
+    public Mono<RateLimitDecision> tryAcquire(Long userId, String className, RateLimitProperties.BucketClass bucket) {
+        String key = KEY_PREFIX + userId + ":" + className;
+        long now = System.currentTimeMillis();
+
+        LocalLease lease = leases.get(key);
+        if (lease != null) {
+            if (lease.tryTake(now)) {
+                return Mono.just(new RateLimitDecision(
+                        true, bucket.getCapacity(), lease.remaining(), lease.resetSeconds, 0));
+            }
+            leases.remove(key, lease);
+        }
+
+        List<String> args = List.of(
+                String.valueOf(bucket.getCapacity()),
+                String.valueOf(bucket.getRefillPerSecond() / 1000.0),
+                String.valueOf(properties.getLeaseSize())
+        );
+
+        // Короткий таймаут и breaker RedisGuard: медленный Redis не задерживает каждый запрос
+        return redisGuard.read("rate-limit", reactiveRedisTemplate.execute(TOKEN_BUCKET_SCRIPT, List.of(key), args).next())
+                .map(result -> toDecision(key, bucket, result, now))
+                // Redis недоступен - не блокируем пользователей из-за лимитера
+                .switchIfEmpty(Mono.fromSupplier(() -> RateLimitDecision.unlimited(bucket.getCapacity())));
+    }
+
+    // Аренда живёт lease-ttl-ms; без чистки ключи ушедших пользователей копились бы вечно
+    @Scheduled(fixedDelayString = "${application.rate-limit.lease-ttl-ms:1000}")
+    public void sweepExpiredLeases() {
+        long now = System.currentTimeMillis();
+        leases.values().removeIf(lease -> lease.isExpired(now));
+    }
+
+    int leaseCount() {
+        return leases.size();
+    }
+
+
+    private RateLimitDecision toDecision(String key, RateLimitProperties.BucketClass bucket, List<?> result, long now) {
+        boolean allowed = asLong(result.get(0)) == 1;
+        int granted = (int) asLong(result.get(1));
+        long remaining = asLong(result.get(2));
+        long retryAfterMs = asLong(result.get(3));
+        long resetSeconds = ceilSeconds(asLong(result.get(4)));
+
+        if (granted > 1) {
+            leases.put(key, new LocalLease(granted - 1, remaining, resetSeconds, now + properties.getLeaseTtlMs()));
+        }
+
+        return new RateLimitDecision(
+                allowed,
+                bucket.getCapacity(),
+                remaining + Math.max(0, granted - 1),
+                resetSeconds,
+                allowed ? 0 : Math.max(1, ceilSeconds(retryAfterMs))
+        );
+    }
+
+    private long asLong(Object value) {
+        return ((Number) value).longValue();
+    }
+
+    private long ceilSeconds(long millis) {
+        return (millis + 999) / 1000;
+    }
+
+
+    private static final class LocalLease {
+        private final AtomicInteger tokens;
+        private final long remainingInRedis;
+        private final long resetSeconds;
+        private final long expiresAt;
+
+        private LocalLease(int tokens, long remainingInRedis, long resetSeconds, long expiresAt) {
+            this.tokens = new AtomicInteger(tokens);
+            this.remainingInRedis = remainingInRedis;
+            this.resetSeconds = resetSeconds;
+            this.expiresAt = expiresAt;
+        }
+
+        // Неиспользованные токены сгорают с арендой - лимит может только недобрать, но не превысить
+        private boolean tryTake(long now) {
+            return now < expiresAt && tokens.getAndUpdate(t -> t > 0 ? t - 1 : t) > 0;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        private long remaining() {
+            return remainingInRedis + tokens.get();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package kz.lab.fileuploaderservice.repository;
+
+import kz.lab.fileuploaderservice.dto.FileSearchCriteria;
+import kz.lab.fileuploaderservice.dto.FileSearchCursor;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import reactor.core.publisher.Flux;
+
+/**
+ * Hand-written queries mixed into {@link FileRepository}.
+ */
+public interface FileQueryRepository {
+
+    Flux<FileEntity> search(Long userId, FileSearchCriteria criteria, FileSearchCursor after, int limit);
+
+    Flux<FileEntity> streamByUserId(Long userId, int fetchSize);
+
+}
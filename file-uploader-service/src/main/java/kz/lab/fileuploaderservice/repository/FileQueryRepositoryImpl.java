@@ -0,0 +1,101 @@
+package kz.lab.fileuploaderservice.repository;
+
+import kz.lab.fileuploaderservice.dto.FileSearchCriteria;
+import kz.lab.fileuploaderservice.dto.FileSearchCursor;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class FileQueryRepositoryImpl implements FileQueryRepository {
+
+    private final DatabaseClient databaseClient;
+    private final R2dbcConverter r2dbcConverter;
+
+
+    @Override
+    public Flux<FileEntity> search(Long userId, FileSearchCriteria criteria, FileSearchCursor after, int limit) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT * FROM files WHERE user_id = :userId AND (expires_at IS NULL OR expires_at > :now)");
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("userId", userId);
+        params.put("now", LocalDateTime.now());
+
+        if (criteria.getName() != null && !criteria.getName().isBlank()) {
+            String escaped = escapeLike(criteria.getName());
+            // оба варианта обслуживает trigram-индекс idx_files_original_filename_trgm
+            String pattern = criteria.getNameMatch() == FileSearchCriteria.NameMatch.PREFIX
+                    ? escaped + "%"
+                    : "%" + escaped + "%";
+            sql.append(" AND original_filename ILIKE :namePattern");
+            params.put("namePattern", pattern);
+        }
+        if (criteria.getContentType() != null && !criteria.getContentType().isBlank()) {
+            sql.append(" AND content_type = :contentType");
+            params.put("contentType", criteria.getContentType());
+        }
+        if (criteria.getMinSize() != null) {
+            sql.append(" AND file_size >= :minSize");
+            params.put("minSize", criteria.getMinSize());
+        }
+        if (criteria.getMaxSize() != null) {
+            sql.append(" AND file_size <= :maxSize");
+            params.put("maxSize", criteria.getMaxSize());
+        }
+        if (criteria.getUploadedFrom() != null) {
+            sql.append(" AND uploaded_at >= :uploadedFrom");
+            params.put("uploadedFrom", criteria.getUploadedFrom());
+        }
+        if (criteria.getUploadedTo() != null) {
+            sql.append(" AND uploaded_at < :uploadedTo");
+            params.put("uploadedTo", criteria.getUploadedTo());
+        }
+        if (after != null) {
+            sql.append(" AND (uploaded_at, id) < (:cursorUploadedAt, :cursorId)");
+            params.put("cursorUploadedAt", after.uploadedAt());
+            params.put("cursorId", after.id());
+        }
+
+        sql.append(" ORDER BY uploaded_at DESC, id DESC LIMIT :limit");
+        params.put("limit", limit);
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            spec = spec.bind(param.getKey(), param.getValue());
+        }
+
+        return spec.map((row, metadata) -> r2dbcConverter.read(FileEntity.class, row, metadata))
+                .all();
+    }
+
+
+    @Override
+    public Flux<FileEntity> streamByUserId(Long userId, int fetchSize) {
+        // fetchSize включает курсорную выборку: драйвер тянет строки порциями по мере спроса
+        return databaseClient.sql("""
+                        SELECT * FROM files
+                        WHERE user_id = :userId AND (expires_at IS NULL OR expires_at > :now)
+                        ORDER BY uploaded_at DESC, id DESC
+                        """)
+                .bind("userId", userId)
+                .bind("now", LocalDateTime.now())
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map((row, metadata) -> r2dbcConverter.read(FileEntity.class, row, metadata))
+                .all();
+    }
+
+
+    private String escapeLike(String value) {
+        return value
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+
+}
@@ -1,31 +1,98 @@
 package kz.lab.fileuploaderservice.repository;
 
 import kz.lab.fileuploaderservice.model.entity.FileEntity;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+
 @Repository
-public interface FileRepository extends ReactiveCrudRepository<FileEntity, Long> {
+public interface FileRepository extends ReactiveCrudRepository<FileEntity, Long>, FileQueryRepository {
 
 
     Flux<FileEntity> findByUserIdOrderByUploadedAtDesc(Long userId);
 
-    Flux<FileEntity> findByUserId(Long userId, Pageable pageable);
-
     Mono<FileEntity> findByStoredFilename(String storedFilename);
 
-    Mono<FileEntity> findByIdAndUserId(Long fileId, Long userId);
+    // Пользовательские выборки не видят просроченные файлы ещё до того, как их удалит purge
+    @Query("""
+            SELECT * FROM files
+            WHERE user_id = :userId
+              AND (expires_at IS NULL OR expires_at > :now)
+            ORDER BY uploaded_at DESC, id DESC
+            LIMIT :limit OFFSET :offset
+            """)
+    Flux<FileEntity> findActiveByUserId(Long userId, LocalDateTime now, int limit, long offset);
+
+    @Query("""
+            SELECT * FROM files
+            WHERE id = :fileId AND user_id = :userId
+              AND (expires_at IS NULL OR expires_at > :now)
+            """)
+    Mono<FileEntity> findActiveByIdAndUserId(Long fileId, Long userId, LocalDateTime now);
 
-    Mono<Long> countByUserId(Long userId);
+    @Query("""
+            SELECT count(*) FROM files
+            WHERE user_id = :userId
+              AND (expires_at IS NULL OR expires_at > :now)
+            """)
+    Mono<Long> countActiveByUserId(Long userId, LocalDateTime now);
+
+    @Query("""
+            SELECT * FROM files
+            WHERE id IN (:ids) AND user_id = :userId
+              AND (expires_at IS NULL OR expires_at > :now)
+            """)
+    Flux<FileEntity> findActiveByIdInAndUserId(Collection<Long> ids, Long userId, LocalDateTime now);
 
     @Query("DELETE FROM files WHERE id = :fileId AND user_id = :userId")
     Mono<Long> deleteByIdAndUserId(Long fileId, Long userId);
 
     Mono<Boolean> existsByStoredFilename(String storedFilename);
 
+    Flux<FileEntity> findAllByStoredFilenameIn(Collection<String> storedFilenames);
+
+    // Порядок как у ListObjectsV2 (байты UTF-8), индекс idx_files_bucket_stored_filename_c
+    @Query("""
+            SELECT * FROM files
+            WHERE bucket_name = :bucketName
+              AND stored_filename COLLATE "C" > :afterStoredFilename
+            ORDER BY stored_filename COLLATE "C"
+            LIMIT :limit
+            """)
+    Flux<FileEntity> findInBucketAfter(String bucketName, String afterStoredFilename, int limit);
+
+    @Query("""
+            SELECT * FROM files
+            WHERE id > :afterId
+            ORDER BY id
+            LIMIT :limit
+            """)
+    Flux<FileEntity> findAfterId(Long afterId, int limit);
+
+    // Keyset по частичному индексу idx_files_expires_at
+    @Query("""
+            SELECT * FROM files
+            WHERE expires_at IS NOT NULL
+              AND expires_at <= :now
+              AND (expires_at, id) > (:afterExpiresAt, :afterId)
+            ORDER BY expires_at, id
+            LIMIT :limit
+            """)
+    Flux<FileEntity> findExpiredAfter(LocalDateTime now, LocalDateTime afterExpiresAt, Long afterId, int limit);
+
+    // Условие по старому бакету: параллельное удаление/перенос не перезаписывается
+    @Modifying
+    @Query("""
+            UPDATE files
+            SET bucket_name = :toBucket, storage_url = :storageUrl
+            WHERE id = :fileId AND bucket_name = :fromBucket
+            """)
+    Mono<Integer> relocate(Long fileId, String fromBucket, String toBucket, String storageUrl);
+
 }
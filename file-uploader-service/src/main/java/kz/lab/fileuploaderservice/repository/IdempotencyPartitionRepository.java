@@ -0,0 +1,91 @@
+package kz.lab.fileuploaderservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.regex.Pattern;
+
+/**
+ * Partition maintenance for the range-partitioned idempotency_records table (see V5 migration).
+ */
+@Repository
+@Slf4j
+@RequiredArgsConstructor
+public class IdempotencyPartitionRepository {
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("^idempotency_records_p\\d{8}$");
+
+    private static final String DETACH_LOCK_TIMEOUT = "5s";
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+
+    public Mono<String> createPartition(LocalDate day) {
+        return databaseClient.sql("SELECT create_idempotency_partition(:day)")
+                .bind("day", day)
+                .map(row -> row.get(0, String.class))
+                .one();
+    }
+
+    public Flux<String> findPartitionsBefore(LocalDate cutoff) {
+        return databaseClient.sql("SELECT idempotency_partitions_before(:cutoff)")
+                .bind("cutoff", cutoff)
+                .map(row -> row.get(0, String.class))
+                .all();
+    }
+
+    // Строки в DEFAULT = не хватило заранее созданных секций
+    public Mono<Long> countDefaultPartitionRows() {
+        return databaseClient.sql("SELECT count(*) FROM idempotency_records_default")
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    // Секции дня для этих строк уже удалены retention-ом, сами они из DEFAULT не уйдут
+    public Mono<Long> deleteDefaultPartitionRowsBefore(LocalDate cutoff) {
+        return databaseClient.sql("""
+                        DELETE FROM idempotency_records_default
+                        WHERE created_at < :cutoff AND status <> 'IN_PROGRESS'
+                        """)
+                .bind("cutoff", cutoff.atStartOfDay())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Boolean> hasInProgressRecords(String partitionName) {
+        return databaseClient.sql("SELECT EXISTS (SELECT 1 FROM " + requireValidName(partitionName) +
+                                  " WHERE status = 'IN_PROGRESS')")
+                .map(row -> row.get(0, Boolean.class))
+                .one();
+    }
+
+    // DETACH ... CONCURRENTLY Postgres не выполняет, пока у таблицы есть DEFAULT секция (V12).
+    // Обычный DETACH берёт ACCESS EXCLUSIVE на родителе - отдельная короткая транзакция с lock_timeout,
+    // чтобы не вставать в очередь за долгими запросами и не блокировать за собой вставки
+    public Mono<Void> detachAndDrop(String partitionName) {
+        String name = requireValidName(partitionName);
+
+        return databaseClient.sql("SET LOCAL lock_timeout = '" + DETACH_LOCK_TIMEOUT + "'")
+                .then()
+                .then(databaseClient.sql("ALTER TABLE idempotency_records DETACH PARTITION " + name).then())
+                .as(transactionalOperator::transactional)
+                .then(databaseClient.sql("DROP TABLE IF EXISTS " + name).then())
+                .doOnSuccess(v -> log.info("Dropped idempotency partition: {}", name));
+    }
+
+
+    private String requireValidName(String partitionName) {
+        if (!PARTITION_NAME.matcher(partitionName).matches()) {
+            throw new IllegalArgumentException("Unexpected partition name: " + partitionName);
+        }
+        return partitionName;
+    }
+
+}
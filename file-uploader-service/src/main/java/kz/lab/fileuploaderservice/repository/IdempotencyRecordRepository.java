@@ -46,6 +46,22 @@ public interface IdempotencyRecordRepository extends ReactiveCrudRepository<Idem
         """)
     Flux<IdempotencyRecordEntity> findStaleOperations(LocalDateTime threshold);
 
+    @Query("""
+        SELECT * FROM idempotency_records
+        WHERE status = 'IN_PROGRESS'
+          AND deadline_at < :now
+        ORDER BY deadline_at ASC
+        LIMIT :limit
+        """)
+    Flux<IdempotencyRecordEntity> findExpiredOperations(LocalDateTime now, int limit);
+
+    @Query("""
+        SELECT COUNT(*) FROM idempotency_records
+        WHERE status = 'IN_PROGRESS'
+          AND deadline_at < :now
+        """)
+    Mono<Long> countExpiredOperations(LocalDateTime now);
+
 
     @Query("""
         DELETE FROM idempotency_records 
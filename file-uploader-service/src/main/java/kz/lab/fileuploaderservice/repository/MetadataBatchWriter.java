@@ -0,0 +1,282 @@
+package kz.lab.fileuploaderservice.repository;
+
+import io.r2dbc.postgresql.codec.Json;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import kz.lab.fileuploaderservice.util.MicroBatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Write-behind batching for the hot metadata writes of the upload path: concurrent uploads
+ * share one multi-row INSERT into files and one UPDATE ... FROM (VALUES ...) for idempotency
+ * completions, instead of a pool connection and round trip each.
+ */
+@Repository
+@Slf4j
+public class MetadataBatchWriter implements DisposableBean {
+
+    private final DatabaseClient databaseClient;
+    private final MicroBatcher<FileEntity, FileEntity> fileInserts;
+    private final MicroBatcher<Completion, Boolean> completions;
+    private final MicroBatcher<AtomicCompletion, InsertedFile> atomicCompletions;
+
+    public MetadataBatchWriter(
+            DatabaseClient databaseClient,
+            @Value("${application.metadata-batch.max-items:64}") int maxItems,
+            @Value("${application.metadata-batch.window-ms:2}") long windowMs,
+            @Value("${application.metadata-batch.concurrency:4}") int concurrency) {
+        this.databaseClient = databaseClient;
+        this.fileInserts = new MicroBatcher<>("file-inserts", maxItems, Duration.ofMillis(windowMs), concurrency, this::insertFiles);
+        this.completions = new MicroBatcher<>("idempotency-completions", maxItems, Duration.ofMillis(windowMs), concurrency, this::completeRecords);
+        this.atomicCompletions = new MicroBatcher<>("atomic-completions", maxItems, Duration.ofMillis(windowMs), concurrency, this::insertAndComplete);
+    }
+
+
+    // Возвращает ту же сущность с id, сгенерированным базой
+    public Mono<FileEntity> insertFile(FileEntity file) {
+        return fileInserts.submit(file);
+    }
+
+    // Завершает только IN_PROGRESS запись (или повтор с тем же file_id после падения).
+    // false - запись уже FAILED, отдана повторной попытке или удалена вместе с секцией
+    public Mono<Boolean> completeIdempotency(Long userId, UUID idempotencyKey, Long fileId, String responseJson) {
+        return completions.submit(new Completion(userId, idempotencyKey, fileId, responseJson));
+    }
+
+    // INSERT в files и перевод idempotency записи в COMPLETED одним statement - сбой между ними невозможен.
+    // Счётчик аналитики сюда не входит: его ошибка не должна откатывать загрузку (см. UploadAnalyticsService)
+    // Пусто, если строка с таким stored_filename уже есть (повтор саги после падения).
+    // completed=false - строка вставлена, но запись уже не IN_PROGRESS: это конфликт, строку убирает вызывающий
+    public Mono<InsertedFile> insertFileAndComplete(FileEntity file, UUID idempotencyKey, String responseJson) {
+        return atomicCompletions.submit(new AtomicCompletion(file, idempotencyKey, responseJson));
+    }
+
+    @Override
+    public void destroy() {
+        fileInserts.dispose();
+        completions.dispose();
+        atomicCompletions.dispose();
+    }
+
+
+    private Mono<List<FileEntity>> insertFiles(List<FileEntity> files) {
+        StringBuilder sql = new StringBuilder("""
+                INSERT INTO files (user_id, original_filename, stored_filename, content_type,
+                                   file_size, storage_url, bucket_name, uploaded_at, expires_at)
+                VALUES
+                """);
+        for (int i = 0; i < files.size(); i++) {
+            sql.append(i == 0 ? "" : ",\n")
+                    .append("(:userId").append(i)
+                    .append(", :originalFilename").append(i)
+                    .append(", :storedFilename").append(i)
+                    .append(", :contentType").append(i)
+                    .append(", :fileSize").append(i)
+                    .append(", :storageUrl").append(i)
+                    .append(", :bucketName").append(i)
+                    .append(", :uploadedAt").append(i)
+                    .append(", :expiresAt").append(i)
+                    .append(")");
+        }
+        sql.append("\nRETURNING id, stored_filename");
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        for (int i = 0; i < files.size(); i++) {
+            FileEntity file = files.get(i);
+            spec = spec.bind("userId" + i, file.getUserId())
+                    .bind("originalFilename" + i, file.getOriginalFilename())
+                    .bind("storedFilename" + i, file.getStoredFilename())
+                    .bind("contentType" + i, file.getContentType())
+                    .bind("fileSize" + i, file.getFileSize())
+                    .bind("storageUrl" + i, file.getStorageUrl())
+                    .bind("bucketName" + i, file.getBucketName())
+                    .bind("uploadedAt" + i, file.getUploadedAt());
+            spec = bindExpiresAt(spec, i, file);
+        }
+
+        // Порядок RETURNING не гарантирован - сопоставляем по уникальному stored_filename
+        return spec.map(row -> Map.entry(
+                        row.get("stored_filename", String.class),
+                        row.get("id", Long.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .map(ids -> {
+                    List<FileEntity> saved = new ArrayList<>(files.size());
+                    for (FileEntity file : files) {
+                        file.setId(ids.get(file.getStoredFilename()));
+                        saved.add(file);
+                    }
+                    log.debug("Inserted {} file rows in one statement", files.size());
+                    return saved;
+                });
+    }
+
+    private Mono<List<Boolean>> completeRecords(List<Completion> batch) {
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            values.append(i == 0 ? "" : ",\n")
+                    .append("(CAST(:userId").append(i).append(" AS bigint)")
+                    .append(", CAST(:idempotencyKey").append(i).append(" AS uuid)")
+                    .append(", CAST(:fileId").append(i).append(" AS bigint)")
+                    .append(", CAST(:responseJson").append(i).append(" AS jsonb))");
+        }
+
+        String sql = """
+                UPDATE idempotency_records r
+                SET status = 'COMPLETED',
+                    file_id = v.file_id,
+                    response_json = v.response_json
+                FROM (VALUES
+                %s
+                ) AS v(user_id, idempotency_key, file_id, response_json)
+                WHERE r.user_id = v.user_id
+                  AND r.idempotency_key = v.idempotency_key
+                  AND (r.status = 'IN_PROGRESS'
+                       OR (r.status = 'COMPLETED' AND r.file_id = v.file_id))
+                RETURNING r.user_id, r.idempotency_key
+                """.formatted(values);
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql);
+        for (int i = 0; i < batch.size(); i++) {
+            Completion completion = batch.get(i);
+            spec = spec.bind("userId" + i, completion.userId())
+                    .bind("idempotencyKey" + i, completion.idempotencyKey())
+                    .bind("fileId" + i, completion.fileId())
+                    .bind("responseJson" + i, Json.of(completion.responseJson()));
+        }
+
+        return spec.map(row -> row.get("user_id", Long.class) + ":" + row.get("idempotency_key", UUID.class))
+                .all()
+                .collect(HashSet<String>::new, Set::add)
+                .map(updated -> {
+                    List<Boolean> results = new ArrayList<>(batch.size());
+                    for (Completion completion : batch) {
+                        results.add(updated.contains(completion.userId() + ":" + completion.idempotencyKey()));
+                    }
+                    log.debug("Completed {} idempotency records in one statement", batch.size());
+                    return results;
+                });
+    }
+
+    private Mono<List<InsertedFile>> insertAndComplete(List<AtomicCompletion> batch) {
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            values.append(i == 0 ? "" : ",\n")
+                    .append("(CAST(:userId").append(i).append(" AS bigint)")
+                    .append(", CAST(:originalFilename").append(i).append(" AS varchar)")
+                    .append(", CAST(:storedFilename").append(i).append(" AS varchar)")
+                    .append(", CAST(:contentType").append(i).append(" AS varchar)")
+                    .append(", CAST(:fileSize").append(i).append(" AS bigint)")
+                    .append(", CAST(:storageUrl").append(i).append(" AS text)")
+                    .append(", CAST(:bucketName").append(i).append(" AS varchar)")
+                    .append(", CAST(:uploadedAt").append(i).append(" AS timestamp)")
+                    .append(", CAST(:expiresAt").append(i).append(" AS timestamp)")
+                    .append(", CAST(:idempotencyKey").append(i).append(" AS uuid)")
+                    .append(", CAST(:responseJson").append(i).append(" AS jsonb))");
+        }
+
+        // file_id в ответ подставляется из RETURNING - до INSERT его никто не знает.
+        // FK idempotency_records.file_id проверяется в конце statement и видит строку из inserted
+        String sql = """
+                WITH v (user_id, original_filename, stored_filename, content_type, file_size,
+                        storage_url, bucket_name, uploaded_at, expires_at, idempotency_key, response_json) AS (
+                    VALUES
+                    %s
+                ),
+                inserted AS (
+                    INSERT INTO files (user_id, original_filename, stored_filename, content_type,
+                                       file_size, storage_url, bucket_name, uploaded_at, expires_at)
+                    SELECT user_id, original_filename, stored_filename, content_type,
+                           file_size, storage_url, bucket_name, uploaded_at, expires_at
+                    FROM v
+                    ON CONFLICT (stored_filename) DO NOTHING
+                    RETURNING id, stored_filename
+                ),
+                completed AS (
+                    UPDATE idempotency_records r
+                    SET status = 'COMPLETED',
+                        file_id = i.id,
+                        response_json = jsonb_set(v.response_json, '{file_id}', to_jsonb(i.id))
+                    FROM inserted i
+                    JOIN v ON v.stored_filename = i.stored_filename
+                    WHERE r.user_id = v.user_id
+                      AND r.idempotency_key = v.idempotency_key
+                      AND r.status = 'IN_PROGRESS'
+                    RETURNING r.file_id
+                )
+                SELECT i.id, i.stored_filename,
+                       EXISTS (SELECT 1 FROM completed c WHERE c.file_id = i.id) AS completed
+                FROM inserted i
+                """.formatted(values);
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql);
+        for (int i = 0; i < batch.size(); i++) {
+            FileEntity file = batch.get(i).file();
+            spec = spec.bind("userId" + i, file.getUserId())
+                    .bind("originalFilename" + i, file.getOriginalFilename())
+                    .bind("storedFilename" + i, file.getStoredFilename())
+                    .bind("contentType" + i, file.getContentType())
+                    .bind("fileSize" + i, file.getFileSize())
+                    .bind("storageUrl" + i, file.getStorageUrl())
+                    .bind("bucketName" + i, file.getBucketName())
+                    .bind("uploadedAt" + i, file.getUploadedAt())
+                    .bind("idempotencyKey" + i, batch.get(i).idempotencyKey())
+                    .bind("responseJson" + i, Json.of(batch.get(i).responseJson()));
+            spec = bindExpiresAt(spec, i, file);
+        }
+
+        return spec.map(row -> {
+                    boolean completed = Boolean.TRUE.equals(row.get("completed", Boolean.class));
+                    if (!completed) {
+                        log.warn("File row inserted but idempotency record is not IN_PROGRESS: storedFilename={}",
+                                row.get("stored_filename", String.class));
+                    }
+                    return Map.entry(row.get("stored_filename", String.class),
+                            Map.entry(row.get("id", Long.class), completed));
+                })
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .map(rows -> {
+                    List<InsertedFile> saved = new ArrayList<>(batch.size());
+                    for (AtomicCompletion completion : batch) {
+                        Map.Entry<Long, Boolean> row = rows.get(completion.file().getStoredFilename());
+                        if (row != null) {
+                            completion.file().setId(row.getKey());
+                            saved.add(new InsertedFile(completion.file(), row.getValue()));
+                        } else {
+                            saved.add(null);
+                        }
+                    }
+                    return saved;
+                });
+    }
+
+    // Бессрочный файл - NULL, драйверу нужен явный тип
+    private DatabaseClient.GenericExecuteSpec bindExpiresAt(DatabaseClient.GenericExecuteSpec spec, int i, FileEntity file) {
+        return file.getExpiresAt() != null
+                ? spec.bind("expiresAt" + i, file.getExpiresAt())
+                : spec.bindNull("expiresAt" + i, LocalDateTime.class);
+    }
+
+    public record InsertedFile(FileEntity file, boolean completed) {
+    }
+
+    private record AtomicCompletion(FileEntity file, UUID idempotencyKey, String responseJson) {
+    }
+
+    private record Completion(Long userId, UUID idempotencyKey, Long fileId, String responseJson) {
+    }
+}
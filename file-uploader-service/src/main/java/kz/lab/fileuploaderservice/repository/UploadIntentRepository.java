@@ -0,0 +1,51 @@
+package kz.lab.fileuploaderservice.repository;
+
+import kz.lab.fileuploaderservice.model.entity.UploadIntentEntity;
+import kz.lab.fileuploaderservice.model.entity.UploadIntentStatus;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Repository
+public interface UploadIntentRepository extends ReactiveCrudRepository<UploadIntentEntity, Long> {
+
+
+    Mono<UploadIntentEntity> findByIntentIdAndUserId(UUID intentId, Long userId);
+
+    @Query("""
+        SELECT * FROM upload_intents
+        WHERE user_id = :userId
+          AND idempotency_key = :idempotencyKey
+          AND status = 'PENDING'
+        ORDER BY created_at DESC
+        LIMIT 1
+        """)
+    Mono<UploadIntentEntity> findPendingByUserIdAndIdempotencyKey(Long userId, UUID idempotencyKey);
+
+    @Query("""
+        SELECT * FROM upload_intents
+        WHERE status IN ('PENDING', 'CONFIRMING')
+          AND expires_at < :now
+        ORDER BY expires_at ASC
+        LIMIT :limit
+        """)
+    Flux<UploadIntentEntity> findExpired(LocalDateTime now, int limit);
+
+
+    // Защита от параллельных confirm одного intent
+    @Modifying
+    @Query("""
+        UPDATE upload_intents
+        SET status = :to
+        WHERE intent_id = :intentId
+          AND status = :from
+        """)
+    Mono<Integer> transition(UUID intentId, UploadIntentStatus from, UploadIntentStatus to);
+
+}
@@ -0,0 +1,78 @@
+package kz.lab.fileuploaderservice.repository;
+
+import kz.lab.fileuploaderservice.dto.UploadStatsResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Hourly rollups in upload_stats_hourly (see V8 migration). Writes are single-row UPSERTs,
+ * reads touch only the buckets in the requested range.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UploadStatsRepository {
+
+    private final DatabaseClient databaseClient;
+
+
+    public Mono<Void> increment(Long userId, String contentType, long uploads, long bytes, long failures) {
+        return databaseClient.sql("""
+                        INSERT INTO upload_stats_hourly (bucket_start, user_id, content_type, uploads, bytes, failures)
+                        VALUES (date_trunc('hour', CURRENT_TIMESTAMP), :userId, :contentType, :uploads, :bytes, :failures)
+                        ON CONFLICT (bucket_start, user_id, content_type) DO UPDATE
+                        SET uploads = upload_stats_hourly.uploads + EXCLUDED.uploads,
+                            bytes = upload_stats_hourly.bytes + EXCLUDED.bytes,
+                            failures = upload_stats_hourly.failures + EXCLUDED.failures
+                        """)
+                .bind("userId", userId)
+                .bind("contentType", contentType)
+                .bind("uploads", uploads)
+                .bind("bytes", bytes)
+                .bind("failures", failures)
+                .then();
+    }
+
+    // dimensionColumn и granularity приходят из фиксированного набора в UploadAnalyticsService
+    public Flux<UploadStatsResponse> aggregate(
+            String dimensionColumn,
+            String granularity,
+            LocalDateTime from,
+            LocalDateTime to,
+            Long userId) {
+
+        String sql = """
+                SELECT date_trunc(:granularity, bucket_start) AS period,
+                       %s AS dimension,
+                       sum(uploads)::bigint AS uploads,
+                       sum(bytes)::bigint AS bytes,
+                       sum(failures)::bigint AS failures
+                FROM upload_stats_hourly
+                WHERE bucket_start >= :from
+                  AND bucket_start < :to
+                  AND (CAST(:userId AS bigint) IS NULL OR user_id = :userId)
+                GROUP BY 1, 2
+                ORDER BY 1, 2
+                """.formatted(dimensionColumn);
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql)
+                .bind("granularity", granularity)
+                .bind("from", from)
+                .bind("to", to);
+
+        spec = userId != null ? spec.bind("userId", userId) : spec.bindNull("userId", Long.class);
+
+        return spec.map(row -> UploadStatsResponse.builder()
+                        .periodStart(row.get("period", LocalDateTime.class))
+                        .dimension(row.get("dimension", String.class))
+                        .uploads(row.get("uploads", Long.class))
+                        .bytes(row.get("bytes", Long.class))
+                        .failures(row.get("failures", Long.class))
+                        .build())
+                .all();
+    }
+}
@@ -0,0 +1,180 @@
+package kz.lab.fileuploaderservice.resilience;
+
+import kz.lab.fileuploaderservice.exception.CircuitBreakerOpenException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Count-based circuit breaker. Opens when the failure rate over the last {@code windowSize} calls
+ * reaches the threshold, fails fast for {@code openDuration}, then lets a few trial calls through.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    static final long NO_PERMIT = -1;
+
+    private final String name;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoClock;
+
+    private final boolean[] outcomes;
+    private int position;
+    private int recorded;
+    private int failures;
+
+    private State state = State.CLOSED;
+    // Растёт при каждой смене состояния; исход вызова, допущенного в другом поколении, не учитывается
+    private long generation;
+    private long openedAt;
+    private int halfOpenInFlight;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(
+            String name,
+            double failureRateThreshold,
+            int windowSize,
+            int minimumCalls,
+            Duration openDuration,
+            int halfOpenCalls) {
+        this(name, failureRateThreshold, windowSize, minimumCalls, openDuration, halfOpenCalls, System::nanoTime);
+    }
+
+    CircuitBreaker(
+            String name,
+            double failureRateThreshold,
+            int windowSize,
+            int minimumCalls,
+            Duration openDuration,
+            int halfOpenCalls,
+            LongSupplier nanoClock) {
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.outcomes = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        this.nanoClock = nanoClock;
+    }
+
+
+    // isFailure: какие ошибки говорят о нездоровье зависимости; остальные (404 и т.п.) считаются успехом
+    public <T> Mono<T> protect(Mono<T> call, Predicate<Throwable> isFailure) {
+        return Mono.defer(() -> {
+            long permit = tryAcquire();
+            if (permit == NO_PERMIT) {
+                return Mono.error(new CircuitBreakerOpenException("Circuit breaker '" + name + "' is open"));
+            }
+            return call
+                    .doOnSuccess(value -> onSuccess(permit))
+                    .doOnError(error -> {
+                        if (isFailure.test(error)) {
+                            onFailure(permit);
+                        } else {
+                            onSuccess(permit);
+                        }
+                    })
+                    .doOnCancel(() -> onCancel(permit));
+        });
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+
+    // Разрешение = поколение, в котором вызов допущен; NO_PERMIT - вызов не пускаем
+    synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAt < openDurationNanos) {
+                return NO_PERMIT;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenInFlight >= halfOpenCalls) {
+                return NO_PERMIT;
+            }
+            halfOpenInFlight++;
+        }
+        return generation;
+    }
+
+    // Долгий вызов, допущенный ещё в CLOSED, не должен ни закрыть, ни заново открыть breaker после смены состояния
+    synchronized void onSuccess(long permit) {
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight--;
+            if (++halfOpenSuccesses >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure(long permit) {
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private synchronized void onCancel(long permit) {
+        // Отменённый пробный вызов (например, проигравший hedge) освобождает слот
+        if (permit == generation && state == State.HALF_OPEN && halfOpenInFlight > 0) {
+            halfOpenInFlight--;
+        }
+    }
+
+    private void record(boolean failure) {
+        if (recorded == outcomes.length) {
+            if (outcomes[position]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[position] = failure;
+        if (failure) {
+            failures++;
+        }
+        position = (position + 1) % outcomes.length;
+    }
+
+    private void transitionTo(State newState) {
+        log.warn("Circuit breaker '{}' state change: {} -> {}", name, state, newState);
+
+        state = newState;
+        generation++;
+        position = 0;
+        recorded = 0;
+        failures = 0;
+        halfOpenInFlight = 0;
+        halfOpenSuccesses = 0;
+        if (newState == State.OPEN) {
+            openedAt = nanoClock.getAsLong();
+        }
+    }
+}
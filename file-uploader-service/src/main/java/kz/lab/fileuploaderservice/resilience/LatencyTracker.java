@@ -0,0 +1,53 @@
+package kz.lab.fileuploaderservice.resilience;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Sliding window of recent latencies with a cached percentile, used to pick the hedging delay.
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private final double percentile;
+    private final int minSamples;
+    private final long refreshNanos;
+
+    private int position;
+    private int count;
+    private long cachedPercentile = -1;
+    private long cachedAt;
+
+    public LatencyTracker(int windowSize, double percentile, int minSamples, Duration refreshInterval) {
+        this.samples = new long[windowSize];
+        this.percentile = percentile;
+        this.minSamples = minSamples;
+        this.refreshNanos = refreshInterval.toNanos();
+    }
+
+
+    public synchronized void record(long latencyNanos) {
+        samples[position] = latencyNanos;
+        position = (position + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    // Пусто, пока выборка мала - без статистики не хеджируем
+    public synchronized Duration currentPercentile() {
+        if (count < minSamples) {
+            return null;
+        }
+
+        long now = System.nanoTime();
+        if (cachedPercentile < 0 || now - cachedAt > refreshNanos) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            cachedPercentile = sorted[Math.max(0, Math.min(index, count - 1))];
+            cachedAt = now;
+        }
+        return Duration.ofNanos(cachedPercentile);
+    }
+}
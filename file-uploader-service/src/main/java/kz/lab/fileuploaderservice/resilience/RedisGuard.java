@@ -0,0 +1,251 @@
+package kz.lab.fileuploaderservice.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Keeps Redis off the critical path: reads get a tight latency budget and degrade to a miss,
+ * writes are fire-and-forget. Writes are ordered per key only: while Redis is healthy a write
+ * goes out immediately unless an earlier write for the same key is still pending, and writes
+ * that failed stay queued under their key and are replayed with bounded concurrency.
+ */
+@Component
+@Slf4j
+public class RedisGuard {
+
+    private final CircuitBreaker breaker;
+    private final Duration timeout;
+    private final int backlogLimit;
+    private final int replayConcurrency;
+
+    private final ConcurrentHashMap<String, KeyQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger backlogSize = new AtomicInteger();
+    private final AtomicBoolean replaying = new AtomicBoolean();
+
+    private final Counter fallbacks;
+    private final Counter dropped;
+    private final Counter replayed;
+
+    public RedisGuard(
+            MeterRegistry meterRegistry,
+            @Value("${application.redis-guard.timeout-ms:50}") long timeoutMs,
+            @Value("${application.redis-guard.backlog-limit:10000}") int backlogLimit,
+            @Value("${application.redis-guard.replay-concurrency:16}") int replayConcurrency,
+            @Value("${application.redis-guard.breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+            @Value("${application.redis-guard.breaker.sliding-window-size:20}") int slidingWindowSize,
+            @Value("${application.redis-guard.breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${application.redis-guard.breaker.open-duration-ms:5000}") long openDurationMs,
+            @Value("${application.redis-guard.breaker.half-open-calls:3}") int halfOpenCalls) {
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.backlogLimit = backlogLimit;
+        this.replayConcurrency = replayConcurrency;
+        this.breaker = new CircuitBreaker(
+                "redis",
+                failureRateThreshold,
+                slidingWindowSize,
+                minimumCalls,
+                Duration.ofMillis(openDurationMs),
+                halfOpenCalls
+        );
+
+        this.fallbacks = meterRegistry.counter("redis.guard.fallbacks");
+        this.dropped = meterRegistry.counter("redis.guard.backlog.dropped");
+        this.replayed = meterRegistry.counter("redis.guard.backlog.replayed");
+        Gauge.builder("redis.guard.backlog.size", backlogSize, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("redis.guard.breaker.state", breaker, b -> b.getState().ordinal())
+                .description("0 - closed, 1 - open, 2 - half-open")
+                .register(meterRegistry);
+    }
+
+
+    // Медленный или недоступный Redis превращается в промах кеша - дальше работает Postgres
+    public <T> Mono<T> read(String description, Mono<T> call) {
+        return breaker.protect(call.timeout(timeout), error -> true)
+                .onErrorResume(e -> {
+                    fallbacks.increment();
+                    log.warn("Redis read bypassed: op={}, reason={}", description, e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    // Запись, которую нельзя потерять (удаление, надгробие): в backlog попадает всегда.
+    // Supplier, а не готовый Mono - запись должна заново выполниться при повторе.
+    // Запись уходит и без подписки; Mono завершается, когда она применена (возможно, после повтора из backlog)
+    public Mono<Void> write(String description, String key, Supplier<Mono<?>> write) {
+        PendingWrite pending = new PendingWrite(description, write, true, Sinks.empty());
+        submit(pending, key);
+        return pending.applied().asMono();
+    }
+
+    // Запись, которую можно восстановить из Postgres (заполнение кеша): при переполненном backlog отбрасывается
+    public void writeBestEffort(String description, String key, Supplier<Mono<?>> write) {
+        submit(new PendingWrite(description, write, false, Sinks.empty()), key);
+    }
+
+    public boolean isAvailable() {
+        return breaker.getState() != CircuitBreaker.State.OPEN;
+    }
+
+    public int backlogSize() {
+        return backlogSize.get();
+    }
+
+
+    // Каждый ключ разбирается до конца; ключи - параллельно, не больше replayConcurrency одновременно
+    @Scheduled(fixedDelayString = "${application.redis-guard.replay-interval-ms:1000}")
+    public void replayBacklog() {
+        if (queues.isEmpty() || !isAvailable() || !replaying.compareAndSet(false, true)) {
+            return;
+        }
+
+        Flux.fromIterable(List.copyOf(queues.entrySet()))
+                .filter(entry -> entry.getValue().claim())
+                .flatMap(entry -> drain(entry.getKey(), entry.getValue(), true), replayConcurrency)
+                .reduce(0L, Long::sum)
+                .doOnSuccess(count -> {
+                    if (count > 0) {
+                        log.info("Replayed {} deferred Redis writes, {} remaining", count, backlogSize.get());
+                    }
+                })
+                .doFinally(signal -> replaying.set(false))
+                .subscribe(count -> {}, e -> log.warn("Redis backlog replay failed: {}", e.toString()));
+    }
+
+
+    private void submit(PendingWrite pending, String key) {
+        if (!pending.required() && backlogSize.get() >= backlogLimit) {
+            // Переполнение - отбрасываем только восстанавливаемые записи: кеш и дедлайны поднимутся из Postgres
+            dropped.increment();
+            log.debug("Redis write dropped, backlog is full: op={}", pending.description());
+            return;
+        }
+
+        while (true) {
+            KeyQueue queue = queues.computeIfAbsent(key, k -> new KeyQueue());
+            Boolean start = queue.offer(pending, isAvailable());
+            if (start == null) {
+                // Очередь ключа только что опустела и удалена из map - берём новую
+                continue;
+            }
+            backlogSize.incrementAndGet();
+            if (start) {
+                drain(key, queue, false).subscribe();
+            }
+            return;
+        }
+    }
+
+    // Выполняет записи ключа по одной, пока очередь не опустеет; первая ошибка оставляет запись в голове
+    private Mono<Long> drain(String key, KeyQueue queue, boolean replay) {
+        return Mono.defer(() -> {
+            AtomicBoolean failed = new AtomicBoolean();
+
+            return Mono.defer(() -> {
+                        PendingWrite head = queue.peek();
+                        if (head == null) {
+                            return Mono.just(false);
+                        }
+                        return execute(head.write())
+                                .then(Mono.fromCallable(() -> {
+                                    queue.remove(head);
+                                    backlogSize.decrementAndGet();
+                                    head.applied().tryEmitEmpty();
+                                    if (replay) {
+                                        replayed.increment();
+                                    }
+                                    return true;
+                                }))
+                                .doOnError(e -> log.warn("Redis write deferred to backlog: op={}, key={}, reason={}",
+                                        head.description(), key, e.toString()));
+                    })
+                    .repeat()
+                    .takeWhile(written -> written)
+                    .count()
+                    .onErrorResume(e -> {
+                        failed.set(true);
+                        return Mono.just(0L);
+                    })
+                    .doFinally(signal -> {
+                        // Запись, пришедшая между пустой очередью и release, не запускала разбор сама.
+                        // После ошибки не перезапускаем - повторит replayBacklog
+                        if (queue.release(key, queues) && !failed.get() && isAvailable() && queue.claim()) {
+                            drain(key, queue, replay).subscribe();
+                        }
+                    });
+        });
+    }
+
+    private Mono<Void> execute(Supplier<Mono<?>> write) {
+        return breaker.protect(Mono.defer(write).timeout(timeout), error -> true).then();
+    }
+
+    private record PendingWrite(String description, Supplier<Mono<?>> write, boolean required,
+                                Sinks.Empty<Void> applied) {
+    }
+
+    // Очередь записей одного ключа; draining - кто-то уже выполняет её голову
+    private static final class KeyQueue {
+        private final Deque<PendingWrite> writes = new ArrayDeque<>();
+        private boolean draining;
+        private boolean retired;
+
+        // null - очередь уже удалена из map; true - вызывающий должен запустить разбор
+        synchronized Boolean offer(PendingWrite pending, boolean available) {
+            if (retired) {
+                return null;
+            }
+            writes.addLast(pending);
+            if (draining || !available) {
+                return false;
+            }
+            draining = true;
+            return true;
+        }
+
+        synchronized boolean claim() {
+            if (draining || retired || writes.isEmpty()) {
+                return false;
+            }
+            draining = true;
+            return true;
+        }
+
+        synchronized PendingWrite peek() {
+            return writes.peekFirst();
+        }
+
+        synchronized void remove(PendingWrite pending) {
+            if (writes.peekFirst() == pending) {
+                writes.pollFirst();
+            }
+        }
+
+        // Пустая очередь удаляется из map; true - в очереди остались записи
+        synchronized boolean release(String key, ConcurrentHashMap<String, KeyQueue> queues) {
+            draining = false;
+            if (writes.isEmpty()) {
+                retired = true;
+                queues.remove(key, this);
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package kz.lab.fileuploaderservice.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.lab.fileuploaderservice.config.S3ResilienceProperties;
+import kz.lab.fileuploaderservice.exception.CircuitBreakerOpenException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Retries, hedging and circuit breaking for S3 calls. One breaker per shard, latency tracked per shard and operation.
+ */
+@Component
+@Slf4j
+public class S3Resilience {
+
+    public enum CallPolicy {
+        // Не идемпотентные вызовы (create/complete multipart): только breaker
+        SINGLE,
+        // Идемпотентные записи и удаления: повтор с backoff и jitter
+        RETRY,
+        // Чтения без потока тела (headObject): повтор + дублирующий запрос, если первый задержался дольше p95
+        HEDGED
+    }
+
+    private final S3ResilienceProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+
+    private final Counter retries;
+    private final Counter hedges;
+    private final Counter hedgeWins;
+
+    public S3Resilience(S3ResilienceProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.retries = meterRegistry.counter("s3.client.retries");
+        this.hedges = meterRegistry.counter("s3.client.hedges", "result", "sent");
+        this.hedgeWins = meterRegistry.counter("s3.client.hedges", "result", "won");
+    }
+
+
+    // Supplier вызывается на каждую попытку - future не должен создаваться заранее
+    public <T> Mono<T> call(String shard, String operation, CallPolicy policy, Supplier<CompletableFuture<T>> request) {
+        if (!properties.isEnabled()) {
+            return Mono.fromFuture(request);
+        }
+
+        return switch (policy) {
+            case SINGLE -> attempt(shard, operation, request);
+            case RETRY -> withRetry(shard, operation, attempt(shard, operation, request));
+            case HEDGED -> withRetry(shard, operation, hedged(shard, operation, request));
+        };
+    }
+
+    public CircuitBreaker.State breakerState(String shard) {
+        return breaker(shard).getState();
+    }
+
+
+    private <T> Mono<T> attempt(String shard, String operation, Supplier<CompletableFuture<T>> request) {
+        LatencyTracker tracker = latency(shard, operation);
+
+        Mono<T> timed = Mono.defer(() -> {
+            long start = System.nanoTime();
+            return Mono.fromFuture(request)
+                    .doOnSuccess(value -> tracker.record(System.nanoTime() - start));
+        });
+        return breaker(shard).protect(timed, S3Resilience::isTransient);
+    }
+
+    private <T> Mono<T> hedged(String shard, String operation, Supplier<CompletableFuture<T>> request) {
+        if (!properties.isHedgingEnabled()) {
+            return attempt(shard, operation, request);
+        }
+
+        return Mono.defer(() -> {
+            Duration percentile = latency(shard, operation).currentPercentile();
+            if (percentile == null) {
+                return attempt(shard, operation, request);
+            }
+
+            Duration minDelay = Duration.ofMillis(properties.getHedgeMinDelayMs());
+            Duration delay = percentile.compareTo(minDelay) > 0 ? percentile : minDelay;
+
+            Mono<T> hedge = Mono.delay(delay)
+                    .doOnNext(tick -> {
+                        hedges.increment();
+                        log.debug("Sending hedged S3 request: shard={}, operation={}, delay={}ms",
+                                shard, operation, delay.toMillis());
+                    })
+                    .then(attempt(shard, operation, request))
+                    .doOnSuccess(value -> hedgeWins.increment());
+
+            // Проигравший запрос отменяется - SDK прерывает его future
+            return Mono.firstWithSignal(attempt(shard, operation, request), hedge);
+        });
+    }
+
+    private <T> Mono<T> withRetry(String shard, String operation, Mono<T> call) {
+        if (properties.getMaxAttempts() <= 1) {
+            return call;
+        }
+
+        return call.retryWhen(Retry.backoff(properties.getMaxAttempts() - 1, Duration.ofMillis(properties.getInitialBackoffMs()))
+                .maxBackoff(Duration.ofMillis(properties.getMaxBackoffMs()))
+                .jitter(properties.getJitter())
+                .filter(S3Resilience::isTransient)
+                .doBeforeRetry(signal -> {
+                    retries.increment();
+                    log.warn("Retrying S3 request: shard={}, operation={}, attempt={}, error={}",
+                            shard, operation, signal.totalRetries() + 2, signal.failure().toString());
+                })
+                // Наружу отдаём исходную ошибку, а не RetryExhaustedException
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+
+    private CircuitBreaker breaker(String shard) {
+        return breakers.computeIfAbsent(shard, name -> {
+            S3ResilienceProperties.Breaker config = properties.getBreaker();
+            CircuitBreaker breaker = new CircuitBreaker(
+                    "s3-" + name,
+                    config.getFailureRateThreshold(),
+                    config.getSlidingWindowSize(),
+                    config.getMinimumCalls(),
+                    Duration.ofMillis(config.getOpenDurationMs()),
+                    config.getHalfOpenCalls()
+            );
+            Gauge.builder("s3.client.breaker.state", breaker, b -> b.getState().ordinal())
+                    .description("0 - closed, 1 - open, 2 - half-open")
+                    .tag("shard", name)
+                    .register(meterRegistry);
+            return breaker;
+        });
+    }
+
+    private LatencyTracker latency(String shard, String operation) {
+        return latencies.computeIfAbsent(shard + ":" + operation, key -> new LatencyTracker(
+                properties.getLatencyWindowSize(),
+                properties.getHedgePercentile(),
+                properties.getHedgeMinSamples(),
+                Duration.ofSeconds(1)
+        ));
+    }
+
+    // 404, 403 и ошибки валидации повторять бессмысленно и они не говорят о нездоровье хранилища
+    static boolean isTransient(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof CircuitBreakerOpenException) {
+            return false;
+        }
+        if (cause instanceof SdkServiceException service) {
+            int status = service.statusCode();
+            return status >= 500 || status == 429 || status == 408 || service.isThrottlingException();
+        }
+        return cause instanceof SdkClientException
+                || cause instanceof TimeoutException
+                || cause instanceof IOException;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable current = error;
+        while (current instanceof CompletionException && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+}
@@ -0,0 +1,161 @@
+package kz.lab.fileuploaderservice.saga.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Table("saga_states")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SagaStateEntity {
+
+    @Id
+    private Long id;
+
+    @Column("saga_id")
+    private UUID sagaId;
+
+    @Column("saga_type")
+    private SagaType sagaType;
+
+    @Column("user_id")
+    private Long userId;
+
+    @Column("idempotency_key")
+    private UUID idempotencyKey;
+
+    @Column("status")
+    private SagaStatus status;
+
+    @Column("current_step")
+    private SagaStep currentStep;
+
+    @Column("original_filename")
+    private String originalFilename;
+
+    @Column("content_type")
+    private String contentType;
+
+    @Column("stored_filename")
+    private String storedFilename;
+
+    @Column("storage_url")
+    private String storageUrl;
+
+    @Column("bucket_name")
+    private String bucketName;
+
+    @Column("file_size")
+    private Long fileSize;
+
+    @Column("file_id")
+    private Long fileId;
+
+    @Column("expires_at")
+    private LocalDateTime expiresAt;
+
+    @Column("error_message")
+    private String errorMessage;
+
+    @Column("attempts")
+    private Integer attempts;
+
+    @Column("created_at")
+    private LocalDateTime createdAt;
+
+    @Column("updated_at")
+    private LocalDateTime updatedAt;
+
+    // save() проверяет версию: устаревшая копия саги получает OptimisticLockingFailureException
+    @Version
+    @Column("version")
+    private Long version;
+
+    public SagaStateEntity(UUID sagaId, SagaType sagaType, Long userId, UUID idempotencyKey) {
+        this.sagaId = sagaId;
+        this.sagaType = sagaType;
+        this.userId = userId;
+        this.idempotencyKey = idempotencyKey;
+        this.status = SagaStatus.IN_PROGRESS;
+        this.currentStep = SagaStep.RESERVED;
+        this.attempts = 0;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void markReserved(String originalFilename, String contentType, String storedFilename, String bucketName,
+                             LocalDateTime expiresAt) {
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+        this.storedFilename = storedFilename;
+        this.bucketName = bucketName;
+        this.expiresAt = expiresAt;
+        this.currentStep = SagaStep.RESERVED;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void markObjectStored(String storageUrl, Long fileSize) {
+        this.storageUrl = storageUrl;
+        this.fileSize = fileSize;
+        this.currentStep = SagaStep.OBJECT_STORED;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void markMetadataSaved(Long fileId) {
+        this.fileId = fileId;
+        this.currentStep = SagaStep.METADATA_SAVED;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void markCompleted() {
+        this.currentStep = SagaStep.COMPLETED;
+        this.status = SagaStatus.COMPLETED;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void markCompensating(String errorMessage) {
+        this.status = SagaStatus.COMPENSATING;
+        this.errorMessage = errorMessage;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    // Объект остаётся на месте: компенсация удалит только строку files
+    public void detachObject() {
+        this.storedFilename = null;
+        this.bucketName = null;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void markCompensated() {
+        this.status = SagaStatus.COMPENSATED;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public boolean isInProgress() {
+        return this.status == SagaStatus.IN_PROGRESS;
+    }
+
+    @Override
+    public String toString() {
+        return "SagaStateEntity{" +
+               "sagaId=" + sagaId +
+               ", sagaType=" + sagaType +
+               ", userId=" + userId +
+               ", idempotencyKey=" + idempotencyKey +
+               ", status=" + status +
+               ", currentStep=" + currentStep +
+               ", storedFilename='" + storedFilename + '\'' +
+               ", fileId=" + fileId +
+               ", attempts=" + attempts +
+               '}';
+    }
+
+}
@@ -0,0 +1,9 @@
+package kz.lab.fileuploaderservice.saga.model;
+
+public enum SagaStatus {
+    IN_PROGRESS,
+    COMPENSATING,
+    COMPENSATED,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,11 @@
+package kz.lab.fileuploaderservice.saga.model;
+
+/**
+ * Last finished step of an upload saga. Recovery resumes from the step after it.
+ */
+public enum SagaStep {
+    RESERVED,
+    OBJECT_STORED,
+    METADATA_SAVED,
+    COMPLETED
+}
@@ -0,0 +1,5 @@
+package kz.lab.fileuploaderservice.saga.model;
+
+public enum SagaType {
+    FILE_UPLOAD
+}
@@ -0,0 +1,64 @@
+package kz.lab.fileuploaderservice.saga.repository;
+
+import kz.lab.fileuploaderservice.saga.model.SagaStateEntity;
+import kz.lab.fileuploaderservice.saga.model.SagaStatus;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Repository
+public interface SagaStateRepository extends ReactiveCrudRepository<SagaStateEntity, Long> {
+
+
+    Mono<SagaStateEntity> findBySagaId(UUID sagaId);
+
+    @Query("""
+        SELECT * FROM saga_states
+        WHERE status = :status
+          AND updated_at < :updatedBefore
+        ORDER BY updated_at ASC
+        LIMIT :limit
+        """)
+    Flux<SagaStateEntity> findStalled(SagaStatus status, LocalDateTime updatedBefore, int limit);
+
+    @Query("""
+        SELECT * FROM saga_states
+        WHERE status = :status
+        ORDER BY updated_at ASC
+        LIMIT :limit
+        """)
+    Flux<SagaStateEntity> findByStatus(SagaStatus status, int limit);
+
+
+    // Только один узел может взять сагу на восстановление; version + 1 - запрос,
+    // который всё ещё держит сагу, больше не сможет сохранить свой шаг
+    @Modifying
+    @Query("""
+        UPDATE saga_states
+        SET attempts = attempts + 1,
+            version = version + 1,
+            updated_at = CURRENT_TIMESTAMP
+        WHERE saga_id = :sagaId
+          AND attempts = :attempts
+          AND version = :version
+          AND status = 'IN_PROGRESS'
+        """)
+    Mono<Integer> claimForRecovery(UUID sagaId, int attempts, long version);
+
+    // Heartbeat долгой загрузки: двигает только updated_at, версию не меняет
+    @Modifying
+    @Query("""
+        UPDATE saga_states
+        SET updated_at = CURRENT_TIMESTAMP
+        WHERE saga_id = :sagaId
+          AND status = 'IN_PROGRESS'
+        """)
+    Mono<Integer> heartbeat(UUID sagaId);
+
+}
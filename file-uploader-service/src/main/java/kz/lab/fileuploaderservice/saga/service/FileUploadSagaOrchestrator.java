@@ -0,0 +1,270 @@
+package kz.lab.fileuploaderservice.saga.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.lab.fileuploaderservice.dto.FileUploadResponse;
+import kz.lab.fileuploaderservice.exception.IdempotencyConflictException;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import kz.lab.fileuploaderservice.repository.FileRepository;
+import kz.lab.fileuploaderservice.repository.MetadataBatchWriter;
+import kz.lab.fileuploaderservice.saga.model.SagaStateEntity;
+import kz.lab.fileuploaderservice.saga.model.SagaType;
+import kz.lab.fileuploaderservice.saga.repository.SagaStateRepository;
+import kz.lab.fileuploaderservice.service.IdempotencyService;
+import kz.lab.fileuploaderservice.service.UploadAnalyticsService;
+import kz.lab.fileuploaderservice.storage.StorageBackend;
+import kz.lab.fileuploaderservice.storage.UploadResult;
+import kz.lab.fileuploaderservice.timing.ServerTimings;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a file upload through RESERVED -> OBJECT_STORED -> METADATA_SAVED -> COMPLETED,
+ * persisting the saga after every step so {@link SagaRecoveryService} can resume it after a crash.
+ * With atomic completion the files row and the COMPLETED idempotency record are written by one
+ * statement, so the saga goes from OBJECT_STORED straight to COMPLETED.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class FileUploadSagaOrchestrator {
+
+    private final SagaStateRepository sagaStateRepository;
+    private final FileRepository fileRepository;
+    private final MetadataBatchWriter metadataBatchWriter;
+    private final IdempotencyService idempotencyService;
+    private final StorageBackend storageBackend;
+    private final UploadAnalyticsService uploadAnalyticsService;
+    private final MeterRegistry meterRegistry;
+
+    // false - прежний путь (INSERT, затем UPDATE idempotency), для сравнения задержки по upload.completion.time
+    @Value("${application.upload.atomic-completion:true}")
+    private boolean atomicCompletion;
+
+    // Должен быть заметно меньше saga.stall-timeout-minutes
+    @Value("${application.saga.heartbeat-interval-seconds:60}")
+    private long heartbeatIntervalSeconds;
+
+
+    public Mono<SagaStateEntity> begin(
+            Long userId,
+            UUID idempotencyKey,
+            String originalFilename,
+            String contentType,
+            String storedFilename,
+            String bucketName,
+            LocalDateTime expiresAt) {
+
+        SagaStateEntity saga = new SagaStateEntity(
+                UUID.randomUUID(),
+                SagaType.FILE_UPLOAD,
+                userId,
+                idempotencyKey
+        );
+        saga.markReserved(originalFilename, contentType, storedFilename, bucketName, expiresAt);
+
+        return sagaStateRepository.save(saga)
+                .flatMap(saved ->
+                        idempotencyService.linkToSaga(userId, idempotencyKey, saved.getSagaId())
+                                .thenReturn(saved)
+                )
+                .doOnSuccess(saved ->
+                        log.info("Started upload saga: sagaId={}, key={}", saved.getSagaId(), idempotencyKey)
+                );
+    }
+
+    public Mono<SagaStateEntity> objectStored(SagaStateEntity saga, UploadResult uploadResult) {
+        saga.markObjectStored(uploadResult.getStorageUrl(), uploadResult.getFileSize());
+
+        return sagaStateRepository.save(saga)
+                .doOnSuccess(saved ->
+                        log.debug("Saga step OBJECT_STORED: sagaId={}", saved.getSagaId())
+                );
+    }
+
+
+    // Пока идёт долгий шаг (приём тела, копирование), сага не считается зависшей
+    public <T> Mono<T> withHeartbeat(SagaStateEntity saga, Mono<T> step) {
+        Duration interval = Duration.ofSeconds(heartbeatIntervalSeconds);
+
+        return Mono.defer(() -> {
+            Disposable heartbeat = Flux.interval(interval, interval)
+                    .concatMap(tick -> sagaStateRepository.heartbeat(saga.getSagaId())
+                            .onErrorResume(e -> {
+                                log.warn("Saga heartbeat failed: sagaId={}, error={}", saga.getSagaId(), e.toString());
+                                return Mono.empty();
+                            }))
+                    .subscribe();
+            return step.doFinally(signal -> heartbeat.dispose());
+        });
+    }
+
+
+    // Доводит сагу до конца, начиная с последнего завершённого шага
+    public Mono<FileUploadResponse> proceed(SagaStateEntity saga) {
+        return switch (saga.getCurrentStep()) {
+            case RESERVED -> Mono.error(new IllegalStateException(
+                    "Saga " + saga.getSagaId() + " cannot proceed: object was not stored"
+            ));
+            case OBJECT_STORED -> timed(atomicCompletion
+                    ? completeAtomically(saga)
+                            // Строка уже вставлена до падения - довершаем по старому пути
+                            .switchIfEmpty(Mono.defer(() -> completeStepByStep(saga)))
+                    : completeStepByStep(saga));
+            case METADATA_SAVED, COMPLETED -> fileRepository.findById(saga.getFileId())
+                    .switchIfEmpty(Mono.error(new IllegalStateException(
+                            "Saga " + saga.getSagaId() + " references missing file: id=" + saga.getFileId()
+                    )))
+                    .flatMap(savedFile -> completeOperation(saga, savedFile));
+        };
+    }
+
+
+    // Компенсация выполняется пачками в SagaRecoveryService
+    public Mono<Void> abort(SagaStateEntity saga, Throwable cause) {
+        log.warn("Aborting upload saga: sagaId={}, step={}, error={}",
+                saga.getSagaId(), saga.getCurrentStep(), cause.getMessage());
+
+        saga.markCompensating(cause.getMessage());
+
+        return sagaStateRepository.save(saga)
+                .onErrorResume(e -> {
+                    log.error("Failed to mark saga for compensation: sagaId={}", saga.getSagaId(), e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+
+    // Для presigned загрузки: объектом владеет intent (повторный confirm, expireIntents), не сага
+    public Mono<Void> abortKeepingObject(SagaStateEntity saga, Throwable cause) {
+        saga.detachObject();
+        return abort(saga, cause);
+    }
+
+
+    private Mono<FileUploadResponse> completeAtomically(SagaStateEntity saga) {
+        FileEntity fileEntity = buildFileEntity(saga);
+
+        return ServerTimings.timed("presign",
+                        storageBackend.generateDownloadUrl(fileEntity.getBucketName(), fileEntity.getStoredFilename()))
+                .flatMap(downloadUrl -> {
+                    FileUploadResponse response = toResponse(fileEntity, downloadUrl);
+
+                    return idempotencyService.completeWithFile(fileEntity, saga.getIdempotencyKey(), response)
+                            // Строка вставлена, но запись уже не IN_PROGRESS: fileId в сагу, чтобы компенсация удалила и её
+                            .doOnError(IdempotencyConflictException.class, e -> {
+                                if (fileEntity.getId() != null) {
+                                    saga.markMetadataSaved(fileEntity.getId());
+                                }
+                            })
+                            // Аналитика отдельно и best-effort, как в пошаговом пути
+                            .flatMap(savedFile -> uploadAnalyticsService.recordUpload(savedFile).thenReturn(savedFile))
+                            .flatMap(savedFile -> {
+                                // fileId в саге сразу: если сохранение саги упадёт, компенсация удалит и строку
+                                saga.markMetadataSaved(savedFile.getId());
+                                saga.markCompleted();
+
+                                return sagaStateRepository.save(saga)
+                                        .doOnSuccess(v ->
+                                                log.info("Upload saga completed: sagaId={}, fileId={}",
+                                                        saga.getSagaId(), savedFile.getId())
+                                        )
+                                        .thenReturn(response);
+                            });
+                });
+    }
+
+    private Mono<FileUploadResponse> completeStepByStep(SagaStateEntity saga) {
+        return saveMetadata(saga)
+                .flatMap(savedFile -> completeOperation(saga, savedFile));
+    }
+
+    private Mono<FileUploadResponse> timed(Mono<FileUploadResponse> completion) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return completion.doOnSuccess(response -> meterRegistry.timer(
+                            "upload.completion.time", "mode", atomicCompletion ? "atomic" : "step-by-step")
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private Mono<FileEntity> saveMetadata(SagaStateEntity saga) {
+        // После падения между INSERT и сохранением саги строка уже может существовать
+        return fileRepository.findByStoredFilename(saga.getStoredFilename())
+                .switchIfEmpty(Mono.defer(() -> {
+                    FileEntity fileEntity = buildFileEntity(saga);
+
+                    // Счётчик только при реальной вставке; INSERT батчится с параллельными загрузками
+                    return metadataBatchWriter.insertFile(fileEntity)
+                            .flatMap(saved -> uploadAnalyticsService.recordUpload(saved).thenReturn(saved));
+                }))
+                .flatMap(savedFile -> {
+                    saga.markMetadataSaved(savedFile.getId());
+                    return sagaStateRepository.save(saga)
+                            .doOnSuccess(saved ->
+                                    log.debug("Saga step METADATA_SAVED: sagaId={}, fileId={}",
+                                            saved.getSagaId(), savedFile.getId())
+                            )
+                            .thenReturn(savedFile);
+                });
+    }
+
+    private Mono<FileUploadResponse> completeOperation(SagaStateEntity saga, FileEntity savedFile) {
+        return ServerTimings.timed("presign",
+                        storageBackend.generateDownloadUrl(savedFile.getBucketName(), savedFile.getStoredFilename()))
+                .map(downloadUrl -> toResponse(savedFile, downloadUrl))
+                .flatMap(response ->
+                        idempotencyService.saveCompletedOperation(
+                                        saga.getUserId(),
+                                        saga.getIdempotencyKey(),
+                                        savedFile.getId(),
+                                        response)
+                                .then(Mono.defer(() -> {
+                                    saga.markCompleted();
+                                    return sagaStateRepository.save(saga);
+                                }))
+                                .doOnSuccess(saved ->
+                                        log.info("Upload saga completed: sagaId={}, fileId={}",
+                                                saved.getSagaId(), savedFile.getId())
+                                )
+                                .thenReturn(response)
+                );
+    }
+
+    private FileEntity buildFileEntity(SagaStateEntity saga) {
+        return FileEntity.builder()
+                .userId(saga.getUserId())
+                .originalFilename(saga.getOriginalFilename())
+                .storedFilename(saga.getStoredFilename())
+                .contentType(saga.getContentType())
+                .fileSize(saga.getFileSize())
+                .storageUrl(saga.getStorageUrl())
+                .bucketName(saga.getBucketName())
+                .uploadedAt(LocalDateTime.now())
+                .expiresAt(saga.getExpiresAt())
+                .build();
+    }
+
+    private FileUploadResponse toResponse(FileEntity file, String downloadUrl) {
+        FileUploadResponse response = new FileUploadResponse(
+                file.getId(),
+                file.getOriginalFilename(),
+                file.getFileSize(),
+                file.getContentType(),
+                downloadUrl,
+                file.getUploadedAt());
+        response.setExpiresAt(file.getExpiresAt());
+        return response;
+    }
+
+}
@@ -0,0 +1,205 @@
+package kz.lab.fileuploaderservice.saga.service;
+
+import kz.lab.fileuploaderservice.cache.FileMetadataCache;
+import kz.lab.fileuploaderservice.exception.IdempotencyConflictException;
+import kz.lab.fileuploaderservice.repository.FileRepository;
+import kz.lab.fileuploaderservice.saga.model.SagaStateEntity;
+import kz.lab.fileuploaderservice.saga.model.SagaStatus;
+import kz.lab.fileuploaderservice.saga.model.SagaStep;
+import kz.lab.fileuploaderservice.saga.repository.SagaStateRepository;
+import kz.lab.fileuploaderservice.service.IdempotencyService;
+import kz.lab.fileuploaderservice.storage.StorageBackend;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SagaRecoveryService {
+
+    private final SagaStateRepository sagaStateRepository;
+    private final FileRepository fileRepository;
+    private final FileUploadSagaOrchestrator sagaOrchestrator;
+    private final IdempotencyService idempotencyService;
+    private final StorageBackend storageBackend;
+    private final FileMetadataCache fileMetadataCache;
+
+
+    @Value("${application.saga.stall-timeout-minutes:5}")
+    private int stallTimeoutMinutes;
+
+    @Value("${application.saga.max-recovery-attempts:3}")
+    private int maxRecoveryAttempts;
+
+    @Value("${application.saga.compensation-batch-size:100}")
+    private int compensationBatchSize;
+
+
+    @Scheduled(
+            fixedDelayString = "${application.saga.recovery-interval-ms:60000}",
+            initialDelayString = "${application.saga.recovery-interval-ms:60000}"
+    )
+    public void recoverStalledSagas() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(stallTimeoutMinutes);
+
+        sagaStateRepository.findStalled(SagaStatus.IN_PROGRESS, threshold, compensationBatchSize)
+                .concatMap(this::resume)
+                .filter(resumed -> resumed)
+                .count()
+                .doOnSuccess(count -> {
+                    if (count > 0) {
+                        log.info("Recovered {} stalled upload sagas", count);
+                    }
+                })
+                .doOnError(e -> log.error("Error during saga recovery", e))
+                .subscribe();
+    }
+
+    @Scheduled(
+            fixedDelayString = "${application.saga.compensation-interval-ms:30000}",
+            initialDelayString = "${application.saga.compensation-interval-ms:30000}"
+    )
+    public void compensatePendingSagas() {
+        sagaStateRepository.findByStatus(SagaStatus.COMPENSATING, compensationBatchSize * 10)
+                .buffer(compensationBatchSize)
+                .concatMap(this::compensateBatch)
+                .reduce(0, Integer::sum)
+                .doOnSuccess(count -> {
+                    if (count > 0) {
+                        log.info("Compensated {} upload sagas", count);
+                    }
+                })
+                .doOnError(e -> log.error("Error during saga compensation", e))
+                .subscribe();
+    }
+
+
+    // Вызывается из CleanupService для просроченной idempotency-записи, связанной с сагой
+    public Mono<Boolean> recover(UUID sagaId) {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(stallTimeoutMinutes);
+
+        return sagaStateRepository.findBySagaId(sagaId)
+                .flatMap(saga -> {
+                    if (saga.getStatus() == SagaStatus.COMPENSATING || saga.getStatus() == SagaStatus.COMPENSATED) {
+                        // Сага уже откатывается, осталось освободить ключ для повторной загрузки
+                        return idempotencyService.saveFailedOperation(
+                                        saga.getUserId(), saga.getIdempotencyKey(), saga.getErrorMessage())
+                                .thenReturn(true);
+                    }
+                    if (!saga.isInProgress() || saga.getUpdatedAt().isAfter(threshold)) {
+                        // Сага ещё двигается - не мешаем исходному запросу
+                        return Mono.just(false);
+                    }
+                    return resume(saga);
+                })
+                .defaultIfEmpty(false);
+    }
+
+
+    private Mono<Boolean> resume(SagaStateEntity saga) {
+        int seenAttempts = saga.getAttempts();
+        long seenVersion = saga.getVersion();
+
+        return sagaStateRepository.claimForRecovery(saga.getSagaId(), seenAttempts, seenVersion)
+                .flatMap(claimed -> {
+                    if (claimed == 0) {
+                        log.debug("Saga already claimed by another node: sagaId={}", saga.getSagaId());
+                        return Mono.just(false);
+                    }
+                    saga.setAttempts(seenAttempts + 1);
+                    saga.setVersion(seenVersion + 1);
+
+                    log.info("Resuming upload saga: sagaId={}, lastStep={}, attempt={}",
+                            saga.getSagaId(), saga.getCurrentStep(), saga.getAttempts());
+
+                    if (saga.getCurrentStep() == SagaStep.RESERVED) {
+                        // Содержимое файла было только в потоке запроса - продолжать нечего
+                        return failAndCompensate(saga, "Upload interrupted before the object was stored");
+                    }
+
+                    return sagaOrchestrator.proceed(saga)
+                            .thenReturn(true)
+                            .onErrorResume(e -> {
+                                if (e instanceof IdempotencyConflictException) {
+                                    // Запись уже FAILED или отдана повторной попытке - её не трогаем, убираем только своё
+                                    log.warn("Saga result is no longer wanted, compensating: sagaId={}", saga.getSagaId());
+                                    return sagaOrchestrator.abort(saga, e).thenReturn(true);
+                                }
+                                log.error("Failed to resume saga: sagaId={}, attempt={}",
+                                        saga.getSagaId(), saga.getAttempts(), e);
+
+                                if (saga.getAttempts() >= maxRecoveryAttempts) {
+                                    return failAndCompensate(saga, "Recovery failed: " + e.getMessage());
+                                }
+                                return Mono.just(false);
+                            });
+                });
+    }
+
+    private Mono<Boolean> failAndCompensate(SagaStateEntity saga, String reason) {
+        return idempotencyService.saveFailedOperation(saga.getUserId(), saga.getIdempotencyKey(), reason)
+                .then(sagaOrchestrator.abort(saga, new IllegalStateException(reason)))
+                .thenReturn(true);
+    }
+
+    private Mono<Integer> compensateBatch(List<SagaStateEntity> sagas) {
+        // Объекты разных саг могут лежать в разных шардах - DeleteObjects на каждый бакет
+        Map<String, List<String>> storedFilenames = sagas.stream()
+                .filter(saga -> saga.getStoredFilename() != null && saga.getBucketName() != null)
+                .collect(Collectors.groupingBy(
+                        SagaStateEntity::getBucketName,
+                        Collectors.mapping(SagaStateEntity::getStoredFilename, Collectors.toList())
+                ));
+
+        log.info("Compensating batch of {} sagas: {} objects",
+                sagas.size(), storedFilenames.values().stream().mapToInt(List::size).sum());
+
+        return Flux.fromIterable(storedFilenames.entrySet())
+                .concatMap(entry -> storageBackend.deleteFiles(entry.getKey(), entry.getValue())
+                        .map(failed -> Map.entry(entry.getKey(), Set.copyOf(failed))))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .flatMap(failedByBucket -> {
+                    // Саги с неудалённым объектом остаются COMPENSATING вместе со строкой - следующий проход повторит
+                    List<SagaStateEntity> compensated = sagas.stream()
+                            .filter(saga -> saga.getStoredFilename() == null || saga.getBucketName() == null
+                                            || !failedByBucket.getOrDefault(saga.getBucketName(), Set.of())
+                                    .contains(saga.getStoredFilename()))
+                            .toList();
+                    if (compensated.size() < sagas.size()) {
+                        log.warn("Objects of {} sagas were not deleted, compensation will be retried",
+                                sagas.size() - compensated.size());
+                    }
+
+                    List<Long> fileIds = compensated.stream()
+                            .map(SagaStateEntity::getFileId)
+                            .filter(Objects::nonNull)
+                            .toList();
+
+                    return (fileIds.isEmpty()
+                            ? Mono.<Void>empty()
+                            : fileRepository.deleteAllById(fileIds).then(fileMetadataCache.evictAll(fileIds)))
+                            .thenMany(sagaStateRepository.saveAll(Flux.fromIterable(compensated)
+                                    .doOnNext(SagaStateEntity::markCompensated)))
+                            .count();
+                })
+                .map(Long::intValue)
+                .onErrorResume(e -> {
+                    log.error("Failed to compensate saga batch, will retry", e);
+                    return Mono.just(0);
+                });
+    }
+
+}
@@ -0,0 +1,152 @@
+package kz.lab.fileuploaderservice.service;
+
+import kz.lab.fileuploaderservice.exception.ResourceNotFoundException;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import kz.lab.fileuploaderservice.repository.FileRepository;
+import kz.lab.fileuploaderservice.storage.DiskObjectCache;
+import kz.lab.fileuploaderservice.util.ZipArchiveStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ArchiveService {
+
+    // Уже сжатые форматы кладём без повторного сжатия
+    private static final List<String> COMPRESSED_TYPE_PREFIXES = List.of(
+            "image/", "video/", "audio/",
+            "application/zip", "application/gzip", "application/x-7z", "application/x-rar"
+    );
+
+    private final FileRepository fileRepository;
+    private final DiskObjectCache diskObjectCache;
+
+    @Value("${application.archive.max-files:1000}")
+    private int maxFiles;
+
+    @Value("${application.archive.prefetch-objects:3}")
+    private int prefetchObjects;
+
+    @Value("${application.archive.prefetch-chunks:4}")
+    private int prefetchChunks;
+
+
+    public Mono<List<FileEntity>> resolveFiles(Long userId, List<Long> fileIds) {
+        Set<Long> uniqueIds = new LinkedHashSet<>(fileIds);
+
+        if (uniqueIds.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("At least one file id is required"));
+        }
+        if (uniqueIds.size() > maxFiles) {
+            return Mono.error(new IllegalArgumentException("Archive may contain at most " + maxFiles + " files"));
+        }
+
+        // Одна выборка и для проверки владельца, и для метаданных
+        return fileRepository.findActiveByIdInAndUserId(uniqueIds, userId, LocalDateTime.now())
+                .collectList()
+                .flatMap(files -> {
+                    if (files.size() != uniqueIds.size()) {
+                        Set<Long> found = files.stream().map(FileEntity::getId).collect(Collectors.toSet());
+                        List<Long> missing = uniqueIds.stream().filter(id -> !found.contains(id)).toList();
+                        return Mono.error(new ResourceNotFoundException("Files not found: ids=" + missing));
+                    }
+
+                    // Порядок записей в архиве = порядок в запросе
+                    Map<Long, FileEntity> byId = files.stream()
+                            .collect(Collectors.toMap(FileEntity::getId, Function.identity()));
+                    return Mono.just(uniqueIds.stream().map(byId::get).toList());
+                });
+    }
+
+    public Flux<DataBuffer> streamArchive(List<FileEntity> files) {
+        log.info("Streaming ZIP archive of {} files", files.size());
+
+        return Flux.using(
+                ZipArchiveStream::new,
+                zip -> {
+                    Map<Long, String> entryNames = assignEntryNames(files);
+
+                    // flatMapSequential подписывается на следующие объекты заранее, но каждый
+                    // держит не больше prefetchChunks чанков - память ограничена независимо от размера файлов
+                    return Flux.fromIterable(files)
+                            .flatMapSequential(file -> Flux.concat(
+                                            Mono.just(ArchiveEvent.start(file)),
+                                            diskObjectCache.read(file.getBucketName(), file.getStoredFilename(), file.getFileSize())
+                                                    .map(ArchiveEvent::data),
+                                            Mono.just(ArchiveEvent.end(file))
+                                    ),
+                                    prefetchObjects,
+                                    prefetchChunks)
+                            .map(event -> switch (event.type()) {
+                                case START -> zip.startEntry(
+                                        entryNames.get(event.file().getId()),
+                                        shouldCompress(event.file().getContentType()));
+                                case DATA -> zip.write(event.chunk());
+                                case END -> zip.closeEntry();
+                            })
+                            .concatWith(Mono.fromCallable(zip::finish))
+                            .filter(bytes -> bytes.length > 0)
+                            .map(DefaultDataBufferFactory.sharedInstance::wrap);
+                },
+                ZipArchiveStream::close
+        )
+                .doOnComplete(() -> log.info("ZIP archive streamed: {} files", files.size()))
+                .doOnCancel(() -> log.warn("ZIP archive download cancelled by client"));
+    }
+
+
+    private Map<Long, String> assignEntryNames(List<FileEntity> files) {
+        Map<Long, String> names = new HashMap<>();
+        Set<String> used = new HashSet<>();
+
+        for (FileEntity file : files) {
+            String baseName = file.getOriginalFilename().replace('/', '_').replace('\\', '_');
+            String name = baseName;
+
+            int dot = baseName.lastIndexOf('.');
+            for (int copy = 1; !used.add(name); copy++) {
+                name = dot > 0
+                        ? baseName.substring(0, dot) + " (" + copy + ")" + baseName.substring(dot)
+                        : baseName + " (" + copy + ")";
+            }
+            names.put(file.getId(), name);
+        }
+        return names;
+    }
+
+    private boolean shouldCompress(String contentType) {
+        return contentType == null
+               || COMPRESSED_TYPE_PREFIXES.stream().noneMatch(contentType::startsWith);
+    }
+
+
+    private record ArchiveEvent(Type type, FileEntity file, ByteBuffer chunk) {
+
+        enum Type { START, DATA, END }
+
+        static ArchiveEvent start(FileEntity file) {
+            return new ArchiveEvent(Type.START, file, null);
+        }
+
+        static ArchiveEvent data(ByteBuffer chunk) {
+            return new ArchiveEvent(Type.DATA, null, chunk);
+        }
+
+        static ArchiveEvent end(FileEntity file) {
+            return new ArchiveEvent(Type.END, file, null);
+        }
+    }
+}
@@ -1,17 +1,32 @@
 package kz.lab.fileuploaderservice.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.lab.fileuploaderservice.cache.FileMetadataCache;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
 import kz.lab.fileuploaderservice.model.entity.IdempotencyRecordEntity;
 import kz.lab.fileuploaderservice.repository.FileRepository;
+import kz.lab.fileuploaderservice.repository.IdempotencyPartitionRepository;
 import kz.lab.fileuploaderservice.repository.IdempotencyRecordRepository;
+import kz.lab.fileuploaderservice.saga.service.SagaRecoveryService;
+import kz.lab.fileuploaderservice.storage.DiskObjectCache;
+import kz.lab.fileuploaderservice.storage.StorageBackend;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -20,30 +35,82 @@ public class CleanupService {
 
 
     private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final IdempotencyPartitionRepository idempotencyPartitionRepository;
     private final FileRepository fileRepository;
-    private final MinioService minioService;
+    private final StorageBackend storageBackend;
+    private final DiskObjectCache diskObjectCache;
+    private final FileMetadataCache fileMetadataCache;
+    private final SagaRecoveryService sagaRecoveryService;
+    private final OperationDeadlineTracker deadlineTracker;
+    private final UploadIntentService uploadIntentService;
+    private final UploadAnalyticsService uploadAnalyticsService;
+    private final MeterRegistry meterRegistry;
 
+    private final AtomicLong defaultPartitionRows = new AtomicLong();
 
-    @Value("${application.cleanup.stale-operation-timeout-minutes:5}")
-    private int staleOperationTimeoutMinutes;
 
     @Value("${application.cleanup.old-records-retention-days:30}")
     private int oldRecordsRetentionDays;
 
+    @Value("${application.cleanup.partitions-ahead-days:7}")
+    private int partitionsAheadDays;
 
+    @Value("${application.cleanup.expired-batch-size:100}")
+    private int expiredBatchSize;
+
+    @Value("${application.cleanup.saga-retry-delay-seconds:30}")
+    private int sagaRetryDelaySeconds;
+
+    @Value("${application.file-expiry.purge-batch-size:500}")
+    private int purgeBatchSize;
+
+    @Value("${application.file-expiry.max-batches-per-run:20}")
+    private int purgeMaxBatchesPerRun;
+
+    // Начало keyset-курсора: раньше любого expires_at
+    private static final LocalDateTime PURGE_CURSOR_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+
+    // Дедлайны из Redis: операция истекает в пределах секунды после своего дедлайна
+    @Scheduled(
+            fixedDelayString = "${application.cleanup.deadline-poll-interval-ms:1000}",
+            initialDelayString = "${application.cleanup.deadline-poll-interval-ms:1000}"
+    )
+    public void expireDueOperations() {
+        LocalDateTime now = LocalDateTime.now();
+
+        deadlineTracker.pollExpired(expiredBatchSize)
+                .concatMap(expired ->
+                        idempotencyRecordRepository.findByUserIdAndIdempotencyKey(
+                                        expired.userId(), expired.idempotencyKey())
+                                .filter(record -> record.isInProgress()
+                                        && record.getDeadlineAt() != null
+                                        && !record.getDeadlineAt().isAfter(now))
+                )
+                .concatMap(this::processStaleOperation)
+                .count()
+                .doOnSuccess(count -> {
+                    if (count > 0) {
+                        log.info("Expired {} operations by deadline", count);
+                    }
+                })
+                .doOnError(e ->
+                        log.error("Error during deadline expiry", e)
+                )
+                .subscribe();
+    }
+
+
+    // Fallback на случай недоступности Redis - идёт по частичному индексу IN_PROGRESS записей
     @Scheduled(
             fixedRate = 5,
             timeUnit = TimeUnit.MINUTES,
             initialDelay = 1
     )
     public void cleanupStaleOperations() {
-        log.info("Starting cleanup of stale operations (timeout: {} minutes)",
-                staleOperationTimeoutMinutes);
-
-        LocalDateTime threshold = LocalDateTime.now()
-                .minusMinutes(staleOperationTimeoutMinutes);
+        log.info("Starting fallback sweep of expired operations");
 
-        idempotencyRecordRepository.findStaleOperations(threshold)
+        idempotencyRecordRepository.findExpiredOperations(LocalDateTime.now(), expiredBatchSize)
                 .flatMap(this::processStaleOperation)
                 .collectList()
                 .doOnSuccess(results -> {
@@ -70,6 +137,27 @@ public class CleanupService {
                 java.time.Duration.between(record.getCreatedAt(), LocalDateTime.now()).toMinutes()
         );
 
+        if (record.getSagaId() != null) {
+            // Сага продолжит загрузку с последнего завершённого шага вместо FAILED
+            return sagaRecoveryService.recover(record.getSagaId())
+                    .doOnSuccess(resumed ->
+                            log.info("Stale operation handed to saga recovery: sagaId={}, resumed={}",
+                                    record.getSagaId(), resumed)
+                    )
+                    .flatMap(resumed -> resumed
+                            ? Mono.just(true)
+                            // Сага ещё не застряла - проверим снова чуть позже
+                            : deadlineTracker.track(
+                                            record.getUserId(),
+                                            record.getIdempotencyKey(),
+                                            LocalDateTime.now().plusSeconds(sagaRetryDelaySeconds))
+                                    .thenReturn(false))
+                    .onErrorResume(e -> {
+                        log.error("Failed to recover saga: sagaId={}", record.getSagaId(), e);
+                        return Mono.just(false);
+                    });
+        }
+
         record.markFailed("Operation timeout - cleaned up by background job");
 
         return idempotencyRecordRepository.save(record)
@@ -77,6 +165,7 @@ public class CleanupService {
                         log.info("Marked stale operation as FAILED: userId={}, idempotencyKey={}",
                                 record.getUserId(), record.getIdempotencyKey())
                 )
+                .flatMap(uploadAnalyticsService::recordFailure)
 //                start deleting file
                 .then(Mono.defer(() -> {
                     if (record.getFileId() == null) {
@@ -93,16 +182,18 @@ public class CleanupService {
                                 log.info("Deleting orphaned file: fileId={}, filename={}",
                                         fileId, storedFilename);
 
-                                return minioService.deleteFile(storedFilename)
-                                        .doOnSuccess(v ->
-                                                log.info("Deleted file from MinIO: {}", storedFilename)
-                                        )
+                                return storageBackend.deleteFile(fileEntity.getBucketName(), storedFilename)
+                                        .doOnSuccess(v -> {
+                                            diskObjectCache.invalidate(fileEntity.getBucketName(), storedFilename);
+                                            log.info("Deleted file from MinIO: {}", storedFilename);
+                                        })
                                         .onErrorResume(e -> {
                                             log.warn("Failed to delete from MinIO: {}", storedFilename, e);
                                             return Mono.empty();
                                         })
                                         // delete from PostgreSQL
                                         .then(fileRepository.deleteById(fileId))
+                                        .then(fileMetadataCache.evict(fileId))
                                         .doOnSuccess(v ->
                                                 log.info("Deleted orphaned file from DB: fileId={}", fileId)
                                         )
@@ -120,24 +211,173 @@ public class CleanupService {
                 });
     }
 
+    // Просроченные файлы уже скрыты из выборок; здесь освобождаем место в хранилище и строки files
+    @Scheduled(
+            fixedDelayString = "${application.file-expiry.purge-interval-ms:60000}",
+            initialDelayString = "${application.file-expiry.purge-interval-ms:60000}"
+    )
+    public void purgeExpiredFiles() {
+        LocalDateTime now = LocalDateTime.now();
+
+        // Курсор идёт дальше и мимо строк, которые не удалось удалить - они достанутся следующему запуску
+        Mono.just(new PurgeCursor(PURGE_CURSOR_START, 0L, 0))
+                .expand(cursor -> fileRepository.findExpiredAfter(now, cursor.expiresAt(), cursor.id(), purgeBatchSize)
+                        .collectList()
+                        .filter(batch -> !batch.isEmpty())
+                        .flatMap(batch -> {
+                            FileEntity last = batch.get(batch.size() - 1);
+                            return purgeBatch(batch)
+                                    .map(purged -> new PurgeCursor(last.getExpiresAt(), last.getId(), purged));
+                        }))
+                .skip(1)
+                .take(purgeMaxBatchesPerRun)
+                .map(PurgeCursor::purged)
+                .reduce(0, Integer::sum)
+                .doOnSuccess(count -> {
+                    if (count > 0) {
+                        log.info("Purged {} expired files", count);
+                    }
+                })
+                .doOnError(e ->
+                        log.error("Error during expired files purge", e)
+                )
+                .subscribe();
+    }
+
+    private Mono<Integer> purgeBatch(List<FileEntity> batch) {
+        // Один DeleteObjects на бакет вместо DeleteObject на каждый файл
+        Map<String, List<FileEntity>> byBucket = batch.stream()
+                .collect(Collectors.groupingBy(FileEntity::getBucketName));
+
+        return Flux.fromIterable(byBucket.entrySet())
+                .concatMap(entry -> {
+                    String bucketName = entry.getKey();
+                    List<FileEntity> files = entry.getValue();
+
+                    return storageBackend.deleteFiles(bucketName,
+                                    files.stream().map(FileEntity::getStoredFilename).toList())
+                            .flatMap(failed -> {
+                                // Строка удаляется только после объекта: иначе объект останется сиротой.
+                                // Файлы с неудалённым объектом остаются истёкшими - следующий запуск повторит
+                                List<FileEntity> deleted = files.stream()
+                                        .filter(file -> !failed.contains(file.getStoredFilename()))
+                                        .toList();
+                                if (deleted.size() < files.size()) {
+                                    log.warn("Failed to delete {} expired objects: bucket={}",
+                                            files.size() - deleted.size(), bucketName);
+                                }
+                                if (deleted.isEmpty()) {
+                                    return Mono.just(0);
+                                }
+
+                                List<Long> ids = deleted.stream().map(FileEntity::getId).toList();
+                                deleted.forEach(file -> diskObjectCache.invalidate(bucketName, file.getStoredFilename()));
+                                return fileRepository.deleteAllById(ids)
+                                        .then(fileMetadataCache.evictAll(ids))
+                                        .thenReturn(deleted.size());
+                            })
+                            .onErrorResume(e -> {
+                                log.warn("Failed to purge expired files: bucket={}, count={}",
+                                        bucketName, files.size(), e);
+                                return Mono.just(0);
+                            });
+                })
+                .reduce(0, Integer::sum);
+    }
+
+    // Незавершённые presigned загрузки: удаляем объекты/multipart и освобождаем ключ
+    @Scheduled(fixedDelayString = "${application.upload-intents.expiry-interval-ms:60000}")
+    public void expireUploadIntents() {
+        uploadIntentService.expireIntents(expiredBatchSize)
+                .doOnSuccess(count -> {
+                    if (count > 0) {
+                        log.info("Expired {} upload intents", count);
+                    }
+                })
+                .doOnError(e ->
+                        log.error("Error during upload intent expiry", e)
+                )
+                .subscribe();
+    }
+
     @Scheduled(cron = "0 0 0 * * *")  // 00.00 everyday
     public void cleanupOldRecords() {
+        dropOldRecords()
+                .doOnError(e ->
+                        log.error("Error during old records cleanup", e)
+                )
+                .subscribe();
+    }
+
+    Mono<Long> dropOldRecords() {
         log.info("Starting cleanup of old records (retention: {} days)",
                 oldRecordsRetentionDays);
 
-        LocalDateTime threshold = LocalDateTime.now()
-                .minusDays(oldRecordsRetentionDays);
+        LocalDate cutoff = LocalDate.now().minusDays(oldRecordsRetentionDays);
 
-        idempotencyRecordRepository.deleteOldRecords(threshold)
+        return idempotencyPartitionRepository.findPartitionsBefore(cutoff)
+                .concatMap(partition -> idempotencyPartitionRepository.hasInProgressRecords(partition)
+                        .flatMap(hasInProgress -> {
+                            if (hasInProgress) {
+                                log.warn("Skipping partition with IN_PROGRESS records: {}", partition);
+                                return Mono.just(false);
+                            }
+                            return idempotencyPartitionRepository.detachAndDrop(partition)
+                                    .thenReturn(true);
+                        })
+                        // Не дождались блокировки - секция останется до следующего запуска, остальные удаляем
+                        .onErrorResume(e -> {
+                            log.warn("Failed to drop idempotency partition: partition={}, error={}",
+                                    partition, e.toString());
+                            return Mono.just(false);
+                        })
+                )
+                .filter(dropped -> dropped)
+                .count()
+                .flatMap(count -> idempotencyPartitionRepository.deleteDefaultPartitionRowsBefore(cutoff)
+                        .doOnNext(deleted -> {
+                            if (deleted > 0) {
+                                log.info("Deleted {} old rows from the default idempotency partition", deleted);
+                            }
+                        })
+                        .thenReturn(count))
                 .doOnSuccess(count -> {
                     if (count > 0) {
-                        log.info("Deleted {} old idempotency records", count);
+                        log.info("Dropped {} old idempotency partitions", count);
                     } else {
-                        log.debug("No old records to delete");
+                        log.debug("No old partitions to drop");
+                    }
+                });
+    }
+
+
+    // И сразу при старте: узел, простоявший выключенным, не должен час писать в DEFAULT
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(
+            fixedRate = 1,
+            timeUnit = TimeUnit.HOURS,
+            initialDelay = 1
+    )
+    public void ensureFuturePartitions() {
+        LocalDate today = LocalDate.now();
+
+        Flux.range(0, partitionsAheadDays + 1)
+                .map(today::plusDays)
+                .concatMap(idempotencyPartitionRepository::createPartition)
+                .count()
+                .doOnSuccess(count ->
+                        log.debug("Ensured {} idempotency partitions ahead", count)
+                )
+                // Новые секции забирают строки своего дня из DEFAULT; остаток > 0 - повод для алерта
+                .then(idempotencyPartitionRepository.countDefaultPartitionRows())
+                .doOnNext(rows -> {
+                    meterRegistry.gauge("idempotency.partitions.default.rows", defaultPartitionRows).set(rows);
+                    if (rows > 0) {
+                        log.warn("Default idempotency partition holds {} rows - partitions are not created ahead", rows);
                     }
                 })
                 .doOnError(e ->
-                        log.error("Error during old records cleanup", e)
+                        log.error("Failed to create idempotency partitions", e)
                 )
                 .subscribe();
     }
@@ -145,10 +385,7 @@ public class CleanupService {
     public Mono<Long> manualCleanupStaleOperations() {
         log.info("Manual cleanup triggered");
 
-        LocalDateTime threshold = LocalDateTime.now()
-                .minusMinutes(staleOperationTimeoutMinutes);
-
-        return idempotencyRecordRepository.findStaleOperations(threshold)
+        return idempotencyRecordRepository.findExpiredOperations(LocalDateTime.now(), expiredBatchSize)
                 .flatMap(this::processStaleOperation)
                 .filter(result -> result)
                 .count()
@@ -158,11 +395,11 @@ public class CleanupService {
     }
 
     public Mono<Long> getStaleOperationsCount() {
-        LocalDateTime threshold = LocalDateTime.now()
-                .minusMinutes(staleOperationTimeoutMinutes);
+        return idempotencyRecordRepository.countExpiredOperations(LocalDateTime.now());
+    }
+
 
-        return idempotencyRecordRepository.findStaleOperations(threshold)
-                .count();
+    private record PurgeCursor(LocalDateTime expiresAt, Long id, int purged) {
     }
 
 }
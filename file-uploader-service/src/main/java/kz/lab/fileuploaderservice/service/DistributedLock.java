@@ -0,0 +1,62 @@
+package kz.lab.fileuploaderservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Redis lock for background jobs. Every acquisition gets its own token; extend and release
+ * are compare-and-set scripts, so a run that outlived its TTL cannot touch a lock that
+ * another node has taken since.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class DistributedLock {
+
+    private static final RedisScript<Long> RELEASE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/lock_release.lua"), Long.class);
+    private static final RedisScript<Long> EXTEND_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/lock_extend.lua"), Long.class);
+
+    private final ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+
+
+    // Пусто - блокировку держит другой узел
+    public Mono<String> tryAcquire(String key, Duration ttl) {
+        String token = UUID.randomUUID().toString();
+
+        return reactiveRedisTemplate.opsForValue()
+                .setIfAbsent(key, token, ttl)
+                .filter(Boolean::booleanValue)
+                .map(acquired -> token);
+    }
+
+    // false - блокировка истекла и, возможно, уже у другого узла: работу надо прекратить
+    public Mono<Boolean> extend(String key, String token, Duration ttl) {
+        return reactiveRedisTemplate.execute(EXTEND_SCRIPT, List.of(key), List.of(token, String.valueOf(ttl.toMillis())))
+                .next()
+                .map(result -> result == 1L)
+                .defaultIfEmpty(false);
+    }
+
+    public Mono<Void> release(String key, String token) {
+        return reactiveRedisTemplate.execute(RELEASE_SCRIPT, List.of(key), List.of(token))
+                .next()
+                .doOnNext(released -> {
+                    if (released == 0L) {
+                        log.warn("Lock expired before release: key={}", key);
+                    }
+                })
+                .then();
+    }
+
+}
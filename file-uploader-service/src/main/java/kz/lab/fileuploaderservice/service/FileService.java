@@ -1,48 +1,108 @@
 package kz.lab.fileuploaderservice.service;
 
+import kz.lab.fileuploaderservice.cache.FileMetadataCache;
 import kz.lab.fileuploaderservice.dto.FileInfoResponse;
+import kz.lab.fileuploaderservice.dto.FileSearchCriteria;
+import kz.lab.fileuploaderservice.dto.FileSearchCursor;
+import kz.lab.fileuploaderservice.dto.FileSearchResponse;
 import kz.lab.fileuploaderservice.exception.ResourceNotFoundException;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
 import kz.lab.fileuploaderservice.repository.FileRepository;
+import kz.lab.fileuploaderservice.storage.DiskObjectCache;
+import kz.lab.fileuploaderservice.storage.StorageBackend;
+import kz.lab.fileuploaderservice.timing.ServerTimings;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class FileService {
 
     private final FileRepository fileRepository;
-    private final MinioService minioService;
+    private final StorageBackend storageBackend;
+    private final DiskObjectCache diskObjectCache;
+    private final FileMetadataCache fileMetadataCache;
+    private final ReactiveTransactionManager transactionManager;
+
+    @Value("${application.export.fetch-size:500}")
+    private int exportFetchSize;
 
 
     public Flux<FileInfoResponse> getUserFiles(Long userId, int page, int size){
         log.info("Fetching files for user: {}, page: {}, size: {}", userId, page, size);
 
-        PageRequest pageRequest = PageRequest.of(
-                page,
-                size,
-                Sort.by(Sort.Direction.DESC, "uploadedAt")
-        );
-
-        return fileRepository.findByUserId(userId, pageRequest)
+        return ServerTimings.timed("db", fileRepository.findActiveByUserId(userId, LocalDateTime.now(), size, (long) page * size))
                 .map(FileInfoResponse::from)
                 .doOnComplete(() ->
                         log.info("Fetched files for user: {}", userId)
                 );
     }
 
+    public Mono<FileSearchResponse> searchFiles(Long userId, FileSearchCriteria criteria, String cursor, int size){
+        log.info("Searching files for user: {}, name={}, contentType={}, size={}",
+                userId, criteria.getName(), criteria.getContentType(), size);
+
+        FileSearchCursor after = cursor != null && !cursor.isBlank()
+                ? FileSearchCursor.decode(cursor)
+                : null;
+
+        // +1 строка, чтобы понять, есть ли следующая страница
+        return ServerTimings.timed("db", fileRepository.search(userId, criteria, after, size + 1))
+                .collectList()
+                .map(files -> {
+                    boolean hasMore = files.size() > size;
+                    List<FileEntity> page = hasMore ? files.subList(0, size) : files;
+
+                    String nextCursor = null;
+                    if (hasMore) {
+                        FileEntity last = page.get(page.size() - 1);
+                        nextCursor = new FileSearchCursor(last.getUploadedAt(), last.getId()).encode();
+                    }
+
+                    return new FileSearchResponse(
+                            page.stream().map(FileInfoResponse::from).toList(),
+                            nextCursor
+                    );
+                })
+                .doOnSuccess(response ->
+                        log.info("Found {} files for user: {}", response.getItems().size(), userId)
+                );
+    }
+
+    public Flux<FileInfoResponse> exportUserFiles(Long userId){
+        log.info("Exporting all files for user: {}", userId);
+
+        // Курсор живёт только внутри транзакции; read-only даёт согласованный снимок на весь экспорт
+        DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+        definition.setReadOnly(true);
+        TransactionalOperator readOnlyOperator = TransactionalOperator.create(transactionManager, definition);
+
+        return fileRepository.streamByUserId(userId, exportFetchSize)
+                .map(FileInfoResponse::from)
+                .limitRate(exportFetchSize)
+                .as(readOnlyOperator::transactional)
+                .doOnComplete(() ->
+                        log.info("Exported files for user: {}", userId)
+                );
+    }
+
     public Mono<FileInfoResponse> getFileInfo(Long fileId, Long userId){
         log.info("Fetching file info: fileId={}, userId={}", fileId, userId);
 
-        return fileRepository.findByIdAndUserId(fileId, userId)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException(
-                        String.format("File not found: id=%d", fileId)
-                )))
+        return findActiveFile(fileId, userId)
                 .map(FileInfoResponse::from)
                 .doOnSuccess(response ->
                         log.info("Found file: id={}, name={}", fileId, response.getOriginalFilename())
@@ -52,35 +112,43 @@ public class FileService {
     public Mono<String> getDownloadUrl(Long fileId, Long userId){
         log.info("Generating download URL: fileId={}, userId={}", fileId, userId);
 
-        return fileRepository.findByIdAndUserId(fileId, userId)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException(
-                        String.format("File not found: id=%d", fileId)
-                )))
-                .flatMap(file ->
-                    minioService.generatePresignedDownloadUrl(file.getStoredFilename())
-                )
+        return findActiveFile(fileId, userId)
+                .flatMap(file -> ServerTimings.timed("presign",
+                    storageBackend.generateDownloadUrl(file.getBucketName(), file.getStoredFilename())
+                ))
                 .doOnSuccess(url ->
                         log.info("Generated download URL for file: {}", fileId)
                 );
     }
 
+    public Mono<FileEntity> getFile(Long fileId, Long userId){
+        return findActiveFile(fileId, userId);
+    }
+
+    // Отдача через сервис идёт через дисковый кеш - горячие файлы не читаются из MinIO повторно
+    public Flux<DataBuffer> streamFileContent(FileEntity file){
+        log.info("Streaming file content: fileId={}", file.getId());
+
+        return diskObjectCache.read(file.getBucketName(), file.getStoredFilename(), file.getFileSize())
+                .map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+
     public Mono<Void> deleteFile(Long fileId, Long userId){
         log.info("Deleting file: fileId={}, userId={}", fileId, userId);
 
-        return fileRepository.findByIdAndUserId(fileId, userId)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException(
-                        String.format("File not found: id=%d", fileId)
-                )))
+        return findActiveFile(fileId, userId)
                 .flatMap(file -> {
                     String storedFilename = file.getStoredFilename();
-                    return minioService.deleteFile(storedFilename)
-                            .doOnSuccess(v ->
-                                    log.info("Deleted file from MinIO: {}", storedFilename)
-                            )
-                            .then(fileRepository.deleteById(fileId))
+                    return ServerTimings.timed("storage", storageBackend.deleteFile(file.getBucketName(), storedFilename))
+                            .doOnSuccess(v -> {
+                                diskObjectCache.invalidate(file.getBucketName(), storedFilename);
+                                log.info("Deleted file from MinIO: {}", storedFilename);
+                            })
+                            .then(ServerTimings.timed("db", fileRepository.deleteById(fileId)))
                             .doOnSuccess(v ->
                                     log.info("Deleted file from database: fileId={}", fileId)
-                            );
+                            )
+                            .then(fileMetadataCache.evict(fileId));
                 })
                 .then()
                 .doOnSuccess(v ->
@@ -92,10 +160,19 @@ public class FileService {
                 });
     }
 
+    // Горячие метаданные отдаются из кеша, не занимая соединение пула
+    private Mono<FileEntity> findActiveFile(Long fileId, Long userId) {
+        return ServerTimings.timed("metadata", fileMetadataCache.get(fileId, userId, () ->
+                        ServerTimings.timed("db", fileRepository.findActiveByIdAndUserId(fileId, userId, LocalDateTime.now()))))
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException(
+                        String.format("File not found: id=%d", fileId)
+                )));
+    }
+
     public Mono<Long> getUserFilesCount(Long userId) {
         log.debug("Counting files for user: {}", userId);
 
-        return fileRepository.countByUserId(userId)
+        return ServerTimings.timed("db", fileRepository.countActiveByUserId(userId, LocalDateTime.now()))
                 .doOnSuccess(count ->
                         log.debug("User {} has {} files", userId, count)
                 );
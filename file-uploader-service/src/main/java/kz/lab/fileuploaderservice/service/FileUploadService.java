@@ -1,19 +1,30 @@
 package kz.lab.fileuploaderservice.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import kz.lab.fileuploaderservice.dto.FileUploadResponse;
-import kz.lab.fileuploaderservice.model.entity.FileEntity;
-import kz.lab.fileuploaderservice.repository.FileRepository;
+import kz.lab.fileuploaderservice.exception.FileSizeExceededException;
+import kz.lab.fileuploaderservice.progress.UploadProgressTracker;
+import kz.lab.fileuploaderservice.progress.UploadStage;
+import kz.lab.fileuploaderservice.saga.service.FileUploadSagaOrchestrator;
+import kz.lab.fileuploaderservice.storage.StorageBackend;
+import kz.lab.fileuploaderservice.storage.UploadResult;
+import kz.lab.fileuploaderservice.timing.ServerTimings;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @RequiredArgsConstructor
@@ -22,11 +33,17 @@ public class FileUploadService {
 
 
     private final IdempotencyService idempotencyService;
-    private final MinioService minioService;
-    private final FileRepository fileRepository;
+    private final StorageBackend storageBackend;
+    private final FileUploadSagaOrchestrator sagaOrchestrator;
+    private final UploadProgressTracker progressTracker;
+    private final FileService fileService;
+    private final MeterRegistry meterRegistry;
 
-    @Value("${application.minio.bucket-name}")
-    private String bucketName;
+    @Value("${application.file-expiry.max-ttl-days:30}")
+    private int maxTtlDays;
+
+    @Value("${application.minio.max-file-size}")
+    private long maxFileSize;
 
 
 
@@ -34,17 +51,33 @@ public class FileUploadService {
     public Mono<FileUploadResponse> uploadFile(
             Mono<FilePart> filePartMono,
             Long userId,
-            UUID idempotencyKey) {
-        log.info("Starting file upload: user={}, idempotencyKey={}", userId, idempotencyKey);
+            UUID idempotencyKey,
+            LocalDateTime expiresAt) {
+        log.info("Starting file upload: user={}, idempotencyKey={}, expiresAt={}", userId, idempotencyKey, expiresAt);
+
+        String invalidExpiry = validateExpiresAt(expiresAt);
+        if (invalidExpiry != null) {
+            return Mono.error(new IllegalArgumentException(invalidExpiry));
+        }
 
-        return idempotencyService.checkRedisCache(userId, idempotencyKey)
+        // Стадии для Server-Timing; без семплирования timed ничего не меряет
+        return ServerTimings.timed("redis", idempotencyService.checkRedisCache(userId, idempotencyKey))
 //                check redis cache
                 .switchIfEmpty(
 //                        check db
-                        idempotencyService.checkAndReserveIdempotency(userId, idempotencyKey)
+                        ServerTimings.timed("idempotency-db", idempotencyService.checkAndReserveIdempotency(userId, idempotencyKey))
                                 .switchIfEmpty(
 //                                        new file
-                                        performFileUpload(filePartMono, userId, idempotencyKey)
+                                        filePartMono.flatMap(filePart -> performFileUpload(
+                                                filePart.filename(),
+                                                filePart.headers().getContentType() != null
+                                                        ? filePart.headers().getContentType().toString()
+                                                        : "application/octet-stream",
+                                                filePart.content(),
+                                                "multipart",
+                                                userId,
+                                                idempotencyKey,
+                                                expiresAt))
                                 )
                 )
                 .doOnSuccess(response ->
@@ -53,61 +86,203 @@ public class FileUploadService {
                 .onErrorResume(e -> handleUploadError(e, userId, idempotencyKey));
     }
 
-    private Mono<FileUploadResponse> performFileUpload(Mono<FilePart> filePartMono, Long userId, UUID idempotencyKey) {
+    // Тело запроса = содержимое файла: без разбора multipart и без временных файлов
+    public Mono<FileUploadResponse> uploadRaw(
+            String originalFilename,
+            String contentType,
+            Long contentLength,
+            Flux<DataBuffer> body,
+            Long userId,
+            UUID idempotencyKey,
+            LocalDateTime expiresAt) {
+        log.info("Starting raw upload: user={}, idempotencyKey={}, filename={}, contentLength={}",
+                userId, idempotencyKey, originalFilename, contentLength);
+
+        if (originalFilename == null || originalFilename.isBlank()) {
+            return Mono.error(new IllegalArgumentException("X-File-Name header is required"));
+        }
+        String invalidExpiry = validateExpiresAt(expiresAt);
+        if (invalidExpiry != null) {
+            return Mono.error(new IllegalArgumentException(invalidExpiry));
+        }
+        // Content-Length известен заранее - отказываем до чтения тела
+        if (contentLength != null && contentLength > maxFileSize) {
+            return Mono.error(new FileSizeExceededException(
+                    "File size " + contentLength + " exceeds limit of " + maxFileSize + " bytes"));
+        }
+
+        // Chunked-тело без Content-Length ограничиваем по мере чтения
+        Flux<DataBuffer> limitedBody = limitSize(body, maxFileSize);
+
+        return ServerTimings.timed("redis", idempotencyService.checkRedisCache(userId, idempotencyKey))
+                .switchIfEmpty(
+                        ServerTimings.timed("idempotency-db", idempotencyService.checkAndReserveIdempotency(userId, idempotencyKey))
+                                .switchIfEmpty(Mono.defer(() -> performFileUpload(
+                                        originalFilename,
+                                        contentType,
+                                        limitedBody,
+                                        "raw",
+                                        userId,
+                                        idempotencyKey,
+                                        expiresAt)))
+                )
+                .doOnSuccess(response ->
+                        log.info("Raw upload completed successfully: fileId={}", response.getFileId())
+                )
+                .onErrorResume(e -> handleUploadError(e, userId, idempotencyKey));
+    }
+
+    // Новый файл с тем же содержимым; байты копирует хранилище, через сервис идут только метаданные
+    public Mono<FileUploadResponse> copyFile(
+            Long sourceFileId,
+            Long userId,
+            UUID idempotencyKey,
+            LocalDateTime expiresAt) {
+        log.info("Starting file copy: user={}, sourceFileId={}, idempotencyKey={}", userId, sourceFileId, idempotencyKey);
+
+        String invalidExpiry = validateExpiresAt(expiresAt);
+        if (invalidExpiry != null) {
+            return Mono.error(new IllegalArgumentException(invalidExpiry));
+        }
+
+        return ServerTimings.timed("redis", idempotencyService.checkRedisCache(userId, idempotencyKey))
+                .switchIfEmpty(
+                        ServerTimings.timed("idempotency-db", idempotencyService.checkAndReserveIdempotency(userId, idempotencyKey))
+                                .switchIfEmpty(Mono.defer(() ->
+                                        performFileCopy(sourceFileId, userId, idempotencyKey, expiresAt)))
+                )
+                .doOnSuccess(response ->
+                        log.info("File copy completed successfully: fileId={}", response.getFileId())
+                )
+                .onErrorResume(e -> handleUploadError(e, userId, idempotencyKey));
+    }
+
+    private Mono<FileUploadResponse> performFileCopy(
+            Long sourceFileId, Long userId, UUID idempotencyKey, LocalDateTime expiresAt) {
+
+        return fileService.getFile(sourceFileId, userId)
+                .flatMap(source -> {
+                    String storedFilename = storageBackend.generateStoredFilename(userId, source.getOriginalFilename());
+                    String bucketName = storageBackend.resolveCopyBucket(source.getBucketName(), storedFilename);
 
-        return filePartMono.flatMap(filePart -> {
-            String originalFilename = filePart.filename();
-            String contentType = filePart.headers().getContentType() != null
-                    ? filePart.headers().getContentType().toString()
-                    : "application/octet-stream";
+                    // Та же сага, что и у загрузки: при сбое копия удаляется компенсацией
+                    return ServerTimings.timed("saga-begin", sagaOrchestrator.begin(
+                                    userId,
+                                    idempotencyKey,
+                                    source.getOriginalFilename(),
+                                    source.getContentType(),
+                                    storedFilename,
+                                    bucketName,
+                                    expiresAt
+                            ))
+                            .flatMap(saga -> ServerTimings.timed("storage", sagaOrchestrator.withHeartbeat(saga, storageBackend.copyFile(
+                                            source.getBucketName(),
+                                            source.getStoredFilename(),
+                                            bucketName,
+                                            storedFilename,
+                                            source.getContentType(),
+                                            source.getFileSize())))
+                                    .then(Mono.defer(() -> ServerTimings.timed("saga-db", sagaOrchestrator.objectStored(saga, new UploadResult(
+                                            storageBackend.buildStorageUrl(bucketName, storedFilename),
+                                            storedFilename,
+                                            source.getFileSize())))))
+                                    .flatMap(stored -> ServerTimings.timed("completion", sagaOrchestrator.proceed(stored)))
+                                    .onErrorResume(e ->
+                                            sagaOrchestrator.abort(saga, e).then(Mono.error(e))
+                                    )
+                            );
+                });
+    }
+
+    // Общий путь для multipart и raw: отличается только источник байтов
+    private Mono<FileUploadResponse> performFileUpload(
+            String originalFilename,
+            String contentType,
+            Flux<DataBuffer> content,
+            String mode,
+            Long userId,
+            UUID idempotencyKey,
+            LocalDateTime expiresAt) {
 
+        String storedFilename = storageBackend.generateStoredFilename(userId, originalFilename);
+        String bucketName = storageBackend.resolveBucket(storedFilename);
 
-            return minioService.uploadFile(
-                    userId,
-                    originalFilename,
-                    contentType,
-                    filePart.content()
+        UploadProgressTracker.Handle progress = progressTracker.start(userId, idempotencyKey);
+
+        return ServerTimings.timed("saga-begin", sagaOrchestrator.begin(
+                        userId,
+                        idempotencyKey,
+                        originalFilename,
+                        contentType,
+                        storedFilename,
+                        bucketName,
+                        expiresAt
+                ))
+                // storage включает и приём тела запроса от клиента
+                .flatMap(saga -> ServerTimings.timed("storage", timedIngest(mode, sagaOrchestrator.withHeartbeat(saga, storageBackend.uploadFile(
+                                bucketName,
+                                storedFilename,
+                                contentType,
+                                content
+                                        .doOnNext(buffer -> progress.received(buffer.readableByteCount()))
+                                        .doOnComplete(() -> progress.stage(UploadStage.STORING)),
+                                progress::storing
+                        ))))
+                        .doOnNext(uploadResult -> progress.stored(uploadResult.getFileSize()))
+                        .flatMap(uploadResult -> ServerTimings.timed("saga-db", sagaOrchestrator.objectStored(saga, uploadResult)))
+                        .flatMap(stored -> ServerTimings.timed("completion", sagaOrchestrator.proceed(stored)))
+                        .onErrorResume(e ->
+                                sagaOrchestrator.abort(saga, e).then(Mono.error(e))
+                        )
                 )
-                .flatMap(uploadResult -> {
-                    FileEntity fileEntity = FileEntity.builder()
-                            .userId(userId)
-                            .originalFilename(originalFilename)
-                            .storedFilename(uploadResult.getStoredFilename())
-                            .contentType(contentType)
-                            .fileSize(uploadResult.getFileSize())
-                            .storageUrl(uploadResult.getStorageUrl())
-                            .bucketName(bucketName)
-                            .uploadedAt(LocalDateTime.now())
-                            .build();
-
-                    return fileRepository.save(fileEntity)
-                            .flatMap(savedFile -> {
-                                return minioService.generatePresignedDownloadUrl(savedFile.getStoredFilename())
-                                        .map(downloadUrl -> {
-                                            FileUploadResponse response = new FileUploadResponse(
-                                                    savedFile.getId(),
-                                                    savedFile.getOriginalFilename(),
-                                                    savedFile.getFileSize(),
-                                                    savedFile.getContentType(),
-                                                    downloadUrl,
-                                                    savedFile.getUploadedAt());
-
-                                            return new UploadResult(savedFile.getId(), response);
-                                        });
-                            });
-                })
-                .flatMap(result ->
-                    idempotencyService.saveCompletedOperation(
-                            userId,
-                            idempotencyKey,
-                            result.fileId,
-                            result.response
-                    )
-                    .thenReturn(result.response)
-                );
+                .doOnSuccess(response -> progress.finish(UploadStage.COMPLETED))
+                .doOnError(e -> progress.finish(UploadStage.FAILED))
+                .doOnCancel(() -> progress.finish(UploadStage.FAILED));
+    }
+
+    // Приём и запись байтов по режимам: throughput multipart vs raw = upload.ingest.bytes / upload.ingest.time
+    private Mono<UploadResult> timedIngest(String mode, Mono<UploadResult> upload) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return upload.doOnSuccess(result -> {
+                meterRegistry.timer("upload.ingest.time", "mode", mode)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                meterRegistry.summary("upload.ingest.bytes", "mode", mode)
+                        .record(result.getFileSize());
+            });
+        });
+    }
+
+    // Ошибка на первом буфере, который выводит тело за предел; он освобождается, остальные не читаются
+    static Flux<DataBuffer> limitSize(Flux<DataBuffer> body, long maxBytes) {
+        return Flux.defer(() -> {
+            AtomicLong received = new AtomicLong();
+            return body.handle((buffer, sink) -> {
+                if (received.addAndGet(buffer.readableByteCount()) > maxBytes) {
+                    DataBufferUtils.release(buffer);
+                    sink.error(new FileSizeExceededException("File exceeds limit of " + maxBytes + " bytes"));
+                } else {
+                    sink.next(buffer);
+                }
+            });
         });
     }
 
+    // null - срок корректен или не задан
+    private String validateExpiresAt(LocalDateTime expiresAt) {
+        if (expiresAt == null) {
+            return null;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (!expiresAt.isAfter(now)) {
+            return "expiresAt must be in the future";
+        }
+        if (expiresAt.isAfter(now.plusDays(maxTtlDays))) {
+            return "expiresAt must be within " + maxTtlDays + " days";
+        }
+        return null;
+    }
+
     private Mono<FileUploadResponse> handleUploadError(Throwable e, Long userId, UUID idempotencyKey) {
         log.error("File upload failed: user={}, key={}, error={}",
                 userId, idempotencyKey, e.getMessage(), e);
@@ -118,22 +293,4 @@ public class FileUploadService {
                 e.getMessage()
         ).then(Mono.error(e));
     }
-
-    private String extractStoredFilename(String storageUrl) {
-        int bucketIndex = storageUrl.indexOf(bucketName);
-        if (bucketIndex >= 0) {
-            return storageUrl.substring(bucketIndex + bucketName.length() + 1);
-        }
-        return storageUrl;
-    }
-
-    private static class UploadResult {
-        final Long fileId;
-        final FileUploadResponse response;
-
-        UploadResult(Long fileId, FileUploadResponse response) {
-            this.fileId = fileId;
-            this.response = response;
-        }
-    }
 }
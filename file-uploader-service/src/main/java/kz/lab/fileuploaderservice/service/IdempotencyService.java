@@ -5,9 +5,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.r2dbc.postgresql.codec.Json;
 import kz.lab.fileuploaderservice.dto.FileUploadResponse;
 import kz.lab.fileuploaderservice.exception.IdempotencyConflictException;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
 import kz.lab.fileuploaderservice.model.entity.IdempotencyRecordEntity;
 import kz.lab.fileuploaderservice.model.entity.IdempotencyStatus;
 import kz.lab.fileuploaderservice.repository.IdempotencyRecordRepository;
+import kz.lab.fileuploaderservice.repository.MetadataBatchWriter;
+import kz.lab.fileuploaderservice.resilience.RedisGuard;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,6 +20,7 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Service
@@ -25,20 +29,27 @@ import java.util.UUID;
 public class IdempotencyService {
 
     private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final MetadataBatchWriter metadataBatchWriter;
     private final ReactiveRedisTemplate<String,String> reactiveRedisTemplate;
     private final ObjectMapper objectMapper;
+    private final OperationDeadlineTracker deadlineTracker;
+    private final RedisGuard redisGuard;
+    private final UploadAnalyticsService uploadAnalyticsService;
 
     @Value("${application.idempotency.redis-ttl:86400}")
     private long redisTtl;
 
+    @Value("${application.idempotency.operation-timeout:300000}")
+    private long operationTimeout;
+
 
     public Mono<FileUploadResponse> checkRedisCache(Long userId, UUID idempotencyKey){
         String redisKey = buildRedisKey(userId, idempotencyKey);
 
         log.debug("Checking Redis cache for key: {}", redisKey);
 
-        return reactiveRedisTemplate.opsForValue()
-                .get(redisKey)
+        // При медленном/недоступном Redis - промах, проверка уйдёт в PostgreSQL
+        return redisGuard.read("idempotency-get", reactiveRedisTemplate.opsForValue().get(redisKey))
                 .flatMap(cachedJson -> {
                     log.info("Found cached result in Redis for key: {}", redisKey);
 
@@ -51,8 +62,8 @@ public class IdempotencyService {
                     } catch (JsonProcessingException e){
                         log.error("Failed to deserialize cached response from Redis", e);
 
-                        return reactiveRedisTemplate.delete(redisKey)
-                                .then(Mono.empty());
+                        redisGuard.write("idempotency-delete", redisKey, () -> reactiveRedisTemplate.delete(redisKey));
+                        return Mono.empty();
                     }
                 })
                 .doOnNext(response ->
@@ -89,8 +100,10 @@ public class IdempotencyService {
 
                             existingRecord.setStatus(IdempotencyStatus.IN_PROGRESS);
                             existingRecord.setErrorMessage(null);
+                            existingRecord.markDeadline(nextDeadline());
 
                             return idempotencyRecordRepository.save(existingRecord)
+                                    .flatMap(saved -> deadlineTracker.track(userId, idempotencyKey, saved.getDeadlineAt()))
                                     .then(Mono.empty());
 
                         default:
@@ -124,17 +137,67 @@ public class IdempotencyService {
             return Mono.error(e);
         }
 
+        // Один UPDATE на пачку параллельных завершений вместо SELECT + UPDATE на каждое
+        return metadataBatchWriter.completeIdempotency(userId, idempotencyKey, fileId, responseJson)
+                .flatMap(updated -> updated
+                        ? afterCompleted(userId, idempotencyKey, response)
+                        : Mono.error(lateCompletion(idempotencyKey)))
+                .doOnSuccess(v ->
+                        log.info("Successfully saved completed operation for key: {}", idempotencyKey)
+                )
+                .then();
+    }
+
+
+    // Строка files и COMPLETED idempotency-запись появляются одним statement.
+    // Пусто, если файл с таким stored_filename уже сохранён - тогда завершаем через saveCompletedOperation.
+    // IdempotencyConflictException, если запись уже не IN_PROGRESS: вставленная строка остаётся в file.getId()
+    public Mono<FileEntity> completeWithFile(FileEntity file, UUID idempotencyKey, FileUploadResponse response) {
+        String responseJson;
+        try {
+            responseJson = objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize response", e);
+            return Mono.error(e);
+        }
+
+        return metadataBatchWriter.insertFileAndComplete(file, idempotencyKey, responseJson)
+                .flatMap(inserted -> inserted.completed()
+                        ? Mono.just(inserted.file())
+                        : Mono.error(lateCompletion(idempotencyKey)))
+                .flatMap(savedFile -> {
+                    response.setFileId(savedFile.getId());
+                    log.info("Saved file and completed operation atomically: user={}, key={}, fileId={}",
+                            file.getUserId(), idempotencyKey, savedFile.getId());
+
+                    return afterCompleted(file.getUserId(), idempotencyKey, response)
+                            .thenReturn(savedFile);
+                });
+    }
+
+
+    // Для операций дольше operation-timeout (например, загрузка клиентом по presigned URL)
+    public Mono<Void> extendDeadline(Long userId, UUID idempotencyKey, LocalDateTime deadlineAt) {
         return idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey)
+                .filter(IdempotencyRecordEntity::isInProgress)
                 .flatMap(record -> {
-                    record.markCompleted(fileId, responseJson);
+                    record.markDeadline(deadlineAt);
+                    return idempotencyRecordRepository.save(record);
+                })
+                .flatMap(saved -> deadlineTracker.track(userId, idempotencyKey, deadlineAt))
+                .then();
+    }
+
+
+    public Mono<Void> linkToSaga(Long userId, UUID idempotencyKey, UUID sagaId) {
+        log.debug("Linking idempotency record to saga: user={}, key={}, sagaId={}",
+                userId, idempotencyKey, sagaId);
+
+        return idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey)
+                .flatMap(record -> {
+                    record.linkToSaga(sagaId);
                     return idempotencyRecordRepository.save(record);
                 })
-                .flatMap(savedRecord ->
-                    cacheResponse(userId, idempotencyKey, response)
-                )
-                .doOnSuccess(v ->
-                        log.info("Successfully saved completed operation for key: {}", idempotencyKey)
-                )
                 .then();
     }
 
@@ -149,9 +212,14 @@ public class IdempotencyService {
 
         return idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey)
                 .flatMap(record -> {
+                    boolean wasInProgress = record.isInProgress();
                     record.markFailed(errorMessage);
-                    return idempotencyRecordRepository.save(record);
+                    return idempotencyRecordRepository.save(record)
+                            .flatMap(saved -> wasInProgress
+                                    ? uploadAnalyticsService.recordFailure(saved).thenReturn(saved)
+                                    : Mono.just(saved));
                 })
+                .flatMap(savedRecord -> deadlineTracker.untrack(userId, idempotencyKey))
                 .doOnSuccess(v ->
                         log.info("Successfully saved failed operation for key: {}", idempotencyKey)
                 )
@@ -161,15 +229,25 @@ public class IdempotencyService {
 
 
 
+    private Mono<Void> afterCompleted(Long userId, UUID idempotencyKey, FileUploadResponse response) {
+        return deadlineTracker.untrack(userId, idempotencyKey)
+                .then(cacheResponse(userId, idempotencyKey, response));
+    }
+
     private Mono<IdempotencyRecordEntity> createNewIdempotencyRecord(Long userId, UUID idempotencyKey) {
         log.info("Creating new idempotency record: user={}, key={}", userId, idempotencyKey);
 
         IdempotencyRecordEntity record = new IdempotencyRecordEntity(userId, idempotencyKey);
+        record.markDeadline(nextDeadline());
 
         return idempotencyRecordRepository.save(record)
                 .doOnSuccess(saved ->
                         log.info("Created idempotency record with status IN_PROGRESS: id={}", saved.getId())
                 )
+                .flatMap(saved ->
+                        deadlineTracker.track(userId, idempotencyKey, saved.getDeadlineAt())
+                                .thenReturn(saved)
+                )
                 .onErrorResume(DataIntegrityViolationException.class, e -> {
                     log.warn("Race condition detected while creating idempotency record", e);
 
@@ -192,7 +270,8 @@ public class IdempotencyService {
             String responseJson = objectMapper.writeValueAsString(response);
             log.debug("Caching response in Redis: key={}", redisKey);
 
-            return reactiveRedisTemplate.opsForValue()
+            // Fire-and-forget: ответ клиенту не ждёт Redis
+            return Mono.fromRunnable(() -> redisGuard.writeBestEffort("idempotency-set", redisKey, () -> reactiveRedisTemplate.opsForValue()
                     .set(redisKey, responseJson, Duration.ofSeconds(redisTtl))
                     .doOnSuccess(success -> {
                         if (Boolean.TRUE.equals(success)) {
@@ -200,8 +279,7 @@ public class IdempotencyService {
                         } else {
                             log.warn("Failed to cache response in Redis for key: {}", redisKey);
                         }
-                    })
-                    .then();
+                    })));
         } catch (JsonProcessingException e){
             log.error("Failed to serialize response for Redis cache", e);
             return Mono.empty();
@@ -224,6 +302,17 @@ public class IdempotencyService {
     }
 
 
+    // Запись уже FAILED (дедлайн, recovery) или зарезервирована повторной попыткой - поздний результат не пишем
+    private IdempotencyConflictException lateCompletion(UUID idempotencyKey) {
+        log.warn("Idempotency record is no longer IN_PROGRESS, dropping late completion: key={}", idempotencyKey);
+        return new IdempotencyConflictException(
+                "Operation with this idempotency key was already failed or restarted");
+    }
+
+    private LocalDateTime nextDeadline() {
+        return LocalDateTime.now().plus(Duration.ofMillis(operationTimeout));
+    }
+
     private String buildRedisKey(Long userId, UUID idempotencyKey) {
         return String.format("idempotency:%d:%s", userId, idempotencyKey);
     }
@@ -1,65 +1,97 @@
 package kz.lab.fileuploaderservice.service;
 
 import kz.lab.fileuploaderservice.exception.StorageServiceException;
+import kz.lab.fileuploaderservice.resilience.S3Resilience;
+import kz.lab.fileuploaderservice.resilience.S3Resilience.CallPolicy;
+import kz.lab.fileuploaderservice.storage.MultipartPlan;
+import kz.lab.fileuploaderservice.storage.StorageBackend;
+import kz.lab.fileuploaderservice.storage.StorageRouter;
+import kz.lab.fileuploaderservice.storage.StorageShard;
+import kz.lab.fileuploaderservice.storage.StoredObjectInfo;
+import kz.lab.fileuploaderservice.storage.UploadResult;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import reactor.core.scheduler.Scheduler;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
-import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.s3.S3AsyncClient;
-import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.services.s3.model.*;
-import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
-import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedUploadPartRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
 
 import java.awt.image.DataBuffer;
-import java.net.URI;
 import java.nio.ByteBuffer;
 import java.time.Duration;
-import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
-public class MinioService {
+public class MinioService implements StorageBackend {
 
 
-    private final S3AsyncClient s3AsyncClient;
-    @Value("${application.minio.bucket-name}")
-    private String bucketName;
+    private static final int DELETE_OBJECTS_BATCH_LIMIT = 1000;
+    private static final int PROGRESS_CHUNK_SIZE = 256 * 1024;
 
-    @Value("${application.minio.endpoint}")
-    private String endpoint;
+    private final StorageRouter storageRouter;
+    private final S3Resilience s3Resilience;
+    private final Scheduler cpuBoundScheduler;
 
-    @Value("${application.minio.access-key}")
-    private String accessKey;
+    @Value("${application.minio.copy.multipart-threshold-bytes:268435456}")
+    private long copyMultipartThreshold;
 
-    @Value("${application.minio.secret-key}")
-    private String secretKey;
+    @Value("${application.minio.copy.part-size-bytes:67108864}")
+    private long copyPartSize;
 
+    @Value("${application.minio.copy.concurrency:8}")
+    private int copyConcurrency;
 
 
+
+    // Бакет для нового объекта; существующие объекты адресуются по bucket_name из БД
+    @Override
+    public String resolveBucket(String storedFilename) {
+        return storageRouter.route(storedFilename).getBucketName();
+    }
+
+    @Override
     public Mono<UploadResult> uploadFile(
-            Long userId,
-            String originalFilename,
+            String bucketName,
+            String storedFilename,
             String contentType,
             Flux<org.springframework.core.io.buffer.DataBuffer> dataBufferFlux) {
+        return uploadFile(bucketName, storedFilename, contentType, dataBufferFlux, bytes -> {});
+    }
 
-        String storedFilename = generateStoredFilename(userId, originalFilename);
+    @Override
+    public Mono<UploadResult> uploadFile(
+            String bucketName,
+            String storedFilename,
+            String contentType,
+            Flux<org.springframework.core.io.buffer.DataBuffer> dataBufferFlux,
+            LongConsumer progress) {
 
         log.info("Uploading file to MinIO: bucket={}, key={}",
                 bucketName, storedFilename);
 
+        StorageShard shard = storageRouter.forBucket(bucketName);
+
         AtomicLong totalBytes = new AtomicLong(0);
 
 
@@ -82,18 +114,17 @@ public class MinioService {
                                 .contentLength(fileSize)
                                 .build();
 
-                        AsyncRequestBody requestBody = AsyncRequestBody.fromByteBuffer(byteBuffer);
+                        // Тело из буфера можно отправить повторно, поэтому PUT повторяется при сбоях
+                        AsyncRequestBody requestBody = progressReporting(byteBuffer, progress);
 
-                        CompletableFuture<PutObjectResponse> future =
-                                s3AsyncClient.putObject(putRequest, requestBody);
-
-                        return Mono.fromFuture(future)
+                        return s3Resilience.call(shard.getName(), "putObject", CallPolicy.RETRY,
+                                        () -> shard.getClient().putObject(putRequest, requestBody))
                                 .doOnSuccess(response ->
                                         log.info("Successfully uploaded file to MinIO: key={}, etag={}",
                                                 storedFilename, response.eTag())
                                 )
                                 .map(response -> new UploadResult(
-                                        buildStorageUrl(storedFilename),
+                                        buildStorageUrl(bucketName, storedFilename),
                                         storedFilename,
                                         fileSize
                                 ))
@@ -118,8 +149,32 @@ public class MinioService {
                 });
     }
 
+    // Тело нарезается на куски, и клиент запрашивает их по мере отправки - так прогресс идёт по ходу PUT.
+    // Повтор PUT подписывается заново, и счётчик начинается с нуля
+    private AsyncRequestBody progressReporting(ByteBuffer content, LongConsumer progress) {
+        long length = content.remaining();
+        return new AsyncRequestBody() {
+            @Override
+            public Optional<Long> contentLength() {
+                return Optional.of(length);
+            }
+
+            @Override
+            public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+                AtomicLong sent = new AtomicLong();
+                ByteBuffer source = content.asReadOnlyBuffer();
+                Flux.range(0, (int) ((length + PROGRESS_CHUNK_SIZE - 1) / PROGRESS_CHUNK_SIZE))
+                        .map(chunk -> source.slice(chunk * PROGRESS_CHUNK_SIZE,
+                                (int) Math.min(PROGRESS_CHUNK_SIZE, length - (long) chunk * PROGRESS_CHUNK_SIZE)))
+                        .doOnNext(chunk -> progress.accept(sent.addAndGet(chunk.remaining())))
+                        .subscribe(subscriber);
+            }
+        };
+    }
+
 
-    public Mono<Void> deleteFile(String storedFilename){
+    @Override
+    public Mono<Void> deleteFile(String bucketName, String storedFilename){
         log.info("Deleting file from MinIO: bucket={}, key={}", bucketName, storedFilename);
 
         DeleteObjectRequest deleteRequest = DeleteObjectRequest.builder()
@@ -127,9 +182,10 @@ public class MinioService {
                 .key(storedFilename)
                 .build();
 
-        CompletableFuture<DeleteObjectResponse> future = s3AsyncClient.deleteObject(deleteRequest);
+        StorageShard shard = storageRouter.forBucket(bucketName);
 
-        return Mono.fromFuture(future)
+        return s3Resilience.call(shard.getName(), "deleteObject", CallPolicy.RETRY,
+                        () -> shard.getClient().deleteObject(deleteRequest))
                 .doOnSuccess(response ->
                         log.info("Successfully deleted file from MinIO: key={}", storedFilename)
                 )
@@ -146,84 +202,464 @@ public class MinioService {
                 .then();
     }
 
-    public Mono<String> generatePresignedDownloadUrl(String storedFilename){
+    @Override
+    public Flux<ByteBuffer> downloadFile(String bucketName, String storedFilename) {
+        log.debug("Streaming file from MinIO: bucket={}, key={}", bucketName, storedFilename);
+
+        GetObjectRequest getRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(storedFilename)
+                .build();
+
+        StorageShard shard = storageRouter.forBucket(bucketName);
+
+        // Без хеджирования: проигравший GET с открытым потоком тела удерживал бы соединение пула
+        return s3Resilience.call(shard.getName(), "getObject", CallPolicy.SINGLE,
+                        () -> shard.getClient().getObject(getRequest, AsyncResponseTransformer.toPublisher()))
+                .flatMapMany(Flux::from)
+                .onErrorMap(e -> {
+                    if (e instanceof StorageServiceException) {
+                        return e;
+                    }
+                    log.error("Failed to stream file from MinIO: key={}", storedFilename, e);
+                    return new StorageServiceException("Failed to read file from storage", e);
+                });
+    }
+
+    @Override
+    public Mono<List<String>> deleteFiles(String bucketName, List<String> storedFilenames) {
+        if (storedFilenames.isEmpty()) {
+            return Mono.just(List.of());
+        }
+
+        log.info("Batch deleting {} files from MinIO: bucket={}", storedFilenames.size(), bucketName);
+
+        // DeleteObjects принимает не больше 1000 ключей за запрос
+        return Flux.fromIterable(storedFilenames)
+                .buffer(DELETE_OBJECTS_BATCH_LIMIT)
+                .concatMap(batch -> {
+                    List<ObjectIdentifier> objects = batch.stream()
+                            .map(key -> ObjectIdentifier.builder().key(key).build())
+                            .toList();
+
+                    DeleteObjectsRequest deleteRequest = DeleteObjectsRequest.builder()
+                            .bucket(bucketName)
+                            .delete(Delete.builder().objects(objects).quiet(true).build())
+                            .build();
+
+                    StorageShard shard = storageRouter.forBucket(bucketName);
+
+                    return s3Resilience.call(shard.getName(), "deleteObjects", CallPolicy.RETRY,
+                                    () -> shard.getClient().deleteObjects(deleteRequest))
+                            // Quiet-режим: в ответе только ключи, которые удалить не удалось
+                            .flatMapIterable(response -> {
+                                if (!response.hasErrors()) {
+                                    return List.<String>of();
+                                }
+                                response.errors().forEach(error ->
+                                        log.warn("Failed to delete file from MinIO: key={}, code={}, message={}",
+                                                error.key(), error.code(), error.message())
+                                );
+                                return response.errors().stream().map(S3Error::key).toList();
+                            });
+                })
+                .onErrorMap(e -> {
+                    log.error("Failed to batch delete files from MinIO", e);
+                    return new StorageServiceException("Failed to delete files from storage", e);
+                })
+                .collectList();
+    }
+
+    @Override
+    public Mono<String> generateDownloadUrl(String bucketName, String storedFilename){
         log.debug("Generating pre-signed URL for file: {}", storedFilename);
 
-        try {
-
-            AwsBasicCredentials credentials = AwsBasicCredentials.create(
-                    accessKey,
-                    secretKey
-            );
-            S3Presigner presigner = S3Presigner.builder()
-                    .endpointOverride(URI.create(endpoint))
-                    .region(Region.US_EAST_1)
-                    .credentialsProvider(StaticCredentialsProvider.create(credentials))
-                    .serviceConfiguration(
-                            S3Configuration.builder()
-                                    .pathStyleAccessEnabled(true)
+        GetObjectRequest getRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(storedFilename)
+                .build();
+
+        GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
+                .getObjectRequest(getRequest)
+                .signatureDuration(Duration.ofHours(1))
+                .build();
+
+        // SigV4 подпись (HMAC-цепочка) - CPU, вне event loop
+        return Mono.fromCallable(() -> storageRouter.forBucket(bucketName).getPresigner()
+                        .presignGetObject(presignRequest)
+                        .url()
+                        .toString())
+                .subscribeOn(cpuBoundScheduler)
+                .doOnSuccess(url ->
+                        log.info("Generated pre-signed URL for file: {}", storedFilename)
+                )
+                .onErrorMap(e -> {
+                    log.error("Failed to generate pre-signed URL", e);
+                    return new StorageServiceException("Failed to generate download URL", e);
+                });
+    }
+
+
+
+    public Mono<PresignedPut> generatePresignedUploadUrl(
+            String bucketName,
+            String storedFilename,
+            String contentType,
+            long contentLength,
+            Duration ttl) {
+
+        log.debug("Generating pre-signed PUT URL for file: {}", storedFilename);
+
+        // content-type и content-length входят в подпись - залить другой файл по этой ссылке нельзя
+        PutObjectRequest putRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(storedFilename)
+                .contentType(contentType)
+                .contentLength(contentLength)
+                .build();
+
+        return Mono.fromCallable(() -> {
+                    PresignedPutObjectRequest presigned = storageRouter.forBucket(bucketName).getPresigner().presignPutObject(
+                            PutObjectPresignRequest.builder()
+                                    .putObjectRequest(putRequest)
+                                    .signatureDuration(ttl)
                                     .build()
-                    )
-                    .build();
+                    );
+                    return new PresignedPut(presigned.url().toString(), flattenHeaders(presigned.signedHeaders()));
+                })
+                .subscribeOn(cpuBoundScheduler)
+                .onErrorMap(e -> {
+                    log.error("Failed to generate pre-signed PUT URL", e);
+                    return new StorageServiceException("Failed to generate upload URL", e);
+                });
+    }
 
-            GetObjectRequest getRequest = GetObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(storedFilename)
-                    .build();
+    public Mono<String> createMultipartUpload(String bucketName, String storedFilename, String contentType) {
+        CreateMultipartUploadRequest request = CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(storedFilename)
+                .contentType(contentType)
+                .build();
 
-            GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
-                    .getObjectRequest(getRequest)
-                    .signatureDuration(Duration.ofHours(1))
-                    .build();
+        StorageShard shard = storageRouter.forBucket(bucketName);
 
-            PresignedGetObjectRequest presignedRequest = presigner.presignGetObject(presignRequest);
-            String url = presignedRequest.url().toString();
+        // Повтор create породил бы лишний uploadId
+        return s3Resilience.call(shard.getName(), "createMultipartUpload", CallPolicy.SINGLE,
+                        () -> shard.getClient().createMultipartUpload(request))
+                .map(CreateMultipartUploadResponse::uploadId)
+                .doOnSuccess(uploadId ->
+                        log.info("Created multipart upload: key={}, uploadId={}", storedFilename, uploadId)
+                )
+                .onErrorMap(e -> new StorageServiceException("Failed to start multipart upload", e));
+    }
 
-            log.info("Generated pre-signed URL for file: {}", storedFilename);
+    public Mono<List<PresignedPut>> generatePresignedPartUrls(
+            String bucketName,
+            String storedFilename,
+            String uploadId,
+            long totalSize,
+            long partSize,
+            Duration ttl) {
+
+        MultipartPlan plan = new MultipartPlan(totalSize, partSize);
+        int partCount = plan.partCount();
+
+        // Сотни подписей подряд - заметная пауза, если выполнять на event loop
+        return Mono.fromCallable(() -> {
+            StorageShard shard = storageRouter.forBucket(bucketName);
+            List<PresignedPut> parts = new ArrayList<>(partCount);
+
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                long length = plan.length(partNumber);
+
+                UploadPartRequest partRequest = UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(storedFilename)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength(length)
+                        .build();
+
+                PresignedUploadPartRequest presigned = shard.getPresigner().presignUploadPart(
+                        UploadPartPresignRequest.builder()
+                                .uploadPartRequest(partRequest)
+                                .signatureDuration(ttl)
+                                .build()
+                );
+                parts.add(new PresignedPut(presigned.url().toString(), flattenHeaders(presigned.signedHeaders())));
+            }
+            return parts;
+        })
+                .subscribeOn(cpuBoundScheduler)
+                .onErrorMap(e -> {
+                    log.error("Failed to generate pre-signed part URLs", e);
+                    return new StorageServiceException("Failed to generate upload URLs", e);
+                });
+    }
 
-            presigner.close();
+    public Mono<Void> completeMultipartUpload(
+            String bucketName,
+            String storedFilename,
+            String uploadId,
+            List<CompletedPart> parts) {
+        CompleteMultipartUploadRequest request = CompleteMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(storedFilename)
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                .build();
 
-            return Mono.just(url);
-        } catch (Exception e) {
-            log.error("Failed to generate pre-signed URL", e);
-            return Mono.error(new StorageServiceException(
-                    "Failed to generate download URL", e
-            ));
-        }
+        StorageShard shard = storageRouter.forBucket(bucketName);
+
+        return s3Resilience.call(shard.getName(), "completeMultipartUpload", CallPolicy.SINGLE,
+                        () -> shard.getClient().completeMultipartUpload(request))
+                .doOnSuccess(response ->
+                        log.info("Completed multipart upload: key={}, etag={}", storedFilename, response.eTag())
+                )
+                .onErrorMap(e -> new StorageServiceException("Failed to complete multipart upload", e))
+                .then();
     }
 
+    public Mono<Void> abortMultipartUpload(String bucketName, String storedFilename, String uploadId) {
+        AbortMultipartUploadRequest request = AbortMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(storedFilename)
+                .uploadId(uploadId)
+                .build();
 
+        StorageShard shard = storageRouter.forBucket(bucketName);
 
-    private String generateStoredFilename(Long userId, String originalFilename) {
-        String extension = "";
-        int lastDotIndex = originalFilename.lastIndexOf('.');
-        if (lastDotIndex > 0) {
-            extension = originalFilename.substring(lastDotIndex);
-        }
+        return s3Resilience.call(shard.getName(), "abortMultipartUpload", CallPolicy.RETRY,
+                        () -> shard.getClient().abortMultipartUpload(request))
+                .onErrorResume(e -> {
+                    if (e instanceof NoSuchUploadException) {
+                        return Mono.empty();
+                    }
+                    return Mono.error(new StorageServiceException("Failed to abort multipart upload", e));
+                })
+                .then();
+    }
 
-        String uuid = UUID.randomUUID().toString();
+    @Override
+    public Mono<StoredObjectInfo> statFile(String bucketName, String storedFilename) {
+        return headFile(bucketName, storedFilename)
+                .map(head -> new StoredObjectInfo(
+                        head.contentLength() != null ? head.contentLength() : 0L,
+                        head.contentType()
+                ));
+    }
 
-        // Формат: user-{userId}/{uuid}.{ext}
-        return String.format("user-%d/%s%s", userId, uuid, extension);
+    public Mono<HeadObjectResponse> headFile(String bucketName, String storedFilename) {
+        HeadObjectRequest request = HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(storedFilename)
+                .build();
+
+        StorageShard shard = storageRouter.forBucket(bucketName);
+
+        return s3Resilience.call(shard.getName(), "headObject", CallPolicy.HEDGED,
+                        () -> shard.getClient().headObject(request))
+                .onErrorResume(e -> {
+                    if (e instanceof NoSuchKeyException) {
+                        return Mono.empty();
+                    }
+                    return Mono.error(new StorageServiceException("Failed to read file metadata from storage", e));
+                });
     }
 
-    private String buildStorageUrl(String storedFilename) {
-        return String.format("%s/%s/%s", endpoint, bucketName, storedFilename);
+
+
+    // HeadBucket параллельно по каждому шарду: соединения остаются в пуле Netty клиента
+    @Override
+    public Mono<Void> warmUp(int connections) {
+        return Flux.fromIterable(storageRouter.shards())
+                .flatMap(shard -> Flux.range(0, connections)
+                        .flatMap(i -> Mono.fromFuture(() -> shard.getClient().headBucket(
+                                        HeadBucketRequest.builder().bucket(shard.getBucketName()).build())))
+                        .onErrorResume(e -> {
+                            log.warn("Failed to warm up storage shard: shard={}, error={}", shard.getName(), e.toString());
+                            return Mono.empty();
+                        })
+                )
+                .then();
+    }
+
+    @Override
+    public String buildStorageUrl(String bucketName, String storedFilename) {
+        return String.format("%s/%s/%s", storageRouter.forBucket(bucketName).getEndpoint(), bucketName, storedFilename);
     }
 
-    public static class UploadResult {
-        private final String storageUrl;
-        private final String storedFilename;
-        private final Long fileSize;
+    // Страницы ListObjectsV2 по мере спроса: в памяти не больше одной страницы ключей
+    public Flux<S3Object> listObjects(String bucketName, String startAfter, int pageSize) {
+        StorageShard shard = storageRouter.forBucket(bucketName);
+
+        ListObjectsV2Request firstPage = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .startAfter(startAfter)
+                .maxKeys(pageSize)
+                .build();
 
-        public UploadResult(String storageUrl, String storedFilename, Long fileSize) {
-            this.storageUrl = storageUrl;
-            this.storedFilename = storedFilename;
-            this.fileSize = fileSize;
+        return listPage(shard, firstPage)
+                .expand(page -> Boolean.TRUE.equals(page.isTruncated())
+                        ? listPage(shard, firstPage.toBuilder()
+                                .startAfter(null)
+                                .continuationToken(page.nextContinuationToken())
+                                .build())
+                        : Mono.empty())
+                .concatMapIterable(ListObjectsV2Response::contents, 1);
+    }
+
+    private Mono<ListObjectsV2Response> listPage(StorageShard shard, ListObjectsV2Request request) {
+        return s3Resilience.call(shard.getName(), "listObjectsV2", CallPolicy.RETRY,
+                        () -> shard.getClient().listObjectsV2(request))
+                .onErrorMap(e -> new StorageServiceException("Failed to list objects in storage", e));
+    }
+
+    // Перенос объекта между шардами для ребалансировки; исходный объект не удаляется
+    public Mono<Void> relocateFile(
+            String sourceBucket,
+            String targetBucket,
+            String storedFilename,
+            String contentType,
+            long contentLength) {
+
+        StorageShard source = storageRouter.forBucket(sourceBucket);
+        StorageShard target = storageRouter.forBucket(targetBucket);
+
+        log.debug("Copying file between shards: key={}, {} -> {}", storedFilename, source.getName(), target.getName());
+
+        if (source.getClient() == target.getClient()) {
+            // Тот же endpoint - копирование на стороне сервера, байты через нас не идут
+            CopyObjectRequest copyRequest = CopyObjectRequest.builder()
+                    .sourceBucket(sourceBucket)
+                    .sourceKey(storedFilename)
+                    .destinationBucket(targetBucket)
+                    .destinationKey(storedFilename)
+                    .build();
+
+            return s3Resilience.call(target.getName(), "copyObject", CallPolicy.RETRY,
+                            () -> target.getClient().copyObject(copyRequest))
+                    .onErrorMap(e -> new StorageServiceException("Failed to copy file between buckets", e))
+                    .then();
+        }
+
+        GetObjectRequest getRequest = GetObjectRequest.builder()
+                .bucket(sourceBucket)
+                .key(storedFilename)
+                .build();
+
+        PutObjectRequest putRequest = PutObjectRequest.builder()
+                .bucket(targetBucket)
+                .key(storedFilename)
+                .contentType(contentType)
+                .contentLength(contentLength)
+                .build();
+
+        // Тело PUT - поток из GET, его нельзя переотправить, поэтому PUT не повторяется
+        return s3Resilience.call(source.getName(), "getObject", CallPolicy.SINGLE,
+                        () -> source.getClient().getObject(getRequest, AsyncResponseTransformer.toPublisher()))
+                .flatMap(publisher -> s3Resilience.call(target.getName(), "putObject", CallPolicy.SINGLE,
+                        () -> target.getClient().putObject(
+                                putRequest,
+                                AsyncRequestBody.fromPublisher(publisher)
+                        )))
+                .onErrorMap(e -> new StorageServiceException("Failed to copy file between endpoints", e))
+                .then();
+    }
+
+    // Копия под новым ключом внутри одного endpoint: CopyObject для небольших объектов,
+    // параллельные UploadPartCopy для больших (CopyObject ограничен 5 GiB и идёт одним потоком на сервере)
+    @Override
+    public Mono<Void> copyFile(
+            String sourceBucket,
+            String sourceFilename,
+            String targetBucket,
+            String targetFilename,
+            String contentType,
+            long size) {
+
+        StorageShard target = storageRouter.forBucket(targetBucket);
+
+        if (size < copyMultipartThreshold) {
+            CopyObjectRequest copyRequest = CopyObjectRequest.builder()
+                    .sourceBucket(sourceBucket)
+                    .sourceKey(sourceFilename)
+                    .destinationBucket(targetBucket)
+                    .destinationKey(targetFilename)
+                    .build();
+
+            return s3Resilience.call(target.getName(), "copyObject", CallPolicy.RETRY,
+                            () -> target.getClient().copyObject(copyRequest))
+                    .doOnSuccess(response ->
+                            log.info("Copied file in storage: {} -> {}", sourceFilename, targetFilename)
+                    )
+                    .onErrorMap(e -> new StorageServiceException("Failed to copy file in storage", e))
+                    .then();
         }
 
-        public String getStorageUrl() { return storageUrl; }
-        public String getStoredFilename() { return storedFilename; }
-        public Long getFileSize() { return fileSize; }
+        // S3 допускает не больше 10000 частей
+        MultipartPlan plan = MultipartPlan.of(size, copyPartSize);
+        int partCount = plan.partCount();
+
+        log.info("Copying large file with UploadPartCopy: {} -> {}, size={}, parts={}",
+                sourceFilename, targetFilename, size, partCount);
+
+        return createMultipartUpload(targetBucket, targetFilename, contentType)
+                .flatMap(uploadId -> Flux.range(1, partCount)
+                        .flatMap(partNumber -> {
+                            long start = plan.start(partNumber);
+                            long end = plan.end(partNumber);
+
+                            UploadPartCopyRequest partRequest = UploadPartCopyRequest.builder()
+                                    .sourceBucket(sourceBucket)
+                                    .sourceKey(sourceFilename)
+                                    .destinationBucket(targetBucket)
+                                    .destinationKey(targetFilename)
+                                    .uploadId(uploadId)
+                                    .partNumber(partNumber)
+                                    .copySourceRange("bytes=" + start + "-" + end)
+                                    .build();
+
+                            // Часть можно безопасно скопировать повторно - она перезапишется
+                            return s3Resilience.call(target.getName(), "uploadPartCopy", CallPolicy.RETRY,
+                                            () -> target.getClient().uploadPartCopy(partRequest))
+                                    .map(response -> CompletedPart.builder()
+                                            .partNumber(partNumber)
+                                            .eTag(response.copyPartResult().eTag())
+                                            .build());
+                        }, copyConcurrency)
+                        .collectSortedList(Comparator.comparing(CompletedPart::partNumber))
+                        .flatMap(parts -> completeMultipartUpload(targetBucket, targetFilename, uploadId, parts))
+                        .onErrorResume(e -> abortMultipartUpload(targetBucket, targetFilename, uploadId)
+                                .onErrorResume(abortError -> Mono.empty())
+                                .then(Mono.error(new StorageServiceException("Failed to copy file in storage", e)))))
+                .doOnSuccess(v ->
+                        log.info("Copied file in storage: {} -> {}, parts={}", sourceFilename, targetFilename, partCount)
+                );
+    }
+
+    // Серверное копирование возможно только в пределах одного endpoint
+    @Override
+    public String resolveCopyBucket(String sourceBucket, String storedFilename) {
+        StorageShard routed = storageRouter.route(storedFilename);
+        return routed.getClient() == storageRouter.forBucket(sourceBucket).getClient()
+                ? routed.getBucketName()
+                // Ребалансировщик позже перенесёт копию в её шард
+                : sourceBucket;
+    }
+
+    private Map<String, String> flattenHeaders(Map<String, List<String>> headers) {
+        Map<String, String> flat = new LinkedHashMap<>();
+        // host клиент выставит сам
+        headers.forEach((name, values) -> {
+            if (!"host".equalsIgnoreCase(name)) {
+                flat.put(name, String.join(",", values));
+            }
+        });
+        return flat;
+    }
+
+    public record PresignedPut(String url, Map<String, String> headers) {
     }
+
 }
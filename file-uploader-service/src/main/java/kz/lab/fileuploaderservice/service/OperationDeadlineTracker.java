@@ -0,0 +1,87 @@
+package kz.lab.fileuploaderservice.service;
+
+import kz.lab.fileuploaderservice.resilience.RedisGuard;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.UUID;
+
+/**
+ * Timing wheel for IN_PROGRESS idempotency records backed by a Redis sorted set
+ * (score = deadline in epoch millis). Nodes poll the due range every second and
+ * claim each member with ZREM, so an expired operation is handled exactly once.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class OperationDeadlineTracker {
+
+    private static final String DEADLINES_KEY = "idempotency:deadlines";
+
+    private final ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+    private final RedisGuard redisGuard;
+
+
+    public Mono<Void> track(Long userId, UUID idempotencyKey, LocalDateTime deadlineAt) {
+        String member = buildMember(userId, idempotencyKey);
+        double score = deadlineAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        // Не ждём Redis; пока он недоступен, fallback sweep в CleanupService найдёт запись по индексу,
+        // поэтому при переполненном backlog track можно потерять, а untrack - нет
+        return Mono.fromRunnable(() -> redisGuard.writeBestEffort("deadline-track", DEADLINES_KEY + ":" + member, () -> reactiveRedisTemplate.opsForZSet()
+                .add(DEADLINES_KEY, member, score)
+                .doOnSuccess(added ->
+                        log.debug("Tracking operation deadline: member={}, deadline={}", member, deadlineAt)
+                )));
+    }
+
+    public Mono<Void> untrack(Long userId, UUID idempotencyKey) {
+        String member = buildMember(userId, idempotencyKey);
+
+        return Mono.fromRunnable(() -> redisGuard.write("deadline-untrack", DEADLINES_KEY + ":" + member, () -> reactiveRedisTemplate.opsForZSet()
+                .remove(DEADLINES_KEY, member)));
+    }
+
+
+    public Flux<ExpiredOperation> pollExpired(int limit) {
+        if (!redisGuard.isAvailable()) {
+            return Flux.empty();
+        }
+
+        double now = Instant.now().toEpochMilli();
+
+        return reactiveRedisTemplate.opsForZSet()
+                .rangeByScore(DEADLINES_KEY, Range.closed(0d, now), Limit.limit().count(limit))
+                // ZREM вернёт 1 только одному узлу
+                .concatMap(member -> reactiveRedisTemplate.opsForZSet()
+                        .remove(DEADLINES_KEY, member)
+                        .filter(removed -> removed > 0)
+                        .map(removed -> parseMember(member))
+                );
+    }
+
+
+    private String buildMember(Long userId, UUID idempotencyKey) {
+        return userId + ":" + idempotencyKey;
+    }
+
+    private ExpiredOperation parseMember(String member) {
+        int separator = member.indexOf(':');
+        return new ExpiredOperation(
+                Long.parseLong(member.substring(0, separator)),
+                UUID.fromString(member.substring(separator + 1))
+        );
+    }
+
+    public record ExpiredOperation(Long userId, UUID idempotencyKey) {
+    }
+}
@@ -0,0 +1,156 @@
+package kz.lab.fileuploaderservice.service;
+
+import kz.lab.fileuploaderservice.cache.FileMetadataCache;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import kz.lab.fileuploaderservice.repository.FileRepository;
+import kz.lab.fileuploaderservice.storage.StorageRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Moves objects whose hash-ring shard changed (new shard, new weights) to their current shard.
+ * Runs one keyset batch per tick; progress is kept in Redis per topology, so a restart resumes
+ * and a topology change starts a new pass.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class StorageRebalancer {
+
+    private static final String LOCK_KEY = "storage:rebalance:lock";
+    private static final String DONE_KEY = "storage:rebalance:done";
+    private static final String CURSOR_KEY_PREFIX = "storage:rebalance:cursor:";
+    private static final Duration EVICTION_TIMEOUT = Duration.ofSeconds(5);
+
+    private final FileRepository fileRepository;
+    private final MinioService minioService;
+    private final StorageRouter storageRouter;
+    private final ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+    private final FileMetadataCache fileMetadataCache;
+    private final DistributedLock distributedLock;
+
+    @Value("${application.storage.type:s3}")
+    private String storageType;
+
+    @Value("${application.storage.rebalance.enabled:false}")
+    private boolean enabled;
+
+    @Value("${application.storage.rebalance.batch-size:200}")
+    private int batchSize;
+
+    @Value("${application.storage.rebalance.concurrency:4}")
+    private int concurrency;
+
+    @Value("${application.storage.rebalance.lock-ttl-seconds:300}")
+    private long lockTtlSeconds;
+
+
+    @Scheduled(
+            fixedDelayString = "${application.storage.rebalance.interval-ms:5000}",
+            initialDelayString = "${application.storage.rebalance.interval-ms:5000}"
+    )
+    public void rebalance() {
+        if (!enabled || !"s3".equals(storageType)) {
+            return;
+        }
+
+        String topology = storageRouter.topology();
+
+        // Один узел за раз - остальные пропускают тик
+        distributedLock.tryAcquire(LOCK_KEY, Duration.ofSeconds(lockTtlSeconds))
+                .flatMap(token -> runBatch(topology)
+                        .doFinally(signal -> distributedLock.release(LOCK_KEY, token).subscribe()))
+                .doOnError(e ->
+                        log.error("Error during storage rebalance", e)
+                )
+                .subscribe();
+    }
+
+    private Mono<Void> runBatch(String topology) {
+        String cursorKey = CURSOR_KEY_PREFIX + Integer.toHexString(topology.hashCode());
+
+        return reactiveRedisTemplate.opsForValue().get(DONE_KEY)
+                .defaultIfEmpty("")
+                .filter(done -> !done.equals(topology))
+                .flatMap(notDone -> reactiveRedisTemplate.opsForValue().get(cursorKey)
+                        .map(Long::parseLong)
+                        .defaultIfEmpty(0L))
+                .flatMap(afterId -> fileRepository.findAfterId(afterId, batchSize)
+                        .collectList()
+                        .flatMap(files -> {
+                            if (files.isEmpty()) {
+                                log.info("Storage rebalance pass completed for topology: {}", topology);
+                                return reactiveRedisTemplate.opsForValue().set(DONE_KEY, topology)
+                                        .then(reactiveRedisTemplate.delete(cursorKey))
+                                        .then();
+                            }
+                            return moveBatch(files)
+                                    .flatMap(moved -> reactiveRedisTemplate.opsForValue().set(
+                                            cursorKey, String.valueOf(files.getLast().getId())))
+                                    .then();
+                        }));
+    }
+
+    private Mono<Long> moveBatch(List<FileEntity> files) {
+        return Flux.fromIterable(files)
+                .flatMap(this::moveIfMisplaced, concurrency)
+                .filter(moved -> moved)
+                .count()
+                .doOnSuccess(count -> {
+                    if (count > 0) {
+                        log.info("Rebalanced {} of {} files up to id={}", count, files.size(), files.getLast().getId());
+                    }
+                });
+    }
+
+    private Mono<Boolean> moveIfMisplaced(FileEntity file) {
+        String sourceBucket = file.getBucketName();
+        String targetBucket = minioService.resolveBucket(file.getStoredFilename());
+
+        if (targetBucket.equals(sourceBucket)) {
+            return Mono.just(false);
+        }
+
+        String storedFilename = file.getStoredFilename();
+
+        // copy -> переключение строки -> удаление старого; при ошибке на любом шаге объект остаётся читаемым
+        return minioService.relocateFile(sourceBucket, targetBucket, storedFilename, file.getContentType(), file.getFileSize())
+                .then(fileRepository.relocate(
+                        file.getId(),
+                        sourceBucket,
+                        targetBucket,
+                        minioService.buildStorageUrl(targetBucket, storedFilename)))
+                .flatMap(updated -> {
+                    if (updated == 0) {
+                        // Файл удалили во время переноса - копия не нужна
+                        log.info("File changed during rebalance, dropping copy: fileId={}", file.getId());
+                        return minioService.deleteFile(targetBucket, storedFilename).thenReturn(false);
+                    }
+                    // Кешированная строка указывает на старый бакет: удаляем объект только когда сброс дошёл
+                    // до Redis и других узлов, иначе - когда устаревшие копии гарантированно истекли
+                    return fileMetadataCache.evictAndAwait(file.getId(), EVICTION_TIMEOUT)
+                            .onErrorResume(e -> {
+                                log.warn("Cache eviction not confirmed, delaying source delete: fileId={}, reason={}",
+                                        file.getId(), e.toString());
+                                return Mono.delay(fileMetadataCache.maxStaleness()).then();
+                            })
+                            .then(minioService.deleteFile(sourceBucket, storedFilename))
+                            .thenReturn(true);
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to rebalance file: fileId={}, {} -> {}",
+                            file.getId(), sourceBucket, targetBucket, e);
+                    return Mono.just(false);
+                });
+    }
+
+}
@@ -0,0 +1,273 @@
+package kz.lab.fileuploaderservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.lab.fileuploaderservice.cache.FileMetadataCache;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import kz.lab.fileuploaderservice.repository.FileRepository;
+import kz.lab.fileuploaderservice.storage.StorageRouter;
+import kz.lab.fileuploaderservice.storage.StorageShard;
+import kz.lab.fileuploaderservice.util.SortedMergeJoin;
+import kz.lab.fileuploaderservice.util.SortedMergeJoin.Match;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Finds objects without a files row (orphans) and rows whose object is gone (dangling) by
+ * merge-joining ListObjectsV2 pages with a keyset cursor over files, both in byte order of
+ * stored_filename. Memory is bounded by the page size; the last processed key is checkpointed
+ * in Redis per bucket, so an interrupted pass resumes where it stopped.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class StorageReconciler {
+
+    private static final String LOCK_KEY = "storage:reconcile:lock";
+    private static final String CURSOR_KEY_PREFIX = "storage:reconcile:cursor:";
+
+    private final FileRepository fileRepository;
+    private final MinioService minioService;
+    private final StorageRouter storageRouter;
+    private final ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final FileMetadataCache fileMetadataCache;
+    private final DistributedLock distributedLock;
+
+    @Value("${application.storage.type:s3}")
+    private String storageType;
+
+    @Value("${application.storage.reconcile.enabled:false}")
+    private boolean enabled;
+
+    // false - только отчёт (лог + метрики), ничего не удаляется
+    @Value("${application.storage.reconcile.repair:false}")
+    private boolean repair;
+
+    @Value("${application.storage.reconcile.page-size:1000}")
+    private int pageSize;
+
+    // Не трогаем свежие объекты/строки: загрузки, presigned intents и саги ещё могут быть в пути
+    @Value("${application.storage.reconcile.grace-minutes:360}")
+    private long graceMinutes;
+
+    // 0 - без ограничения
+    @Value("${application.storage.reconcile.max-keys-per-second:2000}")
+    private int maxKeysPerSecond;
+
+    @Value("${application.storage.reconcile.lock-ttl-seconds:300}")
+    private long lockTtlSeconds;
+
+
+    @Scheduled(
+            fixedDelayString = "${application.storage.reconcile.interval-ms:21600000}",
+            initialDelayString = "${application.storage.reconcile.interval-ms:21600000}"
+    )
+    public void reconcile() {
+        if (!enabled || !"s3".equals(storageType)) {
+            return;
+        }
+
+        // Один узел за раз; TTL продлевается на каждом checkpoint
+        distributedLock.tryAcquire(LOCK_KEY, Duration.ofSeconds(lockTtlSeconds))
+                .flatMap(token -> Flux.fromIterable(storageRouter.shards())
+                        .map(StorageShard::getBucketName)
+                        .distinct()
+                        .concatMap(bucketName -> reconcileBucket(bucketName, token))
+                        .then()
+                        .doFinally(signal -> distributedLock.release(LOCK_KEY, token).subscribe()))
+                .doOnError(e ->
+                        log.error("Error during storage reconciliation", e)
+                )
+                .subscribe();
+    }
+
+
+    private Mono<Void> reconcileBucket(String bucketName, String lockToken) {
+        String cursorKey = CURSOR_KEY_PREFIX + bucketName;
+        PassStats stats = new PassStats();
+
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(graceMinutes);
+        Instant cutoffInstant = cutoff.atZone(ZoneId.systemDefault()).toInstant();
+
+        return reactiveRedisTemplate.opsForValue().get(cursorKey)
+                .defaultIfEmpty("")
+                .flatMap(after -> {
+                    if (!after.isEmpty()) {
+                        log.info("Resuming storage reconciliation: bucket={}, after={}", bucketName, after);
+                    }
+
+                    Flux<S3Object> objects = minioService.listObjects(bucketName, after.isEmpty() ? null : after, pageSize);
+                    Flux<FileEntity> rows = streamRows(bucketName, after);
+
+                    return SortedMergeJoin.join(objects, S3Object::key, rows, FileEntity::getStoredFilename, pageSize)
+                            .buffer(pageSize)
+                            .concatMap(batch -> processBatch(bucketName, batch, cutoff, cutoffInstant, stats)
+                                    .then(checkpoint(cursorKey, batch.getLast().key(), lockToken))
+                                    .then(throttle(batch.size())))
+                            .then(reactiveRedisTemplate.delete(cursorKey))
+                            .then();
+                })
+                .doOnSuccess(v ->
+                        log.info("Storage reconciliation completed: bucket={}, keys={}, orphans={}, dangling={}, repaired={}",
+                                bucketName, stats.keys, stats.orphans, stats.dangling, stats.repaired)
+                );
+    }
+
+    // Keyset-страницы files в том же порядке байтов, что и листинг хранилища
+    private Flux<FileEntity> streamRows(String bucketName, String after) {
+        return fileRepository.findInBucketAfter(bucketName, after, pageSize)
+                .collectList()
+                .expand(page -> page.size() < pageSize
+                        ? Mono.empty()
+                        : fileRepository.findInBucketAfter(bucketName, page.getLast().getStoredFilename(), pageSize)
+                                .collectList())
+                .concatMapIterable(Function.identity(), 1);
+    }
+
+    private Mono<Void> processBatch(
+            String bucketName,
+            List<Match<S3Object, FileEntity>> batch,
+            LocalDateTime cutoff,
+            Instant cutoffInstant,
+            PassStats stats) {
+
+        stats.keys.addAndGet(batch.size());
+
+        List<String> orphans = batch.stream()
+                .filter(Match::leftOnly)
+                .filter(match -> match.left().lastModified() != null
+                        && match.left().lastModified().isBefore(cutoffInstant))
+                .map(Match::key)
+                .toList();
+
+        List<FileEntity> dangling = batch.stream()
+                .filter(Match::rightOnly)
+                .map(Match::right)
+                .filter(row -> row.getUploadedAt() != null && row.getUploadedAt().isBefore(cutoff))
+                .toList();
+
+        if (orphans.isEmpty() && dangling.isEmpty()) {
+            return Mono.empty();
+        }
+
+        stats.orphans.addAndGet(orphans.size());
+        stats.dangling.addAndGet(dangling.size());
+        meterRegistry.counter("storage.reconcile.found", "type", "orphan").increment(orphans.size());
+        meterRegistry.counter("storage.reconcile.found", "type", "dangling").increment(dangling.size());
+
+        log.warn("Storage reconciliation mismatch: bucket={}, orphans={}, dangling={}, sampleOrphan={}, sampleDanglingId={}",
+                bucketName, orphans.size(), dangling.size(),
+                orphans.isEmpty() ? null : orphans.getFirst(),
+                dangling.isEmpty() ? null : dangling.getFirst().getId());
+
+        if (!repair) {
+            return Mono.empty();
+        }
+
+        return repairOrphans(bucketName, orphans)
+                .flatMap(deletedObjects -> repairDangling(bucketName, dangling)
+                        .map(deletedRows -> deletedObjects + deletedRows))
+                .doOnNext(stats.repaired::addAndGet)
+                .then();
+    }
+
+    private Mono<Long> repairOrphans(String bucketName, List<String> orphans) {
+        if (orphans.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        // Перепроверка по всем бакетам: ребалансировщик мог скопировать объект раньше, чем переключил строку
+        return fileRepository.findAllByStoredFilenameIn(orphans)
+                .map(FileEntity::getStoredFilename)
+                .collect(Collectors.toSet())
+                .flatMap(referenced -> {
+                    List<String> confirmed = orphans.stream()
+                            .filter(key -> !referenced.contains(key))
+                            .toList();
+                    if (confirmed.isEmpty()) {
+                        return Mono.just(0L);
+                    }
+                    // Неудалённые ключи не считаются исправленными - следующая сверка найдёт их снова
+                    return minioService.deleteFiles(bucketName, confirmed)
+                            .map(failed -> (long) (confirmed.size() - failed.size()))
+                            .doOnNext(deleted -> {
+                                meterRegistry.counter("storage.reconcile.repaired", "type", "orphan")
+                                        .increment(deleted);
+                                log.info("Deleted {} of {} orphaned objects: bucket={}",
+                                        deleted, confirmed.size(), bucketName);
+                            });
+                });
+    }
+
+    private Mono<Long> repairDangling(String bucketName, List<FileEntity> dangling) {
+        if (dangling.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        // Объекта действительно нет и строка всё ещё указывает на этот бакет
+        return Flux.fromIterable(dangling)
+                .concatMap(row -> minioService.statFile(bucketName, row.getStoredFilename())
+                        .map(info -> false)
+                        .defaultIfEmpty(true)
+                        .filter(Boolean::booleanValue)
+                        .flatMap(missing -> fileRepository.findById(row.getId()))
+                        .filter(current -> bucketName.equals(current.getBucketName())))
+                .map(FileEntity::getId)
+                .collectList()
+                .flatMap(ids -> {
+                    if (ids.isEmpty()) {
+                        return Mono.just(0L);
+                    }
+                    return fileRepository.deleteAllById(ids)
+                            .then(fileMetadataCache.evictAll(ids))
+                            .doOnSuccess(v -> {
+                                meterRegistry.counter("storage.reconcile.repaired", "type", "dangling")
+                                        .increment(ids.size());
+                                log.info("Deleted {} dangling file rows: bucket={}, ids={}", ids.size(), bucketName, ids);
+                            })
+                            .thenReturn((long) ids.size());
+                });
+    }
+
+    // Блокировка потеряна (пачка дольше TTL) - останавливаемся, курсор уже сохранён
+    private Mono<Void> checkpoint(String cursorKey, String lastKey, String lockToken) {
+        return reactiveRedisTemplate.opsForValue().set(cursorKey, lastKey)
+                .then(distributedLock.extend(LOCK_KEY, lockToken, Duration.ofSeconds(lockTtlSeconds)))
+                .flatMap(extended -> extended
+                        ? Mono.<Void>empty()
+                        : Mono.error(new IllegalStateException("Storage reconciliation lock lost")));
+    }
+
+    // Пауза после пачки, чтобы не превышать max-keys-per-second по листингу и БД
+    private Mono<Void> throttle(int keys) {
+        if (maxKeysPerSecond <= 0) {
+            return Mono.empty();
+        }
+        return Mono.delay(Duration.ofMillis(keys * 1000L / maxKeysPerSecond)).then();
+    }
+
+
+    private static final class PassStats {
+        private final AtomicLong keys = new AtomicLong();
+        private final AtomicLong orphans = new AtomicLong();
+        private final AtomicLong dangling = new AtomicLong();
+        private final AtomicLong repaired = new AtomicLong();
+    }
+
+}
@@ -0,0 +1,100 @@
+package kz.lab.fileuploaderservice.service;
+
+import kz.lab.fileuploaderservice.dto.UploadStatsResponse;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import kz.lab.fileuploaderservice.model.entity.IdempotencyRecordEntity;
+import kz.lab.fileuploaderservice.repository.UploadStatsRepository;
+import kz.lab.fileuploaderservice.saga.model.SagaStateEntity;
+import kz.lab.fileuploaderservice.saga.repository.SagaStateRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UploadAnalyticsService {
+
+    private static final String UNKNOWN_CONTENT_TYPE = "unknown";
+
+    // Белый список: значение groupBy подставляется в SQL как имя колонки
+    private static final Map<String, String> DIMENSIONS = Map.of(
+            "user", "user_id::text",
+            "content-type", "content_type",
+            "total", "'all'"
+    );
+
+    private static final Map<String, String> GRANULARITIES = Map.of(
+            "hour", "hour",
+            "day", "day"
+    );
+
+    private final UploadStatsRepository uploadStatsRepository;
+    private final SagaStateRepository sagaStateRepository;
+
+    @Value("${application.analytics.max-range-days:93}")
+    private int maxRangeDays;
+
+
+    // Ошибки аналитики не должны ломать загрузку
+    public Mono<Void> recordUpload(FileEntity file) {
+        return uploadStatsRepository.increment(file.getUserId(), file.getContentType(), 1, file.getFileSize(), 0)
+                .onErrorResume(e -> {
+                    log.warn("Failed to record upload stats: fileId={}", file.getId(), e);
+                    return Mono.empty();
+                });
+    }
+
+    // Тип файла известен только саге; без неё (например, конфликт до старта) пишем "unknown"
+    public Mono<Void> recordFailure(IdempotencyRecordEntity record) {
+        Mono<String> contentType = record.getSagaId() == null
+                ? Mono.just(UNKNOWN_CONTENT_TYPE)
+                : sagaStateRepository.findBySagaId(record.getSagaId())
+                        .mapNotNull(SagaStateEntity::getContentType)
+                        .defaultIfEmpty(UNKNOWN_CONTENT_TYPE);
+
+        return contentType
+                .flatMap(type -> uploadStatsRepository.increment(record.getUserId(), type, 0, 0, 1))
+                .onErrorResume(e -> {
+                    log.warn("Failed to record failure stats: userId={}, key={}",
+                            record.getUserId(), record.getIdempotencyKey(), e);
+                    return Mono.empty();
+                });
+    }
+
+
+    public Flux<UploadStatsResponse> getStats(
+            String groupBy,
+            String granularity,
+            LocalDateTime from,
+            LocalDateTime to,
+            Long userId) {
+
+        String dimension = DIMENSIONS.get(groupBy);
+        if (dimension == null) {
+            return Flux.error(new IllegalArgumentException("groupBy must be one of: " + DIMENSIONS.keySet()));
+        }
+        String truncation = GRANULARITIES.get(granularity);
+        if (truncation == null) {
+            return Flux.error(new IllegalArgumentException("granularity must be one of: " + GRANULARITIES.keySet()));
+        }
+        if (!from.isBefore(to)) {
+            return Flux.error(new IllegalArgumentException("from must be before to"));
+        }
+        if (Duration.between(from, to).toDays() > maxRangeDays) {
+            return Flux.error(new IllegalArgumentException("Range must not exceed " + maxRangeDays + " days"));
+        }
+
+        log.info("Loading upload stats: groupBy={}, granularity={}, from={}, to={}, userId={}",
+                groupBy, granularity, from, to, userId);
+
+        return uploadStatsRepository.aggregate(dimension, truncation, from, to, userId);
+    }
+}
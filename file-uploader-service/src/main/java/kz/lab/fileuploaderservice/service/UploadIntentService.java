@@ -0,0 +1,349 @@
+package kz.lab.fileuploaderservice.service;
+
+import kz.lab.fileuploaderservice.dto.FileUploadResponse;
+import kz.lab.fileuploaderservice.dto.UploadIntentConfirmRequest;
+import kz.lab.fileuploaderservice.dto.UploadIntentRequest;
+import kz.lab.fileuploaderservice.dto.UploadIntentResponse;
+import kz.lab.fileuploaderservice.exception.FileSizeExceededException;
+import kz.lab.fileuploaderservice.exception.IdempotencyConflictException;
+import kz.lab.fileuploaderservice.exception.ResourceNotFoundException;
+import kz.lab.fileuploaderservice.exception.StorageServiceException;
+import kz.lab.fileuploaderservice.exception.UploadIntentExpiredException;
+import kz.lab.fileuploaderservice.model.entity.UploadIntentEntity;
+import kz.lab.fileuploaderservice.model.entity.UploadIntentStatus;
+import kz.lab.fileuploaderservice.repository.FileRepository;
+import kz.lab.fileuploaderservice.repository.UploadIntentRepository;
+import kz.lab.fileuploaderservice.saga.service.FileUploadSagaOrchestrator;
+import kz.lab.fileuploaderservice.storage.UploadResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * Two-phase direct-to-storage upload: the client PUTs bytes straight to S3 with presigned URLs,
+ * then confirms; only metadata passes through the service.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UploadIntentService {
+
+    private final UploadIntentRepository uploadIntentRepository;
+    private final FileRepository fileRepository;
+    private final IdempotencyService idempotencyService;
+    private final MinioService minioService;
+    private final FileUploadSagaOrchestrator sagaOrchestrator;
+
+    @Value("${application.storage.type:s3}")
+    private String storageType;
+
+    @Value("${application.minio.max-file-size}")
+    private long maxFileSize;
+
+    @Value("${application.upload-intents.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Value("${application.upload-intents.confirm-grace-seconds:60}")
+    private long confirmGraceSeconds;
+
+    @Value("${application.upload-intents.multipart-threshold:67108864}")
+    private long multipartThreshold;
+
+    @Value("${application.upload-intents.part-size:16777216}")
+    private long partSize;
+
+
+    public Mono<UploadIntentResponse> createIntent(Long userId, UUID idempotencyKey, UploadIntentRequest request) {
+        log.info("Creating upload intent: user={}, key={}, size={}", userId, idempotencyKey, request.getFileSize());
+
+        // Прямая загрузка по presigned URL есть только у S3
+        if (!"s3".equals(storageType)) {
+            return Mono.error(new StorageServiceException("Direct uploads are not supported by the local storage backend"));
+        }
+
+        if (request.getFileSize() > maxFileSize) {
+            return Mono.error(new FileSizeExceededException(
+                    "File size exceeds the limit of " + maxFileSize + " bytes"
+            ));
+        }
+
+        return uploadIntentRepository.findPendingByUserIdAndIdempotencyKey(userId, idempotencyKey)
+                .filter(intent -> !intent.isExpired(LocalDateTime.now()))
+                // Повтор того же запроса - те же объект и intent, ссылки подписываются заново
+                .flatMap(this::toResponse)
+                .switchIfEmpty(Mono.defer(() -> reserveAndCreate(userId, idempotencyKey, request)));
+    }
+
+    public Mono<FileUploadResponse> confirmIntent(Long userId, UUID intentId, UploadIntentConfirmRequest request) {
+        log.info("Confirming upload intent: user={}, intentId={}", userId, intentId);
+
+        return uploadIntentRepository.findByIntentIdAndUserId(intentId, userId)
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException(
+                        String.format("Upload intent not found: id=%s", intentId)
+                )))
+                .flatMap(intent -> {
+                    if (intent.getStatus() == UploadIntentStatus.CONFIRMED) {
+                        return completedResponse(intent);
+                    }
+                    if (intent.isExpired(LocalDateTime.now())) {
+                        return Mono.error(new UploadIntentExpiredException("Upload intent has expired"));
+                    }
+
+                    return uploadIntentRepository.transition(
+                                    intentId, UploadIntentStatus.PENDING, UploadIntentStatus.CONFIRMING)
+                            .flatMap(claimed -> {
+                                if (claimed == 0) {
+                                    return Mono.error(new IdempotencyConflictException(
+                                            "Upload intent is already being confirmed"
+                                    ));
+                                }
+                                return finalizeObject(intent, request)
+                                        .then(confirmObject(intent))
+                                        .onErrorResume(e -> releaseClaim(intent, e));
+                            });
+                });
+    }
+
+    public Mono<Long> expireIntents(int limit) {
+        return uploadIntentRepository.findExpired(LocalDateTime.now().minusSeconds(confirmGraceSeconds), limit)
+                .concatMap(this::expireIntent)
+                .filter(expired -> expired)
+                .count();
+    }
+
+
+    private Mono<UploadIntentResponse> reserveAndCreate(Long userId, UUID idempotencyKey, UploadIntentRequest request) {
+        return idempotencyService.checkAndReserveIdempotency(userId, idempotencyKey)
+                .flatMap(completed -> Mono.<UploadIntentResponse>error(new IdempotencyConflictException(
+                        "Upload with this idempotency key is already completed: file_id=" + completed.getFileId()
+                )))
+                .switchIfEmpty(Mono.defer(() ->
+                        createIntentRecord(userId, idempotencyKey, request)
+                                .flatMap(this::toResponse)
+                                .onErrorResume(e ->
+                                        idempotencyService.saveFailedOperation(userId, idempotencyKey, e.getMessage())
+                                                .then(Mono.error(e))
+                                )
+                ));
+    }
+
+    private Mono<UploadIntentEntity> createIntentRecord(Long userId, UUID idempotencyKey, UploadIntentRequest request) {
+        String storedFilename = minioService.generateStoredFilename(userId, request.getFilename());
+        String bucketName = minioService.resolveBucket(storedFilename);
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(ttlMinutes);
+        boolean multipart = request.getFileSize() > multipartThreshold;
+
+        Mono<Optional<String>> uploadIdMono = multipart
+                ? minioService.createMultipartUpload(bucketName, storedFilename, request.getContentType()).map(Optional::of)
+                : Mono.just(Optional.empty());
+
+        return uploadIdMono
+                .map(uploadId -> UploadIntentEntity.builder()
+                        .intentId(UUID.randomUUID())
+                        .userId(userId)
+                        .idempotencyKey(idempotencyKey)
+                        .originalFilename(request.getFilename())
+                        .contentType(request.getContentType())
+                        .declaredSize(request.getFileSize())
+                        .storedFilename(storedFilename)
+                        .bucketName(bucketName)
+                        .uploadId(uploadId.orElse(null))
+                        .partSize(multipart ? partSize : null)
+                        .status(UploadIntentStatus.PENDING)
+                        .expiresAt(expiresAt)
+                        .createdAt(LocalDateTime.now())
+                        .updatedAt(LocalDateTime.now())
+                        .build())
+                .flatMap(uploadIntentRepository::save)
+                // Ключ занят, пока клиент грузит напрямую в хранилище
+                .flatMap(saved -> idempotencyService.extendDeadline(
+                                userId, idempotencyKey, expiresAt.plusSeconds(confirmGraceSeconds))
+                        .thenReturn(saved))
+                .doOnSuccess(saved -> log.info("Created upload intent: {}", saved));
+    }
+
+    private Mono<UploadIntentResponse> toResponse(UploadIntentEntity intent) {
+        Duration ttl = Duration.between(LocalDateTime.now(), intent.getExpiresAt());
+
+        if (!intent.isMultipart()) {
+            return minioService.generatePresignedUploadUrl(
+                            intent.getBucketName(),
+                            intent.getStoredFilename(), intent.getContentType(), intent.getDeclaredSize(), ttl)
+                    .map(presigned -> UploadIntentResponse.builder()
+                            .intentId(intent.getIntentId().toString())
+                            .method("PUT")
+                            .uploadUrl(presigned.url())
+                            .headers(presigned.headers())
+                            .expiresAt(intent.getExpiresAt())
+                            .build());
+        }
+
+        return minioService.generatePresignedPartUrls(
+                        intent.getBucketName(),
+                        intent.getStoredFilename(), intent.getUploadId(), intent.getDeclaredSize(), intent.getPartSize(), ttl)
+                .map(parts -> UploadIntentResponse.builder()
+                        .intentId(intent.getIntentId().toString())
+                        .method("PUT")
+                        .partSize(intent.getPartSize())
+                        .parts(IntStream.range(0, parts.size())
+                                .mapToObj(i -> new UploadIntentResponse.PartUrl(
+                                        i + 1, parts.get(i).url(), parts.get(i).headers()))
+                                .toList())
+                        .expiresAt(intent.getExpiresAt())
+                        .build());
+    }
+
+    private Mono<Void> finalizeObject(UploadIntentEntity intent, UploadIntentConfirmRequest request) {
+        if (!intent.isMultipart()) {
+            return Mono.empty();
+        }
+
+        long expectedParts = (intent.getDeclaredSize() + intent.getPartSize() - 1) / intent.getPartSize();
+        if (request == null || request.getParts() == null || request.getParts().size() != expectedParts) {
+            return Mono.error(new IllegalArgumentException(
+                    "Multipart confirmation requires ETags for all " + expectedParts + " parts"
+            ));
+        }
+
+        List<CompletedPart> parts = request.getParts().stream()
+                .sorted(Comparator.comparing(UploadIntentConfirmRequest.Part::getPartNumber))
+                .map(part -> CompletedPart.builder()
+                        .partNumber(part.getPartNumber())
+                        .eTag(part.getEtag())
+                        .build())
+                .toList();
+
+        return minioService.completeMultipartUpload(
+                intent.getBucketName(), intent.getStoredFilename(), intent.getUploadId(), parts);
+    }
+
+    private Mono<FileUploadResponse> confirmObject(UploadIntentEntity intent) {
+        return minioService.headFile(intent.getBucketName(), intent.getStoredFilename())
+                .switchIfEmpty(Mono.error(new IllegalArgumentException("Object has not been uploaded yet")))
+                .flatMap(head -> verifyObject(intent, head))
+                // Дальше - те же шаги саги, что и у загрузки через сервис
+                .then(Mono.defer(() -> sagaOrchestrator.begin(
+                        intent.getUserId(),
+                        intent.getIdempotencyKey(),
+                        intent.getOriginalFilename(),
+                        intent.getContentType(),
+                        intent.getStoredFilename(),
+                        intent.getBucketName(),
+                        null)))
+                // Сбой шага саги откатывает её сразу, а не через stall recovery; объект клиента
+                // не трогаем, чтобы повторный confirm мог его подхватить
+                .flatMap(saga -> sagaOrchestrator.objectStored(saga, new UploadResult(
+                                minioService.buildStorageUrl(intent.getBucketName(), intent.getStoredFilename()),
+                                intent.getStoredFilename(),
+                                intent.getDeclaredSize()))
+                        .flatMap(sagaOrchestrator::proceed)
+                        .onErrorResume(e ->
+                                sagaOrchestrator.abortKeepingObject(saga, e).then(Mono.error(e))
+                        ))
+                .flatMap(response -> {
+                    intent.markConfirmed(response.getFileId());
+                    return uploadIntentRepository.save(intent).thenReturn(response);
+                })
+                .doOnSuccess(response ->
+                        log.info("Upload intent confirmed: intentId={}, fileId={}",
+                                intent.getIntentId(), response.getFileId())
+                );
+    }
+
+    private Mono<Void> verifyObject(UploadIntentEntity intent, HeadObjectResponse head) {
+        boolean sizeMatches = head.contentLength() != null && head.contentLength().equals(intent.getDeclaredSize());
+        boolean typeMatches = intent.getContentType().equals(head.contentType());
+
+        if (sizeMatches && typeMatches) {
+            return Mono.empty();
+        }
+
+        log.warn("Uploaded object does not match intent: intentId={}, size={}, type={}",
+                intent.getIntentId(), head.contentLength(), head.contentType());
+
+        // Чужой объект не сохраняем: удаляем и закрываем intent
+        intent.markExpired();
+        return minioService.deleteFile(intent.getBucketName(), intent.getStoredFilename())
+                .then(uploadIntentRepository.save(intent))
+                .then(idempotencyService.saveFailedOperation(
+                        intent.getUserId(), intent.getIdempotencyKey(), "Uploaded object does not match the intent"))
+                .then(Mono.error(new IllegalArgumentException(
+                        "Uploaded object does not match declared size or content type"
+                )));
+    }
+
+    private Mono<FileUploadResponse> releaseClaim(UploadIntentEntity intent, Throwable cause) {
+        // Если intent уже закрыт (EXPIRED), условный переход ничего не изменит
+        return uploadIntentRepository.transition(
+                        intent.getIntentId(), UploadIntentStatus.CONFIRMING, UploadIntentStatus.PENDING)
+                .then(Mono.error(cause));
+    }
+
+    // Ответ по файлу intent-а, а не по idempotency-записи: её могли удалить retention-ом или пометить FAILED,
+    // и повторное резервирование вернуло бы пустой ответ и оставило фантомную операцию IN_PROGRESS
+    private Mono<FileUploadResponse> completedResponse(UploadIntentEntity intent) {
+        Mono<FileUploadResponse> notFound = Mono.error(new ResourceNotFoundException(
+                String.format("File of the confirmed upload intent no longer exists: id=%s", intent.getIntentId())
+        ));
+        if (intent.getFileId() == null) {
+            return notFound;
+        }
+
+        return fileRepository.findById(intent.getFileId())
+                .filter(file -> file.getUserId().equals(intent.getUserId()))
+                .flatMap(file -> minioService.generateDownloadUrl(file.getBucketName(), file.getStoredFilename())
+                        .map(downloadUrl -> {
+                            FileUploadResponse response = new FileUploadResponse(
+                                    file.getId(),
+                                    file.getOriginalFilename(),
+                                    file.getFileSize(),
+                                    file.getContentType(),
+                                    downloadUrl,
+                                    file.getUploadedAt());
+                            response.setExpiresAt(file.getExpiresAt());
+                            return response;
+                        }))
+                .switchIfEmpty(notFound);
+    }
+
+    private Mono<Boolean> expireIntent(UploadIntentEntity intent) {
+        // CONFIRMING мог успеть создать файл до падения узла - такой объект трогать нельзя
+        return fileRepository.findByStoredFilename(intent.getStoredFilename())
+                .flatMap(file -> {
+                    intent.markConfirmed(file.getId());
+                    return uploadIntentRepository.save(intent).thenReturn(false);
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.info("Expiring upload intent: {}", intent);
+
+                    Mono<Void> removeObject = intent.isMultipart()
+                            ? minioService.abortMultipartUpload(
+                                    intent.getBucketName(), intent.getStoredFilename(), intent.getUploadId())
+                            : minioService.deleteFile(intent.getBucketName(), intent.getStoredFilename());
+
+                    intent.markExpired();
+                    return removeObject
+                            .then(uploadIntentRepository.save(intent))
+                            .then(idempotencyService.saveFailedOperation(
+                                    intent.getUserId(), intent.getIdempotencyKey(), "Upload intent expired"))
+                            .thenReturn(true);
+                }))
+                .onErrorResume(e -> {
+                    log.error("Failed to expire upload intent: intentId={}", intent.getIntentId(), e);
+                    return Mono.just(false);
+                });
+    }
+
+}
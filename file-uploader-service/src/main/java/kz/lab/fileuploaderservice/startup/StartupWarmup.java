@@ -0,0 +1,172 @@
+package kz.lab.fileuploaderservice.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import kz.lab.fileuploaderservice.service.FileService;
+import kz.lab.fileuploaderservice.storage.StorageBackend;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs after migrations and before Spring Boot publishes ReadinessState.ACCEPTING_TRAFFIC:
+ * opens R2DBC, Redis and S3 connections, then drives the list, stat and presign paths a few times
+ * so the first real requests don't pay for connection setup and interpreted code. Warm-up only
+ * reads: it never writes files, sagas, idempotency keys or analytics rows.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+@Slf4j
+@RequiredArgsConstructor
+public class StartupWarmup implements ApplicationRunner {
+
+    private final ConnectionFactory connectionFactory;
+    private final ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+    private final StorageBackend storageBackend;
+    private final FileService fileService;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicLong firstRequestMs = new AtomicLong();
+    private final AtomicLong steadyP99Ms = new AtomicLong();
+
+    @Value("${application.startup.warmup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${application.startup.warmup.database-connections:5}")
+    private int databaseConnections;
+
+    @Value("${application.startup.warmup.redis-connections:2}")
+    private int redisConnections;
+
+    @Value("${application.startup.warmup.storage-connections:4}")
+    private int storageConnections;
+
+    @Value("${application.startup.warmup.synthetic-iterations:20}")
+    private int syntheticIterations;
+
+    // Отдельный user_id без файлов: список прогревает запрос, но ничего не возвращает
+    @Value("${application.startup.warmup.user-id:0}")
+    private long warmupUserId;
+
+    @Value("${application.startup.warmup.timeout-ms:30000}")
+    private long timeoutMs;
+
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        log.info("Warming up before accepting traffic");
+
+        // Прогрев не должен мешать старту: ошибки и таймаут только логируются
+        Mono.when(
+                        stage("database", warmUpDatabase()),
+                        stage("redis", warmUpRedis()),
+                        stage("storage", storageBackend.warmUp(storageConnections))
+                )
+                .then(stage("synthetic", syntheticTraffic()))
+                .timeout(Duration.ofMillis(timeoutMs))
+                .onErrorResume(e -> {
+                    log.warn("Warm-up did not finish cleanly: {}", e.toString());
+                    return Mono.empty();
+                })
+                .block();
+
+        long elapsed = System.nanoTime() - start;
+        meterRegistry.timer("startup.warmup.time").record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Warm-up finished in {} ms", TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+
+    private Mono<Void> warmUpDatabase() {
+        // Одновременные запросы заставляют пул открыть N соединений, а не переиспользовать одно
+        return Flux.range(0, databaseConnections)
+                .flatMap(i -> Mono.usingWhen(
+                        connectionFactory.create(),
+                        connection -> Mono.from(connection.createStatement("SELECT 1").execute())
+                                .flatMap(result -> Mono.from(result.map((row, metadata) -> 1))),
+                        Connection::close
+                ))
+                .then();
+    }
+
+    private Mono<Void> warmUpRedis() {
+        return Flux.range(0, redisConnections)
+                .flatMap(i -> reactiveRedisTemplate.execute(connection -> connection.ping()))
+                .then();
+    }
+
+    // Только чтения и подпись ссылок: прогрев не оставляет файлов, саг, ключей идемпотентности и аналитики
+    private Mono<Void> syntheticTraffic() {
+        if (syntheticIterations <= 0) {
+            return Mono.empty();
+        }
+
+        Timer listTimer = meterRegistry.timer("startup.warmup.requests", "path", "list");
+        Timer statTimer = meterRegistry.timer("startup.warmup.requests", "path", "stat");
+        Timer presignTimer = meterRegistry.timer("startup.warmup.requests", "path", "presign");
+        List<Long> listLatencies = new ArrayList<>();
+
+        // Несуществующий объект: HEAD проходит весь путь до S3 и возвращает пусто
+        String probeFilename = storageBackend.generateStoredFilename(warmupUserId, "warmup-probe");
+        String probeBucket = storageBackend.resolveBucket(probeFilename);
+
+        return Flux.range(0, syntheticIterations)
+                .concatMap(i -> timed(fileService.getUserFiles(warmupUserId, 0, 20).then(), listTimer, listLatencies)
+                        .then(timed(storageBackend.statFile(probeBucket, probeFilename), statTimer, null))
+                        .then(timed(storageBackend.generateDownloadUrl(probeBucket, probeFilename), presignTimer, null))
+                )
+                .then(Mono.fromRunnable(() -> reportLatencies(listLatencies)));
+    }
+
+    private <T> Mono<T> timed(Mono<T> call, Timer timer, List<Long> latencies) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.doOnTerminate(() -> {
+                long elapsed = System.nanoTime() - start;
+                timer.record(elapsed, TimeUnit.NANOSECONDS);
+                if (latencies != null) {
+                    latencies.add(elapsed);
+                }
+            });
+        });
+    }
+
+    // Первый запрос против p99 второй половины прогона - насколько прогрев сократил хвост
+    private void reportLatencies(List<Long> latencies) {
+        if (latencies.isEmpty()) {
+            return;
+        }
+
+        List<Long> steady = new ArrayList<>(latencies.subList(latencies.size() / 2, latencies.size()));
+        steady.sort(null);
+
+        firstRequestMs.set(TimeUnit.NANOSECONDS.toMillis(latencies.get(0)));
+        steadyP99Ms.set(TimeUnit.NANOSECONDS.toMillis(
+                steady.get(Math.max(0, (int) Math.ceil(steady.size() * 0.99) - 1))));
+
+        meterRegistry.gauge("startup.warmup.first.request.ms", firstRequestMs);
+        meterRegistry.gauge("startup.warmup.steady.p99.ms", steadyP99Ms);
+        log.info("Warm-up list latency: first={} ms, steady p99={} ms over {} requests",
+                firstRequestMs.get(), steadyP99Ms.get(), steady.size());
+    }
+}
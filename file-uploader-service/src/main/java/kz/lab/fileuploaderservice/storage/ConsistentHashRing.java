@@ -0,0 +1,62 @@
+package kz.lab.fileuploaderservice.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Weighted consistent hash ring. Each node gets {@code weight * virtualNodesPerWeight} points,
+ * so adding a node only moves keys that land on its new points.
+ */
+public class ConsistentHashRing<T> {
+
+    private final NavigableMap<Long, T> ring = new TreeMap<>();
+    private final int virtualNodesPerWeight;
+
+    public ConsistentHashRing(int virtualNodesPerWeight) {
+        if (virtualNodesPerWeight < 1) {
+            throw new IllegalArgumentException("virtualNodesPerWeight must be >= 1");
+        }
+        this.virtualNodesPerWeight = virtualNodesPerWeight;
+    }
+
+    public void add(String nodeId, int weight, T node) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weight must be >= 1: node=" + nodeId);
+        }
+        for (int i = 0; i < weight * virtualNodesPerWeight; i++) {
+            // Коллизии точек крайне редки, первый занявший точку шард её сохраняет
+            ring.putIfAbsent(hash(nodeId + "#" + i), node);
+        }
+    }
+
+    public T get(String key) {
+        if (ring.isEmpty()) {
+            throw new IllegalStateException("Hash ring is empty");
+        }
+        Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Collection<T> points() {
+        return ring.values();
+    }
+
+    // MD5 вместо hashCode: значение одинаково на всех узлах и между перезапусками
+    static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package kz.lab.fileuploaderservice.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded LRU read-through cache of whole objects on local disk.
+ * The first miss starts a single fetch from the backend; every reader of that key (including the first)
+ * tails the cache file as it is written, so concurrent misses share one fetch.
+ */
+@Component
+@Slf4j
+public class DiskObjectCache {
+
+    private final StorageBackend storageBackend;
+    private final boolean enabled;
+    private final Path cacheDir;
+    private final long maxSizeBytes;
+    private final long maxObjectBytes;
+    private final int chunkSize;
+
+    // accessOrder=true: get() переносит запись в конец, в голове всегда наименее используемая
+    private final LinkedHashMap<String, CacheEntry> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypasses;
+    private final Counter evictions;
+
+    public DiskObjectCache(
+            StorageBackend storageBackend,
+            MeterRegistry meterRegistry,
+            @Value("${application.cache.disk.enabled:true}") boolean enabled,
+            @Value("${application.cache.disk.dir:./data/cache}") String cacheDir,
+            @Value("${application.cache.disk.max-size-bytes:1073741824}") long maxSizeBytes,
+            @Value("${application.cache.disk.max-object-bytes:67108864}") long maxObjectBytes,
+            @Value("${application.cache.disk.chunk-size:65536}") int chunkSize) {
+
+        this.storageBackend = storageBackend;
+        this.enabled = enabled;
+        this.cacheDir = Path.of(cacheDir).toAbsolutePath().normalize();
+        this.maxSizeBytes = maxSizeBytes;
+        this.maxObjectBytes = maxObjectBytes;
+        this.chunkSize = chunkSize;
+
+        this.hits = Counter.builder("object.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("object.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.bypasses = Counter.builder("object.cache.requests").tag("result", "bypass").register(meterRegistry);
+        this.evictions = Counter.builder("object.cache.evictions").register(meterRegistry);
+
+        Gauge.builder("object.cache.size", usedBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("object.cache.entries", this, DiskObjectCache::entryCount)
+                .register(meterRegistry);
+        Gauge.builder("object.cache.hit.ratio", this, DiskObjectCache::hitRatio)
+                .register(meterRegistry);
+
+        if (enabled) {
+            resetCacheDir();
+            log.info("Disk object cache enabled: dir={}, maxSize={} bytes", this.cacheDir, maxSizeBytes);
+        }
+    }
+
+
+    public Flux<ByteBuffer> read(String bucketName, String storedFilename, long size) {
+        if (!enabled || size > maxObjectBytes) {
+            bypasses.increment();
+            return storageBackend.downloadFile(bucketName, storedFilename);
+        }
+
+        return Flux.defer(() -> {
+            String key = bucketName + "/" + storedFilename;
+            List<Path> evicted = new ArrayList<>();
+            CacheEntry entry;
+            boolean created = false;
+
+            synchronized (this) {
+                entry = index.get(key);
+                if (entry == null && reserve(size, evicted)) {
+                    entry = createEntry(key, size);
+                    if (entry != null) {
+                        index.put(key, entry);
+                        created = true;
+                    } else {
+                        usedBytes.addAndGet(-size);
+                    }
+                }
+            }
+            deleteLater(evicted);
+
+            if (entry == null) {
+                // Кеш заполнен незавершёнными загрузками - читаем мимо него
+                bypasses.increment();
+                return storageBackend.downloadFile(bucketName, storedFilename);
+            }
+
+            if (created) {
+                misses.increment();
+                fill(entry, bucketName, storedFilename);
+            } else {
+                hits.increment();
+            }
+
+            return tail(entry)
+                    .switchIfEmpty(Flux.defer(() -> storageBackend.downloadFile(bucketName, storedFilename)));
+        });
+    }
+
+    public void invalidate(String bucketName, String storedFilename) {
+        CacheEntry removed;
+        synchronized (this) {
+            removed = index.remove(bucketName + "/" + storedFilename);
+            if (removed != null) {
+                usedBytes.addAndGet(-removed.size);
+            }
+        }
+        if (removed != null) {
+            log.debug("Invalidated cached object: {}", removed.key);
+            deleteLater(List.of(removed.path));
+        }
+    }
+
+
+    // Вызывается под локом: освобождает место, вытесняя только полностью записанные объекты
+    private boolean reserve(long size, List<Path> evicted) {
+        Iterator<CacheEntry> iterator = index.values().iterator();
+        while (usedBytes.get() + size > maxSizeBytes && iterator.hasNext()) {
+            CacheEntry candidate = iterator.next();
+            if (!candidate.complete) {
+                continue;
+            }
+            iterator.remove();
+            usedBytes.addAndGet(-candidate.size);
+            evictions.increment();
+            evicted.add(candidate.path);
+        }
+
+        if (usedBytes.get() + size > maxSizeBytes) {
+            return false;
+        }
+        usedBytes.addAndGet(size);
+        return true;
+    }
+
+    private CacheEntry createEntry(String key, long size) {
+        Path path = cacheDir.resolve(UUID.randomUUID() + ".bin");
+        try {
+            // Файл создаётся до публикации записи - читатели всегда могут его открыть
+            AsynchronousFileChannel channel = AsynchronousFileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return new CacheEntry(key, path, size, channel);
+        } catch (IOException e) {
+            log.warn("Failed to create cache file: {}", path, e);
+            return null;
+        }
+    }
+
+    private void fill(CacheEntry entry, String bucketName, String storedFilename) {
+        // Загрузка не привязана к подписке первого клиента: его отмена не обрывает чтение для остальных
+        storageBackend.downloadFile(bucketName, storedFilename)
+                .concatMap(buffer -> write(entry.channel, buffer, entry.written.get()))
+                .doOnNext(entry::advance)
+                .doFinally(signal -> closeQuietly(entry.channel))
+                .subscribe(
+                        bytes -> { },
+                        error -> fillFailed(entry, error),
+                        () -> {
+                            if (entry.written.get() != entry.size) {
+                                fillFailed(entry, new IllegalStateException(
+                                        "Object size changed: expected=" + entry.size + ", actual=" + entry.written.get()));
+                                return;
+                            }
+                            entry.markComplete();
+                            log.debug("Cached object: key={}, size={}", entry.key, entry.size);
+                        }
+                );
+    }
+
+    private void fillFailed(CacheEntry entry, Throwable error) {
+        log.warn("Failed to fill cache entry: {}", entry.key, error);
+        entry.progress.tryEmitError(error);
+
+        boolean removed;
+        synchronized (this) {
+            removed = index.remove(entry.key, entry);
+            if (removed) {
+                usedBytes.addAndGet(-entry.size);
+            }
+        }
+        deleteLater(List.of(entry.path));
+    }
+
+    private Flux<ByteBuffer> tail(CacheEntry entry) {
+        return Mono.fromCallable(() -> AsynchronousFileChannel.open(entry.path, StandardOpenOption.READ))
+                // Запись вытеснили между поиском и открытием - пустой результат, читаем из хранилища
+                .onErrorResume(NoSuchFileException.class, e -> Mono.empty())
+                .flatMapMany(channel -> {
+                    AtomicLong position = new AtomicLong();
+                    // progress - число байт, уже записанных в файл; читаем только до этой границы
+                    return entry.progress.asFlux()
+                            .concatMap(available -> readRange(channel, position, available))
+                            .doFinally(signal -> closeQuietly(channel));
+                });
+    }
+
+    private Flux<ByteBuffer> readRange(AsynchronousFileChannel channel, AtomicLong position, long available) {
+        return Flux.defer(() -> {
+                    long from = position.get();
+                    if (from >= available) {
+                        return Mono.<ByteBuffer>empty();
+                    }
+                    int length = (int) Math.min(chunkSize, available - from);
+                    return read(channel, from, length)
+                            .doOnNext(buffer -> position.addAndGet(buffer.remaining()));
+                })
+                .repeat(() -> position.get() < available);
+    }
+
+    private Mono<ByteBuffer> read(AsynchronousFileChannel channel, long position, int length) {
+        return Mono.create(sink -> {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            channel.read(buffer, position, null, new CompletionHandler<Integer, Void>() {
+                @Override
+                public void completed(Integer read, Void attachment) {
+                    if (read <= 0) {
+                        sink.error(new IllegalStateException("Cache file is shorter than expected"));
+                        return;
+                    }
+                    buffer.flip();
+                    sink.success(buffer);
+                }
+
+                @Override
+                public void failed(Throwable error, Void attachment) {
+                    sink.error(error);
+                }
+            });
+        });
+    }
+
+    private Mono<Integer> write(AsynchronousFileChannel channel, ByteBuffer buffer, long position) {
+        int length = buffer.remaining();
+        return Mono.create(sink -> writeFully(channel, buffer, position, () -> sink.success(length), sink::error));
+    }
+
+    private void writeFully(
+            AsynchronousFileChannel channel,
+            ByteBuffer buffer,
+            long position,
+            Runnable onComplete,
+            Consumer<Throwable> onError) {
+
+        channel.write(buffer, position, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer written, Void attachment) {
+                if (buffer.hasRemaining()) {
+                    writeFully(channel, buffer, position + written, onComplete, onError);
+                } else {
+                    onComplete.run();
+                }
+            }
+
+            @Override
+            public void failed(Throwable error, Void attachment) {
+                onError.accept(error);
+            }
+        });
+    }
+
+    private void resetCacheDir() {
+        // Индекс живёт только в памяти, файлы от прошлого запуска недостижимы
+        try {
+            Files.createDirectories(cacheDir);
+            try (Stream<Path> leftovers = Files.list(cacheDir)) {
+                leftovers.forEach(path -> path.toFile().delete());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to prepare cache directory: " + cacheDir, e);
+        }
+    }
+
+    private void deleteLater(List<Path> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        Mono.fromRunnable(() -> paths.forEach(path -> path.toFile().delete()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe();
+    }
+
+    private void closeQuietly(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close cache file channel", e);
+        }
+    }
+
+    private synchronized int entryCount() {
+        return index.size();
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+
+    private static final class CacheEntry {
+        private final String key;
+        private final Path path;
+        private final long size;
+        private final AsynchronousFileChannel channel;
+        private final AtomicLong written = new AtomicLong();
+        // replay().latest(): поздний читатель сразу получает текущую границу записи
+        private final Sinks.Many<Long> progress = Sinks.many().replay().latest();
+        private volatile boolean complete;
+
+        private CacheEntry(String key, Path path, long size, AsynchronousFileChannel channel) {
+            this.key = key;
+            this.path = path;
+            this.size = size;
+            this.channel = channel;
+            this.progress.tryEmitNext(0L);
+        }
+
+        private void advance(int bytes) {
+            progress.tryEmitNext(written.addAndGet(bytes));
+        }
+
+        private void markComplete() {
+            complete = true;
+            progress.tryEmitComplete();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package kz.lab.fileuploaderservice.storage;
+
+import kz.lab.fileuploaderservice.controller.LocalStorageController;
+import kz.lab.fileuploaderservice.exception.StorageServiceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Stores objects as files under {@code root-dir/{bucket}/{key}} for single-node deployments and tests.
+ * Download URLs point at {@link LocalStorageController}, which serves the file with sendfile.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(prefix = "application.storage", name = "type", havingValue = "local")
+@Slf4j
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final String PLACEHOLDER_SECRET = "change-me";
+
+    private final Path rootDir;
+    private final String bucketName;
+    private final String publicUrl;
+    private final byte[] signingKey;
+    private final Duration urlTtl;
+
+    public LocalStorageBackend(
+            @Value("${application.storage.local.root-dir:./data/storage}") String rootDir,
+            @Value("${application.storage.local.bucket-name:local}") String bucketName,
+            @Value("${application.storage.local.public-url:http://localhost:8080}") String publicUrl,
+            @Value("${application.storage.local.signing-secret:}") String signingSecret,
+            @Value("${application.storage.local.url-ttl-seconds:3600}") long urlTtlSeconds) {
+
+        // Ссылки на скачивание отдаются без аутентификации - известный секрет позволил бы их подделать
+        if (signingSecret == null || signingSecret.isBlank() || PLACEHOLDER_SECRET.equals(signingSecret.trim())) {
+            throw new IllegalStateException(
+                    "application.storage.local.signing-secret must be set to a non-default value when storage type is local");
+        }
+
+        this.rootDir = Path.of(rootDir).toAbsolutePath().normalize();
+        this.bucketName = bucketName;
+        this.publicUrl = publicUrl;
+        this.signingKey = signingSecret.getBytes(StandardCharsets.UTF_8);
+        this.urlTtl = Duration.ofSeconds(urlTtlSeconds);
+
+        log.info("Using local filesystem storage: root={}", this.rootDir);
+    }
+
+
+    @Override
+    public String resolveBucket(String storedFilename) {
+        return bucketName;
+    }
+
+    @Override
+    public Mono<UploadResult> uploadFile(
+            String bucketName,
+            String storedFilename,
+            String contentType,
+            Flux<DataBuffer> content) {
+        return uploadFile(bucketName, storedFilename, contentType, content, bytes -> {});
+    }
+
+    @Override
+    public Mono<UploadResult> uploadFile(
+            String bucketName,
+            String storedFilename,
+            String contentType,
+            Flux<DataBuffer> content,
+            LongConsumer progress) {
+
+        log.info("Writing file to local storage: bucket={}, key={}", bucketName, storedFilename);
+
+        Path target = resolvePath(bucketName, storedFilename);
+        // Пишем во временный файл и переименовываем - читатели никогда не видят недописанный объект
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp-" + UUID.randomUUID());
+        AtomicLong totalBytes = new AtomicLong(0);
+        AtomicLong writtenBytes = new AtomicLong(0);
+
+        return Mono.fromCallable(() -> Files.createDirectories(target.getParent()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(Mono.using(
+                        () -> AsynchronousFileChannel.open(temp,
+                                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+                        channel -> DataBufferUtils.write(
+                                        content.doOnNext(buffer -> totalBytes.addAndGet(buffer.readableByteCount())),
+                                        channel)
+                                // write отдаёт буфер после записи в канал; позиция чтения при этом не сдвигается
+                                .doOnNext(buffer -> progress.accept(writtenBytes.addAndGet(buffer.readableByteCount())))
+                                .doOnNext(DataBufferUtils::release)
+                                .then(),
+                        this::closeQuietly
+                ))
+                .then(Mono.fromCallable(() -> Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .map(path -> new UploadResult(
+                        buildStorageUrl(bucketName, storedFilename),
+                        storedFilename,
+                        totalBytes.get()
+                ))
+                .doOnSuccess(result ->
+                        log.info("Successfully wrote file to local storage: key={}, size={}",
+                                storedFilename, result.getFileSize())
+                )
+                .onErrorResume(e -> deleteQuietly(temp)
+                        .then(Mono.error(new StorageServiceException("Failed to write file to local storage", e))));
+    }
+
+    @Override
+    public Flux<ByteBuffer> downloadFile(String bucketName, String storedFilename) {
+        Path path = resolvePath(bucketName, storedFilename);
+
+        // Буферы из DefaultDataBufferFactory не пулятся, asByteBuffer безопасен без release
+        return DataBufferUtils.readAsynchronousFileChannel(
+                        () -> AsynchronousFileChannel.open(path, StandardOpenOption.READ),
+                        DefaultDataBufferFactory.sharedInstance,
+                        READ_BUFFER_SIZE)
+                .map(DataBuffer::asByteBuffer)
+                .onErrorMap(e -> new StorageServiceException("Failed to read file from local storage", e));
+    }
+
+    @Override
+    public Mono<StoredObjectInfo> statFile(String bucketName, String storedFilename) {
+        Path path = resolvePath(bucketName, storedFilename);
+
+        return Mono.fromCallable(() -> {
+                    String contentType = Files.probeContentType(path);
+                    return new StoredObjectInfo(
+                            Files.size(path),
+                            contentType != null ? contentType : "application/octet-stream");
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(NoSuchFileException.class, e -> Mono.empty())
+                .onErrorMap(IOException.class, e -> new StorageServiceException("Failed to read file metadata", e));
+    }
+
+    @Override
+    public Mono<Void> deleteFile(String bucketName, String storedFilename) {
+        log.info("Deleting file from local storage: bucket={}, key={}", bucketName, storedFilename);
+
+        return Mono.fromCallable(() -> Files.deleteIfExists(resolvePath(bucketName, storedFilename)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnSuccess(deleted -> {
+                    if (!deleted) {
+                        log.warn("File not found in local storage (already deleted?): {}", storedFilename);
+                    }
+                })
+                .onErrorMap(e -> new StorageServiceException("Failed to delete file from storage", e))
+                .then();
+    }
+
+    @Override
+    public Mono<List<String>> deleteFiles(String bucketName, List<String> storedFilenames) {
+        return Flux.fromIterable(storedFilenames)
+                .concatMap(key -> deleteFile(bucketName, key)
+                        .then(Mono.<String>empty())
+                        .onErrorResume(e -> {
+                            log.warn("Failed to delete file from local storage: key={}, error={}", key, e.toString());
+                            return Mono.just(key);
+                        }))
+                .collectList();
+    }
+
+    @Override
+    public Mono<Void> copyFile(String sourceBucket, String sourceFilename, String targetBucket, String targetFilename,
+                               String contentType, long size) {
+        Path source = resolvePath(sourceBucket, sourceFilename);
+        Path target = resolvePath(targetBucket, targetFilename);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp-" + UUID.randomUUID());
+
+        // Та же схема temp + rename, что и при записи
+        return Mono.fromCallable(() -> {
+                    Files.createDirectories(target.getParent());
+                    Files.copy(source, temp);
+                    return Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnSuccess(path -> log.info("Copied file in local storage: {} -> {}", sourceFilename, targetFilename))
+                .onErrorResume(e -> deleteQuietly(temp)
+                        .then(Mono.error(new StorageServiceException("Failed to copy file in local storage", e))))
+                .then();
+    }
+
+    @Override
+    public Mono<String> generateDownloadUrl(String bucketName, String storedFilename) {
+        long expires = Instant.now().plus(urlTtl).getEpochSecond();
+
+        String url = String.format("%s%s?bucket=%s&key=%s&expires=%d&signature=%s",
+                publicUrl,
+                LocalStorageController.DOWNLOAD_PATH,
+                encode(bucketName),
+                encode(storedFilename),
+                expires,
+                sign(bucketName, storedFilename, expires));
+
+        return Mono.just(url);
+    }
+
+    @Override
+    public String buildStorageUrl(String bucketName, String storedFilename) {
+        return "file://" + resolvePath(bucketName, storedFilename);
+    }
+
+
+    public boolean verifySignature(String bucketName, String storedFilename, long expires, String signature) {
+        if (Instant.now().getEpochSecond() > expires) {
+            return false;
+        }
+        byte[] expected = sign(bucketName, storedFilename, expires).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Path resolvePath(String bucketName, String storedFilename) {
+        Path path = rootDir.resolve(bucketName).resolve(storedFilename).normalize();
+
+        // Ключи приходят из БД или подписанной ссылки, но выход за root всё равно запрещаем
+        if (!path.startsWith(rootDir.resolve(bucketName))) {
+            throw new IllegalArgumentException("Invalid storage key: " + storedFilename);
+        }
+        return path;
+    }
+
+    private String sign(String bucketName, String storedFilename, long expires) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(signingKey, "HmacSHA256"));
+            byte[] signature = mac.doFinal(
+                    (bucketName + "\n" + storedFilename + "\n" + expires).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to sign download URL", e);
+        }
+    }
+
+    private String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private Mono<Void> deleteQuietly(Path path) {
+        return Mono.fromCallable(() -> Files.deleteIfExists(path))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> Mono.just(false))
+                .then();
+    }
+
+    private void closeQuietly(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close file channel", e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package kz.lab.fileuploaderservice.storage;
+
+/**
+ * Splits an object of {@code size} bytes into S3 multipart parts of {@code partSize} bytes;
+ * the last part takes the remainder. Part numbers start at 1, as in the S3 API.
+ */
+public record MultipartPlan(long size, long partSize) {
+
+    public static final long MAX_PARTS = 10_000;
+
+    // Части не меньше minPartSize, но так, чтобы их было не больше MAX_PARTS
+    public static MultipartPlan of(long size, long minPartSize) {
+        return new MultipartPlan(size, Math.max(minPartSize, (size + MAX_PARTS - 1) / MAX_PARTS));
+    }
+
+    public int partCount() {
+        return (int) ((size + partSize - 1) / partSize);
+    }
+
+    public long start(int partNumber) {
+        return (partNumber - 1) * partSize;
+    }
+
+    // Включительно, как в Range / x-amz-copy-source-range
+    public long end(int partNumber) {
+        return Math.min(start(partNumber) + partSize, size) - 1;
+    }
+
+    public long length(int partNumber) {
+        return end(partNumber) - start(partNumber) + 1;
+    }
+}
@@ -0,0 +1,70 @@
+package kz.lab.fileuploaderservice.storage;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+/**
+ * Object storage used by the upload, download and cleanup paths.
+ * Objects are addressed by (bucket, stored filename); the bucket is whatever {@link #resolveBucket}
+ * returned when the object was written and is persisted alongside it.
+ */
+public interface StorageBackend {
+
+    String resolveBucket(String storedFilename);
+
+    Mono<UploadResult> uploadFile(String bucketName, String storedFilename, String contentType, Flux<DataBuffer> content);
+
+    // progress получает число байт, уже записанных в хранилище; по умолчанию - один раз, после записи
+    default Mono<UploadResult> uploadFile(String bucketName, String storedFilename, String contentType,
+                                          Flux<DataBuffer> content, LongConsumer progress) {
+        return uploadFile(bucketName, storedFilename, contentType, content)
+                .doOnNext(result -> progress.accept(result.getFileSize()));
+    }
+
+    Flux<ByteBuffer> downloadFile(String bucketName, String storedFilename);
+
+    // Пусто, если объекта нет
+    Mono<StoredObjectInfo> statFile(String bucketName, String storedFilename);
+
+    Mono<Void> deleteFile(String bucketName, String storedFilename);
+
+    // Ключи, которые удалить не удалось; пустой список - удалены все
+    Mono<List<String>> deleteFiles(String bucketName, List<String> storedFilenames);
+
+    // Копия на стороне хранилища - содержимое не проходит через сервис
+    Mono<Void> copyFile(String sourceBucket, String sourceFilename, String targetBucket, String targetFilename,
+                        String contentType, long size);
+
+    // Бакет для копии; по умолчанию как для новой загрузки
+    default String resolveCopyBucket(String sourceBucket, String storedFilename) {
+        return resolveBucket(storedFilename);
+    }
+
+    Mono<String> generateDownloadUrl(String bucketName, String storedFilename);
+
+    String buildStorageUrl(String bucketName, String storedFilename);
+
+    // Открыть соединения заранее, чтобы первые запросы не платили за TCP/TLS
+    default Mono<Void> warmUp(int connections) {
+        return Mono.empty();
+    }
+
+    default String generateStoredFilename(Long userId, String originalFilename) {
+        String extension = "";
+        int lastDotIndex = originalFilename.lastIndexOf('.');
+        if (lastDotIndex > 0) {
+            extension = originalFilename.substring(lastDotIndex);
+        }
+
+        String uuid = UUID.randomUUID().toString();
+
+        // Формат: {xx}/user-{userId}/{uuid}.{ext} - случайный префикс размазывает ключи одного пользователя
+        return String.format("%s/user-%d/%s%s", uuid.substring(0, 2), userId, uuid, extension);
+    }
+}
@@ -0,0 +1,84 @@
+package kz.lab.fileuploaderservice.storage;
+
+import kz.lab.fileuploaderservice.exception.StorageServiceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Picks a shard for new objects by consistent hashing of the object key.
+ * Existing objects are always addressed by the bucket stored with them, never re-hashed.
+ */
+@Slf4j
+public class StorageRouter implements DisposableBean {
+
+    private final List<StorageShard> shards;
+    private final Map<String, StorageShard> shardsByBucket = new LinkedHashMap<>();
+    private final ConsistentHashRing<StorageShard> ring;
+    private final String topology;
+
+    public StorageRouter(List<StorageShard> shards, int virtualNodesPerWeight) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one storage shard must be configured");
+        }
+
+        this.shards = List.copyOf(shards);
+        this.ring = new ConsistentHashRing<>(virtualNodesPerWeight);
+
+        for (StorageShard shard : shards) {
+            // bucket_name в files - единственный адрес объекта, поэтому он должен быть уникален
+            if (shardsByBucket.putIfAbsent(shard.getBucketName(), shard) != null) {
+                throw new IllegalArgumentException("Duplicate bucket across storage shards: " + shard.getBucketName());
+            }
+            ring.add(shard.getName(), shard.getWeight(), shard);
+        }
+
+        this.topology = shards.stream()
+                .map(shard -> shard.getName() + ":" + shard.getBucketName() + ":" + shard.getWeight())
+                .sorted()
+                .collect(Collectors.joining(",")) + "@" + virtualNodesPerWeight;
+
+        log.info("Storage routing initialized: {}", shards);
+    }
+
+    public StorageShard route(String storedFilename) {
+        return ring.get(storedFilename);
+    }
+
+    public StorageShard forBucket(String bucketName) {
+        StorageShard shard = shardsByBucket.get(bucketName);
+        if (shard == null) {
+            throw new StorageServiceException("Unknown storage bucket: " + bucketName);
+        }
+        return shard;
+    }
+
+    public List<StorageShard> shards() {
+        return shards;
+    }
+
+    // Меняется при добавлении шарда или изменении весов - сигнал для ребалансировки
+    public String topology() {
+        return topology;
+    }
+
+    @Override
+    public void destroy() {
+        Set<Object> closed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (StorageShard shard : shards) {
+            if (closed.add(shard.getClient())) {
+                shard.getClient().close();
+            }
+            if (closed.add(shard.getPresigner())) {
+                shard.getPresigner().close();
+            }
+        }
+    }
+}
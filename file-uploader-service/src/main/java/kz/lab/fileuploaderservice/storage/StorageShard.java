@@ -0,0 +1,25 @@
+package kz.lab.fileuploaderservice.storage;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+@Getter
+@RequiredArgsConstructor
+public class StorageShard {
+
+    private final String name;
+    private final String endpoint;
+    private final String bucketName;
+    private final int weight;
+    // Клиент и presigner общие для всех шардов на одном endpoint
+    private final S3AsyncClient client;
+    private final S3Presigner presigner;
+
+    @Override
+    public String toString() {
+        return "StorageShard{name='" + name + "', endpoint='" + endpoint +
+               "', bucket='" + bucketName + "', weight=" + weight + '}';
+    }
+}
@@ -0,0 +1,4 @@
+package kz.lab.fileuploaderservice.storage;
+
+public record StoredObjectInfo(long contentLength, String contentType) {
+}
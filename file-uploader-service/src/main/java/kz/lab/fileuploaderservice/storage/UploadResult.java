@@ -0,0 +1,17 @@
+package kz.lab.fileuploaderservice.storage;
+
+public class UploadResult {
+    private final String storageUrl;
+    private final String storedFilename;
+    private final Long fileSize;
+
+    public UploadResult(String storageUrl, String storedFilename, Long fileSize) {
+        this.storageUrl = storageUrl;
+        this.storedFilename = storedFilename;
+        this.fileSize = fileSize;
+    }
+
+    public String getStorageUrl() { return storageUrl; }
+    public String getStoredFilename() { return storedFilename; }
+    public Long getFileSize() { return fileSize; }
+}
@@ -0,0 +1,66 @@
+package kz.lab.fileuploaderservice.timing;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Adds a {@code Server-Timing} header to requests that opt in with a header or fall into the sample.
+ * Outermost filter, so {@code total} covers security and rate limiting too.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServerTimingWebFilter implements WebFilter {
+
+    private static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    private final boolean enabled;
+    private final String requestHeader;
+    private final double sampleRate;
+
+    public ServerTimingWebFilter(
+            @Value("${application.server-timing.enabled:true}") boolean enabled,
+            @Value("${application.server-timing.request-header:X-Server-Timing}") String requestHeader,
+            @Value("${application.server-timing.sample-rate:0.0}") double sampleRate) {
+        this.enabled = enabled;
+        this.requestHeader = requestHeader;
+        this.sampleRate = sampleRate;
+    }
+
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!enabled || !sampled(exchange)) {
+            return chain.filter(exchange);
+        }
+
+        ServerTimings timings = new ServerTimings();
+        long start = System.nanoTime();
+
+        // Стадии, закончившиеся после отправки заголовков (стриминг тела), в ответ уже не попадут
+        exchange.getResponse().beforeCommit(() -> {
+            timings.record("total", System.nanoTime() - start);
+            exchange.getResponse().getHeaders().add(SERVER_TIMING_HEADER, timings.toHeaderValue());
+            return Mono.empty();
+        });
+
+        return chain.filter(exchange)
+                .contextWrite(ctx -> ctx.put(ServerTimings.CONTEXT_KEY, timings));
+    }
+
+    private boolean sampled(ServerWebExchange exchange) {
+        String requested = exchange.getRequest().getHeaders().getFirst(requestHeader);
+        if (requested != null) {
+            return "1".equals(requested) || "true".equalsIgnoreCase(requested);
+        }
+        return sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+}
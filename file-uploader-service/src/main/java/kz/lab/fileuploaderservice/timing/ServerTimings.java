@@ -0,0 +1,65 @@
+package kz.lab.fileuploaderservice.timing;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request stage durations for the {@code Server-Timing} response header.
+ * An instance is put into the Reactor context only for sampled requests; {@link #timed}
+ * is a context lookup and nothing else when it is absent.
+ */
+public class ServerTimings {
+
+    public static final String CONTEXT_KEY = ServerTimings.class.getName();
+
+    private final Map<String, Long> durations = new LinkedHashMap<>();
+
+
+    public static <T> Mono<T> timed(String stage, Mono<T> source) {
+        return Mono.deferContextual(ctx -> {
+            ServerTimings timings = ctx.getOrDefault(CONTEXT_KEY, null);
+            if (timings == null) {
+                return source;
+            }
+            long start = System.nanoTime();
+            return source.doFinally(signal -> timings.record(stage, System.nanoTime() - start));
+        });
+    }
+
+    public static <T> Flux<T> timed(String stage, Flux<T> source) {
+        return Flux.deferContextual(ctx -> {
+            ServerTimings timings = ctx.getOrDefault(CONTEXT_KEY, null);
+            if (timings == null) {
+                return source;
+            }
+            long start = System.nanoTime();
+            return source.doFinally(signal -> timings.record(stage, System.nanoTime() - start));
+        });
+    }
+
+
+    // Повторные вызовы одной стадии суммируются
+    public synchronized void record(String stage, long nanos) {
+        durations.merge(stage, nanos, Long::sum);
+    }
+
+    // Формат: redis;dur=0.84, db;dur=3.12 (миллисекунды)
+    public synchronized String toHeaderValue() {
+        StringBuilder header = new StringBuilder();
+        durations.forEach((stage, nanos) -> {
+            if (!header.isEmpty()) {
+                header.append(", ");
+            }
+            header.append(stage)
+                    .append(";dur=")
+                    .append(String.format(Locale.ROOT, "%.2f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+        });
+        return header.toString();
+    }
+
+}
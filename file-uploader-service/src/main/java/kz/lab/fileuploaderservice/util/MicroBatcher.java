@@ -0,0 +1,114 @@
+package kz.lab.fileuploaderservice.util;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Collects items submitted by concurrent callers and flushes them together, once {@code maxItems}
+ * are queued or {@code window} has passed since the first one. The flush function must return
+ * one result per item, in input order ({@code null} completes that caller empty).
+ * If a batch fails, its items are retried one by one so a single bad item fails only its own caller.
+ */
+@Slf4j
+public class MicroBatcher<T, R> implements Disposable {
+
+    private final String name;
+    private final Function<List<T>, Mono<List<R>>> flush;
+    private final Disposable subscription;
+    // Сериализованный sink из Flux.create: next() безопасен из любого числа потоков и не крутится в цикле
+    private volatile FluxSink<Pending<T, R>> queue;
+
+    public MicroBatcher(
+            String name,
+            int maxItems,
+            Duration window,
+            int concurrency,
+            Function<List<T>, Mono<List<R>>> flush) {
+        this.name = name;
+        this.flush = flush;
+        // create вызывает колбэк при подписке, то есть до выхода из конструктора
+        this.subscription = Flux.<Pending<T, R>>create(sink -> this.queue = sink)
+                .bufferTimeout(maxItems, window, true)
+                .flatMap(this::flushBatch, concurrency)
+                .subscribe();
+    }
+
+
+    public Mono<R> submit(T item) {
+        return Mono.defer(() -> {
+            if (isDisposed()) {
+                return Mono.error(new IllegalStateException("Batcher " + name + " is disposed"));
+            }
+            Sinks.One<R> result = Sinks.one();
+            queue.next(new Pending<>(item, result));
+            return result.asMono();
+        });
+    }
+
+    @Override
+    public void dispose() {
+        queue.complete();
+        subscription.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return subscription.isDisposed();
+    }
+
+
+    private Mono<Void> flushBatch(List<Pending<T, R>> batch) {
+        log.debug("Flushing batch: batcher={}, size={}", name, batch.size());
+
+        return execute(batch)
+                .onErrorResume(e -> {
+                    if (batch.size() == 1) {
+                        batch.get(0).result().tryEmitError(e);
+                        return Mono.empty();
+                    }
+
+                    log.warn("Batch flush failed, retrying items individually: batcher={}, size={}, error={}",
+                            name, batch.size(), e.toString());
+                    return Flux.fromIterable(batch)
+                            .flatMap(pending -> execute(List.of(pending))
+                                    .onErrorResume(itemError -> {
+                                        pending.result().tryEmitError(itemError);
+                                        return Mono.empty();
+                                    }))
+                            .then();
+                });
+    }
+
+    private Mono<Void> execute(List<Pending<T, R>> batch) {
+        List<T> items = batch.stream().map(Pending::item).toList();
+
+        return Mono.defer(() -> flush.apply(items))
+                .switchIfEmpty(Mono.error(new IllegalStateException("Batch flush returned no results")))
+                .flatMap(results -> {
+                    if (results.size() != batch.size()) {
+                        return Mono.error(new IllegalStateException(
+                                "Batch flush returned " + results.size() + " results for " + batch.size() + " items"));
+                    }
+                    for (int i = 0; i < batch.size(); i++) {
+                        R result = results.get(i);
+                        if (result != null) {
+                            batch.get(i).result().tryEmitValue(result);
+                        } else {
+                            batch.get(i).result().tryEmitEmpty();
+                        }
+                    }
+                    return Mono.<Void>empty();
+                });
+    }
+
+    private record Pending<T, R>(T item, Sinks.One<R> result) {
+    }
+}
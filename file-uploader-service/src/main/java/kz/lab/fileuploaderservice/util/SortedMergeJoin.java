@@ -0,0 +1,134 @@
+package kz.lab.fileuploaderservice.util;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.function.Function;
+
+/**
+ * Full outer merge-join of two streams sorted by the same string key.
+ * Each side is pulled through a bounded prefetch queue, so memory does not depend on stream length.
+ * Keys must be unique within a side.
+ */
+public final class SortedMergeJoin {
+
+    // Порядок байтов UTF-8 = порядок code points; так сортируют ListObjectsV2 и COLLATE "C"
+    public static final Comparator<String> UTF8_ORDER = SortedMergeJoin::compareCodePoints;
+
+    private SortedMergeJoin() {
+    }
+
+
+    public record Match<L, R>(String key, L left, R right) {
+
+        public boolean leftOnly() {
+            return right == null;
+        }
+
+        public boolean rightOnly() {
+            return left == null;
+        }
+    }
+
+
+    public static <L, R> Flux<Match<L, R>> join(
+            Flux<L> left,
+            Function<L, String> leftKey,
+            Flux<R> right,
+            Function<R, String> rightKey,
+            int prefetch) {
+
+        // Итераторы блокируются в ожидании данных - генератор работает на boundedElastic
+        return Flux.<Match<L, R>, JoinState<L, R>>generate(
+                        () -> new JoinState<>(left, right, prefetch),
+                        (state, sink) -> {
+                            L l = state.peekLeft();
+                            R r = state.peekRight();
+
+                            if (l == null && r == null) {
+                                sink.complete();
+                                return state;
+                            }
+
+                            int order = l == null ? 1
+                                    : r == null ? -1
+                                    : UTF8_ORDER.compare(leftKey.apply(l), rightKey.apply(r));
+
+                            if (order < 0) {
+                                sink.next(new Match<>(leftKey.apply(l), state.pollLeft(), null));
+                            } else if (order > 0) {
+                                sink.next(new Match<>(rightKey.apply(r), null, state.pollRight()));
+                            } else {
+                                sink.next(new Match<>(leftKey.apply(l), state.pollLeft(), state.pollRight()));
+                            }
+                            return state;
+                        },
+                        JoinState::dispose)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+
+    static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+
+    private static final class JoinState<L, R> {
+
+        private final Sinks.One<Boolean> cancelled = Sinks.one();
+        private final Iterator<L> leftIterator;
+        private final Iterator<R> rightIterator;
+        private L leftHead;
+        private R rightHead;
+
+        JoinState(Flux<L> left, Flux<R> right, int prefetch) {
+            this.leftIterator = left.takeUntilOther(cancelled.asMono()).toIterable(prefetch).iterator();
+            this.rightIterator = right.takeUntilOther(cancelled.asMono()).toIterable(prefetch).iterator();
+        }
+
+        L peekLeft() {
+            if (leftHead == null && leftIterator.hasNext()) {
+                leftHead = leftIterator.next();
+            }
+            return leftHead;
+        }
+
+        R peekRight() {
+            if (rightHead == null && rightIterator.hasNext()) {
+                rightHead = rightIterator.next();
+            }
+            return rightHead;
+        }
+
+        L pollLeft() {
+            L head = leftHead;
+            leftHead = null;
+            return head;
+        }
+
+        R pollRight() {
+            R head = rightHead;
+            rightHead = null;
+            return head;
+        }
+
+        // Отмена или ошибка join-а останавливает оба источника
+        void dispose() {
+            cancelled.tryEmitValue(true);
+        }
+    }
+}
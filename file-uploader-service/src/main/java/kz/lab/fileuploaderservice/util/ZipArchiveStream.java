@@ -0,0 +1,89 @@
+package kz.lab.fileuploaderservice.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Incremental ZIP writer: every call returns only the bytes produced by that call,
+ * so an archive can be emitted chunk by chunk without holding entries in memory.
+ * Entries use data descriptors (sizes/CRC after the data); ZIP64 is handled by {@link ZipOutputStream}.
+ * Not thread-safe: calls must be serialized.
+ */
+public class ZipArchiveStream implements AutoCloseable {
+
+    private final DrainableOutputStream sink = new DrainableOutputStream();
+    private final ZipOutputStream zip = new ZipOutputStream(sink);
+    private byte[] copyBuffer = new byte[0];
+
+
+    public byte[] startEntry(String name, boolean compress) {
+        try {
+            zip.setLevel(compress ? Deflater.DEFAULT_COMPRESSION : Deflater.NO_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(name));
+            return sink.drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public byte[] write(ByteBuffer chunk) {
+        try {
+            int length = chunk.remaining();
+            if (chunk.hasArray()) {
+                zip.write(chunk.array(), chunk.arrayOffset() + chunk.position(), length);
+            } else {
+                if (copyBuffer.length < length) {
+                    copyBuffer = new byte[length];
+                }
+                chunk.duplicate().get(copyBuffer, 0, length);
+                zip.write(copyBuffer, 0, length);
+            }
+            return sink.drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public byte[] closeEntry() {
+        try {
+            zip.closeEntry();
+            return sink.drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Центральный каталог
+    public byte[] finish() {
+        try {
+            zip.finish();
+            return sink.drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            zip.close();
+        } catch (IOException ignored) {
+            // поток в памяти, закрытие не может потерять данные клиента
+        }
+    }
+
+
+    private static class DrainableOutputStream extends ByteArrayOutputStream {
+
+        byte[] drain() {
+            byte[] bytes = toByteArray();
+            reset();
+            return bytes;
+        }
+    }
+}
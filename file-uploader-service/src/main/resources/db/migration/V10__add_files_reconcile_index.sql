@@ -0,0 +1,3 @@
+-- сверка с хранилищем: keyset по stored_filename в порядке байтов, как отдаёт ListObjectsV2
+CREATE INDEX IF NOT EXISTS idx_files_bucket_stored_filename_c
+    ON files (bucket_name, stored_filename COLLATE "C");
@@ -0,0 +1,3 @@
+-- Оптимистическая блокировка: запрос и восстановление не перезаписывают шаги друг друга
+ALTER TABLE saga_states
+    ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
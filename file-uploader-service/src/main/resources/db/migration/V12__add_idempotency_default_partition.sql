@@ -0,0 +1,36 @@
+-- Страховка на случай пропуска ensureFuturePartitions: без DEFAULT секции
+-- вставка с created_at вне всех секций падает, а вместе с ней и загрузка
+CREATE TABLE IF NOT EXISTS idempotency_records_default
+    PARTITION OF idempotency_records DEFAULT;
+
+
+-- Секция за день, когда строки этого дня уже попали в DEFAULT: CREATE ... PARTITION OF
+-- упал бы на проверке DEFAULT, поэтому строки переносятся в новую таблицу до ATTACH
+CREATE OR REPLACE FUNCTION create_idempotency_partition(p_day date)
+    RETURNS text AS $$
+DECLARE
+    partition_name text := 'idempotency_records_p' || to_char(p_day, 'YYYYMMDD');
+    lower_bound timestamp := p_day::timestamp;
+    upper_bound timestamp := (p_day + 1)::timestamp;
+BEGIN
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN partition_name;
+    END IF;
+
+    EXECUTE format(
+            'CREATE TABLE %I (LIKE idempotency_records INCLUDING DEFAULTS INCLUDING CONSTRAINTS)',
+            partition_name
+    );
+    EXECUTE format(
+            'WITH moved AS (DELETE FROM idempotency_records_default
+                            WHERE created_at >= %L AND created_at < %L RETURNING *)
+             INSERT INTO %I SELECT * FROM moved',
+            lower_bound, upper_bound, partition_name
+    );
+    EXECUTE format(
+            'ALTER TABLE idempotency_records ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+            partition_name, lower_bound, upper_bound
+    );
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
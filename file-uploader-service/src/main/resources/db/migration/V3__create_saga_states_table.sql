@@ -0,0 +1,36 @@
+CREATE TABLE IF NOT EXISTS saga_states (
+    id bigserial PRIMARY KEY,
+    saga_id UUID NOT NULL UNIQUE,
+    saga_type VARCHAR(50) NOT NULL,
+    user_id bigint NOT NULL,
+    idempotency_key UUID NOT NULL,
+    status VARCHAR(20) NOT NULL CHECK (status IN ('IN_PROGRESS', 'COMPENSATING', 'COMPENSATED', 'COMPLETED', 'FAILED')),
+    current_step VARCHAR(30) NOT NULL CHECK (current_step IN ('RESERVED', 'OBJECT_STORED', 'METADATA_SAVED', 'COMPLETED')),
+    original_filename VARCHAR(255),
+    content_type VARCHAR(100),
+    stored_filename VARCHAR(255),
+    storage_url TEXT,
+    bucket_name VARCHAR(100),
+    file_size BIGINT,
+    file_id bigint,
+    error_message TEXT,
+    attempts INT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+
+-- recovery и компенсация выбирают только незавершённые саги
+CREATE INDEX IF NOT EXISTS idx_saga_states_active
+    ON saga_states (status, updated_at)
+    WHERE status IN ('IN_PROGRESS', 'COMPENSATING');
+
+
+ALTER TABLE idempotency_records
+    ADD COLUMN IF NOT EXISTS saga_id UUID;
+
+
+CREATE TRIGGER update_saga_states_updated_at
+    BEFORE UPDATE ON saga_states
+    FOR EACH ROW
+EXECUTE FUNCTION update_updated_at_column();
@@ -0,0 +1,14 @@
+ALTER TABLE idempotency_records
+    ADD COLUMN IF NOT EXISTS deadline_at TIMESTAMP;
+
+
+UPDATE idempotency_records
+SET deadline_at = created_at + INTERVAL '5 minutes'
+WHERE status = 'IN_PROGRESS'
+  AND deadline_at IS NULL;
+
+
+-- fallback sweep CleanupService: только IN_PROGRESS записи, упорядоченные по дедлайну
+CREATE INDEX IF NOT EXISTS idx_idempotency_in_progress_deadline
+    ON idempotency_records (deadline_at)
+    WHERE status = 'IN_PROGRESS';
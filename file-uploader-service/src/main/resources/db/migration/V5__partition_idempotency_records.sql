@@ -0,0 +1,131 @@
+-- idempotency_records становится секционированной по created_at (по дню),
+-- retention = DETACH + DROP целой секции вместо массового DELETE
+
+ALTER TABLE idempotency_records RENAME TO idempotency_records_legacy;
+ALTER TABLE idempotency_records_legacy RENAME CONSTRAINT idempotency_records_pkey TO idempotency_records_legacy_pkey;
+ALTER TABLE idempotency_records_legacy DROP CONSTRAINT uq_user_idempotency;
+ALTER TABLE idempotency_records_legacy DROP CONSTRAINT fk_idempotency_file;
+DROP TRIGGER IF EXISTS update_idempotency_updated_at ON idempotency_records_legacy;
+DROP INDEX IF EXISTS idx_idempotency_in_progress_deadline;
+ALTER SEQUENCE idempotency_records_id_seq OWNED BY NONE;
+
+
+CREATE TABLE idempotency_records (
+    id bigint NOT NULL DEFAULT nextval('idempotency_records_id_seq'),
+    user_id bigint NOT NULL,
+    idempotency_key UUID NOT NULL,
+    status VARCHAR(20) NOT NULL CHECK (status IN ('IN_PROGRESS', 'COMPLETED', 'FAILED')),
+    file_id bigint,
+    response_json JSONB,
+    error_message TEXT,
+    saga_id UUID,
+    deadline_at TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+ALTER SEQUENCE idempotency_records_id_seq OWNED BY idempotency_records.id;
+
+
+ALTER TABLE idempotency_records
+    ADD CONSTRAINT fk_idempotency_file
+        FOREIGN KEY (file_id)
+            REFERENCES files(id)
+            ON DELETE SET NULL;
+
+CREATE INDEX IF NOT EXISTS idx_idempotency_user_key
+    ON idempotency_records (user_id, idempotency_key);
+
+CREATE INDEX IF NOT EXISTS idx_idempotency_in_progress_deadline
+    ON idempotency_records (deadline_at)
+    WHERE status = 'IN_PROGRESS';
+
+
+CREATE OR REPLACE FUNCTION create_idempotency_partition(p_day date)
+    RETURNS text AS $$
+DECLARE
+    partition_name text := 'idempotency_records_p' || to_char(p_day, 'YYYYMMDD');
+BEGIN
+    EXECUTE format(
+            'CREATE TABLE IF NOT EXISTS %I PARTITION OF idempotency_records FOR VALUES FROM (%L) TO (%L)',
+            partition_name, p_day::timestamp, (p_day + 1)::timestamp
+    );
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
+
+
+-- секции, целиком лежащие раньше cutoff
+CREATE OR REPLACE FUNCTION idempotency_partitions_before(p_cutoff date)
+    RETURNS SETOF text AS $$
+    SELECT c.relname::text
+    FROM pg_inherits i
+             JOIN pg_class c ON c.oid = i.inhrelid
+             JOIN pg_class p ON p.oid = i.inhparent
+    WHERE p.relname = 'idempotency_records'
+      AND c.relname ~ '^idempotency_records_p[0-9]{8}$'
+      AND to_date(substring(c.relname FROM '[0-9]{8}$'), 'YYYYMMDD') < p_cutoff
+    ORDER BY c.relname;
+$$ LANGUAGE sql STABLE;
+
+
+-- UNIQUE на секционированной таблице обязан включать created_at, поэтому
+-- уникальность (user_id, idempotency_key) по всем живым секциям держит триггер:
+-- advisory lock сериализует вставки одного ключа, проверка идёт по idx_idempotency_user_key
+CREATE OR REPLACE FUNCTION enforce_idempotency_key_unique()
+    RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_advisory_xact_lock(
+            hashtextextended(NEW.user_id::text || ':' || NEW.idempotency_key::text, 0)
+    );
+
+    IF EXISTS (SELECT 1
+               FROM idempotency_records
+               WHERE user_id = NEW.user_id
+                 AND idempotency_key = NEW.idempotency_key) THEN
+        RAISE EXCEPTION 'duplicate idempotency key for user %: %', NEW.user_id, NEW.idempotency_key
+            USING ERRCODE = 'unique_violation', CONSTRAINT = 'uq_user_idempotency';
+    END IF;
+
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER enforce_idempotency_key_unique
+    BEFORE INSERT ON idempotency_records
+    FOR EACH ROW
+EXECUTE FUNCTION enforce_idempotency_key_unique();
+
+CREATE TRIGGER update_idempotency_updated_at
+    BEFORE UPDATE ON idempotency_records
+    FOR EACH ROW
+EXECUTE FUNCTION update_updated_at_column();
+
+
+-- секции под существующие данные и на неделю вперёд
+DO $$
+DECLARE
+    d date;
+BEGIN
+    FOR d IN
+        SELECT generate_series(
+                       LEAST(COALESCE((SELECT MIN(created_at)::date FROM idempotency_records_legacy), CURRENT_DATE),
+                             CURRENT_DATE),
+                       CURRENT_DATE + 7,
+                       INTERVAL '1 day'
+               )::date
+    LOOP
+        PERFORM create_idempotency_partition(d);
+    END LOOP;
+END;
+$$;
+
+
+INSERT INTO idempotency_records (id, user_id, idempotency_key, status, file_id, response_json,
+                                 error_message, saga_id, deadline_at, created_at, updated_at)
+SELECT id, user_id, idempotency_key, status, file_id, response_json,
+       error_message, saga_id, deadline_at, created_at, updated_at
+FROM idempotency_records_legacy;
+
+DROP TABLE idempotency_records_legacy;
@@ -0,0 +1,14 @@
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+
+-- поиск по подстроке/префиксу имени (ILIKE '%x%' / 'x%')
+CREATE INDEX IF NOT EXISTS idx_files_original_filename_trgm
+    ON files USING gin (original_filename gin_trgm_ops);
+
+
+-- keyset-пагинация: (uploaded_at, id) < (:cursorUploadedAt, :cursorId)
+CREATE INDEX IF NOT EXISTS idx_files_user_uploaded
+    ON files (user_id, uploaded_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_files_user_content_type
+    ON files (user_id, content_type, uploaded_at DESC, id DESC);
@@ -0,0 +1,33 @@
+CREATE TABLE IF NOT EXISTS upload_intents (
+    id bigserial PRIMARY KEY,
+    intent_id UUID NOT NULL UNIQUE,
+    user_id bigint NOT NULL,
+    idempotency_key UUID NOT NULL,
+    original_filename VARCHAR(255) NOT NULL,
+    content_type VARCHAR(100) NOT NULL,
+    declared_size BIGINT NOT NULL CHECK (declared_size > 0),
+    stored_filename VARCHAR(255) NOT NULL,
+    bucket_name VARCHAR(100) NOT NULL,
+    upload_id TEXT,
+    part_size BIGINT,
+    status VARCHAR(20) NOT NULL CHECK (status IN ('PENDING', 'CONFIRMING', 'CONFIRMED', 'EXPIRED')),
+    file_id bigint,
+    expires_at TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+
+CREATE INDEX IF NOT EXISTS idx_upload_intents_user_key
+    ON upload_intents (user_id, idempotency_key);
+
+-- CleanupService забирает просроченные неподтверждённые intents
+CREATE INDEX IF NOT EXISTS idx_upload_intents_pending_expiry
+    ON upload_intents (expires_at)
+    WHERE status IN ('PENDING', 'CONFIRMING');
+
+
+CREATE TRIGGER update_upload_intents_updated_at
+    BEFORE UPDATE ON upload_intents
+    FOR EACH ROW
+EXECUTE FUNCTION update_updated_at_column();
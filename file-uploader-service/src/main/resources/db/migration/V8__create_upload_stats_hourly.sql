@@ -0,0 +1,20 @@
+-- Почасовые агрегаты для админской аналитики; обновляются инкрементально UPSERT'ом на пути загрузки
+CREATE TABLE IF NOT EXISTS upload_stats_hourly (
+    bucket_start TIMESTAMP NOT NULL,
+    user_id bigint NOT NULL,
+    content_type VARCHAR(100) NOT NULL,
+    uploads BIGINT NOT NULL DEFAULT 0,
+    bytes BIGINT NOT NULL DEFAULT 0,
+    failures BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (bucket_start, user_id, content_type)
+);
+
+CREATE INDEX IF NOT EXISTS idx_upload_stats_user_bucket
+    ON upload_stats_hourly (user_id, bucket_start);
+
+-- Разовый перенос истории из files; дальше таблица files для отчётов не сканируется
+INSERT INTO upload_stats_hourly (bucket_start, user_id, content_type, uploads, bytes)
+SELECT date_trunc('hour', uploaded_at), user_id, content_type, count(*), sum(file_size)
+FROM files
+GROUP BY 1, 2, 3
+ON CONFLICT DO NOTHING;
@@ -0,0 +1,13 @@
+ALTER TABLE files
+    ADD COLUMN IF NOT EXISTS expires_at TIMESTAMP;
+
+
+-- срок жизни хранится в саге до записи строки files
+ALTER TABLE saga_states
+    ADD COLUMN IF NOT EXISTS expires_at TIMESTAMP;
+
+
+-- purge-воркер: keyset по (expires_at, id), постоянные файлы в индекс не попадают
+CREATE INDEX IF NOT EXISTS idx_files_expires_at
+    ON files (expires_at, id)
+    WHERE expires_at IS NOT NULL;
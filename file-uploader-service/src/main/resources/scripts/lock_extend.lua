@@ -0,0 +1,6 @@
+-- Продлевает блокировку, только если она всё ещё принадлежит этому владельцу
+-- KEYS[1] - ключ блокировки, ARGV[1] - токен владельца, ARGV[2] - TTL в миллисекундах
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,6 @@
+-- Снимает блокировку, только если она всё ещё принадлежит этому владельцу
+-- KEYS[1] - ключ блокировки, ARGV[1] - токен владельца
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
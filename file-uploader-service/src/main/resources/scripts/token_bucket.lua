@@ -0,0 +1,38 @@
+-- Token bucket: KEYS[1] - ключ бакета
+-- ARGV[1] - ёмкость, ARGV[2] - пополнение в токенах/мс, ARGV[3] - размер аренды для локального кеша узла
+-- Возвращает {allowed, granted, remaining, retry_after_ms, reset_ms}
+local capacity = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2])
+local lease = tonumber(ARGV[3])
+
+-- Время сервера Redis: одинаковые часы для всех узлов
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(state[1]) or capacity
+local ts = tonumber(state[2]) or now
+
+tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate)
+
+local allowed = 0
+local granted = 0
+local retry_after = 0
+
+if tokens >= 1 then
+    allowed = 1
+    granted = 1
+    -- Далеко от лимита - отдаём узлу пачку токенов, следующие запросы обойдутся без Redis
+    if lease > 1 and tokens >= lease * 2 then
+        granted = lease
+    end
+    tokens = tokens - granted
+else
+    retry_after = math.ceil((1 - tokens) / rate)
+end
+
+redis.call('HSET', KEYS[1], 'tokens', tokens, 'ts', now)
+redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate) + 1000)
+
+local reset = math.ceil((capacity - tokens) / rate)
+return {allowed, granted, math.floor(tokens), retry_after, reset}
@@ -0,0 +1,185 @@
+package kz.lab.fileuploaderservice.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import kz.lab.fileuploaderservice.resilience.RedisGuard;
+import kz.lab.fileuploaderservice.support.RedisContainerSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileMetadataCacheTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final Long FILE_ID = 42L;
+    private static final Long OWNER = 1L;
+
+    private static RedisContainerSupport redis;
+
+    private SimpleMeterRegistry meterRegistry;
+    private FileMetadataCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeAll
+    static void startRedis() {
+        redis = RedisContainerSupport.start();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new FileMetadataCache(
+                redis.template(),
+                new ObjectMapper().registerModule(new JavaTimeModule()),
+                new RedisGuard(meterRegistry, 2000, 100, 100, 0.5, 4, 4, 60000, 1),
+                meterRegistry,
+                true, 100, 30, 300, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.destroy();
+    }
+
+    @Test
+    void shouldServeOwnerFromCacheAndOthersFromLoader() {
+        assertEquals("v1", get(OWNER, file("v1", null)).getOriginalFilename());
+        assertEquals("v1", get(OWNER, file("other", null)).getOriginalFilename());
+        assertEquals(1, loads.get());
+
+        // Чужой пользователь не получает запись из кеша - решает Postgres (здесь loader)
+        assertNull(cache.get(FILE_ID, 2L, () -> {
+            loads.incrementAndGet();
+            return Mono.empty();
+        }).block(TIMEOUT));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldNotServeExpiredFileFromCache() {
+        get(OWNER, file("short-lived", LocalDateTime.now().plusNanos(50_000_000)));
+        sleep(100);
+
+        assertNull(cache.get(FILE_ID, OWNER, () -> {
+            loads.incrementAndGet();
+            return Mono.empty();
+        }).block(TIMEOUT));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldReloadAfterEviction() {
+        get(OWNER, file("v1", null));
+        awaitRedisValue();
+
+        cache.evict(FILE_ID).block(TIMEOUT);
+
+        assertEquals("v2", get(OWNER, file("v2", null)).getOriginalFilename());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldNotCacheRowLoadedBeforeConcurrentEviction() {
+        // Заполнение прочитало строку до удаления, а положить в кеш пытается уже после evict
+        Sinks.One<FileEntity> slowLoad = Sinks.one();
+        Mono<FileEntity> inFlight = cache.get(FILE_ID, OWNER, () -> {
+            loads.incrementAndGet();
+            return slowLoad.asMono();
+        }).cache();
+        inFlight.subscribe();
+
+        cache.evict(FILE_ID).block(TIMEOUT);
+        awaitRedisValue();
+        slowLoad.tryEmitValue(file("stale", null));
+        assertEquals("stale", inFlight.block(TIMEOUT).getOriginalFilename());
+        sleep(100);
+
+        assertEquals("-", redis.template().opsForValue().get("file-meta:" + FILE_ID).block(TIMEOUT));
+        assertEquals("fresh", get(OWNER, file("fresh", null)).getOriginalFilename());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldCompleteAwaitedEvictionOnlyAfterTombstoneIsWritten() {
+        get(OWNER, file("v1", null));
+        awaitRedisValue();
+
+        cache.evictAndAwait(FILE_ID, TIMEOUT).block(TIMEOUT);
+
+        // Без ожидания: к завершению надгробие уже в Redis, старую строку оттуда не прочитать
+        assertEquals("-", redis.template().opsForValue().get("file-meta:" + FILE_ID).block(TIMEOUT));
+    }
+
+    @Test
+    void shouldReportHitRatio() {
+        get(OWNER, file("v1", null));
+        get(OWNER, file("v1", null));
+        get(OWNER, file("v1", null));
+        get(OWNER, file("v1", null));
+
+        // Один промах и три попадания в L1
+        assertEquals(0.75, meterRegistry.get("file.metadata.cache.hit.ratio").gauge().value(), 1e-9);
+        assertEquals(3, meterRegistry.get("file.metadata.cache.requests").tag("tier", "local").counter().count());
+        assertEquals(1, meterRegistry.get("file.metadata.cache.requests").tag("tier", "database").counter().count());
+    }
+
+
+    private FileEntity get(Long userId, FileEntity fromDatabase) {
+        return cache.get(FILE_ID, userId, () -> {
+            loads.incrementAndGet();
+            return Mono.just(fromDatabase);
+        }).block(TIMEOUT);
+    }
+
+    // Запись в Redis асинхронная - ждём, пока она дойдёт
+    private void awaitRedisValue() {
+        for (int i = 0; i < 50; i++) {
+            if (Boolean.TRUE.equals(redis.template().hasKey("file-meta:" + FILE_ID).block(TIMEOUT))) {
+                return;
+            }
+            sleep(20);
+        }
+        fail("Value did not reach Redis");
+    }
+
+    private FileEntity file(String name, LocalDateTime expiresAt) {
+        return FileEntity.builder()
+                .id(FILE_ID)
+                .userId(OWNER)
+                .originalFilename(name)
+                .storedFilename("ab/user-1/" + name)
+                .contentType("text/plain")
+                .fileSize(10L)
+                .storageUrl("http://storage/" + name)
+                .bucketName("user-files")
+                .uploadedAt(LocalDateTime.now())
+                .expiresAt(expiresAt)
+                .build();
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package kz.lab.fileuploaderservice.config;
+
+import kz.lab.fileuploaderservice.storage.LocalStorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Запускается в профиле blockhound: mvn -Pblockhound test
+@EnabledIfSystemProperty(named = "blockhound", matches = "true")
+class NonBlockingPathsTest {
+
+    @TempDir
+    Path root;
+
+    private Scheduler cpuBoundScheduler;
+
+    @BeforeEach
+    void setUp() {
+        cpuBoundScheduler = new SchedulerConfig().cpuBoundScheduler(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cpuBoundScheduler.dispose();
+    }
+
+    @Test
+    void shouldRejectBlockingCallOnNonBlockingThread() {
+        // Проверка, что BlockHound действительно установлен
+        Mono<Void> blocking = Mono.<Void>fromRunnable(() -> {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                })
+                .subscribeOn(Schedulers.parallel());
+
+        // Класс из blockhound есть только в этом профиле - сравниваем по имени
+        StepVerifier.create(blocking)
+                .expectErrorMatches(e -> e.getClass().getName().equals("reactor.blockhound.BlockingOperationError"))
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void shouldAuthenticateWithoutBlockingCallerThread() {
+        SecurityConfig securityConfig = new SecurityConfig();
+        PasswordEncoder encoder = securityConfig.passwordEncoder();
+        ReactiveAuthenticationManager manager = securityConfig.authenticationManager(
+                securityConfig.userDetailsService(encoder), encoder, cpuBoundScheduler);
+
+        Mono<Boolean> authenticated = Mono.defer(() -> manager.authenticate(
+                        new UsernamePasswordAuthenticationToken("user1", "user1")))
+                .map(authentication -> authentication.isAuthenticated())
+                .subscribeOn(Schedulers.parallel());
+
+        StepVerifier.create(authenticated)
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldKeepLocalStorageIoOffNonBlockingThreads() {
+        LocalStorageBackend backend = new LocalStorageBackend(root.toString(), "local", "http://localhost:8080", "secret", 60);
+        String key = backend.generateStoredFilename(1L, "report.txt");
+        String copyKey = backend.generateStoredFilename(1L, "report-copy.txt");
+
+        Mono<Long> roundTrip = backend.uploadFile("local", key, "text/plain",
+                        Flux.just("non-blocking")
+                                .map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(
+                                        chunk.getBytes(StandardCharsets.UTF_8))))
+                .then(backend.copyFile("local", key, "local", copyKey, "text/plain", 12))
+                .then(backend.statFile("local", copyKey))
+                .map(info -> info.contentLength())
+                .subscribeOn(Schedulers.parallel());
+
+        StepVerifier.create(roundTrip)
+                .assertNext(size -> assertEquals(12L, size))
+                .verifyComplete();
+    }
+
+}
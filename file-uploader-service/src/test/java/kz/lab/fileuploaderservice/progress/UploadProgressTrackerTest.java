@@ -0,0 +1,114 @@
+package kz.lab.fileuploaderservice.progress;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.lab.fileuploaderservice.dto.UploadProgressResponse;
+import kz.lab.fileuploaderservice.resilience.RedisGuard;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadProgressTrackerTest {
+
+    private static final Long USER_ID = 1L;
+
+    private final List<UploadProgressResponse> events = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean streamCompleted = new AtomicBoolean();
+
+    @Test
+    void shouldThrottleByteCountersButNotStageChanges() {
+        UploadProgressTracker tracker = tracker(60_000);
+        UUID key = UUID.randomUUID();
+
+        UploadProgressTracker.Handle handle = tracker.start(USER_ID, key);
+        subscribe(tracker, key);
+        handle.received(10);
+        handle.received(20);
+        handle.stage(UploadStage.STORING);
+        handle.storing(15);
+        handle.storing(30);
+        handle.stored(30);
+
+        assertEquals(List.of(UploadStage.RECEIVING, UploadStage.STORING, UploadStage.SAVING_METADATA), stages());
+        // Подавленные события не теряют байты - их видно в следующем отправленном
+        assertEquals(30L, events.get(1).getBytesReceived());
+        assertEquals(30L, events.get(2).getBytesStored());
+    }
+
+    @Test
+    void shouldReportStoredBytesProgressivelyOutsideThrottleWindow() {
+        UploadProgressTracker tracker = tracker(0);
+        UUID key = UUID.randomUUID();
+
+        UploadProgressTracker.Handle handle = tracker.start(USER_ID, key);
+        subscribe(tracker, key);
+        handle.stage(UploadStage.STORING);
+        handle.storing(100);
+        handle.storing(200);
+        handle.stored(300);
+
+        assertEquals(List.of(0L, 0L, 100L, 200L, 300L),
+                events.stream().map(UploadProgressResponse::getBytesStored).toList());
+        // Прогресс записи не меняет стадию
+        assertEquals(UploadStage.STORING, events.get(3).getStage());
+    }
+
+    @Test
+    void shouldCompleteStreamOnTerminalStageAndIgnoreLaterEvents() {
+        UploadProgressTracker tracker = tracker(0);
+        UUID key = UUID.randomUUID();
+
+        UploadProgressTracker.Handle handle = tracker.start(USER_ID, key);
+        subscribe(tracker, key);
+        handle.finish(UploadStage.FAILED);
+        handle.received(10);
+        handle.finish(UploadStage.COMPLETED);
+
+        assertTrue(streamCompleted.get());
+        assertEquals(List.of(UploadStage.RECEIVING, UploadStage.FAILED), stages());
+    }
+
+    @Test
+    void shouldKeepSequenceStrictlyIncreasing() {
+        UploadProgressTracker tracker = tracker(0);
+        UUID key = UUID.randomUUID();
+
+        UploadProgressTracker.Handle handle = tracker.start(USER_ID, key);
+        subscribe(tracker, key);
+        for (int i = 0; i < 5; i++) {
+            handle.received(1);
+        }
+        handle.finish(UploadStage.COMPLETED);
+
+        for (int i = 1; i < events.size(); i++) {
+            assertTrue(events.get(i).getSequence() > events.get(i - 1).getSequence());
+        }
+    }
+
+
+    private void subscribe(UploadProgressTracker tracker, UUID key) {
+        tracker.stream(USER_ID, key).subscribe(events::add, e -> fail(e), () -> streamCompleted.set(true));
+    }
+
+    private List<UploadStage> stages() {
+        return events.stream().map(UploadProgressResponse::getStage).toList();
+    }
+
+    // Redis за открытым breaker: события идут только через локальный sink
+    private UploadProgressTracker tracker(long throttleMs) {
+        RedisGuard redisGuard = new RedisGuard(new SimpleMeterRegistry(), 50, 100, 100, 0.5, 4, 4, 60000, 1);
+        for (int i = 0; i < 4; i++) {
+            redisGuard.read("test", Mono.error(new IllegalStateException("down"))).block(Duration.ofSeconds(1));
+        }
+        assertFalse(redisGuard.isAvailable());
+
+        return new UploadProgressTracker(null, new ObjectMapper(), redisGuard, throttleMs, 300, 60);
+    }
+}
@@ -0,0 +1,98 @@
+package kz.lab.fileuploaderservice.ratelimit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import kz.lab.fileuploaderservice.config.RateLimitProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitWebFilterTest {
+
+    private final AtomicBoolean chainCalled = new AtomicBoolean();
+
+    @Test
+    void shouldRejectWith429AndRetryAfter() {
+        MockServerWebExchange exchange = exchange();
+
+        run(new RateLimitDecision(false, 10, 0, 9, 7), exchange);
+
+        assertFalse(chainCalled.get());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exchange.getResponse().getStatusCode());
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertEquals("7", headers.getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals("10", headers.getFirst("RateLimit-Limit"));
+        assertEquals("0", headers.getFirst("RateLimit-Remaining"));
+        assertTrue(exchange.getResponse().getBodyAsString().block(Duration.ofSeconds(5)).contains("RATE_LIMIT_EXCEEDED"));
+    }
+
+    @Test
+    void shouldPassAllowedRequestWithRateLimitHeaders() {
+        MockServerWebExchange exchange = exchange();
+
+        run(new RateLimitDecision(true, 10, 4, 6, 0), exchange);
+
+        assertTrue(chainCalled.get());
+        assertNull(exchange.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals("4", exchange.getResponse().getHeaders().getFirst("RateLimit-Remaining"));
+    }
+
+    @Test
+    void shouldPassRequestWhenLimiterFailsOpen() {
+        MockServerWebExchange exchange = exchange();
+
+        run(RateLimitDecision.unlimited(10), exchange);
+
+        assertTrue(chainCalled.get());
+        assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, exchange.getResponse().getStatusCode());
+    }
+
+    private void run(RateLimitDecision decision, MockServerWebExchange exchange) {
+        RateLimitProperties properties = new RateLimitProperties();
+        RateLimitProperties.BucketClass bucket = new RateLimitProperties.BucketClass();
+        bucket.setCapacity(10);
+        bucket.setRefillPerSecond(1);
+        bucket.setPaths(List.of("/files/upload"));
+        properties.setClasses(Map.of("upload", bucket));
+
+        RateLimitWebFilter filter = new RateLimitWebFilter(
+                new FixedDecisionLimiter(properties, decision), properties, new ObjectMapper().registerModule(new JavaTimeModule()));
+
+        filter.filter(exchange, ignored -> Mono.fromRunnable(() -> chainCalled.set(true)))
+                .contextWrite(ReactiveSecurityContextHolder.withAuthentication(
+                        new UsernamePasswordAuthenticationToken("user1", null, List.of())))
+                .block(Duration.ofSeconds(5));
+    }
+
+    private MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.post("/files/upload"));
+    }
+
+
+    private static final class FixedDecisionLimiter extends TokenBucketRateLimiter {
+
+        private final RateLimitDecision decision;
+
+        private FixedDecisionLimiter(RateLimitProperties properties, RateLimitDecision decision) {
+            super(null, properties, null);
+            this.decision = decision;
+        }
+
+        @Override
+        public Mono<RateLimitDecision> tryAcquire(Long userId, String className, RateLimitProperties.BucketClass bucket) {
+            return Mono.just(decision);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package kz.lab.fileuploaderservice.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.lab.fileuploaderservice.config.RateLimitProperties;
+import kz.lab.fileuploaderservice.resilience.RedisGuard;
+import kz.lab.fileuploaderservice.support.RedisContainerSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TokenBucketRateLimiterTest {
+
+    private static RedisContainerSupport redis;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = RedisContainerSupport.startIfAvailable();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    @Test
+    void shouldDenyWithRetryAfterOnceBucketIsEmpty() {
+        assumeTrue(redis != null, "Docker is not available");
+        redis.flushAll();
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(redis.template(), properties(1, 1000), redisGuard(2000));
+        RateLimitProperties.BucketClass bucket = bucket(3, 1);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(acquire(limiter, bucket).allowed());
+        }
+        RateLimitDecision denied = acquire(limiter, bucket);
+
+        assertFalse(denied.allowed());
+        assertEquals(0, denied.remaining());
+        assertEquals(1, denied.retryAfterSeconds());
+        assertTrue(denied.resetSeconds() >= 1);
+    }
+
+    @Test
+    void shouldServeLeasedTokensWithoutRedis() {
+        assumeTrue(redis != null, "Docker is not available");
+        redis.flushAll();
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(redis.template(), properties(5, 10_000), redisGuard(2000));
+        RateLimitProperties.BucketClass bucket = bucket(20, 0.001);
+
+        // Первый запрос забирает аренду из 5 токенов, следующие 4 тратят её локально
+        for (int i = 0; i < 5; i++) {
+            assertTrue(acquire(limiter, bucket).allowed());
+        }
+
+        String tokensInRedis = redis.template().<String, String>opsForHash().get("rate-limit:1:upload", "tokens").block();
+        assertNotNull(tokensInRedis);
+        assertEquals(15, (int) Double.parseDouble(tokensInRedis));
+    }
+
+    @Test
+    void shouldSweepExpiredLeases() throws InterruptedException {
+        assumeTrue(redis != null, "Docker is not available");
+        redis.flushAll();
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(redis.template(), properties(5, 50), redisGuard(2000));
+
+        acquire(limiter, bucket(20, 1));
+        assertEquals(1, limiter.leaseCount());
+
+        Thread.sleep(100);
+        limiter.sweepExpiredLeases();
+
+        assertEquals(0, limiter.leaseCount());
+    }
+
+    @Test
+    void shouldAllowRequestsWhenRedisIsDown() {
+        // Порт, на котором никто не слушает
+        LettuceConnectionFactory deadRedis = new LettuceConnectionFactory("localhost", 1);
+        deadRedis.afterPropertiesSet();
+        deadRedis.start();
+        try {
+            TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(
+                    new ReactiveRedisTemplate<>(deadRedis, RedisSerializationContext.string()), properties(1, 1000), redisGuard(200));
+
+            long started = System.nanoTime();
+            RateLimitDecision decision = acquire(limiter, bucket(3, 1));
+            long elapsedMs = Duration.ofNanos(System.nanoTime() - started).toMillis();
+
+            assertTrue(decision.allowed());
+            assertEquals(3, decision.remaining());
+            // Ответ по таймауту RedisGuard, а не по таймауту соединения Lettuce
+            assertTrue(elapsedMs < 1000, "fail-open took " + elapsedMs + "ms");
+        } finally {
+            deadRedis.destroy();
+        }
+    }
+
+    private RateLimitDecision acquire(TokenBucketRateLimiter limiter, RateLimitProperties.BucketClass bucket) {
+        return limiter.tryAcquire(1L, "upload", bucket).block(Duration.ofSeconds(10));
+    }
+
+    private RedisGuard redisGuard(long timeoutMs) {
+        return new RedisGuard(new SimpleMeterRegistry(), timeoutMs, 100, 100, 0.5, 4, 4, 60000, 1);
+    }
+
+    private RateLimitProperties properties(int leaseSize, long leaseTtlMs) {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setLeaseSize(leaseSize);
+        properties.setLeaseTtlMs(leaseTtlMs);
+        return properties;
+    }
+
+    private RateLimitProperties.BucketClass bucket(long capacity, double refillPerSecond) {
+        RateLimitProperties.BucketClass bucket = new RateLimitProperties.BucketClass();
+        bucket.setCapacity(capacity);
+        bucket.setRefillPerSecond(refillPerSecond);
+        bucket.setPaths(List.of("/files/**"));
+        return bucket;
+    }
+}
@@ -0,0 +1,126 @@
+package kz.lab.fileuploaderservice.repository;
+
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuple5;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class FileRepositoryTest {
+
+    // Момент в прошлом, раньше которого живые данные не истекают - выборка видит только файлы теста
+    private static final LocalDateTime NOW = LocalDateTime.of(2001, 1, 1, 12, 0);
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    @Test
+    void shouldHideExpiredFilesFromUserQueries() {
+        long userId = randomUserId();
+
+        Tuple5<List<Long>, List<Long>, Long, Boolean, Long> result = inRolledBackTransaction(Flux.concat(
+                fileRepository.save(file(userId, null)),
+                fileRepository.save(file(userId, NOW.plusDays(1))),
+                fileRepository.save(file(userId, NOW.minusSeconds(1))),
+                // Ровно now - уже просрочен
+                fileRepository.save(file(userId, NOW))
+        ).map(FileEntity::getId).collectList().flatMap(savedIds -> Mono.zip(
+                Mono.just(savedIds),
+                fileRepository.findActiveByUserId(userId, NOW, 10, 0).map(FileEntity::getId).collectList(),
+                fileRepository.countActiveByUserId(userId, NOW),
+                fileRepository.findActiveByIdAndUserId(savedIds.get(2), userId, NOW).hasElement(),
+                fileRepository.findActiveByIdInAndUserId(savedIds, userId, NOW).count()
+        )));
+
+        List<Long> savedIds = result.getT1();
+        // uploaded_at одинаковый - порядок по id DESC
+        assertEquals(List.of(savedIds.get(1), savedIds.get(0)), result.getT2());
+        assertEquals(2L, result.getT3());
+        assertFalse(result.getT4());
+        assertEquals(2L, result.getT5());
+    }
+
+    @Test
+    void shouldWalkExpiredFilesWithKeysetCursorWithoutSkipsOrRepeats() {
+        long userId = randomUserId();
+        LocalDateTime tie = NOW.minusHours(1);
+
+        Tuple2<List<Long>, List<Long>> result = inRolledBackTransaction(Flux.concat(
+                fileRepository.save(file(userId, NOW.minusHours(3))),
+                // Несколько файлов с одинаковым expires_at - порядок внутри держит id
+                fileRepository.save(file(userId, tie)),
+                fileRepository.save(file(userId, tie)),
+                fileRepository.save(file(userId, tie)),
+                fileRepository.save(file(userId, NOW.minusMinutes(1))),
+                // Ещё не истёк и бессрочный - в выборку не попадают
+                fileRepository.save(file(userId, NOW.plusMinutes(1))),
+                fileRepository.save(file(userId, null))
+        ).map(FileEntity::getId).collectList().flatMap(savedIds -> Mono.zip(Mono.just(savedIds), walkExpired(2))));
+
+        // Каждый истёкший файл ровно один раз и в порядке (expires_at, id)
+        assertEquals(result.getT1().subList(0, 5), result.getT2());
+    }
+
+
+    // Тот же шаг курсора, что и в CleanupService.purgeExpiredFiles: (expires_at, id) последней строки пачки
+    private Mono<List<Long>> walkExpired(int batchSize) {
+        List<Long> visited = new ArrayList<>();
+        return Mono.just(new Cursor(LocalDateTime.of(1970, 1, 1, 0, 0), 0L))
+                .expand(cursor -> fileRepository.findExpiredAfter(NOW, cursor.expiresAt(), cursor.id(), batchSize)
+                        .collectList()
+                        .filter(batch -> !batch.isEmpty())
+                        .doOnNext(batch -> batch.forEach(file -> visited.add(file.getId())))
+                        .map(batch -> {
+                            FileEntity last = batch.get(batch.size() - 1);
+                            return new Cursor(last.getExpiresAt(), last.getId());
+                        }))
+                .then(Mono.fromSupplier(() -> visited));
+    }
+
+    private <T> T inRolledBackTransaction(Mono<T> work) {
+        return transactionalOperator.execute(status -> {
+                    status.setRollbackOnly();
+                    return work;
+                })
+                .next()
+                .block(Duration.ofSeconds(10));
+    }
+
+    private FileEntity file(long userId, LocalDateTime expiresAt) {
+        return FileEntity.builder()
+                .userId(userId)
+                .originalFilename("report.pdf")
+                .storedFilename("test/user-" + userId + "/" + UUID.randomUUID() + ".pdf")
+                .contentType("application/pdf")
+                .fileSize(42L)
+                .storageUrl("http://storage/test")
+                .bucketName("user-files")
+                .uploadedAt(NOW.minusDays(1))
+                .expiresAt(expiresAt)
+                .build();
+    }
+
+    private long randomUserId() {
+        return ThreadLocalRandom.current().nextLong(1_000_000, Long.MAX_VALUE);
+    }
+
+    private record Cursor(LocalDateTime expiresAt, Long id) {
+    }
+}
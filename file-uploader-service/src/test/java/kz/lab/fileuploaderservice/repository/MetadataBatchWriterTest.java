@@ -0,0 +1,193 @@
+package kz.lab.fileuploaderservice.repository;
+
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import kz.lab.fileuploaderservice.model.entity.IdempotencyRecordEntity;
+import kz.lab.fileuploaderservice.model.entity.IdempotencyStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class MetadataBatchWriterTest {
+
+    @Autowired
+    private MetadataBatchWriter metadataBatchWriter;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Test
+    void shouldInsertFileAndCompleteRecordInOneStatement() {
+        long userId = randomUserId();
+        UUID key = UUID.randomUUID();
+        idempotencyRecordRepository.save(new IdempotencyRecordEntity(userId, key)).block(Duration.ofSeconds(5));
+
+        MetadataBatchWriter.InsertedFile inserted = metadataBatchWriter.insertFileAndComplete(file(userId), key, "{\"file_id\": null}")
+                .block(Duration.ofSeconds(5));
+
+        assertNotNull(inserted);
+        assertTrue(inserted.completed());
+        FileEntity saved = inserted.file();
+        assertNotNull(saved.getId());
+
+        IdempotencyRecordEntity record = idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key)
+                .block(Duration.ofSeconds(5));
+        assertEquals(IdempotencyStatus.COMPLETED, record.getStatus());
+        assertEquals(saved.getId(), record.getFileId());
+        // file_id в ответе подставлен из RETURNING
+        assertTrue(record.getResponseJson().asString().contains(String.valueOf(saved.getId())));
+    }
+
+    @Test
+    void shouldReturnEmptyWhenFileRowAlreadyExists() {
+        long userId = randomUserId();
+        UUID key = UUID.randomUUID();
+        idempotencyRecordRepository.save(new IdempotencyRecordEntity(userId, key)).block(Duration.ofSeconds(5));
+        FileEntity file = file(userId);
+
+        // Строка уже вставлена до падения: CTE ничего не трогает, вызывающий уходит на пошаговый путь
+        metadataBatchWriter.insertFile(file).block(Duration.ofSeconds(5));
+        FileEntity retry = file(userId);
+        retry.setStoredFilename(file.getStoredFilename());
+
+        StepVerifier.create(metadataBatchWriter.insertFileAndComplete(retry, key, "{}"))
+                .verifyComplete();
+
+        assertEquals(IdempotencyStatus.IN_PROGRESS, idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key)
+                .block(Duration.ofSeconds(5)).getStatus());
+
+        StepVerifier.create(metadataBatchWriter.completeIdempotency(userId, key, file.getId(), "{}"))
+                .expectNext(true)
+                .verifyComplete();
+        assertEquals(file.getId(), idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key)
+                .block(Duration.ofSeconds(5)).getFileId());
+    }
+
+    @Test
+    void shouldNotCompleteRecordThatIsNoLongerInProgress() {
+        long userId = randomUserId();
+        UUID key = UUID.randomUUID();
+        failedRecord(userId, key);
+
+        // Дедлайн уже пометил запись FAILED, загрузка завершилась позже
+        MetadataBatchWriter.InsertedFile inserted = metadataBatchWriter.insertFileAndComplete(file(userId), key, "{}")
+                .block(Duration.ofSeconds(5));
+
+        assertNotNull(inserted);
+        assertFalse(inserted.completed());
+        assertNotNull(inserted.file().getId());
+        IdempotencyRecordEntity record = idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key)
+                .block(Duration.ofSeconds(5));
+        assertEquals(IdempotencyStatus.FAILED, record.getStatus());
+        assertNull(record.getFileId());
+    }
+
+    @Test
+    void shouldRejectLateCompletionOfFailedRecord() {
+        long userId = randomUserId();
+        UUID key = UUID.randomUUID();
+        failedRecord(userId, key);
+        FileEntity file = metadataBatchWriter.insertFile(file(userId)).block(Duration.ofSeconds(5));
+
+        StepVerifier.create(metadataBatchWriter.completeIdempotency(userId, key, file.getId(), "{}"))
+                .expectNext(false)
+                .verifyComplete();
+
+        assertEquals(IdempotencyStatus.FAILED, idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key)
+                .block(Duration.ofSeconds(5)).getStatus());
+    }
+
+    @Test
+    void shouldAcceptRepeatedCompletionWithSameFile() {
+        long userId = randomUserId();
+        UUID key = UUID.randomUUID();
+        idempotencyRecordRepository.save(new IdempotencyRecordEntity(userId, key)).block(Duration.ofSeconds(5));
+        FileEntity file = metadataBatchWriter.insertFile(file(userId)).block(Duration.ofSeconds(5));
+        FileEntity other = metadataBatchWriter.insertFile(file(userId)).block(Duration.ofSeconds(5));
+
+        metadataBatchWriter.completeIdempotency(userId, key, file.getId(), "{}").block(Duration.ofSeconds(5));
+
+        // Повтор саги после падения до сохранения COMPLETED - не конфликт; чужой файл - конфликт
+        StepVerifier.create(metadataBatchWriter.completeIdempotency(userId, key, file.getId(), "{}"))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(metadataBatchWriter.completeIdempotency(userId, key, other.getId(), "{}"))
+                .expectNext(false)
+                .verifyComplete();
+        assertEquals(file.getId(), idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key)
+                .block(Duration.ofSeconds(5)).getFileId());
+    }
+
+    @Test
+    void shouldNotWriteAnalyticsInsideTheStatement() {
+        long userId = randomUserId();
+        UUID key = UUID.randomUUID();
+        idempotencyRecordRepository.save(new IdempotencyRecordEntity(userId, key)).block(Duration.ofSeconds(5));
+
+        metadataBatchWriter.insertFileAndComplete(file(userId), key, "{}").block(Duration.ofSeconds(5));
+
+        // Счётчик пишет UploadAnalyticsService отдельно, его сбой не откатывает загрузку
+        StepVerifier.create(databaseClient.sql("SELECT count(*) AS rows FROM upload_stats_hourly WHERE user_id = :userId")
+                        .bind("userId", userId)
+                        .map(row -> row.get("rows", Long.class))
+                        .one())
+                .expectNext(0L)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldBatchConcurrentCompletions() {
+        long userId = randomUserId();
+
+        Long completed = Flux.range(0, 20)
+                .flatMap(i -> {
+                    UUID key = UUID.randomUUID();
+                    return idempotencyRecordRepository.save(new IdempotencyRecordEntity(userId, key))
+                            .then(metadataBatchWriter.insertFileAndComplete(file(userId), key, "{}"));
+                })
+                .count()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(20L, completed);
+        assertEquals(20L, idempotencyRecordRepository.findByUserIdAndStatus(userId, IdempotencyStatus.COMPLETED)
+                .count()
+                .block(Duration.ofSeconds(5)));
+    }
+
+
+    private void failedRecord(long userId, UUID key) {
+        IdempotencyRecordEntity record = new IdempotencyRecordEntity(userId, key);
+        record.markFailed("Operation deadline exceeded");
+        idempotencyRecordRepository.save(record).block(Duration.ofSeconds(5));
+    }
+
+    private FileEntity file(long userId) {
+        return FileEntity.builder()
+                .userId(userId)
+                .originalFilename("report.pdf")
+                .storedFilename("test/user-" + userId + "/" + UUID.randomUUID() + ".pdf")
+                .contentType("application/pdf")
+                .fileSize(42L)
+                .storageUrl("http://storage/test")
+                .bucketName("user-files")
+                .uploadedAt(LocalDateTime.now())
+                .build();
+    }
+
+    private long randomUserId() {
+        return ThreadLocalRandom.current().nextLong(1_000_000, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,130 @@
+package kz.lab.fileuploaderservice.repository;
+
+import kz.lab.fileuploaderservice.dto.UploadStatsResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class UploadStatsRepositoryTest {
+
+    // Прошедший час, в который живые загрузки не попадают
+    private static final LocalDateTime HOUR = LocalDateTime.of(2020, 3, 1, 10, 0);
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    @Autowired
+    private UploadStatsRepository uploadStatsRepository;
+
+    @Test
+    void shouldBackfillHourlyRollupsFromFiles() throws IOException {
+        long userId = randomUserId();
+        String backfill = backfillStatement();
+
+        List<UploadStatsResponse> stats = inRolledBackTransaction(
+                insertFile(userId, "image/png", 100, HOUR.plusMinutes(5))
+                        .then(insertFile(userId, "image/png", 50, HOUR.plusMinutes(40)))
+                        .then(insertFile(userId, "text/plain", 7, HOUR.plusHours(1)))
+                        .then(databaseClient.sql(backfill).then())
+                        // Повторный прогон не удваивает счётчики
+                        .then(databaseClient.sql(backfill).then())
+                        .thenMany(uploadStatsRepository.aggregate(
+                                "content_type", "hour", HOUR, HOUR.plusHours(2), userId)));
+
+        assertEquals(2, stats.size());
+        assertEquals(HOUR, stats.get(0).getPeriodStart());
+        assertEquals("image/png", stats.get(0).getDimension());
+        assertEquals(2L, stats.get(0).getUploads());
+        assertEquals(150L, stats.get(0).getBytes());
+        assertEquals("text/plain", stats.get(1).getDimension());
+        assertEquals(1L, stats.get(1).getUploads());
+    }
+
+    @Test
+    void shouldRollHoursUpToDaysPerDimension() {
+        long userId = randomUserId();
+
+        List<UploadStatsResponse> stats = inRolledBackTransaction(
+                insertStats(userId, "image/png", HOUR, 2, 200, 0)
+                        .then(insertStats(userId, "text/plain", HOUR.plusHours(3), 1, 10, 1))
+                        .thenMany(uploadStatsRepository.aggregate(
+                                "'all'", "day", HOUR.minusHours(10), HOUR.plusHours(10), userId)));
+
+        assertEquals(1, stats.size());
+        assertEquals(HOUR.toLocalDate().atStartOfDay(), stats.get(0).getPeriodStart());
+        assertEquals("all", stats.get(0).getDimension());
+        assertEquals(3L, stats.get(0).getUploads());
+        assertEquals(210L, stats.get(0).getBytes());
+        assertEquals(1L, stats.get(0).getFailures());
+    }
+
+
+    // Проверяется сам SQL миграции V8, а не его копия
+    private String backfillStatement() throws IOException {
+        String migration = new ClassPathResource("db/migration/V8__create_upload_stats_hourly.sql")
+                .getContentAsString(StandardCharsets.UTF_8);
+        String statement = migration.substring(migration.indexOf("INSERT INTO upload_stats_hourly")).trim();
+        return statement.endsWith(";") ? statement.substring(0, statement.length() - 1) : statement;
+    }
+
+    private List<UploadStatsResponse> inRolledBackTransaction(Flux<UploadStatsResponse> work) {
+        return transactionalOperator.execute(status -> {
+                    status.setRollbackOnly();
+                    return work;
+                })
+                .collectList()
+                .block();
+    }
+
+    private Mono<Void> insertFile(long userId, String contentType, long size, LocalDateTime uploadedAt) {
+        String storedFilename = "test/user-" + userId + "/" + UUID.randomUUID();
+        return databaseClient.sql("""
+                        INSERT INTO files (user_id, original_filename, stored_filename, content_type,
+                                           file_size, storage_url, uploaded_at)
+                        VALUES (:userId, 'file', :storedFilename, :contentType, :size, 'http://storage/test', :uploadedAt)
+                        """)
+                .bind("userId", userId)
+                .bind("storedFilename", storedFilename)
+                .bind("contentType", contentType)
+                .bind("size", size)
+                .bind("uploadedAt", uploadedAt)
+                .then();
+    }
+
+    private Mono<Void> insertStats(long userId, String contentType, LocalDateTime bucketStart,
+                                   long uploads, long bytes, long failures) {
+        return databaseClient.sql("""
+                        INSERT INTO upload_stats_hourly (bucket_start, user_id, content_type, uploads, bytes, failures)
+                        VALUES (:bucketStart, :userId, :contentType, :uploads, :bytes, :failures)
+                        """)
+                .bind("bucketStart", bucketStart)
+                .bind("userId", userId)
+                .bind("contentType", contentType)
+                .bind("uploads", uploads)
+                .bind("bytes", bytes)
+                .bind("failures", failures)
+                .then();
+    }
+
+    private long randomUserId() {
+        return ThreadLocalRandom.current().nextLong(1_000_000, Long.MAX_VALUE);
+    }
+}
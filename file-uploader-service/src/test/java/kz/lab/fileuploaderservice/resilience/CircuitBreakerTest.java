@@ -0,0 +1,119 @@
+package kz.lab.fileuploaderservice.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final CircuitBreaker breaker = new CircuitBreaker(
+            "test", 0.5, 4, 4, Duration.ofSeconds(10), 2, clock::get);
+
+    @Test
+    void shouldStayClosedBelowMinimumCalls() {
+        fail();
+        fail();
+        fail();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void shouldOpenWhenFailureRateReachesThreshold() {
+        succeed();
+        succeed();
+        fail();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        fail();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+    }
+
+    @Test
+    void shouldCloseAfterSuccessfulTrialCalls() {
+        open();
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        long first = acquire();
+        long second = acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // Больше пробных вызовов не пускаем
+        assertEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+
+        breaker.onSuccess(first);
+        breaker.onSuccess(second);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void shouldReopenWhenTrialCallFails() {
+        open();
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        breaker.onFailure(acquire());
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+    }
+
+    @Test
+    void shouldIgnoreSuccessOfCallAdmittedBeforeBreakerOpened() {
+        long slowCall = acquire();
+        open();
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+        long probe = acquire();
+
+        // Долгий PUT из CLOSED завершился в HALF_OPEN: не пробный вызов, breaker не закрывает и слот не освобождает
+        breaker.onSuccess(slowCall);
+        breaker.onSuccess(slowCall);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        acquire();
+        assertEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+
+        breaker.onSuccess(probe);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    void shouldIgnoreFailureOfCallAdmittedBeforeBreakerOpened() {
+        long slowCall = acquire();
+        open();
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+        acquire();
+
+        breaker.onFailure(slowCall);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+
+    private long acquire() {
+        long permit = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.NO_PERMIT, permit);
+        return permit;
+    }
+
+    private void succeed() {
+        breaker.onSuccess(acquire());
+    }
+
+    private void fail() {
+        breaker.onFailure(acquire());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
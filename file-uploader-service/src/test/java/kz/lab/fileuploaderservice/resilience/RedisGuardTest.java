@@ -0,0 +1,140 @@
+package kz.lab.fileuploaderservice.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisGuardTest {
+
+    private final RedisGuard guard = new RedisGuard(
+            new SimpleMeterRegistry(), 50, 100, 100, 0.5, 4, 4, 60000, 1);
+
+    @Test
+    void shouldTreatSlowReadAsMiss() {
+        long start = System.nanoTime();
+        String value = guard.read("get", Mono.just("cached").delayElement(Duration.ofSeconds(2)))
+                .block(Duration.ofSeconds(5));
+        long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertNull(value);
+        assertTrue(elapsedMs < 1000, "read took " + elapsedMs + "ms");
+    }
+
+    @Test
+    void shouldStopCallingRedisOnceBreakerOpens() {
+        for (int i = 0; i < 4; i++) {
+            guard.read("get", Mono.error(new IllegalStateException("down"))).block(Duration.ofSeconds(5));
+        }
+        assertFalse(guard.isAvailable());
+
+        AtomicBoolean called = new AtomicBoolean();
+        String value = guard.read("get", Mono.fromCallable(() -> {
+                    called.set(true);
+                    return "cached";
+                }))
+                .block(Duration.ofSeconds(5));
+
+        assertNull(value);
+        assertFalse(called.get());
+    }
+
+    @Test
+    void shouldReplayDeferredWritesOfOneKeyInOrder() {
+        AtomicBoolean redisUp = new AtomicBoolean(false);
+        List<String> applied = new CopyOnWriteArrayList<>();
+
+        for (String value : List.of("a", "b", "c")) {
+            guard.write("set", "key", () -> redisUp.get()
+                    ? Mono.fromRunnable(() -> applied.add(value))
+                    : Mono.error(new IllegalStateException("down")));
+        }
+        assertEquals(3, guard.backlogSize());
+        assertTrue(applied.isEmpty());
+
+        redisUp.set(true);
+        guard.replayBacklog();
+
+        assertEquals(List.of("a", "b", "c"), applied);
+        assertEquals(0, guard.backlogSize());
+    }
+
+    @Test
+    void shouldCompleteWriteOnlyOnceApplied() {
+        RedisGuard guard = neverOpeningGuard(100);
+        AtomicBoolean redisUp = new AtomicBoolean(false);
+        AtomicBoolean completed = new AtomicBoolean();
+
+        guard.write("set", "key", () -> redisUp.get()
+                        ? Mono.empty()
+                        : Mono.error(new IllegalStateException("down")))
+                .subscribe(null, null, () -> completed.set(true));
+        assertFalse(completed.get());
+
+        redisUp.set(true);
+        guard.replayBacklog();
+
+        assertTrue(completed.get());
+    }
+
+    @Test
+    void shouldWriteOtherKeysDirectlyWhileOneKeyIsQueued() {
+        RedisGuard guard = neverOpeningGuard(100);
+        List<String> applied = new CopyOnWriteArrayList<>();
+
+        guard.write("set", "stuck", () -> Mono.error(new IllegalStateException("down")));
+        guard.write("set", "stuck", () -> Mono.fromRunnable(() -> applied.add("stuck")));
+        guard.write("set", "healthy", () -> Mono.fromRunnable(() -> applied.add("healthy")));
+
+        // Запись по другому ключу не ждёт чужой backlog; за упавшей записью своего ключа - ждёт
+        assertEquals(List.of("healthy"), applied);
+        assertEquals(2, guard.backlogSize());
+    }
+
+    @Test
+    void shouldDropOnlyBestEffortWritesWhenBacklogIsFull() {
+        RedisGuard guard = neverOpeningGuard(2);
+        Supplier<Mono<?>> down = () -> Mono.error(new IllegalStateException("down"));
+
+        guard.writeBestEffort("set", "a", down);
+        guard.writeBestEffort("set", "b", down);
+        guard.writeBestEffort("set", "c", down);
+        guard.write("delete", "d", down);
+
+        assertEquals(3, guard.backlogSize());
+    }
+
+    @Test
+    void shouldDrainWholeBacklogInOneReplay() {
+        RedisGuard guard = neverOpeningGuard(100_000);
+        AtomicBoolean redisUp = new AtomicBoolean(false);
+        AtomicInteger applied = new AtomicInteger();
+
+        for (int i = 0; i < 5_000; i++) {
+            guard.write("set", "key-" + (i % 100), () -> redisUp.get()
+                    ? Mono.fromRunnable(applied::incrementAndGet)
+                    : Mono.error(new IllegalStateException("down")));
+        }
+        assertEquals(5_000, guard.backlogSize());
+
+        redisUp.set(true);
+        guard.replayBacklog();
+
+        assertEquals(5_000, applied.get());
+        assertEquals(0, guard.backlogSize());
+    }
+
+
+    // Окно больше числа вызовов в тесте - breaker не открывается, ошибки записей не мешают остальным
+    private static RedisGuard neverOpeningGuard(int backlogLimit) {
+        return new RedisGuard(new SimpleMeterRegistry(), 50, backlogLimit, 4, 0.5, 100_000, 100_000, 60000, 1);
+    }
+}
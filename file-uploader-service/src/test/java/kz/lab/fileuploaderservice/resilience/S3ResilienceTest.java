@@ -0,0 +1,168 @@
+package kz.lab.fileuploaderservice.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.lab.fileuploaderservice.config.S3ResilienceProperties;
+import kz.lab.fileuploaderservice.exception.CircuitBreakerOpenException;
+import kz.lab.fileuploaderservice.resilience.S3Resilience.CallPolicy;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3ResilienceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldRetryTransientFailures() {
+        FaultInjectingStore store = new FaultInjectingStore()
+                .fail(503)
+                .fail(500)
+                .succeed("ok", 0);
+        S3Resilience resilience = new S3Resilience(properties(), meterRegistry);
+
+        String result = resilience.call("shard", "putObject", CallPolicy.RETRY, store)
+                .block(Duration.ofSeconds(5));
+
+        assertEquals("ok", result);
+        assertEquals(3, store.calls.get());
+        assertEquals(2.0, meterRegistry.counter("s3.client.retries").count());
+    }
+
+    @Test
+    void shouldNotRetryMissingObject() {
+        FaultInjectingStore store = new FaultInjectingStore()
+                .fail(404)
+                .succeed("ok", 0);
+        S3Resilience resilience = new S3Resilience(properties(), meterRegistry);
+
+        assertThrows(NoSuchKeyException.class, () ->
+                resilience.call("shard", "headObject", CallPolicy.HEDGED, store).block(Duration.ofSeconds(5)));
+        assertEquals(1, store.calls.get());
+    }
+
+    @Test
+    void shouldGiveUpAfterMaxAttempts() {
+        FaultInjectingStore store = new FaultInjectingStore()
+                .fail(503)
+                .fail(503)
+                .fail(503)
+                .succeed("late", 0);
+        S3Resilience resilience = new S3Resilience(properties(), meterRegistry);
+
+        S3Exception error = assertThrows(S3Exception.class, () ->
+                resilience.call("shard", "deleteObject", CallPolicy.RETRY, store).block(Duration.ofSeconds(5)));
+        assertEquals(503, error.statusCode());
+        assertEquals(3, store.calls.get());
+    }
+
+    @Test
+    void shouldHedgeSlowRead() {
+        S3ResilienceProperties properties = properties();
+        properties.setHedgeMinSamples(10);
+        properties.setHedgeMinDelayMs(20);
+        S3Resilience resilience = new S3Resilience(properties, meterRegistry);
+
+        // Набираем статистику быстрых ответов
+        for (int i = 0; i < 10; i++) {
+            resilience.call("shard", "getObject", CallPolicy.HEDGED, new FaultInjectingStore().succeed("warm", 0))
+                    .block(Duration.ofSeconds(5));
+        }
+
+        FaultInjectingStore store = new FaultInjectingStore()
+                .succeed("slow", 2000)
+                .succeed("hedge", 0);
+
+        long start = System.nanoTime();
+        String result = resilience.call("shard", "getObject", CallPolicy.HEDGED, store)
+                .block(Duration.ofSeconds(5));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("hedge", result);
+        assertEquals(2, store.calls.get());
+        assertTrue(elapsedMs < 1000, "hedged read took " + elapsedMs + "ms");
+        assertTrue(store.cancelled.get(), "slow primary should be cancelled");
+        assertEquals(1.0, meterRegistry.counter("s3.client.hedges", "result", "won").count());
+    }
+
+    @Test
+    void shouldFailFastWhenBreakerOpens() {
+        S3ResilienceProperties properties = properties();
+        properties.setMaxAttempts(1);
+        properties.getBreaker().setMinimumCalls(4);
+        properties.getBreaker().setSlidingWindowSize(4);
+        S3Resilience resilience = new S3Resilience(properties, meterRegistry);
+
+        FaultInjectingStore store = new FaultInjectingStore();
+        for (int i = 0; i < 10; i++) {
+            store.fail(503);
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(S3Exception.class, () ->
+                    resilience.call("shard", "putObject", CallPolicy.RETRY, store).block(Duration.ofSeconds(5)));
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, resilience.breakerState("shard"));
+        assertThrows(CircuitBreakerOpenException.class, () ->
+                resilience.call("shard", "putObject", CallPolicy.RETRY, store).block(Duration.ofSeconds(5)));
+        assertEquals(4, store.calls.get());
+
+        // Breaker отдельного шарда не затронут
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.breakerState("other"));
+    }
+
+
+    private S3ResilienceProperties properties() {
+        S3ResilienceProperties properties = new S3ResilienceProperties();
+        properties.setInitialBackoffMs(1);
+        properties.setMaxBackoffMs(5);
+        return properties;
+    }
+
+    // Подменяет S3: каждый вызов забирает следующий сценарий - ошибку с кодом или ответ с задержкой
+    private static class FaultInjectingStore implements Supplier<CompletableFuture<String>> {
+
+        private final Deque<Supplier<CompletableFuture<String>>> script = new ArrayDeque<>();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        FaultInjectingStore fail(int status) {
+            script.add(() -> CompletableFuture.failedFuture(status == 404
+                    ? NoSuchKeyException.builder().statusCode(404).message("missing").build()
+                    : S3Exception.builder().statusCode(status).message("injected " + status).build()));
+            return this;
+        }
+
+        FaultInjectingStore succeed(String value, long delayMs) {
+            script.add(() -> {
+                CompletableFuture<String> future = new CompletableFuture<>();
+                future.whenComplete((v, e) -> {
+                    if (future.isCancelled()) {
+                        cancelled.set(true);
+                    }
+                });
+                CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS)
+                        .execute(() -> future.complete(value));
+                return future;
+            });
+            return this;
+        }
+
+        @Override
+        public synchronized CompletableFuture<String> get() {
+            calls.incrementAndGet();
+            return script.poll().get();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import kz.lab.fileuploaderservice.saga.model.SagaType;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
 import reactor.test.StepVerifier;
 
 import java.util.UUID;
@@ -39,4 +40,29 @@ class SagaStateRepositoryTest {
                 .verifyComplete();
     }
 
+    @Test
+    void shouldRejectStaleStepAfterRecoveryClaim() {
+        SagaStateEntity saga = new SagaStateEntity(
+                UUID.randomUUID(),
+                SagaType.FILE_UPLOAD,
+                1L,
+                UUID.randomUUID()
+        );
+
+        // Восстановление забрало сагу, пока исходный запрос ещё держит старую копию
+        StepVerifier.create(
+                        sagaStateRepository.save(saga)
+                                .flatMap(saved -> sagaStateRepository.claimForRecovery(
+                                        saved.getSagaId(), saved.getAttempts(), saved.getVersion()))
+                )
+                .expectNext(1)
+                .verifyComplete();
+
+        saga.markObjectStored("http://storage/object", 10L);
+
+        StepVerifier.create(sagaStateRepository.save(saga))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+    }
+
 }
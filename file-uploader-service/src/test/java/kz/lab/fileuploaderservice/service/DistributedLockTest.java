@@ -0,0 +1,62 @@
+package kz.lab.fileuploaderservice.service;
+
+import kz.lab.fileuploaderservice.support.RedisContainerSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistributedLockTest {
+
+    private static RedisContainerSupport redis;
+    private DistributedLock lock;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = RedisContainerSupport.start();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        lock = new DistributedLock(redis.template());
+    }
+
+    @Test
+    void shouldGrantLockToOneOwnerAtATime() {
+        String token = lock.tryAcquire("job", Duration.ofSeconds(10)).block();
+
+        assertNotNull(token);
+        assertNull(lock.tryAcquire("job", Duration.ofSeconds(10)).block());
+
+        lock.release("job", token).block();
+        assertNotNull(lock.tryAcquire("job", Duration.ofSeconds(10)).block());
+    }
+
+    @Test
+    void shouldNotReleaseOrExtendLockTakenOverByAnotherOwner() throws InterruptedException {
+        String expired = lock.tryAcquire("job", Duration.ofMillis(100)).block();
+        Thread.sleep(300);
+        String current = lock.tryAcquire("job", Duration.ofSeconds(10)).block();
+        assertNotNull(expired);
+        assertNotNull(current);
+
+        // Прогон, переживший свой TTL, не трогает чужую блокировку
+        lock.release("job", expired).block();
+        assertFalse(lock.extend("job", expired, Duration.ofSeconds(10)).block());
+        assertEquals(current, redis.template().opsForValue().get("job").block());
+
+        assertTrue(lock.extend("job", current, Duration.ofSeconds(10)).block());
+    }
+}
@@ -0,0 +1,123 @@
+package kz.lab.fileuploaderservice.service;
+
+import kz.lab.fileuploaderservice.dto.FileUploadResponse;
+import kz.lab.fileuploaderservice.exception.StorageServiceException;
+import kz.lab.fileuploaderservice.model.entity.FileEntity;
+import kz.lab.fileuploaderservice.model.entity.IdempotencyRecordEntity;
+import kz.lab.fileuploaderservice.model.entity.IdempotencyStatus;
+import kz.lab.fileuploaderservice.repository.FileRepository;
+import kz.lab.fileuploaderservice.repository.IdempotencyRecordRepository;
+import kz.lab.fileuploaderservice.saga.model.SagaStateEntity;
+import kz.lab.fileuploaderservice.saga.model.SagaStatus;
+import kz.lab.fileuploaderservice.saga.repository.SagaStateRepository;
+import kz.lab.fileuploaderservice.saga.service.SagaRecoveryService;
+import kz.lab.fileuploaderservice.storage.StorageBackend;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "application.storage.type=local",
+        "application.storage.local.root-dir=${java.io.tmpdir}/file-uploader-copy-test",
+        "application.storage.local.signing-secret=copy-test-secret"
+})
+class FileCopyTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Autowired
+    private FileUploadService fileUploadService;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private SagaStateRepository sagaStateRepository;
+
+    @Autowired
+    private SagaRecoveryService sagaRecoveryService;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Test
+    void shouldReplayCopyWithSameIdempotencyKey() {
+        long userId = randomUserId();
+        FileUploadResponse source = upload(userId, "report.txt", "quarterly numbers");
+        UUID copyKey = UUID.randomUUID();
+
+        FileUploadResponse first = fileUploadService.copyFile(source.getFileId(), userId, copyKey, null).block(TIMEOUT);
+        FileUploadResponse replay = fileUploadService.copyFile(source.getFileId(), userId, copyKey, null).block(TIMEOUT);
+
+        assertNotNull(first);
+        assertNotEquals(source.getFileId(), first.getFileId());
+        assertEquals(first.getFileId(), replay.getFileId());
+        // Источник и одна копия - повтор не создаёт вторую
+        assertEquals(2L, fileRepository.countActiveByUserId(userId, LocalDateTime.now()).block(TIMEOUT));
+
+        FileEntity copy = fileRepository.findById(first.getFileId()).block(TIMEOUT);
+        assertNotNull(storageBackend.statFile(copy.getBucketName(), copy.getStoredFilename()).block(TIMEOUT));
+    }
+
+    @Test
+    void shouldCompensateWhenStorageCopyFails() throws InterruptedException {
+        long userId = randomUserId();
+        FileUploadResponse source = upload(userId, "report.txt", "will disappear");
+        FileEntity sourceFile = fileRepository.findById(source.getFileId()).block(TIMEOUT);
+        // Объект пропал из хранилища - копирование на стороне хранилища падает
+        storageBackend.deleteFile(sourceFile.getBucketName(), sourceFile.getStoredFilename()).block(TIMEOUT);
+        UUID copyKey = UUID.randomUUID();
+
+        StepVerifier.create(fileUploadService.copyFile(source.getFileId(), userId, copyKey, null))
+                .expectError(StorageServiceException.class)
+                .verify(TIMEOUT);
+
+        IdempotencyRecordEntity record = idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, copyKey)
+                .block(TIMEOUT);
+        assertEquals(IdempotencyStatus.FAILED, record.getStatus());
+        SagaStateEntity saga = sagaStateRepository.findBySagaId(record.getSagaId()).block(TIMEOUT);
+        assertEquals(SagaStatus.COMPENSATING, saga.getStatus());
+
+        sagaRecoveryService.compensatePendingSagas();
+        for (int i = 0; i < 50 && saga.getStatus() != SagaStatus.COMPENSATED; i++) {
+            Thread.sleep(100);
+            saga = sagaStateRepository.findBySagaId(record.getSagaId()).block(TIMEOUT);
+        }
+
+        assertEquals(SagaStatus.COMPENSATED, saga.getStatus());
+        assertNull(storageBackend.statFile(saga.getBucketName(), saga.getStoredFilename()).block(TIMEOUT));
+        assertEquals(1L, fileRepository.countActiveByUserId(userId, LocalDateTime.now()).block(TIMEOUT));
+    }
+
+
+    private FileUploadResponse upload(long userId, String filename, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return fileUploadService.uploadRaw(
+                        filename,
+                        "text/plain",
+                        (long) bytes.length,
+                        Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(bytes)),
+                        userId,
+                        UUID.randomUUID(),
+                        null)
+                .block(TIMEOUT);
+    }
+
+    private long randomUserId() {
+        return ThreadLocalRandom.current().nextLong(1_000_000, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,101 @@
+package kz.lab.fileuploaderservice.service;
+
+import kz.lab.fileuploaderservice.exception.FileSizeExceededException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileUploadServiceRawTest {
+
+    private static final long MAX_FILE_SIZE = 10;
+
+    private FileUploadService service;
+    private AtomicBoolean bodySubscribed;
+    private Flux<DataBuffer> body;
+
+    @BeforeEach
+    void setUp() {
+        // Проверки заголовков срабатывают до обращения к зависимостям
+        service = new FileUploadService(null, null, null, null, null, null);
+        ReflectionTestUtils.setField(service, "maxFileSize", MAX_FILE_SIZE);
+
+        bodySubscribed = new AtomicBoolean();
+        body = Flux.defer(() -> {
+            bodySubscribed.set(true);
+            return Flux.just(buffer(4));
+        });
+    }
+
+    @Test
+    void shouldRejectMissingFileName() {
+        StepVerifier.create(service.uploadRaw(null, "text/plain", 4L, body, 1L, UUID.randomUUID(), null))
+                .expectErrorSatisfies(e -> {
+                    assertInstanceOf(IllegalArgumentException.class, e);
+                    assertTrue(e.getMessage().contains("X-File-Name"));
+                })
+                .verify();
+        StepVerifier.create(service.uploadRaw("  ", "text/plain", 4L, body, 1L, UUID.randomUUID(), null))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+
+        assertFalse(bodySubscribed.get());
+    }
+
+    @Test
+    void shouldRejectContentLengthOverLimitBeforeReadingBody() {
+        StepVerifier.create(service.uploadRaw("a.txt", "text/plain", MAX_FILE_SIZE + 1, body, 1L, UUID.randomUUID(), null))
+                .expectError(FileSizeExceededException.class)
+                .verify();
+
+        assertFalse(bodySubscribed.get());
+    }
+
+    @Test
+    void shouldPassStreamedBodyUpToLimit() {
+        StepVerifier.create(FileUploadService.limitSize(Flux.just(buffer(4), buffer(6)), MAX_FILE_SIZE))
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldFailStreamedBodyOverLimitWithoutReadingRest() {
+        AtomicInteger requestedAfterOverflow = new AtomicInteger();
+        Flux<DataBuffer> chunked = Flux.concat(
+                Flux.just(buffer(6), buffer(6)),
+                Flux.defer(() -> {
+                    requestedAfterOverflow.incrementAndGet();
+                    return Flux.just(buffer(1));
+                }));
+
+        StepVerifier.create(FileUploadService.limitSize(chunked, MAX_FILE_SIZE))
+                .expectNextCount(1)
+                .expectError(FileSizeExceededException.class)
+                .verify();
+
+        // После превышения остаток тела не читается
+        assertEquals(0, requestedAfterOverflow.get());
+    }
+
+    @Test
+    void shouldCountStreamedBytesPerSubscription() {
+        Flux<DataBuffer> limited = FileUploadService.limitSize(Flux.defer(() -> Flux.just(buffer(6))), MAX_FILE_SIZE);
+
+        // Повторная подписка (retry) начинает счёт заново
+        StepVerifier.create(limited).expectNextCount(1).verifyComplete();
+        StepVerifier.create(limited).expectNextCount(1).verifyComplete();
+    }
+
+    private static DataBuffer buffer(int size) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(new byte[size]);
+    }
+}
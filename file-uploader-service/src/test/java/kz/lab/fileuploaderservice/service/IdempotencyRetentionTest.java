@@ -0,0 +1,108 @@
+package kz.lab.fileuploaderservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.lab.fileuploaderservice.repository.IdempotencyPartitionRepository;
+import kz.lab.fileuploaderservice.support.PostgresContainerSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyRetentionTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int RETENTION_DAYS = 30;
+
+    private static PostgresContainerSupport postgres;
+
+    private DatabaseClient databaseClient;
+    private IdempotencyPartitionRepository partitionRepository;
+    private CleanupService cleanupService;
+
+    @BeforeAll
+    static void startPostgres() {
+        postgres = PostgresContainerSupport.start();
+    }
+
+    @AfterAll
+    static void stopPostgres() {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        databaseClient = postgres.databaseClient();
+        partitionRepository = new IdempotencyPartitionRepository(databaseClient, postgres.transactionalOperator());
+        cleanupService = new CleanupService(null, partitionRepository, null, null, null, null,
+                null, null, null, null, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cleanupService, "oldRecordsRetentionDays", RETENTION_DAYS);
+    }
+
+    @Test
+    void shouldDropOldPartitionsWhileDefaultPartitionExists() {
+        LocalDate today = LocalDate.now();
+        LocalDate oldDay = today.minusDays(RETENTION_DAYS + 30);
+        LocalDate busyDay = today.minusDays(RETENTION_DAYS + 31);
+        // Дня без секции - строка уходит в DEFAULT
+        LocalDate unpartitionedDay = today.minusDays(RETENTION_DAYS + 40);
+
+        String oldPartition = partitionRepository.createPartition(oldDay).block(TIMEOUT);
+        String busyPartition = partitionRepository.createPartition(busyDay).block(TIMEOUT);
+        String todayPartition = partitionRepository.createPartition(today).block(TIMEOUT);
+        insertRecord(oldDay, "COMPLETED");
+        insertRecord(busyDay, "IN_PROGRESS");
+        insertRecord(unpartitionedDay, "FAILED");
+        assertEquals(1L, partitionRepository.countDefaultPartitionRows().block(TIMEOUT));
+
+        Long dropped = cleanupService.dropOldRecords().block(TIMEOUT);
+
+        assertEquals(1L, dropped);
+        assertFalse(tableExists(oldPartition));
+        // Секция с незавершённой операцией и текущая остаются
+        assertTrue(tableExists(busyPartition));
+        assertTrue(tableExists(todayPartition));
+        assertEquals(0L, partitionRepository.countDefaultPartitionRows().block(TIMEOUT));
+        assertEquals(1L, databaseClient.sql("SELECT count(*) FROM idempotency_records")
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .block(TIMEOUT));
+    }
+
+    @Test
+    void shouldBeNoOpOnRepeatedRun() {
+        cleanupService.dropOldRecords().block(TIMEOUT);
+
+        assertEquals(0L, cleanupService.dropOldRecords().block(TIMEOUT));
+    }
+
+
+    private void insertRecord(LocalDate day, String status) {
+        databaseClient.sql("""
+                        INSERT INTO idempotency_records (user_id, idempotency_key, status, created_at, updated_at)
+                        VALUES (1, :key, :status, :createdAt, :createdAt)
+                        """)
+                .bind("key", UUID.randomUUID())
+                .bind("status", status)
+                .bind("createdAt", day.atTime(12, 0))
+                .then()
+                .block(TIMEOUT);
+    }
+
+    private boolean tableExists(String name) {
+        return Boolean.TRUE.equals(databaseClient.sql("SELECT to_regclass(:name) IS NOT NULL")
+                .bind("name", name)
+                .map(row -> row.get(0, Boolean.class))
+                .one()
+                .block(TIMEOUT));
+    }
+}
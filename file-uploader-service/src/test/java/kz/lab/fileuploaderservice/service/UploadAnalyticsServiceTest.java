@@ -0,0 +1,99 @@
+package kz.lab.fileuploaderservice.service;
+
+import kz.lab.fileuploaderservice.dto.UploadStatsResponse;
+import kz.lab.fileuploaderservice.repository.UploadStatsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadAnalyticsServiceTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2026, 1, 1, 0, 0);
+    private static final LocalDateTime TO = FROM.plusDays(7);
+
+    private RecordingStatsRepository repository;
+    private UploadAnalyticsService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = new RecordingStatsRepository();
+        service = new UploadAnalyticsService(repository, null);
+        ReflectionTestUtils.setField(service, "maxRangeDays", 93);
+    }
+
+    @Test
+    void shouldMapGroupByToWhitelistedColumn() {
+        StepVerifier.create(service.getStats("content-type", "day", FROM, TO, null))
+                .verifyComplete();
+        StepVerifier.create(service.getStats("user", "hour", FROM, TO, 1L))
+                .verifyComplete();
+
+        assertEquals(List.of("content_type", "user_id::text"), repository.dimensions);
+        assertEquals(List.of("day", "hour"), repository.granularities);
+    }
+
+    @Test
+    void shouldRejectGroupByOutsideWhitelist() {
+        // Значение groupBy подставляется в SQL - всё, что не из белого списка, до репозитория не доходит
+        StepVerifier.create(service.getStats("user_id) FROM files; --", "day", FROM, TO, null))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(service.getStats("user_id", "day", FROM, TO, null))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+
+        assertTrue(repository.dimensions.isEmpty());
+    }
+
+    @Test
+    void shouldRejectUnknownGranularity() {
+        StepVerifier.create(service.getStats("total", "minute", FROM, TO, null))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+
+        assertTrue(repository.dimensions.isEmpty());
+    }
+
+    @Test
+    void shouldRejectEmptyOrTooWideRange() {
+        StepVerifier.create(service.getStats("total", "day", TO, FROM, null))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(service.getStats("total", "day", FROM, FROM.plusDays(94), null))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+
+        assertTrue(repository.dimensions.isEmpty());
+    }
+
+
+    private static final class RecordingStatsRepository extends UploadStatsRepository {
+
+        private final List<String> dimensions = new ArrayList<>();
+        private final List<String> granularities = new ArrayList<>();
+
+        private RecordingStatsRepository() {
+            super(null);
+        }
+
+        @Override
+        public Flux<UploadStatsResponse> aggregate(
+                String dimensionColumn,
+                String granularity,
+                LocalDateTime from,
+                LocalDateTime to,
+                Long userId) {
+            dimensions.add(dimensionColumn);
+            granularities.add(granularity);
+            return Flux.empty();
+        }
+    }
+}
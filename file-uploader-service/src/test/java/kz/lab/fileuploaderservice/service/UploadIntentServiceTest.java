@@ -0,0 +1,261 @@
+package kz.lab.fileuploaderservice.service;
+
+import kz.lab.fileuploaderservice.dto.FileUploadResponse;
+import kz.lab.fileuploaderservice.dto.UploadIntentRequest;
+import kz.lab.fileuploaderservice.dto.UploadIntentResponse;
+import kz.lab.fileuploaderservice.model.entity.IdempotencyStatus;
+import kz.lab.fileuploaderservice.model.entity.UploadIntentEntity;
+import kz.lab.fileuploaderservice.model.entity.UploadIntentStatus;
+import kz.lab.fileuploaderservice.repository.FileRepository;
+import kz.lab.fileuploaderservice.repository.IdempotencyRecordRepository;
+import kz.lab.fileuploaderservice.repository.UploadIntentRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class UploadIntentServiceTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final String CONTENT_TYPE = "text/plain";
+    private static final long SIZE = 11;
+
+    @Autowired
+    private UploadIntentService uploadIntentService;
+
+    @Autowired
+    private UploadIntentRepository uploadIntentRepository;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private FakeStorage storage;
+
+    @Test
+    void shouldConfirmUploadedObject() {
+        long userId = randomUserId();
+        UUID key = UUID.randomUUID();
+        UploadIntentEntity intent = createIntent(userId, key);
+        storage.put(intent.getStoredFilename(), SIZE, CONTENT_TYPE);
+
+        FileUploadResponse response = uploadIntentService.confirmIntent(userId, intent.getIntentId(), null)
+                .block(TIMEOUT);
+
+        assertNotNull(response.getFileId());
+        assertNotNull(fileRepository.findById(response.getFileId()).block(TIMEOUT));
+        UploadIntentEntity confirmed = reload(intent);
+        assertEquals(UploadIntentStatus.CONFIRMED, confirmed.getStatus());
+        assertEquals(response.getFileId(), confirmed.getFileId());
+        assertEquals(IdempotencyStatus.COMPLETED,
+                idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key).block(TIMEOUT).getStatus());
+    }
+
+    @Test
+    void shouldAnswerRepeatedConfirmFromFileAfterIdempotencyRecordIsPurged() {
+        long userId = randomUserId();
+        UUID key = UUID.randomUUID();
+        FileUploadResponse first = createAndConfirm(userId, key);
+        // Запись удалена retention-ом
+        databaseClient.sql("DELETE FROM idempotency_records WHERE user_id = :userId")
+                .bind("userId", userId)
+                .then()
+                .block(TIMEOUT);
+
+        FileUploadResponse repeated = uploadIntentService.confirmIntent(userId, intentIdOf(userId, key), null)
+                .block(TIMEOUT);
+
+        assertEquals(first.getFileId(), repeated.getFileId());
+        assertNotNull(repeated.getDownloadUrl());
+        // Повторный confirm не резервирует ключ заново
+        assertNull(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key).block(TIMEOUT));
+    }
+
+    @Test
+    void shouldAnswerRepeatedConfirmFromFileWhenIdempotencyRecordFailed() {
+        long userId = randomUserId();
+        UUID key = UUID.randomUUID();
+        FileUploadResponse first = createAndConfirm(userId, key);
+        databaseClient.sql("UPDATE idempotency_records SET status = 'FAILED' WHERE user_id = :userId")
+                .bind("userId", userId)
+                .then()
+                .block(TIMEOUT);
+
+        FileUploadResponse repeated = uploadIntentService.confirmIntent(userId, intentIdOf(userId, key), null)
+                .block(TIMEOUT);
+
+        assertEquals(first.getFileId(), repeated.getFileId());
+        assertEquals(IdempotencyStatus.FAILED,
+                idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key).block(TIMEOUT).getStatus());
+    }
+
+    @Test
+    void shouldReleaseClaimWhenObjectIsNotUploaded() {
+        long userId = randomUserId();
+        UploadIntentEntity intent = createIntent(userId, UUID.randomUUID());
+
+        StepVerifier.create(uploadIntentService.confirmIntent(userId, intent.getIntentId(), null))
+                .expectError(IllegalArgumentException.class)
+                .verify(TIMEOUT);
+
+        // Клиент может догрузить объект и подтвердить ещё раз
+        assertEquals(UploadIntentStatus.PENDING, reload(intent).getStatus());
+    }
+
+    @Test
+    void shouldExpireUnconfirmedIntentAndRemoveObject() {
+        long userId = randomUserId();
+        UUID key = UUID.randomUUID();
+        UploadIntentEntity intent = createIntent(userId, key);
+        storage.put(intent.getStoredFilename(), SIZE, CONTENT_TYPE);
+        intent.setExpiresAt(LocalDateTime.now().minusHours(2));
+        uploadIntentRepository.save(intent).block(TIMEOUT);
+
+        uploadIntentService.expireIntents(1000).block(TIMEOUT);
+
+        assertEquals(UploadIntentStatus.EXPIRED, reload(intent).getStatus());
+        assertTrue(storage.deleted.contains(intent.getStoredFilename()));
+        assertEquals(IdempotencyStatus.FAILED,
+                idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key).block(TIMEOUT).getStatus());
+    }
+
+    @Test
+    void shouldNotExpireIntentWhoseFileWasCreated() {
+        long userId = randomUserId();
+        UUID key = UUID.randomUUID();
+        FileUploadResponse confirmed = createAndConfirm(userId, key);
+        // Узел упал после создания файла, но до сохранения CONFIRMED
+        UploadIntentEntity intent = uploadIntentRepository.findByIntentIdAndUserId(intentIdOf(userId, key), userId)
+                .block(TIMEOUT);
+        intent.setStatus(UploadIntentStatus.CONFIRMING);
+        intent.setFileId(null);
+        intent.setExpiresAt(LocalDateTime.now().minusHours(2));
+        uploadIntentRepository.save(intent).block(TIMEOUT);
+
+        uploadIntentService.expireIntents(1000).block(TIMEOUT);
+
+        UploadIntentEntity reloaded = reload(intent);
+        assertEquals(UploadIntentStatus.CONFIRMED, reloaded.getStatus());
+        assertEquals(confirmed.getFileId(), reloaded.getFileId());
+        assertFalse(storage.deleted.contains(intent.getStoredFilename()));
+    }
+
+
+    private FileUploadResponse createAndConfirm(long userId, UUID key) {
+        UploadIntentEntity intent = createIntent(userId, key);
+        storage.put(intent.getStoredFilename(), SIZE, CONTENT_TYPE);
+        return uploadIntentService.confirmIntent(userId, intent.getIntentId(), null).block(TIMEOUT);
+    }
+
+    private UploadIntentEntity createIntent(long userId, UUID key) {
+        UploadIntentResponse response = uploadIntentService.createIntent(userId, key, UploadIntentRequest.builder()
+                        .filename("report.txt")
+                        .contentType(CONTENT_TYPE)
+                        .fileSize(SIZE)
+                        .build())
+                .block(TIMEOUT);
+        return uploadIntentRepository.findByIntentIdAndUserId(UUID.fromString(response.getIntentId()), userId)
+                .block(TIMEOUT);
+    }
+
+    private UUID intentIdOf(long userId, UUID key) {
+        return databaseClient.sql("SELECT intent_id FROM upload_intents WHERE user_id = :userId AND idempotency_key = :key")
+                .bind("userId", userId)
+                .bind("key", key)
+                .map(row -> row.get(0, UUID.class))
+                .one()
+                .block(TIMEOUT);
+    }
+
+    private UploadIntentEntity reload(UploadIntentEntity intent) {
+        return uploadIntentRepository.findByIntentIdAndUserId(intent.getIntentId(), intent.getUserId()).block(TIMEOUT);
+    }
+
+    private long randomUserId() {
+        return ThreadLocalRandom.current().nextLong(1_000_000, Long.MAX_VALUE);
+    }
+
+
+    @TestConfiguration
+    static class FakeStorageConfig {
+
+        @Bean
+        @Primary
+        FakeStorage fakeStorage() {
+            return new FakeStorage();
+        }
+    }
+
+    // Объекты "загружает" сам тест; presigned-ссылки и ссылки на скачивание - заглушки
+    static class FakeStorage extends MinioService {
+
+        private final Map<String, HeadObjectResponse> objects = new ConcurrentHashMap<>();
+        private final List<String> deleted = new CopyOnWriteArrayList<>();
+
+        FakeStorage() {
+            super(null, null, null);
+        }
+
+        void put(String storedFilename, long size, String contentType) {
+            objects.put(storedFilename, HeadObjectResponse.builder().contentLength(size).contentType(contentType).build());
+        }
+
+        @Override
+        public String resolveBucket(String storedFilename) {
+            return "user-files";
+        }
+
+        @Override
+        public Mono<PresignedPut> generatePresignedUploadUrl(String bucketName, String storedFilename, String contentType,
+                                                             long contentLength, Duration ttl) {
+            return Mono.just(new PresignedPut("http://storage/" + bucketName + "/" + storedFilename, Map.of()));
+        }
+
+        @Override
+        public Mono<HeadObjectResponse> headFile(String bucketName, String storedFilename) {
+            return Mono.justOrEmpty(objects.get(storedFilename));
+        }
+
+        @Override
+        public Mono<Void> deleteFile(String bucketName, String storedFilename) {
+            return Mono.fromRunnable(() -> {
+                objects.remove(storedFilename);
+                deleted.add(storedFilename);
+            });
+        }
+
+        @Override
+        public Mono<String> generateDownloadUrl(String bucketName, String storedFilename) {
+            return Mono.just(buildStorageUrl(bucketName, storedFilename));
+        }
+
+        @Override
+        public String buildStorageUrl(String bucketName, String storedFilename) {
+            return "http://storage/" + bucketName + "/" + storedFilename;
+        }
+    }
+}
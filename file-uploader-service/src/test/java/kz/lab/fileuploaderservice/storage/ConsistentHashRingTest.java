@@ -0,0 +1,65 @@
+package kz.lab.fileuploaderservice.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 20_000;
+
+    @Test
+    void shouldDistributeKeysByWeight() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(200);
+        ring.add("a", 1, "a");
+        ring.add("b", 3, "b");
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.get(UUID.randomUUID().toString()), 1, Integer::sum);
+        }
+
+        double shareB = counts.get("b") / (double) KEYS;
+        assertEquals(0.75, shareB, 0.05);
+    }
+
+    @Test
+    void shouldOnlyMoveKeysToAddedNode() {
+        ConsistentHashRing<String> before = new ConsistentHashRing<>(200);
+        before.add("a", 1, "a");
+        before.add("b", 1, "b");
+
+        ConsistentHashRing<String> after = new ConsistentHashRing<>(200);
+        after.add("a", 1, "a");
+        after.add("b", 1, "b");
+        after.add("c", 1, "c");
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "user-1/" + i;
+            String oldNode = before.get(key);
+            String newNode = after.get(key);
+
+            if (!oldNode.equals(newNode)) {
+                assertEquals("c", newNode);
+                moved++;
+            }
+        }
+
+        assertEquals(1.0 / 3, moved / (double) KEYS, 0.05);
+    }
+
+    @Test
+    void shouldBeStableForSameKey() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(10);
+        ring.add("a", 1, "a");
+        ring.add("b", 1, "b");
+
+        assertEquals(ring.get("user-1/file.txt"), ring.get("user-1/file.txt"));
+        assertThrows(IllegalArgumentException.class, () -> ring.add("c", 0, "c"));
+    }
+}
@@ -0,0 +1,133 @@
+package kz.lab.fileuploaderservice.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskObjectCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldShareOneFetchBetweenConcurrentMisses() {
+        CountingBackend backend = new CountingBackend(List.of("first-", "second-", "third"), Duration.ofMillis(20));
+        DiskObjectCache cache = new DiskObjectCache(backend, meterRegistry, true, cacheDir.toString(), 1024, 1024, 4);
+
+        List<String> results = Flux.merge(
+                        read(cache, "a", 18),
+                        read(cache, "a", 18),
+                        read(cache, "a", 18))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("first-second-third", "first-second-third", "first-second-third"), results);
+        assertEquals(1, backend.downloads.get());
+        assertEquals(2.0 / 3, meterRegistry.get("object.cache.hit.ratio").gauge().value(), 0.001);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntries() {
+        CountingBackend backend = new CountingBackend(List.of("0123456789"), Duration.ZERO);
+        DiskObjectCache cache = new DiskObjectCache(backend, meterRegistry, true, cacheDir.toString(), 20, 20, 64);
+
+        read(cache, "a", 10).block();
+        read(cache, "b", 10).block();
+        read(cache, "a", 10).block();
+        // c вытесняет b - к a обращались позже
+        read(cache, "c", 10).block();
+        read(cache, "a", 10).block();
+        read(cache, "b", 10).block();
+
+        assertEquals(4, backend.downloads.get());
+        assertTrue(meterRegistry.get("object.cache.evictions").counter().count() >= 1);
+    }
+
+    @Test
+    void shouldRefetchAfterInvalidate() {
+        CountingBackend backend = new CountingBackend(List.of("data"), Duration.ZERO);
+        DiskObjectCache cache = new DiskObjectCache(backend, meterRegistry, true, cacheDir.toString(), 100, 100, 64);
+
+        read(cache, "a", 4).block();
+        cache.invalidate("bucket", "a");
+        read(cache, "a", 4).block();
+
+        assertEquals(2, backend.downloads.get());
+    }
+
+    private Mono<String> read(DiskObjectCache cache, String key, long size) {
+        return cache.read("bucket", key, size)
+                .reduce(new ByteArrayOutputStream(), (out, buffer) -> {
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    out.writeBytes(bytes);
+                    return out;
+                })
+                .map(out -> out.toString(StandardCharsets.UTF_8));
+    }
+
+    private static class CountingBackend implements StorageBackend {
+        private final List<String> chunks;
+        private final Duration delay;
+        private final AtomicInteger downloads = new AtomicInteger();
+
+        CountingBackend(List<String> chunks, Duration delay) {
+            this.chunks = chunks;
+            this.delay = delay;
+        }
+
+        @Override
+        public Flux<ByteBuffer> downloadFile(String bucketName, String storedFilename) {
+            return Flux.defer(() -> {
+                downloads.incrementAndGet();
+                return Flux.fromIterable(chunks)
+                        .delayElements(delay.isZero() ? Duration.ofNanos(1) : delay)
+                        .map(chunk -> ByteBuffer.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+            });
+        }
+
+        @Override
+        public String resolveBucket(String storedFilename) { return "bucket"; }
+
+        @Override
+        public Mono<UploadResult> uploadFile(String bucketName, String storedFilename, String contentType, Flux<DataBuffer> content) {
+            return Mono.error(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Mono<StoredObjectInfo> statFile(String bucketName, String storedFilename) { return Mono.empty(); }
+
+        @Override
+        public Mono<Void> deleteFile(String bucketName, String storedFilename) { return Mono.empty(); }
+
+        @Override
+        public Mono<List<String>> deleteFiles(String bucketName, List<String> storedFilenames) { return Mono.just(List.of()); }
+
+        @Override
+        public Mono<Void> copyFile(String sourceBucket, String sourceFilename, String targetBucket, String targetFilename,
+                                   String contentType, long size) {
+            return Mono.error(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Mono<String> generateDownloadUrl(String bucketName, String storedFilename) { return Mono.empty(); }
+
+        @Override
+        public String buildStorageUrl(String bucketName, String storedFilename) { return storedFilename; }
+    }
+}
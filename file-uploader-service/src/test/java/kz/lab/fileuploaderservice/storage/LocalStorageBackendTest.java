@@ -0,0 +1,124 @@
+package kz.lab.fileuploaderservice.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalStorageBackendTest {
+
+    @TempDir
+    Path root;
+
+    private LocalStorageBackend backend;
+
+    @BeforeEach
+    void setUp() {
+        backend = new LocalStorageBackend(root.toString(), "local", "http://localhost:8080", "secret", 60);
+    }
+
+    @Test
+    void shouldWriteAndReadBackFile() {
+        String key = backend.generateStoredFilename(1L, "report.txt");
+        Flux<DataBuffer> content = Flux.just("hello ", "local ", "storage")
+                .map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+
+        StepVerifier.create(backend.uploadFile("local", key, "text/plain", content))
+                .assertNext(result -> assertEquals(19L, result.getFileSize()))
+                .verifyComplete();
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        StepVerifier.create(backend.downloadFile("local", key))
+                .thenConsumeWhile(chunk -> {
+                    read.writeBytes(toBytes(chunk));
+                    return true;
+                })
+                .verifyComplete();
+        assertEquals("hello local storage", read.toString(StandardCharsets.UTF_8));
+
+        StepVerifier.create(backend.deleteFile("local", key).then(backend.statFile("local", key)))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldReportStoredBytesAsChunksAreWritten() {
+        String key = backend.generateStoredFilename(1L, "report.txt");
+        Flux<DataBuffer> content = Flux.just("hello ", "local ", "storage")
+                .map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+        List<Long> progress = new CopyOnWriteArrayList<>();
+
+        StepVerifier.create(backend.uploadFile("local", key, "text/plain", content, progress::add))
+                .assertNext(result -> assertEquals(19L, result.getFileSize()))
+                .verifyComplete();
+
+        assertEquals(List.of(6L, 12L, 19L), progress);
+    }
+
+    @Test
+    void shouldReturnKeysThatFailedToDelete() {
+        upload("plain.txt");
+        // Непустой каталог на месте ключа - удаление этого ключа падает
+        upload("blocked/inner.txt");
+
+        StepVerifier.create(backend.deleteFiles("local", List.of("plain.txt", "blocked", "missing.txt")))
+                .assertNext(failed -> assertEquals(List.of("blocked"), failed))
+                .verifyComplete();
+
+        StepVerifier.create(backend.statFile("local", "plain.txt"))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldSignDownloadUrl() {
+        String url = backend.generateDownloadUrl("local", "ab/user-1/file.txt").block();
+        Map<String, String> params = UriComponentsBuilder.fromUriString(url).build(true)
+                .getQueryParams().toSingleValueMap();
+        long expires = Long.parseLong(params.get("expires"));
+
+        assertTrue(backend.verifySignature("local", "ab/user-1/file.txt", expires, params.get("signature")));
+        assertFalse(backend.verifySignature("local", "ab/user-2/file.txt", expires, params.get("signature")));
+        assertFalse(backend.verifySignature("local", "ab/user-1/file.txt",
+                Instant.now().minusSeconds(1).getEpochSecond(), params.get("signature")));
+    }
+
+    @Test
+    void shouldRejectKeysOutsideRoot() {
+        assertThrows(IllegalArgumentException.class, () -> backend.resolvePath("local", "../../etc/passwd"));
+    }
+
+    @Test
+    void shouldRefuseToStartWithoutRealSigningSecret() {
+        for (String secret : new String[]{null, "", "  ", "change-me"}) {
+            assertThrows(IllegalStateException.class, () ->
+                    new LocalStorageBackend(root.toString(), "local", "http://localhost:8080", secret, 60));
+        }
+    }
+
+    private byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private void upload(String key) {
+        Flux<DataBuffer> content = Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(new byte[]{1}));
+        StepVerifier.create(backend.uploadFile("local", key, "text/plain", content))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,68 @@
+package kz.lab.fileuploaderservice.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartPlanTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    @Test
+    void shouldPutRemainderIntoLastPart() {
+        MultipartPlan plan = MultipartPlan.of(250 * MIB, 100 * MIB);
+
+        assertEquals(100 * MIB, plan.partSize());
+        assertEquals(3, plan.partCount());
+        assertEquals(0, plan.start(1));
+        assertEquals(100 * MIB - 1, plan.end(1));
+        assertEquals(200 * MIB, plan.start(3));
+        assertEquals(250 * MIB - 1, plan.end(3));
+        assertEquals(50 * MIB, plan.length(3));
+    }
+
+    @Test
+    void shouldNotAddEmptyPartForExactMultiple() {
+        MultipartPlan plan = MultipartPlan.of(300 * MIB, 100 * MIB);
+
+        assertEquals(3, plan.partCount());
+        assertEquals(100 * MIB, plan.length(3));
+        assertEquals(300 * MIB - 1, plan.end(3));
+    }
+
+    @Test
+    void shouldHandleOneByteOverPartBoundary() {
+        MultipartPlan plan = MultipartPlan.of(100 * MIB + 1, 100 * MIB);
+
+        assertEquals(2, plan.partCount());
+        assertEquals(1, plan.length(2));
+        assertEquals(100 * MIB, plan.start(2));
+        assertEquals(100 * MIB, plan.end(2));
+    }
+
+    @Test
+    void shouldGrowPartSizeToStayWithinPartLimit() {
+        long fiveTib = 5L * 1024 * 1024 * MIB;
+        MultipartPlan plan = MultipartPlan.of(fiveTib, 64 * MIB);
+
+        assertTrue(plan.partSize() > 64 * MIB);
+        assertTrue(plan.partCount() <= MultipartPlan.MAX_PARTS);
+        assertEquals(fiveTib - 1, plan.end(plan.partCount()));
+    }
+
+    @Test
+    void shouldCoverObjectWithContiguousRanges() {
+        long size = 1_234_567_891L;
+        MultipartPlan plan = MultipartPlan.of(size, 64 * MIB);
+
+        long expectedStart = 0;
+        long total = 0;
+        for (int part = 1; part <= plan.partCount(); part++) {
+            assertEquals(expectedStart, plan.start(part));
+            assertTrue(plan.length(part) > 0);
+            expectedStart = plan.end(part) + 1;
+            total += plan.length(part);
+        }
+        assertEquals(size, total);
+    }
+}
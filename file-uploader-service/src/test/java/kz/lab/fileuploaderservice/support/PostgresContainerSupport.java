@@ -0,0 +1,68 @@
+package kz.lab.fileuploaderservice.support;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import org.flywaydb.core.Flyway;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Disposable Postgres with all Flyway migrations applied, for tests that change the schema
+ * (partition DDL) and so cannot run against the shared database; skipped when Docker is not available.
+ */
+public final class PostgresContainerSupport implements AutoCloseable {
+
+    private final PostgreSQLContainer<?> container;
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+    private PostgresContainerSupport() {
+        container = new PostgreSQLContainer<>("postgres:16-alpine");
+        container.start();
+
+        Flyway.configure()
+                .dataSource(container.getJdbcUrl(), container.getUsername(), container.getPassword())
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+
+        ConnectionFactory connectionFactory = ConnectionFactories.get(String.format(
+                "r2dbc:postgresql://%s:%s@%s:%d/%s",
+                container.getUsername(), container.getPassword(), container.getHost(),
+                container.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT), container.getDatabaseName()));
+        databaseClient = DatabaseClient.create(connectionFactory);
+        transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+    }
+
+
+    public static PostgresContainerSupport start() {
+        assumeTrue(isDockerAvailable(), "Docker is not available");
+        return new PostgresContainerSupport();
+    }
+
+    private static boolean isDockerAvailable() {
+        try {
+            return DockerClientFactory.instance().isDockerAvailable();
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    public DatabaseClient databaseClient() {
+        return databaseClient;
+    }
+
+    public TransactionalOperator transactionalOperator() {
+        return transactionalOperator;
+    }
+
+    @Override
+    public void close() {
+        container.stop();
+    }
+}
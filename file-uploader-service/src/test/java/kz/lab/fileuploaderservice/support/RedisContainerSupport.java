@@ -0,0 +1,62 @@
+package kz.lab.fileuploaderservice.support;
+
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Real Redis for tests of Lua scripts and pub/sub; tests are skipped when Docker is not available.
+ */
+public final class RedisContainerSupport implements AutoCloseable {
+
+    private final GenericContainer<?> container;
+    private final LettuceConnectionFactory connectionFactory;
+    private final ReactiveRedisTemplate<String, String> template;
+
+    private RedisContainerSupport() {
+        container = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+        container.start();
+
+        connectionFactory = new LettuceConnectionFactory(container.getHost(), container.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        template = new ReactiveRedisTemplate<>(connectionFactory, RedisSerializationContext.string());
+    }
+
+
+    public static RedisContainerSupport start() {
+        assumeTrue(isDockerAvailable(), "Docker is not available");
+        return new RedisContainerSupport();
+    }
+
+    // Для классов, где часть тестов работает и без Redis
+    public static RedisContainerSupport startIfAvailable() {
+        return isDockerAvailable() ? new RedisContainerSupport() : null;
+    }
+
+    private static boolean isDockerAvailable() {
+        try {
+            return DockerClientFactory.instance().isDockerAvailable();
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    public ReactiveRedisTemplate<String, String> template() {
+        return template;
+    }
+
+    public void flushAll() {
+        template.execute(connection -> connection.serverCommands().flushAll()).blockLast();
+    }
+
+    @Override
+    public void close() {
+        connectionFactory.destroy();
+        container.stop();
+    }
+}
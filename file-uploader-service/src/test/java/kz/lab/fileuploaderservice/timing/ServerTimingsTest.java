@@ -0,0 +1,54 @@
+package kz.lab.fileuploaderservice.timing;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerTimingsTest {
+
+    @Test
+    void shouldRecordStagesFromContext() {
+        ServerTimings timings = new ServerTimings();
+
+        Mono<String> chain = ServerTimings.timed("redis", Mono.just("a").delayElement(Duration.ofMillis(20)))
+                .flatMap(value -> ServerTimings.timed("db", Flux.just(1, 2, 3).collectList()).thenReturn(value))
+                .contextWrite(ctx -> ctx.put(ServerTimings.CONTEXT_KEY, timings));
+
+        StepVerifier.create(chain)
+                .expectNext("a")
+                .verifyComplete();
+
+        String header = timings.toHeaderValue();
+        assertTrue(header.startsWith("redis;dur="), header);
+        assertTrue(header.contains(", db;dur="), header);
+        double redisMillis = Double.parseDouble(header.substring("redis;dur=".length(), header.indexOf(',')));
+        assertTrue(redisMillis >= 20, header);
+    }
+
+    @Test
+    void shouldSumRepeatedStages() {
+        ServerTimings timings = new ServerTimings();
+        timings.record("db", TimeUnit.MILLISECONDS.toNanos(2));
+        timings.record("db", TimeUnit.MILLISECONDS.toNanos(3));
+
+        assertEquals("db;dur=5.00", timings.toHeaderValue());
+    }
+
+    @Test
+    void shouldPassThroughWithoutContext() {
+        StepVerifier.create(ServerTimings.timed("db", Flux.just(1, 2)))
+                .expectNext(1, 2)
+                .verifyComplete();
+
+        StepVerifier.create(ServerTimings.timed("redis", Mono.error(new IllegalStateException("boom"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+
+}
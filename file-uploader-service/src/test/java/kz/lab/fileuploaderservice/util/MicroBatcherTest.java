@@ -0,0 +1,138 @@
+package kz.lab.fileuploaderservice.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatcherTest {
+
+    private final List<List<Integer>> flushed = new CopyOnWriteArrayList<>();
+    private MicroBatcher<Integer, String> batcher;
+
+    @AfterEach
+    void tearDown() {
+        batcher.dispose();
+    }
+
+    @Test
+    void shouldFlushConcurrentSubmissionsTogether() {
+        batcher = new MicroBatcher<>("test", 10, Duration.ofMillis(50), 1, this::echo);
+
+        List<String> results = Flux.range(0, 10)
+                .flatMap(i -> batcher.submit(i))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(10, results.size());
+        assertTrue(results.containsAll(List.of("v0", "v5", "v9")));
+        assertEquals(1, flushed.size());
+        assertEquals(10, flushed.get(0).size());
+    }
+
+    @Test
+    void shouldFlushPartialBatchAfterWindow() {
+        batcher = new MicroBatcher<>("test", 100, Duration.ofMillis(10), 1, this::echo);
+
+        String result = batcher.submit(7).block(Duration.ofSeconds(5));
+
+        assertEquals("v7", result);
+        assertEquals(List.of(List.of(7)), flushed);
+    }
+
+    @Test
+    void shouldIsolateFailingItem() {
+        batcher = new MicroBatcher<>("test", 3, Duration.ofMillis(50), 1, items -> {
+            flushed.add(items);
+            if (items.contains(13)) {
+                return Mono.error(new IllegalStateException("constraint violation"));
+            }
+            return Mono.just(items.stream().map(i -> "v" + i).toList());
+        });
+
+        Mono<String> good1 = batcher.submit(1);
+        Mono<String> bad = batcher.submit(13).onErrorReturn("failed");
+        Mono<String> good2 = batcher.submit(2);
+
+        List<String> results = Flux.merge(good1, bad, good2).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(3, results.size());
+        assertTrue(results.containsAll(List.of("v1", "v2", "failed")));
+        // Пачка целиком + три повтора по одному
+        assertEquals(4, flushed.size());
+    }
+
+    @Test
+    void shouldCompleteEmptyForNullResult() {
+        batcher = new MicroBatcher<>("test", 1, Duration.ofMillis(10), 1, items -> {
+            List<String> results = new ArrayList<>();
+            results.add(null);
+            return Mono.just(results);
+        });
+
+        assertNull(batcher.submit(1).block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void shouldAcceptSubmissionsFromManyThreadsAtOnce() throws Exception {
+        batcher = new MicroBatcher<>("test", 50, Duration.ofMillis(5), 4, this::echo);
+        int threads = 16;
+        int perThread = 500;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<CompletableFuture<String>>>> submitters = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                int offset = t * perThread;
+                submitters.add(executor.submit(() -> {
+                    start.await();
+                    List<CompletableFuture<String>> results = new ArrayList<>();
+                    for (int i = 0; i < perThread; i++) {
+                        results.add(batcher.submit(offset + i).toFuture());
+                    }
+                    return results;
+                }));
+            }
+            start.countDown();
+
+            for (int t = 0; t < threads; t++) {
+                List<CompletableFuture<String>> results = submitters.get(t).get(10, TimeUnit.SECONDS);
+                for (int i = 0; i < perThread; i++) {
+                    assertEquals("v" + (t * perThread + i), results.get(i).get(10, TimeUnit.SECONDS));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * perThread, flushed.stream().mapToInt(List::size).sum());
+        assertTrue(flushed.stream().allMatch(batch -> batch.size() <= 50));
+    }
+
+    @Test
+    void shouldRejectSubmissionAfterDispose() {
+        batcher = new MicroBatcher<>("test", 10, Duration.ofMillis(10), 1, this::echo);
+        batcher.dispose();
+
+        assertThrows(IllegalStateException.class, () -> batcher.submit(1).block(Duration.ofSeconds(5)));
+    }
+
+    private Mono<List<String>> echo(List<Integer> items) {
+        flushed.add(items);
+        return Mono.just(items.stream().map(i -> "v" + i).toList());
+    }
+}
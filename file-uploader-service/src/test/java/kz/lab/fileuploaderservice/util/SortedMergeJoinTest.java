@@ -0,0 +1,69 @@
+package kz.lab.fileuploaderservice.util;
+
+import kz.lab.fileuploaderservice.util.SortedMergeJoin.Match;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortedMergeJoinTest {
+
+    @Test
+    void shouldEmitMatchesAndBothKindsOfMismatch() {
+        Flux<String> objects = Flux.just("a", "b", "d", "f");
+        Flux<String> rows = Flux.just("b", "c", "d", "g");
+
+        List<Match<String, String>> matches = SortedMergeJoin
+                .join(objects, Function.identity(), rows, Function.identity(), 2)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertNotNull(matches);
+        assertEquals(List.of("a", "b", "c", "d", "f", "g"), matches.stream().map(Match::key).toList());
+        assertTrue(matches.get(0).leftOnly());
+        assertFalse(matches.get(1).leftOnly() || matches.get(1).rightOnly());
+        assertTrue(matches.get(2).rightOnly());
+        assertTrue(matches.get(4).leftOnly());
+        assertTrue(matches.get(5).rightOnly());
+    }
+
+    @Test
+    void shouldHandleEmptySides() {
+        StepVerifier.create(SortedMergeJoin.join(Flux.<String>empty(), Function.identity(),
+                        Flux.just("x"), Function.identity(), 4))
+                .assertNext(match -> assertTrue(match.rightOnly()))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldPullLazilyFromLongStreams() {
+        AtomicLong requested = new AtomicLong();
+        Flux<String> objects = Flux.range(0, 1_000_000)
+                .map(i -> String.format("%07d", i))
+                .doOnRequest(requested::addAndGet);
+
+        StepVerifier.create(SortedMergeJoin.join(objects, Function.identity(),
+                        Flux.just("0000001"), Function.identity(), 8), 3)
+                .expectNextCount(3)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        // Prefetch ограничивает чтение, а не длина потока
+        assertTrue(requested.get() < 100, "requested " + requested.get());
+    }
+
+    @Test
+    void shouldOrderByCodePointsLikeS3() {
+        // U+FFFD (BMP) в UTF-8 меньше U+1F600, хотя в UTF-16 суррогат 0xD83D меньше 0xFFFD
+        assertTrue(SortedMergeJoin.compareCodePoints("�", "😀") < 0);
+        assertTrue(SortedMergeJoin.compareCodePoints("ab", "abc") < 0);
+        assertEquals(0, SortedMergeJoin.compareCodePoints("k/1", "k/1"));
+    }
+
+}
@@ -0,0 +1,51 @@
+package kz.lab.fileuploaderservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipArchiveStreamTest {
+
+    @Test
+    void shouldProduceReadableArchiveFromChunks() throws Exception {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+
+        try (ZipArchiveStream zip = new ZipArchiveStream()) {
+            archive.write(zip.startEntry("a.txt", true));
+            archive.write(zip.write(ByteBuffer.wrap("hello ".getBytes(StandardCharsets.UTF_8))));
+            // direct-буфер, как отдаёт S3 SDK
+            ByteBuffer direct = ByteBuffer.allocateDirect(5);
+            direct.put("world".getBytes(StandardCharsets.UTF_8)).flip();
+            archive.write(zip.write(direct));
+            archive.write(zip.closeEntry());
+
+            archive.write(zip.startEntry("b.bin", false));
+            archive.write(zip.write(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+            archive.write(zip.closeEntry());
+
+            archive.write(zip.finish());
+        }
+
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            ZipEntry first = in.getNextEntry();
+            assertNotNull(first);
+            assertEquals("a.txt", first.getName());
+            assertEquals("hello world", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+
+            ZipEntry second = in.getNextEntry();
+            assertNotNull(second);
+            assertEquals("b.bin", second.getName());
+            assertArrayEquals(new byte[]{1, 2, 3}, in.readAllBytes());
+
+            assertNull(in.getNextEntry());
+        }
+    }
+
+}